@@ -16,6 +16,7 @@
  */
 package org.apache.activemq.transport.amqp;
 
+import org.apache.activemq.ActiveMQPrefetchPolicy;
 import org.apache.activemq.broker.BrokerContext;
 import org.apache.activemq.command.*;
 import org.apache.activemq.command.ConnectionError;
@@ -66,13 +67,19 @@ class AmqpProtocolConverter {
     private static final Symbol NO_LOCAL = Symbol.valueOf("no-local");
     private static final UnsignedInteger DURABLE = new UnsignedInteger(2);
     private static final Symbol DURABLE_SUBSCRIPTION_ENDED = Symbol.getSymbol("DURABLE_SUBSCRIPTION_ENDED");
+    static final int DEFAULT_PREFETCH = 100;
 
-    int prefetch = 100;
+    int prefetch = DEFAULT_PREFETCH;
+    int maxConsumerPrefetch = ActiveMQPrefetchPolicy.MAX_PREFETCH_SIZE;
 
     ReentrantLock lock = new ReentrantLock();
     TransportImpl protonTransport = new TransportImpl();
     ConnectionImpl protonConnection = new ConnectionImpl();
 
+    // only used while holding the lock, the transport below writes each
+    // buffer out before sendToAmqp returns.
+    private final byte[] outputBuffer = new byte[1024 * 64];
+
     public AmqpProtocolConverter(AmqpTransport transport, BrokerContext brokerContext) {
         this.amqpTransport = transport;
         this.protonTransport.bind(this.protonConnection);
@@ -93,14 +100,12 @@ class AmqpProtocolConverter {
 
     void pumpProtonToSocket() {
         try {
-            int size = 1024 * 64;
-            byte data[] = new byte[size];
             boolean done = false;
             while (!done) {
-                int count = protonTransport.output(data, 0, size);
+                int count = protonTransport.output(outputBuffer, 0, outputBuffer.length);
                 if (count > 0) {
                     final Buffer buffer;
-                    buffer = new Buffer(data, 0, count);
+                    buffer = new Buffer(outputBuffer, 0, count);
 //                    System.out.println("writing: " + buffer.toString().substring(5).replaceAll("(..)", "$1 "));
                     amqpTransport.sendToAmqp(buffer);
                 } else {
@@ -226,7 +231,9 @@ class AmqpProtocolConverter {
 
                 link = protonConnection.linkHead(ACTIVE_STATE, ALL_STATES);
                 while (link != null) {
-                    ((AmqpDeliveryListener)link.getContext()).drainCheck();
+                    AmqpDeliveryListener listener = (AmqpDeliveryListener)link.getContext();
+                    listener.drainCheck();
+                    listener.flowCheck();
                     link = link.next(ACTIVE_STATE, ALL_STATES);
                 }
 
@@ -320,6 +327,7 @@ class AmqpProtocolConverter {
         abstract public void onDelivery(Delivery delivery) throws Exception;
         public void onClose() throws Exception {}
         public void drainCheck() {}
+        public void flowCheck() {}
     }
 
     private void onConnectionOpen() throws AmqpProtocolException {
@@ -660,6 +668,9 @@ class AmqpProtocolConverter {
         private final Sender sender;
         private boolean presettle;
         private boolean closed;
+        private ActiveMQDestination destination;
+        private int prefetch;
+        private boolean creditReceived;
 
         public ConsumerContext(ConsumerId consumerId, Sender sender) {
             this.consumerId = consumerId;
@@ -823,6 +834,45 @@ class AmqpProtocolConverter {
             }
         }
 
+        /**
+         * The number of messages the broker may have dispatched to the
+         * consumer without an ack: the credit the receiver has left plus the
+         * deliveries it has not settled yet.
+         */
+        int creditPrefetch() {
+            int credit = Math.max(sender.getCredit(), 0) + sender.getUnsettled();
+            return Math.min(credit, maxConsumerPrefetch);
+        }
+
+        // Updates the broker side prefetch when the receiver grants more
+        // credit, or when the credit left falls to half of the prefetch or
+        // less. Between those the broker may dispatch more than the receiver
+        // can take right now, the messages just wait in the sender. The
+        // first credit granted replaces the configured prefetch the consumer
+        // was created with as it is.
+        @Override
+        public void flowCheck() {
+            if( closed ) {
+                return;
+            }
+            int credit = creditPrefetch();
+            boolean update;
+            if( creditReceived ) {
+                update = credit > prefetch || (credit < prefetch && credit <= prefetch / 2);
+            } else {
+                creditReceived = credit > 0;
+                update = creditReceived && credit != prefetch;
+            }
+            if( update ) {
+                prefetch = credit;
+                ConsumerControl control = new ConsumerControl();
+                control.setConsumerId(consumerId);
+                control.setDestination(destination);
+                control.setPrefetch(credit);
+                sendToActiveMQ(control, null);
+            }
+        }
+
         @Override
         public void onDelivery(Delivery delivery) throws Exception {
             MessageDispatch md = (MessageDispatch) delivery.getContext();
@@ -935,11 +985,20 @@ class AmqpProtocolConverter {
             }
 
             subscriptionsByConsumerId.put(id, consumerContext);
+            // the link credit drives the prefetch from here on, see flowCheck.
+            // Receivers usually only grant credit once the link is open, the
+            // configured prefetch applies until then.
+            consumerContext.destination = dest;
+            consumerContext.prefetch = consumerContext.creditPrefetch();
+            consumerContext.creditReceived = consumerContext.prefetch > 0;
+            if( !consumerContext.creditReceived ) {
+                consumerContext.prefetch = prefetch;
+            }
             ConsumerInfo consumerInfo = new ConsumerInfo(id);
             consumerInfo.setSelector(selector);
             consumerInfo.setNoRangeAcks(true);
             consumerInfo.setDestination(dest);
-            consumerInfo.setPrefetchSize(100);
+            consumerInfo.setPrefetchSize(consumerContext.prefetch);
             consumerInfo.setDispatchAsync(true);
             if( source.getDistributionMode() == COPY && dest.isQueue() ) {
                 consumerInfo.setBrowser(true);
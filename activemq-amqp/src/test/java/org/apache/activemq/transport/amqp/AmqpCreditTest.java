@@ -0,0 +1,201 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.amqp;
+
+import org.apache.activemq.broker.region.Subscription;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.util.Wait;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.Source;
+import org.apache.qpid.proton.amqp.messaging.Target;
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.Receiver;
+import org.apache.qpid.proton.engine.Sender;
+import org.apache.qpid.proton.engine.impl.ConnectionImpl;
+import org.apache.qpid.proton.engine.impl.TransportImpl;
+import org.apache.qpid.proton.message.impl.MessageImpl;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the link credit of an AMQP receiver with the proton engine and
+ * checks the prefetch of the broker side subscription follows it.
+ */
+public class AmqpCreditTest extends AmqpTestSupport {
+
+    private final ActiveMQQueue queue = new ActiveMQQueue("CREDIT");
+    private final byte[] buffer = new byte[1024 * 64];
+    private final byte[] messageBuffer = new byte[1024 * 4];
+    private Socket socket;
+    private InputStream in;
+    private OutputStream out;
+    private TransportImpl transport;
+    private ConnectionImpl connection;
+    private org.apache.qpid.proton.engine.Session session;
+
+    @After
+    public void closeSocket() throws Exception {
+        if (socket != null) {
+            socket.close();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testCreditDrivesConsumerPrefetch() throws Exception {
+        Receiver receiver = openReceiver();
+
+        // no credit granted yet, the consumer starts on the configured prefetch
+        assertPrefetch(AmqpProtocolConverter.DEFAULT_PREFETCH);
+
+        // the first credit granted replaces it as it is
+        receiver.flow(10);
+        write();
+        assertPrefetch(10);
+
+        // granting more credit raises it
+        receiver.flow(40);
+        write();
+        assertPrefetch(50);
+
+        // using up more than half of the credit lowers it
+        sendMessages(30);
+        List<Delivery> deliveries = new ArrayList<Delivery>();
+        while (deliveries.size() < 30) {
+            read();
+            Delivery delivery = connection.getWorkHead();
+            while (delivery != null) {
+                Delivery next = delivery.getWorkNext();
+                if (delivery.getLink() == receiver && delivery.isReadable() && !delivery.isPartial() && !deliveries.contains(delivery)) {
+                    receiver.recv(messageBuffer, 0, messageBuffer.length);
+                    receiver.advance();
+                    deliveries.add(delivery);
+                }
+                delivery = next;
+            }
+        }
+        assertEquals(20, receiver.getCredit());
+        for (Delivery delivery : deliveries) {
+            delivery.disposition(new Accepted());
+            delivery.settle();
+        }
+        write();
+        assertTrue("prefetch lowered to the credit left", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                int prefetch = getSubscription().getPrefetchSize();
+                return prefetch >= 20 && prefetch <= 25;
+            }
+        }));
+
+        // draining the link takes the credit left, and the prefetch, to 0
+        receiver.drain(0);
+        write();
+        assertPrefetch(0);
+    }
+
+    private Receiver openReceiver() throws Exception {
+        socket = new Socket("localhost", port);
+        in = socket.getInputStream();
+        out = socket.getOutputStream();
+        transport = new TransportImpl();
+        connection = new ConnectionImpl();
+        transport.bind(connection);
+        connection.setContainer("AmqpCreditTest");
+        connection.open();
+        session = connection.session();
+        session.open();
+        Receiver receiver = session.receiver("credit");
+        Source source = new Source();
+        source.setAddress(queue.getPhysicalName());
+        receiver.setSource(source);
+        receiver.setTarget(new Target());
+        receiver.open();
+        write();
+        return receiver;
+    }
+
+    private void sendMessages(int count) throws Exception {
+        Sender sender = session.sender("producer");
+        Target target = new Target();
+        target.setAddress(queue.getPhysicalName());
+        sender.setTarget(target);
+        sender.setSource(new Source());
+        sender.open();
+        write();
+        while (sender.getCredit() < count) {
+            read();
+        }
+        for (int i = 0; i < count; i++) {
+            MessageImpl message = new MessageImpl();
+            message.setBody(new AmqpValue("message " + i));
+            int size = message.encode(messageBuffer, 0, messageBuffer.length);
+            Delivery delivery = sender.delivery(("message " + i).getBytes("UTF-8"));
+            sender.send(messageBuffer, 0, size);
+            sender.advance();
+            delivery.settle();
+        }
+        write();
+    }
+
+    private Subscription getSubscription() throws Exception {
+        org.apache.activemq.broker.region.Destination destination = brokerService.getDestination(queue);
+        List<Subscription> consumers = destination.getConsumers();
+        return consumers.isEmpty() ? null : consumers.get(0);
+    }
+
+    private void assertPrefetch(final int prefetch) throws Exception {
+        assertTrue("prefetch of " + prefetch, Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                // let the broker answer the frames it has been sent
+                while (in.available() > 0) {
+                    read();
+                }
+                Subscription subscription = getSubscription();
+                return subscription != null && subscription.getPrefetchSize() == prefetch;
+            }
+        }));
+    }
+
+    private void read() throws Exception {
+        int count = in.read(buffer);
+        if (count < 0) {
+            throw new EOFException("Broker closed the AMQP connection");
+        }
+        int offset = 0;
+        while (offset < count) {
+            offset += transport.input(buffer, offset, count - offset);
+        }
+    }
+
+    private void write() throws Exception {
+        int count;
+        while ((count = transport.output(buffer, 0, buffer.length)) > 0) {
+            out.write(buffer, 0, count);
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmark;
+
+import java.io.EOFException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TransportConnector;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.Source;
+import org.apache.qpid.proton.amqp.messaging.Target;
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.Receiver;
+import org.apache.qpid.proton.engine.impl.ConnectionImpl;
+import org.apache.qpid.proton.engine.impl.TransportImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Receives messages over AMQP from a queue a producer keeps busy, with a
+ * receiver that grants the given link credit and tops it up once half of it
+ * has been used, the way AMQP clients usually do. The broker side prefetch of
+ * the consumer follows the credit, so larger credit should allow more
+ * messages in flight and a higher throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AmqpCreditBenchmark {
+
+    private static final int BATCH = 100;
+
+    @Param({"1", "10", "100", "1000"})
+    public int credit;
+
+    private BrokerService broker;
+    private Connection producerConnection;
+    private Thread producerThread;
+    private volatile boolean running;
+
+    private Socket socket;
+    private InputStream in;
+    private OutputStream out;
+    private TransportImpl transport;
+    private ConnectionImpl connection;
+    private Receiver receiver;
+    private final byte[] readBuffer = new byte[1024 * 64];
+    private final byte[] writeBuffer = new byte[1024 * 64];
+    private final byte[] messageBuffer = new byte[1024 * 4];
+
+    @Setup
+    public void setUp() throws Exception {
+        broker = QueueBenchmark.createBroker();
+        TransportConnector connector = broker.addConnector("amqp://localhost:0");
+        broker.start();
+        broker.waitUntilStarted();
+
+        ActiveMQQueue queue = new ActiveMQQueue("BENCHMARK");
+        producerConnection = new ActiveMQConnectionFactory("vm://benchmark?create=false").createConnection();
+        producerConnection.start();
+        final Session session = producerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        final MessageProducer producer = session.createProducer(queue);
+        producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        final BytesMessage message = session.createBytesMessage();
+        message.writeBytes(new byte[256]);
+
+        running = true;
+        producerThread = new Thread("AmqpCreditBenchmark producer") {
+            public void run() {
+                try {
+                    while (running) {
+                        producer.send(message);
+                    }
+                } catch (JMSException e) {
+                    // closed by tearDown
+                }
+            }
+        };
+        producerThread.setDaemon(true);
+        producerThread.start();
+
+        socket = new Socket("localhost", connector.getConnectUri().getPort());
+        socket.setTcpNoDelay(true);
+        in = socket.getInputStream();
+        out = socket.getOutputStream();
+
+        transport = new TransportImpl();
+        connection = new ConnectionImpl();
+        transport.bind(connection);
+        connection.open();
+        org.apache.qpid.proton.engine.Session amqpSession = connection.session();
+        amqpSession.open();
+        receiver = amqpSession.receiver("benchmark");
+        Source source = new Source();
+        source.setAddress(queue.getPhysicalName());
+        receiver.setSource(source);
+        receiver.setTarget(new Target());
+        receiver.open();
+        receiver.flow(credit);
+        write();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        running = false;
+        socket.close();
+        producerConnection.close();
+        producerThread.join();
+        broker.stop();
+        broker.waitUntilStopped();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void receive() throws Exception {
+        int received = 0;
+        while (received < BATCH) {
+            read();
+            Delivery delivery = connection.getWorkHead();
+            while (delivery != null) {
+                Delivery next = delivery.getWorkNext();
+                if (delivery.getLink() == receiver && delivery.isReadable() && readMessage()) {
+                    delivery.disposition(new Accepted());
+                    delivery.settle();
+                    received++;
+                }
+                delivery = next;
+            }
+            if (receiver.getCredit() <= credit / 2) {
+                receiver.flow(credit - receiver.getCredit());
+            }
+            write();
+        }
+    }
+
+    /**
+     * @return true when the whole message of the current delivery was read
+     */
+    private boolean readMessage() {
+        int count = receiver.recv(messageBuffer, 0, messageBuffer.length);
+        while (count > 0) {
+            count = receiver.recv(messageBuffer, 0, messageBuffer.length);
+        }
+        if (count == 0) {
+            return false;
+        }
+        receiver.advance();
+        return true;
+    }
+
+    private void read() throws Exception {
+        int count = in.read(readBuffer);
+        if (count < 0) {
+            throw new EOFException("Broker closed the AMQP connection");
+        }
+        int offset = 0;
+        while (offset < count) {
+            offset += transport.input(readBuffer, offset, count - offset);
+        }
+    }
+
+    private void write() throws Exception {
+        int count;
+        while ((count = transport.output(writeBuffer, 0, writeBuffer.length)) > 0) {
+            out.write(writeBuffer, 0, count);
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmark;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.store.kahadb.disk.index.BTreeIndex;
+import org.apache.activemq.store.kahadb.disk.page.PageFile;
+import org.apache.activemq.store.kahadb.disk.page.Transaction;
+import org.apache.activemq.store.kahadb.disk.util.LongMarshaller;
+import org.apache.activemq.util.IOHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Puts, gets and removes long keys of a KahaDB {@link BTreeIndex}, the
+ * structure behind the KahaDB order and location indexes. Disk syncs are
+ * disabled so the numbers show the cost of the index and the page cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BTreeIndexBenchmark {
+
+    @Param({"10000", "100000"})
+    public int entries;
+
+    private File directory;
+    private PageFile pageFile;
+    private BTreeIndex<Long, Long> index;
+    private final Random random = new Random(1);
+    private long nextKey;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = new File("target/benchmark-data/" + getClass().getSimpleName());
+        IOHelper.deleteChildren(directory);
+        pageFile = new PageFile(directory, "index");
+        pageFile.setEnableDiskSyncs(false);
+        pageFile.load();
+
+        Transaction tx = pageFile.tx();
+        index = new BTreeIndex<Long, Long>(pageFile, tx.allocate().getPageId());
+        index.setKeyMarshaller(LongMarshaller.INSTANCE);
+        index.setValueMarshaller(LongMarshaller.INSTANCE);
+        index.load(tx);
+        for (long i = 0; i < entries; i++) {
+            index.put(tx, i, i);
+        }
+        tx.commit();
+        nextKey = entries;
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        pageFile.unload();
+        IOHelper.deleteChildren(directory);
+    }
+
+    @Benchmark
+    public Long get() throws Exception {
+        Transaction tx = pageFile.tx();
+        Long value = index.get(tx, (long) random.nextInt(entries));
+        tx.commit();
+        return value;
+    }
+
+    @Benchmark
+    public Long put() throws Exception {
+        long key = random.nextInt(entries);
+        Transaction tx = pageFile.tx();
+        Long previous = index.put(tx, key, key + 1);
+        tx.commit();
+        return previous;
+    }
+
+    /**
+     * Appends a new key and removes the oldest one, like the order index does
+     * for a queue that is being consumed.
+     */
+    @Benchmark
+    public Long putAndRemove() throws Exception {
+        Transaction tx = pageFile.tx();
+        index.put(tx, nextKey, nextKey);
+        Long removed = index.remove(tx, nextKey - entries);
+        nextKey++;
+        tx.commit();
+        return removed;
+    }
+}
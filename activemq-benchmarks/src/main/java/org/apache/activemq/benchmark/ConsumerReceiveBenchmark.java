@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Samples the latency of MessageConsumer.receive() while a producer keeps the
+ * queue busy, so the broker keeps dispatching into the prefetch buffer of the
+ * consumer while it is being drained. Compares the linked list dispatch
+ * channels with the RingBufferMessageDispatchChannel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConsumerReceiveBenchmark {
+
+    @Param({"false", "true"})
+    public boolean useRingBufferDispatchChannel;
+
+    @Param({"false", "true"})
+    public boolean messagePrioritySupported;
+
+    @Param({"1", "1000"})
+    public int prefetch;
+
+    private BrokerService broker;
+    private Connection producerConnection;
+    private Connection consumerConnection;
+    private MessageConsumer consumer;
+    private Thread producerThread;
+    private volatile boolean running;
+
+    @Setup
+    public void setUp() throws Exception {
+        broker = QueueBenchmark.createBroker();
+        broker.start();
+        broker.waitUntilStarted();
+
+        ActiveMQQueue queue = new ActiveMQQueue("BENCHMARK");
+
+        ActiveMQConnectionFactory consumerFactory = new ActiveMQConnectionFactory("vm://benchmark?create=false");
+        consumerFactory.setUseRingBufferDispatchChannel(useRingBufferDispatchChannel);
+        consumerFactory.setMessagePrioritySupported(messagePrioritySupported);
+        consumerFactory.getPrefetchPolicy().setQueuePrefetch(prefetch);
+        consumerConnection = consumerFactory.createConnection();
+        consumerConnection.start();
+        consumer = consumerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE).createConsumer(queue);
+
+        producerConnection = new ActiveMQConnectionFactory("vm://benchmark?create=false").createConnection();
+        producerConnection.start();
+        final Session session = producerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        final MessageProducer producer = session.createProducer(queue);
+        producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        final BytesMessage message = session.createBytesMessage();
+        message.writeBytes(new byte[256]);
+
+        running = true;
+        producerThread = new Thread("ConsumerReceiveBenchmark producer") {
+            public void run() {
+                try {
+                    while (running) {
+                        producer.send(message);
+                    }
+                } catch (JMSException e) {
+                    // closed by tearDown
+                }
+            }
+        };
+        producerThread.setDaemon(true);
+        producerThread.start();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        running = false;
+        producerConnection.close();
+        producerThread.join();
+        consumerConnection.close();
+        broker.stop();
+        broker.waitUntilStopped();
+    }
+
+    @Benchmark
+    public Message receive() throws Exception {
+        return consumer.receive();
+    }
+}
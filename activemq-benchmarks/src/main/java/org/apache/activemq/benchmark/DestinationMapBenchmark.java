@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmark;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.filter.ConcurrentDestinationMap;
+import org.apache.activemq.filter.DestinationMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Looks up destinations in a {@link DestinationMap} holding a mix of plain and
+ * wildcard entries, like the map the broker uses for authorization and
+ * destination policies. The concurrent map is the one the regions use to look
+ * up their destinations, the wildcard lookups on several threads show how
+ * lookups scale with the number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DestinationMapBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int destinations;
+
+    @Param({"synchronized", "concurrent"})
+    public String mapType;
+
+    private DestinationMap map;
+    private ActiveMQDestination[] lookups;
+    private ActiveMQDestination wildcard;
+
+    /**
+     * Walks through the destinations, one per benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next(int length) {
+            if (++next >= length) {
+                next = 0;
+            }
+            return next;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        if ("concurrent".equals(mapType)) {
+            map = new ConcurrentDestinationMap();
+        } else if ("synchronized".equals(mapType)) {
+            map = new DestinationMap();
+        } else {
+            throw new IllegalArgumentException("Unknown map type: " + mapType);
+        }
+        lookups = new ActiveMQDestination[destinations];
+        for (int i = 0; i < destinations; i++) {
+            ActiveMQTopic topic = new ActiveMQTopic("PRICES.STOCK." + (i % 26) + ".ID" + i);
+            map.put(topic, "subscription-" + i);
+            lookups[i] = topic;
+        }
+        map.put(new ActiveMQTopic("PRICES.>"), "all-prices");
+        map.put(new ActiveMQTopic("PRICES.STOCK.*.ID1"), "id1");
+        for (int i = 0; i < 26; i++) {
+            map.put(new ActiveMQTopic("PRICES.STOCK." + i + ".>"), "group-" + i);
+        }
+        wildcard = new ActiveMQTopic("PRICES.STOCK.1.*");
+    }
+
+    @Benchmark
+    public Set get(Cursor cursor) {
+        return map.get(lookups[cursor.next(lookups.length)]);
+    }
+
+    @Benchmark
+    public Set getWildcard() {
+        return map.get(wildcard);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Set getConcurrently(Cursor cursor) {
+        return map.get(lookups[cursor.next(lookups.length)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Set getWildcardThreads4() {
+        return map.get(wildcard);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Set getWildcardThreads8() {
+        return map.get(wildcard);
+    }
+}
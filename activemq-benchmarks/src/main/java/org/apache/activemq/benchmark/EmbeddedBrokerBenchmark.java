@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmark;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sends non persistent messages from several threads of the application that
+ * embeds the broker, each with its own vm:// connection, and waits for a
+ * consumer to receive them. Every send creates a new message, as the
+ * application would, so the messages can be sent without a copy. The
+ * batchDispatch variants hand the commands over through the lock free queue
+ * of the VM transport.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmbeddedBrokerBenchmark {
+
+    static final int BATCH = 100;
+
+    @Param({"false", "true"})
+    public boolean batchDispatch;
+
+    @Param({"true", "false"})
+    public boolean copyMessageOnSend;
+
+    @Param({"1024"})
+    public int messageSize;
+
+    private BrokerService broker;
+    private Connection connection;
+    private String body;
+    private final Semaphore received = new Semaphore(0);
+
+    /**
+     * A producer with its own connection for every benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Producer {
+        private Connection connection;
+        private Session session;
+        private MessageProducer producer;
+
+        @Setup
+        public void setUp(EmbeddedBrokerBenchmark benchmark) throws Exception {
+            connection = benchmark.createConnectionFactory().createConnection();
+            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            producer = session.createProducer(new ActiveMQQueue("BENCHMARK"));
+            producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            connection.close();
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        broker = QueueBenchmark.createBroker();
+        broker.start();
+        broker.waitUntilStarted();
+
+        body = new String(new char[messageSize]).replace('\0', 'x');
+
+        connection = createConnectionFactory().createConnection();
+        connection.start();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer consumer = session.createConsumer(new ActiveMQQueue("BENCHMARK"));
+        consumer.setMessageListener(new MessageListener() {
+            public void onMessage(Message message) {
+                received.release();
+            }
+        });
+    }
+
+    ActiveMQConnectionFactory createConnectionFactory() {
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory("vm://benchmark?create=false&batchDispatch=" + batchDispatch);
+        factory.setCopyMessageOnSend(copyMessageOnSend);
+        return factory;
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        connection.close();
+        broker.stop();
+        broker.waitUntilStopped();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void sendAndReceive(Producer producer) throws Exception {
+        send(producer);
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(BATCH)
+    public void sendAndReceiveThreads4(Producer producer) throws Exception {
+        send(producer);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @OperationsPerInvocation(BATCH)
+    public void sendAndReceiveThreads16(Producer producer) throws Exception {
+        send(producer);
+    }
+
+    private void send(Producer producer) throws Exception {
+        for (int i = 0; i < BATCH; i++) {
+            producer.producer.send(producer.session.createTextMessage(body));
+        }
+        received.acquire(BATCH);
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmark;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.broker.scheduler.JobListener;
+import org.apache.activemq.broker.scheduler.JobScheduler;
+import org.apache.activemq.broker.scheduler.JobSchedulerStore;
+import org.apache.activemq.store.kahadb.scheduler.JobSchedulerStoreImpl;
+import org.apache.activemq.store.kahadb.scheduler.TimingWheelJobSchedulerStore;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.IOHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Schedules a number of delayed jobs the way the broker does for messages
+ * with AMQ_SCHEDULED_DELAY and waits for all of them to fire. The delays are
+ * spread over a second so that scheduling and firing overlap. The KahaDB
+ * store takes very long for 10M jobs, limit the run with
+ * <code>-p jobs=100000</code> to compare the two stores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class JobSchedulerBenchmark {
+
+    private static final int MAX_DELAY = 1000;
+
+    @Param({"kahadb", "timingwheel"})
+    public String store;
+
+    @Param({"100000", "10000000"})
+    public int jobs;
+
+    private File directory;
+    private JobSchedulerStore jobSchedulerStore;
+    private JobScheduler scheduler;
+    private CountDownLatch fired;
+    private final ByteSequence payload = new ByteSequence(new byte[256]);
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        directory = new File("target/benchmark-data/" + getClass().getSimpleName());
+        IOHelper.deleteChildren(directory);
+        IOHelper.mkdirs(directory);
+        if ("kahadb".equals(store)) {
+            jobSchedulerStore = new JobSchedulerStoreImpl();
+        } else if ("timingwheel".equals(store)) {
+            jobSchedulerStore = new TimingWheelJobSchedulerStore();
+        } else {
+            throw new IllegalArgumentException("Unknown store: " + store);
+        }
+        jobSchedulerStore.setDirectory(directory);
+        jobSchedulerStore.start();
+        scheduler = jobSchedulerStore.getJobScheduler("JMS");
+        fired = new CountDownLatch(jobs);
+        scheduler.addListener(new JobListener() {
+            @Override
+            public void scheduledJob(String id, ByteSequence job) {
+                fired.countDown();
+            }
+        });
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws Exception {
+        jobSchedulerStore.stop();
+        IOHelper.deleteChildren(directory);
+    }
+
+    @Benchmark
+    public long scheduleAndFire() throws Exception {
+        for (int i = 0; i < jobs; i++) {
+            scheduler.schedule("ID:benchmark-1:1:1:" + i, payload, i % MAX_DELAY);
+        }
+        fired.await();
+        return fired.getCount();
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.filter.BooleanExpression;
+import org.apache.activemq.filter.MessageEvaluationContext;
+import org.apache.activemq.selector.SelectorParser;
+import org.apache.activemq.util.ByteSequence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Evaluates a selector against messages as the broker receives them, with
+ * their properties still marshalled. Every invocation uses a new message, so
+ * the cost of getting at the properties is measured each time. The
+ * unmarshalled variant first unmarshals all the properties, which is what
+ * the first property lookup used to do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarshalledPropertiesSelectorBenchmark {
+
+    @Param({"region = 'EU'", "region = 'EU' AND priority > 3 AND customer LIKE 'ACME%'"})
+    public String selector;
+
+    @Param({"10", "30", "60"})
+    public int propertyCount;
+
+    private BooleanExpression expression;
+    private ActiveMQQueue destination;
+    private ByteSequence marshalledProperties;
+
+    @Setup
+    public void setUp() throws Exception {
+        expression = SelectorParser.parse(selector);
+        destination = new ActiveMQQueue("BENCHMARK");
+
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        for (int i = 0; i < propertyCount - 3; i++) {
+            message.setStringProperty("header" + i, "value-" + i);
+        }
+        message.setStringProperty("customer", "ACME Corporation");
+        message.setIntProperty("priority", 5);
+        message.setStringProperty("region", "EU");
+        message.beforeMarshall(null);
+        marshalledProperties = message.getMarshalledProperties();
+    }
+
+    @Benchmark
+    public boolean matches() throws Exception {
+        return expression.matches(createContext());
+    }
+
+    @Benchmark
+    public boolean matchesUnmarshalled() throws Exception {
+        MessageEvaluationContext context = createContext();
+        context.getMessage().getProperties();
+        return expression.matches(context);
+    }
+
+    private MessageEvaluationContext createContext() {
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setDestination(destination);
+        message.setMarshalledProperties(marshalledProperties);
+        MessageEvaluationContext context = new MessageEvaluationContext();
+        context.setDestination(destination);
+        context.setMessageReference(message);
+        return context;
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.ActiveMQMessageAuditNoSync;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.ProducerId;
+import org.apache.activemq.util.IdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks message ids for duplicates with the default and the compact audit,
+ * round robin over the producers like a queue with many producers would. The
+ * heap used per producer by an audit tracking all of them is logged when the
+ * trial is set up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageAuditBenchmark {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageAuditBenchmark.class);
+
+    @Param({"false", "true"})
+    public boolean compact;
+
+    @Param({"64", "1024", "100000"})
+    public int producers;
+
+    @Param({"2048"})
+    public int auditDepth;
+
+    private ActiveMQMessageAuditNoSync audit;
+    private MessageId[] ids;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        String connectionId = new IdGenerator().generateId();
+        ids = new MessageId[producers];
+        for (int i = 0; i < producers; i++) {
+            ids[i] = new MessageId(new ProducerId(connectionId + ":1:" + i), 0);
+        }
+
+        long before = usedMemory();
+        audit = new ActiveMQMessageAuditNoSync(auditDepth, producers, compact);
+        // every producer has a full window of ids
+        for (int i = 0; i < producers * auditDepth; i++) {
+            isDuplicate();
+        }
+        long after = usedMemory();
+        LOG.info("Audit heap per producer: " + (after - before) / producers + " bytes");
+    }
+
+    @Benchmark
+    public boolean isDuplicate() {
+        MessageId id = ids[next];
+        id.setProducerSequenceId(id.getProducerSequenceId() + 1);
+        if (++next == ids.length) {
+            next = 0;
+        }
+        return audit.isDuplicate(id);
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQMapMessage;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.ProducerId;
+import org.apache.activemq.openwire.OpenWireFormat;
+import org.apache.activemq.util.ByteSequence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Marshals and unmarshals messages with the current OpenWire version using
+ * tight encoding, i.e. the tightMarshal1/tightMarshal2 and tightUnmarshal
+ * paths of the v9 marshallers. The wire format is shared by all benchmark
+ * threads the way it is shared by the threads dispatching to one connection,
+ * the threaded variants show how well marshalling scales.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OpenWireMarshallingBenchmark {
+
+    @Param({"text", "bytes", "map"})
+    public String messageType;
+
+    @Param({"128", "4096", "102400"})
+    public int messageSize;
+
+    @Param({"false", "true"})
+    public boolean cacheEnabled;
+
+    private OpenWireFormat wireFormat;
+    private ActiveMQMessage message;
+    private ByteSequence marshalled;
+
+    @Setup
+    public void setUp() throws Exception {
+        wireFormat = new OpenWireFormat(OpenWireFormat.DEFAULT_WIRE_VERSION);
+        wireFormat.setTightEncodingEnabled(true);
+        wireFormat.setCacheEnabled(cacheEnabled);
+
+        message = createMessage(messageType, messageSize);
+        // store the body so every invocation marshals the same content.
+        message.beforeMarshall(wireFormat);
+        marshalled = wireFormat.marshal(message);
+    }
+
+    @Benchmark
+    public ByteSequence marshal() throws Exception {
+        return wireFormat.marshal(message);
+    }
+
+    @Benchmark
+    public Object unmarshal() throws Exception {
+        return wireFormat.unmarshal(marshalled);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ByteSequence marshalConcurrently() throws Exception {
+        return wireFormat.marshal(message);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object unmarshalConcurrently() throws Exception {
+        return wireFormat.unmarshal(marshalled);
+    }
+
+    static ActiveMQMessage createMessage(String type, int size) throws Exception {
+        ActiveMQMessage message;
+        if ("text".equals(type)) {
+            StringBuilder text = new StringBuilder(size);
+            for (int i = 0; i < size; i++) {
+                text.append((char) ('a' + (i % 26)));
+            }
+            ActiveMQTextMessage textMessage = new ActiveMQTextMessage();
+            textMessage.setText(text.toString());
+            message = textMessage;
+        } else if ("bytes".equals(type)) {
+            ActiveMQBytesMessage bytesMessage = new ActiveMQBytesMessage();
+            bytesMessage.setContent(new ByteSequence(new byte[size]));
+            message = bytesMessage;
+        } else if ("map".equals(type)) {
+            ActiveMQMapMessage mapMessage = new ActiveMQMapMessage();
+            for (int i = 0; i < size / 32; i++) {
+                mapMessage.setString("key" + i, "value-" + i);
+            }
+            message = mapMessage;
+        } else {
+            throw new IllegalArgumentException("Unknown message type: " + type);
+        }
+
+        ProducerId producerId = new ProducerId("ID:benchmark-1:1:1:1");
+        message.setMessageId(new MessageId(producerId, 1));
+        message.setProducerId(producerId);
+        message.setDestination(new ActiveMQQueue("BENCHMARK"));
+        message.setStringProperty("benchmark", OpenWireMarshallingBenchmark.class.getSimpleName());
+        message.setTimestamp(System.currentTimeMillis());
+        return message;
+    }
+}
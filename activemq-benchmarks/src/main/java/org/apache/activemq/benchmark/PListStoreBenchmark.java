@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.activemq.store.PList;
+import org.apache.activemq.store.PListStore;
+import org.apache.activemq.store.kahadb.plist.PListStoreImpl;
+import org.apache.activemq.store.kahadb.plist.SegmentPListStore;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.IOHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Spills a batch of messages to a list of the temporary store and reloads
+ * them, the way a FilePendingMessageCursor does once the memory limit is hit.
+ * Every benchmark thread works on its own list like the cursors of different
+ * subscriptions do, the threaded variant shows how much the lists of a store
+ * contend with each other.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PListStoreBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"kahadb", "segment"})
+    public String store;
+
+    @Param({"1024"})
+    public int messageSize;
+
+    private File directory;
+    private PListStore pListStore;
+    private final AtomicInteger listIds = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class ListState {
+        PList list;
+
+        @Setup
+        public void setUp(PListStoreBenchmark benchmark) throws Exception {
+            list = benchmark.pListStore.getPList("list-" + benchmark.listIds.incrementAndGet());
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = new File("target/benchmark-data/" + getClass().getSimpleName());
+        IOHelper.deleteChildren(directory);
+        IOHelper.mkdirs(directory);
+        if ("kahadb".equals(store)) {
+            pListStore = new PListStoreImpl();
+        } else if ("segment".equals(store)) {
+            pListStore = new SegmentPListStore();
+        } else {
+            throw new IllegalArgumentException("Unknown store: " + store);
+        }
+        pListStore.setDirectory(directory);
+        pListStore.start();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        pListStore.stop();
+        IOHelper.deleteChildren(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int spillAndReload(ListState state) throws Exception {
+        return spillAndReload(state.list);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    @Threads(4)
+    public int spillAndReloadConcurrently(ListState state) throws Exception {
+        return spillAndReload(state.list);
+    }
+
+    private int spillAndReload(PList list) throws Exception {
+        ByteSequence message = new ByteSequence(new byte[messageSize]);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            list.addLast("ID:benchmark-1:1:1:" + i, message);
+        }
+        int reloaded = 0;
+        PList.PListIterator iterator = list.iterator();
+        try {
+            while (iterator.hasNext()) {
+                reloaded += iterator.next().getByteSequence().getLength();
+                iterator.remove();
+            }
+        } finally {
+            iterator.release();
+        }
+        return reloaded;
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmark;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.store.memory.MemoryPersistenceAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sends persistent messages to a queue of an embedded broker backed by the
+ * in-memory store and waits for the consumers to receive them, exercising
+ * Queue.send, doPageIn and doDispatch. The producer and consumers are
+ * connected through the VM transport so no socket IO is involved. The
+ * manyProducers variant sends from several threads, each with its own
+ * connection, to show contention between sends, acks and dispatch on one
+ * hot queue.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark {
+
+    static final int BATCH = 100;
+
+    @Param({"1", "10", "200"})
+    public int consumers;
+
+    @Param({"1024"})
+    public int messageSize;
+
+    private BrokerService broker;
+    private Connection connection;
+    private Session session;
+    private MessageProducer producer;
+    private BytesMessage message;
+    private final Semaphore received = new Semaphore(0);
+
+    /**
+     * A producer with its own connection for every benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Producer {
+        private Connection connection;
+        private MessageProducer producer;
+        private BytesMessage message;
+
+        @Setup
+        public void setUp(QueueBenchmark benchmark) throws Exception {
+            connection = new ActiveMQConnectionFactory("vm://benchmark?create=false").createConnection();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            producer = session.createProducer(new ActiveMQQueue("BENCHMARK"));
+            producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+            message = session.createBytesMessage();
+            message.writeBytes(new byte[benchmark.messageSize]);
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            connection.close();
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        broker = createBroker();
+        broker.start();
+        broker.waitUntilStarted();
+
+        connection = new ActiveMQConnectionFactory("vm://benchmark?create=false").createConnection();
+        connection.start();
+
+        ActiveMQQueue queue = new ActiveMQQueue("BENCHMARK");
+        for (int i = 0; i < consumers; i++) {
+            Session consumerSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = consumerSession.createConsumer(queue);
+            consumer.setMessageListener(new MessageListener() {
+                public void onMessage(Message message) {
+                    received.release();
+                }
+            });
+        }
+
+        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        producer = session.createProducer(queue);
+        producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+        message = session.createBytesMessage();
+        message.writeBytes(new byte[messageSize]);
+    }
+
+    static BrokerService createBroker() throws Exception {
+        BrokerService broker = new BrokerService();
+        broker.setBrokerName("benchmark");
+        broker.setPersistenceAdapter(new MemoryPersistenceAdapter());
+        broker.setUseJmx(false);
+        broker.setAdvisorySupport(false);
+        broker.setSchedulerSupport(false);
+        return broker;
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        connection.close();
+        broker.stop();
+        broker.waitUntilStopped();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void sendAndReceive() throws Exception {
+        for (int i = 0; i < BATCH; i++) {
+            producer.send(message);
+        }
+        received.acquire(BATCH);
+    }
+
+    @Benchmark
+    @Threads(8)
+    @OperationsPerInvocation(BATCH)
+    public void manyProducers(Producer producer) throws Exception {
+        for (int i = 0; i < BATCH; i++) {
+            producer.producer.send(producer.message);
+        }
+        received.acquire(BATCH);
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.filter.BooleanExpression;
+import org.apache.activemq.filter.MessageEvaluationContext;
+import org.apache.activemq.filter.SelectorCompiler;
+import org.apache.activemq.selector.SelectorParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Evaluates parsed selectors against a message, the work done for every
+ * message and consumer with a selector, either interpreted or compiled by the
+ * {@link SelectorCompiler}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectorBenchmark {
+
+    @Param({
+        "color = 'red'",
+        "price > 100 AND quantity < 50",
+        "color IN ('red', 'green', 'blue') AND region LIKE 'EU%'",
+        "(price BETWEEN 10 AND 1000 OR urgent = TRUE) AND JMSPriority > 3"
+    })
+    public String selector;
+
+    @Param({"false", "true"})
+    public boolean compiled;
+
+    private BooleanExpression expression;
+    private MessageEvaluationContext context;
+
+    @Setup
+    public void setUp() throws Exception {
+        expression = compiled ? SelectorCompiler.compile(selector) : SelectorParser.parse(selector);
+
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setDestination(new ActiveMQQueue("BENCHMARK"));
+        message.setText("benchmark");
+        message.setStringProperty("color", "blue");
+        message.setStringProperty("region", "EU-WEST");
+        message.setIntProperty("price", 250);
+        message.setIntProperty("quantity", 20);
+        message.setBooleanProperty("urgent", false);
+        message.setJMSPriority(4);
+
+        context = new MessageEvaluationContext();
+        context.setDestination(message.getDestination());
+        context.setMessageReference(message);
+    }
+
+    @Benchmark
+    public boolean matches() throws Exception {
+        return expression.matches(context);
+    }
+
+    @Benchmark
+    public BooleanExpression parse() throws Exception {
+        return compiled ? SelectorCompiler.compile(selector) : SelectorParser.parse(selector);
+    }
+}
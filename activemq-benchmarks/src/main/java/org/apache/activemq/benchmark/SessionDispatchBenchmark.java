@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes to a topic subscribed to by one listener in each of many sessions
+ * of a single connection and samples the time until every session has been
+ * dispatched the message. With sessionDispatchPoolSize 0 every active session
+ * gets a thread of its own, otherwise the sessions share a pool of that many
+ * threads. The number of live and peak threads is logged after every
+ * iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionDispatchBenchmark {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SessionDispatchBenchmark.class);
+
+    @Param({"5000"})
+    public int sessions;
+
+    @Param({"0", "8"})
+    public int sessionDispatchPoolSize;
+
+    private BrokerService broker;
+    private Connection connection;
+    private MessageProducer producer;
+    private Message message;
+    private final Semaphore received = new Semaphore(0);
+
+    @Setup
+    public void setUp() throws Exception {
+        broker = QueueBenchmark.createBroker();
+        broker.start();
+        broker.waitUntilStarted();
+
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory("vm://benchmark?create=false");
+        factory.setAlwaysSessionAsync(true);
+        factory.setSessionDispatchPoolSize(sessionDispatchPoolSize);
+        // without a shared pool every session may need a thread at once.
+        factory.setMaxThreadPoolSize(Integer.MAX_VALUE);
+        connection = factory.createConnection();
+        connection.start();
+
+        ActiveMQTopic topic = new ActiveMQTopic("BENCHMARK");
+        for (int i = 0; i < sessions; i++) {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            session.createConsumer(topic).setMessageListener(new MessageListener() {
+                public void onMessage(Message message) {
+                    received.release();
+                }
+            });
+        }
+
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        producer = session.createProducer(topic);
+        producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        message = session.createMessage();
+    }
+
+    @TearDown(Level.Iteration)
+    public void logThreads() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        LOG.info("live threads: " + threads.getThreadCount() + ", peak threads: " + threads.getPeakThreadCount());
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        connection.close();
+        broker.stop();
+        broker.waitUntilStopped();
+    }
+
+    /**
+     * One operation is one message delivered to the listeners of all sessions.
+     */
+    @Benchmark
+    public void deliverToAllSessions() throws Exception {
+        producer.send(message);
+        received.acquire(sessions);
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.transport.stomp.LegacyFrameTranslator;
+import org.apache.activemq.transport.stomp.StompCodec;
+import org.apache.activemq.transport.stomp.StompFrame;
+import org.apache.activemq.transport.stomp.StompWireFormat;
+import org.apache.activemq.transport.tcp.TcpTransport;
+import org.apache.activemq.util.ByteSequence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses SEND frames the way the NIO STOMP transports do, from a read buffer
+ * cut into reads of readSize bytes, and translates them to messages. The text
+ * frames end at the first null byte, the bytes frames carry a content-length
+ * header. The unmarshal benchmark parses a whole frame at once like the
+ * WebSocket transport.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StompFrameBenchmark {
+
+    @Param({"text", "bytes"})
+    public String frameType;
+
+    @Param({"128", "4096", "102400"})
+    public int bodySize;
+
+    @Param({"8192"})
+    public int readSize;
+
+    private StompWireFormat wireFormat;
+    private StompCodec codec;
+    private LegacyFrameTranslator translator;
+    private byte[] frame;
+    private StompFrame parsed;
+
+    @Setup
+    public void setUp() throws Exception {
+        wireFormat = new StompWireFormat();
+        TcpTransport transport = new TcpTransport(wireFormat, new Socket()) {
+            @Override
+            public void doConsume(Object command) {
+                parsed = (StompFrame) command;
+            }
+        };
+        codec = new StompCodec(transport);
+        translator = new LegacyFrameTranslator();
+        frame = createFrame(frameType, bodySize);
+    }
+
+    @Benchmark
+    public StompFrame parse() throws Exception {
+        for (int offset = 0; offset < frame.length; offset += readSize) {
+            codec.parse(frame, offset, Math.min(readSize, frame.length - offset));
+        }
+        return parsed;
+    }
+
+    @Benchmark
+    public ActiveMQMessage parseAndTranslate() throws Exception {
+        return translator.convertFrame(null, parse());
+    }
+
+    @Benchmark
+    public Object unmarshal() throws Exception {
+        return wireFormat.unmarshal(new ByteSequence(frame));
+    }
+
+    static byte[] createFrame(String type, int size) throws Exception {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(size + 256);
+        StringBuilder headers = new StringBuilder();
+        headers.append("SEND\n");
+        headers.append("destination:/queue/BENCHMARK\n");
+        headers.append("persistent:true\n");
+        headers.append("priority:4\n");
+        headers.append("correlation-id:benchmark-1\n");
+        headers.append("benchmark:").append(StompFrameBenchmark.class.getSimpleName()).append('\n');
+        if ("bytes".equals(type)) {
+            headers.append("content-length:").append(size).append('\n');
+        } else if (!"text".equals(type)) {
+            throw new IllegalArgumentException("Unknown frame type: " + type);
+        }
+        headers.append('\n');
+        frame.write(headers.toString().getBytes("UTF-8"));
+        for (int i = 0; i < size; i++) {
+            frame.write('a' + (i % 26));
+        }
+        frame.write(0);
+        frame.write('\n');
+        return frame.toByteArray();
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.benchmark;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.policy.ParallelDispatchPolicy;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.broker.region.policy.SimpleDispatchPolicy;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Publishes non persistent messages to a topic with a number of subscribers on
+ * an embedded broker and waits until every subscriber received them, so the
+ * score is dominated by Topic.dispatch fanning each message out, either on the
+ * sending thread or sharded across the {@link ParallelDispatchPolicy} threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopicBenchmark {
+
+    static final int BATCH = 100;
+
+    @Param({"1", "10", "100", "1000"})
+    public int subscribers;
+
+    @Param({"simple", "parallel"})
+    public String dispatchPolicy;
+
+    @Param({"1024"})
+    public int messageSize;
+
+    private BrokerService broker;
+    private Connection connection;
+    private MessageProducer producer;
+    private BytesMessage message;
+    private final Semaphore received = new Semaphore(0);
+
+    @Setup
+    public void setUp() throws Exception {
+        broker = QueueBenchmark.createBroker();
+        PolicyEntry policy = new PolicyEntry();
+        if ("parallel".equals(dispatchPolicy)) {
+            policy.setDispatchPolicy(new ParallelDispatchPolicy());
+        } else {
+            policy.setDispatchPolicy(new SimpleDispatchPolicy());
+        }
+        PolicyMap policyMap = new PolicyMap();
+        policyMap.setDefaultEntry(policy);
+        broker.setDestinationPolicy(policyMap);
+        broker.start();
+        broker.waitUntilStarted();
+
+        connection = new ActiveMQConnectionFactory("vm://benchmark?create=false").createConnection();
+        connection.start();
+
+        ActiveMQTopic topic = new ActiveMQTopic("BENCHMARK");
+        for (int i = 0; i < subscribers; i++) {
+            Session subscriberSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer subscriber = subscriberSession.createConsumer(topic);
+            subscriber.setMessageListener(new MessageListener() {
+                public void onMessage(Message message) {
+                    received.release();
+                }
+            });
+        }
+
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        producer = session.createProducer(topic);
+        producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        message = session.createBytesMessage();
+        message.writeBytes(new byte[messageSize]);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        connection.close();
+        broker.stop();
+        broker.waitUntilStopped();
+    }
+
+    /**
+     * One operation is one message delivered to all subscribers.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void publish() throws Exception {
+        for (int i = 0; i < BATCH; i++) {
+            producer.send(message);
+        }
+        received.acquire(BATCH * subscribers);
+    }
+}
@@ -1637,6 +1637,9 @@ public class BrokerService implements Service {
      */
     public void setTempDataStore(PListStore tempDataStore) {
         this.tempDataStore = tempDataStore;
+        if (tempDataStore.getDirectory() == null) {
+            tempDataStore.setDirectory(getTmpDataDirectory());
+        }
         configureService(tempDataStore);
         try {
             tempDataStore.start();
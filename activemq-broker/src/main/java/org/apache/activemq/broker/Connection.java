@@ -87,6 +87,12 @@ public interface Connection extends Service {
      */
     int getDispatchQueueSize();
 
+    /**
+     * Returns the number of frames queued by the transport waiting to be
+     * written to the socket
+     */
+    int getOutboundQueueSize();
+
     /**
      * Returns the statistics for this connection
      */
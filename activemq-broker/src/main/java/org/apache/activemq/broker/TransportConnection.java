@@ -95,6 +95,7 @@ import org.apache.activemq.transport.TransmitCallback;
 import org.apache.activemq.transport.Transport;
 import org.apache.activemq.transport.TransportDisposedIOException;
 import org.apache.activemq.transport.TransportFactory;
+import org.apache.activemq.transport.nio.NIOTransport;
 import org.apache.activemq.util.IntrospectionSupport;
 import org.apache.activemq.util.MarshallingSupport;
 import org.apache.activemq.util.URISupport;
@@ -215,6 +216,16 @@ public class TransportConnection implements Connection, Task, CommandVisitor {
         }
     }
 
+    /**
+     * Returns the number of frames queued by a transport doing non blocking
+     * writes, for other transports this is always 0.
+     */
+    @Override
+    public int getOutboundQueueSize() {
+        NIOTransport nioTransport = transport.narrow(NIOTransport.class);
+        return nioTransport != null ? nioTransport.getWriteQueueSize() : 0;
+    }
+
     public void serviceTransportException(IOException e) {
         BrokerService bService = connector.getBrokerService();
         if (bService.isShutdownOnSlaveFailure()) {
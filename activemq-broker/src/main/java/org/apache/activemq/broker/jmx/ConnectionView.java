@@ -86,6 +86,11 @@ public class ConnectionView implements ConnectionViewMBean {
         return connection.getDispatchQueueSize();
     }
 
+    @Override
+    public int getOutboundQueueSize() {
+        return connection.getOutboundQueueSize();
+    }
+
     /**
      * Resets the statistics
      */
@@ -74,6 +74,12 @@ public interface ConnectionViewMBean extends Service {
     @MBeanInfo("The number of messages pending dispatch")
     public int getDispatchQueueSize();
 
+    /**
+     * @return the number of frames waiting to be written to the socket
+     */
+    @MBeanInfo("The number of frames queued for writing to the socket")
+    public int getOutboundQueueSize();
+
     /**
      * Returns the User Name used to authorize creation of this Connection.
      * This value can be null if display of user name information is disabled.
@@ -17,6 +17,7 @@
 package org.apache.activemq.broker.jmx;
 
 import org.apache.activemq.network.NetworkBridge;
+import org.apache.activemq.network.StripedNetworkBridge;
 
 public class NetworkBridgeView implements NetworkBridgeViewMBean {
 
@@ -59,6 +60,27 @@ public class NetworkBridgeView implements NetworkBridgeViewMBean {
         return bridge.getDequeueCounter();
     }
 
+    public int getStripeCount() {
+        if (bridge instanceof StripedNetworkBridge) {
+            return ((StripedNetworkBridge) bridge).getStripes().size();
+        }
+        return 1;
+    }
+
+    public long[] getStripeEnqueueCounters() {
+        if (bridge instanceof StripedNetworkBridge) {
+            return ((StripedNetworkBridge) bridge).getStripeEnqueueCounters();
+        }
+        return new long[] {bridge.getEnqueueCounter()};
+    }
+
+    public long[] getStripeDequeueCounters() {
+        if (bridge instanceof StripedNetworkBridge) {
+            return ((StripedNetworkBridge) bridge).getStripeDequeueCounters();
+        }
+        return new long[] {bridge.getDequeueCounter()};
+    }
+
     public boolean isCreatedByDuplex() {
         return createByDuplex;
     }
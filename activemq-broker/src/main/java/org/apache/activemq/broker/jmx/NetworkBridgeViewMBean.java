@@ -34,4 +34,19 @@ public interface NetworkBridgeViewMBean extends Service {
 
     boolean isCreatedByDuplex();
 
+    /**
+     * @return the number of parallel connections the bridge forwards over
+     */
+    int getStripeCount();
+
+    /**
+     * @return the number of messages forwarded over each stripe
+     */
+    long[] getStripeEnqueueCounters();
+
+    /**
+     * @return the number of forwarded messages acknowledged on each stripe
+     */
+    long[] getStripeDequeueCounters();
+
 }
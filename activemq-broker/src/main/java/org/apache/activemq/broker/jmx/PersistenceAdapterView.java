@@ -18,6 +18,7 @@ package org.apache.activemq.broker.jmx;
 
 import java.util.concurrent.Callable;
 import org.apache.activemq.store.PersistenceAdapter;
+import org.apache.activemq.store.PersistenceAdapterStatistics;
 
 public class PersistenceAdapterView implements PersistenceAdapterViewMBean {
 
@@ -26,6 +27,7 @@ public class PersistenceAdapterView implements PersistenceAdapterViewMBean {
 
     private Callable<String> inflightTransactionViewCallable;
     private Callable<String> dataViewCallable;
+    private PersistenceAdapterStatistics persistenceAdapterStatistics;
 
     public PersistenceAdapterView(PersistenceAdapter adapter) {
         this.name = adapter.toString();
@@ -52,6 +54,38 @@ public class PersistenceAdapterView implements PersistenceAdapterViewMBean {
         return persistenceAdapter.size();
     }
 
+    @Override
+    public long getCheckpointCount() {
+        return persistenceAdapterStatistics != null ? persistenceAdapterStatistics.getCheckpointTime().getCount() : 0;
+    }
+
+    @Override
+    public double getAverageCheckpointTime() {
+        return persistenceAdapterStatistics != null ? persistenceAdapterStatistics.getCheckpointTime().getAverageTime() : 0;
+    }
+
+    @Override
+    public long getMaxCheckpointTime() {
+        return persistenceAdapterStatistics != null ? persistenceAdapterStatistics.getCheckpointTime().getMaxTime() : 0;
+    }
+
+    @Override
+    public double getAverageCheckpointBlockingTime() {
+        return persistenceAdapterStatistics != null ? persistenceAdapterStatistics.getCheckpointBlockingTime().getAverageTime() : 0;
+    }
+
+    @Override
+    public long getMaxCheckpointBlockingTime() {
+        return persistenceAdapterStatistics != null ? persistenceAdapterStatistics.getCheckpointBlockingTime().getMaxTime() : 0;
+    }
+
+    @Override
+    public void resetStatistics() {
+        if (persistenceAdapterStatistics != null) {
+            persistenceAdapterStatistics.reset();
+        }
+    }
+
     private String invoke(Callable<String> callable) {
         String result = null;
         if (callable != null) {
@@ -71,4 +105,8 @@ public class PersistenceAdapterView implements PersistenceAdapterViewMBean {
     public void setInflightTransactionViewCallable(Callable<String> inflightTransactionViewCallable) {
         this.inflightTransactionViewCallable = inflightTransactionViewCallable;
     }
+
+    public void setPersistenceAdapterStatistics(PersistenceAdapterStatistics persistenceAdapterStatistics) {
+        this.persistenceAdapterStatistics = persistenceAdapterStatistics;
+    }
 }
@@ -29,4 +29,22 @@ public interface PersistenceAdapterViewMBean {
 
     @MBeanInfo("Current size.")
     long getSize();
+
+    @MBeanInfo("Number of checkpoints taken since the last statistics reset.")
+    long getCheckpointCount();
+
+    @MBeanInfo("Average time in ms taken to write a checkpoint.")
+    double getAverageCheckpointTime();
+
+    @MBeanInfo("Maximum time in ms taken to write a checkpoint.")
+    long getMaxCheckpointTime();
+
+    @MBeanInfo("Average time in ms store updates were blocked by a checkpoint.")
+    double getAverageCheckpointBlockingTime();
+
+    @MBeanInfo("Maximum time in ms store updates were blocked by a checkpoint.")
+    long getMaxCheckpointBlockingTime();
+
+    @MBeanInfo("Resets statistics.")
+    void resetStatistics();
 }
@@ -24,4 +24,14 @@ public class TopicView extends DestinationView implements TopicViewMBean {
         super(broker, destination);
     }
 
+    @Override
+    public double getAverageFanOutTime() {
+        return destination.getDestinationStatistics().getFanOutTime().getAverageTime();
+    }
+
+    @Override
+    public long getMaxFanOutTime() {
+        return destination.getDestinationStatistics().getFanOutTime().getMaxTime();
+    }
+
 }
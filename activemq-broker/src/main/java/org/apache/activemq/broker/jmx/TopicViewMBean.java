@@ -17,4 +17,18 @@
 package org.apache.activemq.broker.jmx;
 
 public interface TopicViewMBean extends DestinationViewMBean {
+
+    /**
+     * @return the average time in microseconds it took to dispatch a
+     *         message to the subscriptions of this topic
+     */
+    @MBeanInfo("Average time in microseconds taken to dispatch a message to all subscriptions of this topic.")
+    double getAverageFanOutTime();
+
+    /**
+     * @return the longest time in microseconds it took to dispatch a
+     *         message to the subscriptions of this topic
+     */
+    @MBeanInfo("The longest time in microseconds taken to dispatch a message to all subscriptions of this topic.")
+    long getMaxFanOutTime();
 }
@@ -42,6 +42,7 @@ import org.apache.activemq.command.MessagePull;
 import org.apache.activemq.command.ProducerInfo;
 import org.apache.activemq.command.RemoveSubscriptionInfo;
 import org.apache.activemq.command.Response;
+import org.apache.activemq.filter.ConcurrentDestinationMap;
 import org.apache.activemq.filter.DestinationFilter;
 import org.apache.activemq.filter.DestinationMap;
 import org.apache.activemq.security.SecurityContext;
@@ -58,7 +59,7 @@ public abstract class AbstractRegion implements Region {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractRegion.class);
 
     protected final Map<ActiveMQDestination, Destination> destinations = new ConcurrentHashMap<ActiveMQDestination, Destination>();
-    protected final DestinationMap destinationMap = new DestinationMap();
+    protected final DestinationMap destinationMap = new ConcurrentDestinationMap();
     protected final Map<ConsumerId, Subscription> subscriptions = new ConcurrentHashMap<ConsumerId, Subscription>();
     protected final SystemUsage usageManager;
     protected final DestinationFactory destinationFactory;
@@ -33,6 +33,7 @@ import org.apache.activemq.filter.DestinationFilter;
 import org.apache.activemq.filter.LogicExpression;
 import org.apache.activemq.filter.MessageEvaluationContext;
 import org.apache.activemq.filter.NoLocalExpression;
+import org.apache.activemq.filter.SelectorCompiler;
 import org.apache.activemq.selector.SelectorParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,8 +62,9 @@ public abstract class AbstractSubscription implements Subscription {
 
     private static BooleanExpression parseSelector(ConsumerInfo info) throws InvalidSelectorException {
         BooleanExpression rc = null;
+        boolean compile = SelectorCompiler.isEnabled();
         if (info.getSelector() != null) {
-            rc = SelectorParser.parse(info.getSelector());
+            rc = compile ? SelectorCompiler.compile(info.getSelector()) : SelectorParser.parse(info.getSelector());
         }
         if (info.isNoLocal()) {
             if (rc == null) {
@@ -78,6 +80,9 @@ public abstract class AbstractSubscription implements Subscription {
                 rc = LogicExpression.createAND(info.getAdditionalPredicate(), rc);
             }
         }
+        if (compile && rc != null) {
+            rc = SelectorCompiler.compile(rc);
+        }
         return rc;
     }
 
@@ -39,6 +39,7 @@ public class DestinationStatistics extends StatsImpl {
     protected CountStatisticImpl inflight;
     protected CountStatisticImpl expired;
     protected TimeStatisticImpl processTime;
+    protected TimeStatisticImpl fanOutTime;
 
     public DestinationStatistics() {
 
@@ -56,6 +57,7 @@ public class DestinationStatistics extends StatsImpl {
         messages.setDoReset(false);
         messagesCached = new PollCountStatisticImpl("messagesCached", "The number of messages that are held in the destination's memory cache");
         processTime = new TimeStatisticImpl("processTime", "information around length of time messages are held by a destination");
+        fanOutTime = new TimeStatisticImpl("fanOutTime", "micros", "information around length of time taken to dispatch a message to the subscriptions of a topic");
         addStatistic("enqueues", enqueues);
         addStatistic("dispatched", dispatched);
         addStatistic("dequeues", dequeues);
@@ -66,6 +68,7 @@ public class DestinationStatistics extends StatsImpl {
         addStatistic("messages", messages);
         addStatistic("messagesCached", messagesCached);
         addStatistic("processTime", processTime);
+        addStatistic("fanOutTime", fanOutTime);
     }
 
     public CountStatisticImpl getEnqueues() {
@@ -112,6 +115,10 @@ public class DestinationStatistics extends StatsImpl {
         return this.processTime;
     }
 
+    public TimeStatisticImpl getFanOutTime() {
+        return this.fanOutTime;
+    }
+
     public void reset() {
         if (this.isDoReset()) {
             super.reset();
@@ -135,6 +142,7 @@ public class DestinationStatistics extends StatsImpl {
         messages.setEnabled(enabled);
         messagesCached.setEnabled(enabled);
         processTime.setEnabled(enabled);
+        fanOutTime.setEnabled(enabled);
 
     }
 
@@ -150,6 +158,7 @@ public class DestinationStatistics extends StatsImpl {
             messagesCached.setParent(parent.messagesCached);
             messages.setParent(parent.messages);
             processTime.setParent(parent.processTime);
+            fanOutTime.setParent(parent.fanOutTime);
         } else {
             enqueues.setParent(null);
             dispatched.setParent(null);
@@ -161,6 +170,7 @@ public class DestinationStatistics extends StatsImpl {
             messagesCached.setParent(null);
             messages.setParent(null);
             processTime.setParent(null);
+            fanOutTime.setParent(null);
         }
     }
 
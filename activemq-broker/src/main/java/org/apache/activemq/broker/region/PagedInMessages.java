@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.activemq.command.MessageId;
+
+/**
+ * The messages a {@link Queue} has paged in from its cursor, kept in the order
+ * they were paged in. Lookups and removals go through a concurrent index by
+ * message id and the ordering is kept in a skip list keyed by a page in
+ * sequence, so acks, page ins and dispatch do not need a common lock. Iterating
+ * over {@link #values()} is weakly consistent, it does not fail when messages
+ * are added or removed concurrently.
+ */
+final class PagedInMessages {
+
+    private final ConcurrentHashMap<MessageId, Entry> index = new ConcurrentHashMap<MessageId, Entry>();
+    private final ConcurrentSkipListMap<Long, QueueMessageReference> ordered = new ConcurrentSkipListMap<Long, QueueMessageReference>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private static final class Entry {
+        final long sequence;
+        final QueueMessageReference reference;
+
+        Entry(long sequence, QueueMessageReference reference) {
+            this.sequence = sequence;
+            this.reference = reference;
+        }
+    }
+
+    /**
+     * Adds the message unless a message with the same id is already paged in.
+     *
+     * @return true if the message was added.
+     */
+    boolean addIfAbsent(QueueMessageReference reference) {
+        Entry entry = new Entry(sequence.incrementAndGet(), reference);
+        if (index.putIfAbsent(reference.getMessageId(), entry) != null) {
+            return false;
+        }
+        ordered.put(entry.sequence, reference);
+        // A remove that ran in between would not have found the ordered entry.
+        if (index.get(reference.getMessageId()) != entry) {
+            ordered.remove(entry.sequence);
+        }
+        return true;
+    }
+
+    QueueMessageReference get(MessageId messageId) {
+        Entry entry = index.get(messageId);
+        return entry != null ? entry.reference : null;
+    }
+
+    boolean containsKey(MessageId messageId) {
+        return index.containsKey(messageId);
+    }
+
+    QueueMessageReference remove(MessageId messageId) {
+        Entry entry = index.remove(messageId);
+        if (entry == null) {
+            return null;
+        }
+        ordered.remove(entry.sequence);
+        return entry.reference;
+    }
+
+    int size() {
+        return index.size();
+    }
+
+    boolean isEmpty() {
+        return index.isEmpty();
+    }
+
+    /**
+     * @return a live view of the paged in messages in page in order.
+     */
+    Collection<QueueMessageReference> values() {
+        return ordered.values();
+    }
+}
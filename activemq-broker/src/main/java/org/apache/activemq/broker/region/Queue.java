@@ -105,8 +105,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
     protected final List<Subscription> consumers = new ArrayList<Subscription>(50);
     private final ReentrantReadWriteLock messagesLock = new ReentrantReadWriteLock();
     protected PendingMessageCursor messages;
-    private final ReentrantReadWriteLock pagedInMessagesLock = new ReentrantReadWriteLock();
-    private final LinkedHashMap<MessageId, QueueMessageReference> pagedInMessages = new LinkedHashMap<MessageId, QueueMessageReference>();
+    private final PagedInMessages pagedInMessages = new PagedInMessages();
     // Messages that are paged in but have not yet been targeted at a
     // subscription
     private final ReentrantReadWriteLock pagedInPendingDispatchLock = new ReentrantReadWriteLock();
@@ -1134,12 +1133,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
                 pagedInPendingDispatchLock.writeLock().unlock();
             }
             toExpire.clear();
-            pagedInMessagesLock.readLock().lock();
-            try {
-                addAll(pagedInMessages.values(), browseList, max, toExpire);
-            } finally {
-                pagedInMessagesLock.readLock().unlock();
-            }
+            addAll(pagedInMessages.values(), browseList, max, toExpire);
             for (MessageReference ref : toExpire) {
                 if (broker.isExpired(ref)) {
                     if (LOG.isDebugEnabled()) {
@@ -1147,12 +1141,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
                     }
                     messageExpired(connectionContext, ref);
                 } else {
-                    pagedInMessagesLock.writeLock().lock();
-                    try {
-                        pagedInMessages.remove(ref.getMessageId());
-                    } finally {
-                        pagedInMessagesLock.writeLock().unlock();
-                    }
+                    pagedInMessages.remove(ref.getMessageId());
                 }
             }
 
@@ -1206,14 +1195,9 @@ public class Queue extends BaseDestination implements Task, UsageListener {
 
     public QueueMessageReference getMessage(String id) {
         MessageId msgId = new MessageId(id);
-        pagedInMessagesLock.readLock().lock();
-        try{
-            QueueMessageReference ref = this.pagedInMessages.get(msgId);
-            if (ref != null) {
-                return ref;
-            }
-        }finally {
-            pagedInMessagesLock.readLock().unlock();
+        QueueMessageReference ref = this.pagedInMessages.get(msgId);
+        if (ref != null) {
+            return ref;
         }
         messagesLock.readLock().lock();
         try{
@@ -1242,12 +1226,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
         List<MessageReference> list = null;
         do {
             doPageIn(true);
-            pagedInMessagesLock.readLock().lock();
-            try {
-                list = new ArrayList<MessageReference>(pagedInMessages.values());
-            }finally {
-                pagedInMessagesLock.readLock().unlock();
-            }
+            list = new ArrayList<MessageReference>(pagedInMessages.values());
 
             for (MessageReference ref : list) {
                 try {
@@ -1321,12 +1300,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
         ConnectionContext context = createConnectionContext();
         do {
             doPageIn(true);
-            pagedInMessagesLock.readLock().lock();
-            try{
-                set.addAll(pagedInMessages.values());
-            }finally {
-                pagedInMessagesLock.readLock().unlock();
-            }
+            set.addAll(pagedInMessages.values());
             List<MessageReference> list = new ArrayList<MessageReference>(set);
             for (MessageReference ref : list) {
                 IndirectMessageReference r = (IndirectMessageReference) ref;
@@ -1388,12 +1362,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
             setMaxPageSize((int) this.destinationStatistics.getMessages().getCount());
             doPageIn(true);
             setMaxPageSize(oldMaxSize);
-            pagedInMessagesLock.readLock().lock();
-            try {
-                set.addAll(pagedInMessages.values());
-            }finally {
-                pagedInMessagesLock.readLock().unlock();
-            }
+            set.addAll(pagedInMessages.values());
             List<MessageReference> list = new ArrayList<MessageReference>(set);
             for (MessageReference ref : list) {
                 IndirectMessageReference r = (IndirectMessageReference) ref;
@@ -1476,12 +1445,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
         Set<QueueMessageReference> set = new LinkedHashSet<QueueMessageReference>();
         do {
             doPageIn(true);
-            pagedInMessagesLock.readLock().lock();
-            try{
-                set.addAll(pagedInMessages.values());
-            }finally {
-                pagedInMessagesLock.readLock().unlock();
-            }
+            set.addAll(pagedInMessages.values());
             List<QueueMessageReference> list = new ArrayList<QueueMessageReference>(set);
             for (QueueMessageReference ref : list) {
                 if (filter.evaluate(context, ref)) {
@@ -1505,12 +1469,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
         Set<QueueMessageReference> set = new LinkedHashSet<QueueMessageReference>();
         do {
             doPageIn(true);
-            pagedInMessagesLock.readLock().lock();
-            try{
-                set.addAll(pagedInMessages.values());
-            }finally {
-                pagedInMessagesLock.readLock().unlock();
-            }
+            set.addAll(pagedInMessages.values());
             List<QueueMessageReference> list = new ArrayList<QueueMessageReference>(set);
             for (QueueMessageReference ref : list) {
                 if (ref.getMessage().getOriginalDestination() != null) {
@@ -1618,13 +1577,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
             }
 
             if (hasBrowsers) {
-                ArrayList<QueueMessageReference> alreadyDispatchedMessages = null;
-                pagedInMessagesLock.readLock().lock();
-                try{
-                    alreadyDispatchedMessages = new ArrayList<QueueMessageReference>(pagedInMessages.values());
-                }finally {
-                    pagedInMessagesLock.readLock().unlock();
-                }
+                Collection<QueueMessageReference> alreadyDispatchedMessages = pagedInMessages.values();
 
                 Iterator<BrowserDispatch> browsers = browserDispatches.iterator();
                 while (browsers.hasNext()) {
@@ -1637,7 +1590,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
 
                         if (LOG.isDebugEnabled()) {
                             LOG.debug("dispatch to browser: " + browser
-                                    + ", already dispatched/paged count: " + alreadyDispatchedMessages.size());
+                                    + ", already dispatched/paged count: " + pagedInMessages.size());
                         }
                         boolean added = false;
                         for (QueueMessageReference node : alreadyDispatchedMessages) {
@@ -1774,12 +1727,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
     private void dropMessage(QueueMessageReference reference) {
         reference.drop();
         destinationStatistics.getMessages().decrement();
-        pagedInMessagesLock.writeLock().lock();
-        try{
-            pagedInMessages.remove(reference.getMessageId());
-        }finally {
-            pagedInMessagesLock.writeLock().unlock();
-        }
+        pagedInMessages.remove(reference.getMessageId());
     }
 
     public void messageExpired(ConnectionContext context, MessageReference reference) {
@@ -1925,23 +1873,17 @@ public class Queue extends BaseDestination implements Task, UsageListener {
             }
             // Only add new messages, not already pagedIn to avoid multiple
             // dispatch attempts
-            pagedInMessagesLock.writeLock().lock();
-            try {
-                if(isPrioritizedMessages()) {
-                    resultList = new PrioritizedPendingList();
+            if(isPrioritizedMessages()) {
+                resultList = new PrioritizedPendingList();
+            } else {
+                resultList = new OrderedPendingList();
+            }
+            for (QueueMessageReference ref : result) {
+                if (pagedInMessages.addIfAbsent(ref)) {
+                    resultList.addMessageLast(ref);
                 } else {
-                    resultList = new OrderedPendingList();
-                }
-                for (QueueMessageReference ref : result) {
-                    if (!pagedInMessages.containsKey(ref.getMessageId())) {
-                        pagedInMessages.put(ref.getMessageId(), ref);
-                        resultList.addMessageLast(ref);
-                    } else {
-                        ref.decrementReferenceCount();
-                    }
+                    ref.decrementReferenceCount();
                 }
-            } finally {
-                pagedInMessagesLock.writeLock().unlock();
             }
         } else {
             // Avoid return null list, if condition is not validated
@@ -2202,12 +2144,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
         }
 
         if (message == null) {
-            pagedInMessagesLock.readLock().lock();
-            try {
-                message = pagedInMessages.get(messageId);
-            } finally {
-                pagedInMessagesLock.readLock().unlock();
-            }
+            message = pagedInMessages.get(messageId);
         }
 
         if (message == null) {
@@ -25,6 +25,7 @@ import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.activemq.advisory.AdvisorySupport;
@@ -705,9 +706,17 @@ public class Topic extends BaseDestination implements Task {
             msgContext = context.getMessageEvaluationContext();
             msgContext.setDestination(destination);
             msgContext.setMessageReference(message);
+            // only timed when statistics are enabled, the statistic is
+            // synchronized. Kept in microseconds, most fan-outs take less
+            // than a millisecond
+            boolean timed = destinationStatistics.getFanOutTime().isEnabled();
+            long start = timed ? System.nanoTime() : 0;
             if (!dispatchPolicy.dispatch(message, msgContext, consumers)) {
                 onMessageWithNoConsumers(context, message);
             }
+            if (timed) {
+                destinationStatistics.getFanOutTime().addTime(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            }
 
         } finally {
             dispatchLock.readLock().unlock();
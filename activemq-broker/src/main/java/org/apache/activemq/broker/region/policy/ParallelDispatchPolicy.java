@@ -0,0 +1,197 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.policy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.activemq.Service;
+import org.apache.activemq.broker.region.MessageReference;
+import org.apache.activemq.broker.region.Subscription;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.filter.MessageEvaluationContext;
+
+/**
+ * Dispatch policy for topics with a large number of subscriptions. The
+ * subscriptions are split into shards of shardSize subscriptions, each shard
+ * evaluates the selectors and adds the message to its subscriptions on a
+ * thread of a shared pool while the sending thread takes care of the first
+ * shard. The message has been handed to every subscription once dispatch
+ * returns so the order of the messages seen by each subscription is the same
+ * as with the {@link SimpleDispatchPolicy}.
+ *
+ * When all threads of the pool are busy the sending thread dispatches the shard
+ * itself, so dispatch never waits on a queue of other topics' work.
+ *
+ * The pool is shut down when the broker stops, the topics using the policy
+ * register it with the broker as a service. Once stopped every shard is
+ * dispatched on the sending thread.
+ *
+ * @org.apache.xbean.XBean
+ */
+public class ParallelDispatchPolicy implements DispatchPolicy, Service {
+
+    private int shardSize = 250;
+    private int maxThreads = Runtime.getRuntime().availableProcessors();
+    private ThreadPoolExecutor executor;
+    private boolean stopped;
+
+    public boolean dispatch(final MessageReference node, MessageEvaluationContext msgContext, List<Subscription> consumers)
+            throws Exception {
+
+        ThreadPoolExecutor pool;
+        if (consumers.size() <= shardSize || (pool = getExecutor()) == null) {
+            return dispatch(node, msgContext, consumers, 0, consumers.size());
+        }
+
+        final List<Subscription> subscriptions;
+        synchronized (consumers) {
+            subscriptions = new ArrayList<Subscription>(consumers);
+        }
+        int shards = (subscriptions.size() + shardSize - 1) / shardSize;
+        final CountDownLatch done = new CountDownLatch(shards - 1);
+        final AtomicBoolean matched = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final ActiveMQDestination destination = msgContext.getDestination();
+
+        for (int shard = 1; shard < shards; shard++) {
+            final int from = shard * shardSize;
+            final int to = Math.min(from + shardSize, subscriptions.size());
+            pool.execute(new Runnable() {
+                public void run() {
+                    MessageEvaluationContext context = new MessageEvaluationContext();
+                    context.setDestination(destination);
+                    context.setMessageReference(node);
+                    try {
+                        if (dispatch(node, context, subscriptions, from, to)) {
+                            matched.set(true);
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        context.clear();
+                        done.countDown();
+                    }
+                }
+            });
+        }
+
+        if (dispatch(node, msgContext, subscriptions, 0, shardSize)) {
+            matched.set(true);
+        }
+        done.await();
+
+        Throwable e = failure.get();
+        if (e instanceof Exception) {
+            throw (Exception) e;
+        } else if (e != null) {
+            throw new RuntimeException(e);
+        }
+        return matched.get();
+    }
+
+    protected boolean dispatch(MessageReference node, MessageEvaluationContext msgContext, List<Subscription> subscriptions,
+            int from, int to) throws Exception {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            Subscription sub = subscriptions.get(i);
+            // Don't deliver to browsers
+            if (sub.getConsumerInfo().isBrowser()) {
+                continue;
+            }
+            // Only dispatch to interested subscriptions
+            if (!sub.matches(node, msgContext)) {
+                sub.unmatched(node);
+                continue;
+            }
+
+            sub.add(node);
+            count++;
+        }
+        return count > 0;
+    }
+
+    /**
+     * @return the pool, or null once stopped
+     */
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null && !stopped) {
+            executor = new ThreadPoolExecutor(maxThreads, maxThreads, 30, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger counter = new AtomicInteger();
+
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "ActiveMQ Topic Dispatch:" + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new RejectedExecutionHandler() {
+                    public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                        // also when stopped meanwhile, the dispatch waits for
+                        // every shard
+                        runnable.run();
+                    }
+                });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    public synchronized void start() {
+        stopped = false;
+    }
+
+    public synchronized void stop() {
+        stopped = true;
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    public int getShardSize() {
+        return shardSize;
+    }
+
+    /**
+     * Sets the number of subscriptions dispatched to by one thread, topics with
+     * no more subscriptions than this are dispatched to on the sending thread.
+     */
+    public void setShardSize(int shardSize) {
+        this.shardSize = shardSize;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * Sets the size of the thread pool shared by the topics using this policy.
+     */
+    public void setMaxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+    }
+}
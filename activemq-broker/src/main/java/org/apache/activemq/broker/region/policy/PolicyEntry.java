@@ -16,8 +16,12 @@
  */
 package org.apache.activemq.broker.region.policy;
 
+import java.util.Arrays;
+
 import org.apache.activemq.ActiveMQPrefetchPolicy;
+import org.apache.activemq.Service;
 import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.BrokerService;
 import org.apache.activemq.broker.region.BaseDestination;
 import org.apache.activemq.broker.region.Destination;
 import org.apache.activemq.broker.region.DurableTopicSubscription;
@@ -132,6 +136,9 @@ public class PolicyEntry extends DestinationMapEntry {
         baseConfiguration(broker,topic);
         if (dispatchPolicy != null) {
             topic.setDispatchPolicy(dispatchPolicy);
+            if (dispatchPolicy instanceof Service) {
+                addService(broker, (Service) dispatchPolicy);
+            }
         }
         topic.setDeadLetterStrategy(getDeadLetterStrategy());
         if (subscriptionRecoveryPolicy != null) {
@@ -144,6 +151,22 @@ public class PolicyEntry extends DestinationMapEntry {
         }
         topic.setLazyDispatch(isLazyDispatch());
     }
+
+    /**
+     * Registers a policy holding resources with the broker once, so it is
+     * stopped with the broker
+     */
+    private void addService(Broker broker, Service service) {
+        BrokerService brokerService = broker.getBrokerService();
+        if (brokerService == null) {
+            return;
+        }
+        synchronized (brokerService) {
+            if (!Arrays.asList(brokerService.getServices()).contains(service)) {
+                brokerService.addService(service);
+            }
+        }
+    }
     
     public void baseConfiguration(Broker broker,BaseDestination destination) {
         destination.setProducerFlowControl(isProducerFlowControl());
@@ -152,6 +152,9 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
     private final ExecutorService serialExecutor = Executors.newSingleThreadExecutor();
     private Transport duplexInboundLocalBroker = null;
     private ProducerInfo duplexInboundLocalProducerInfo;
+    private StripedNetworkBridge stripedBridge;
+    private int stripe;
+    private int stripeCount = 1;
 
     public DemandForwardingBridgeSupport(NetworkBridgeConfiguration configuration, Transport localBroker, Transport remoteBroker) {
         this.configuration = configuration;
@@ -284,6 +287,9 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
                                         LOG.info("pending tasks on stop" + pendingTasks);
                                     }
                                 }
+                                for (DemandSubscription sub : subscriptionMapByLocalId.values()) {
+                                    flushForwardingWindow(sub);
+                                }
                                 localBroker.oneway(new ShutdownInfo());
                                 remoteBroker.oneway(new ShutdownInfo());
                             } catch (Throwable e) {
@@ -439,7 +445,7 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
                 if (!disposed.get()) {
                     localConnectionInfo = new ConnectionInfo();
                     localConnectionInfo.setConnectionId(new ConnectionId(idGenerator.generateId()));
-                    localClientId = configuration.getName() + "_" + remoteBrokerName + "_inbound_" + configuration.getBrokerName();
+                    localClientId = configuration.getName() + getStripeSuffix() + "_" + remoteBrokerName + "_inbound_" + configuration.getBrokerName();
                     localConnectionInfo.setClientId(localClientId);
                     localConnectionInfo.setUserName(configuration.getUserName());
                     localConnectionInfo.setPassword(configuration.getPassword());
@@ -541,7 +547,7 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
                 }
                 remoteConnectionInfo = new ConnectionInfo();
                 remoteConnectionInfo.setConnectionId(new ConnectionId(idGenerator.generateId()));
-                remoteConnectionInfo.setClientId(configuration.getName() + "_" + configuration.getBrokerName() + "_outbound");
+                remoteConnectionInfo.setClientId(configuration.getName() + getStripeSuffix() + "_" + configuration.getBrokerName() + "_outbound");
                 remoteConnectionInfo.setUserName(configuration.getUserName());
                 remoteConnectionInfo.setPassword(configuration.getPassword());
                 remoteBroker.oneway(remoteConnectionInfo);
@@ -788,6 +794,10 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
                 }
                 return;
             }
+            if (!isStripeDestination(destInfo.getDestination())) {
+                // the stripe that forwards its demand relays it
+                return;
+            }
             destInfo.setConnectionId(localConnectionInfo.getConnectionId());
             if (destInfo.getDestination() instanceof ActiveMQTempDestination) {
                 // re-set connection id so comes from here
@@ -829,7 +839,7 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
     public void serviceLocalException(MessageDispatch messageDispatch, Throwable error) {
 
         if (!disposed.get()) {
-            if (error instanceof DestinationDoesNotExistException && ((DestinationDoesNotExistException) error).isTemporary()) {
+            if (isTemporaryDestinationError(error)) {
                 // not a reason to terminate the bridge - temps can disappear with
                 // pending sends as the demand sub may outlive the remote dest
                 if (messageDispatch != null) {
@@ -865,6 +875,34 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
         }
     }
 
+    private static boolean isTemporaryDestinationError(Throwable error) {
+        return error instanceof DestinationDoesNotExistException && ((DestinationDoesNotExistException) error).isTemporary();
+    }
+
+    private void ackForwarded(MessageAck ack) throws IOException {
+        if (ack != null) {
+            localBroker.oneway(ack);
+            dequeueCounter.addAndGet(ack.getMessageCount());
+        }
+    }
+
+    /**
+     * Acks whatever the remote broker confirmed at the head of the forwarding
+     * window of the subscription, so that it is not forwarded again once the
+     * subscription or the bridge is gone.
+     */
+    private void flushForwardingWindow(DemandSubscription sub) {
+        ForwardingWindow window = sub.getForwardingWindow();
+        if (window != null) {
+            try {
+                ackForwarded(window.flush());
+            } catch (IOException e) {
+                LOG.warn("failed to ack the forwarded messages of local subscription " + sub.getLocalInfo().getConsumerId()
+                    + ", they will be forwarded again", e);
+            }
+        }
+    }
+
     private void fireFailedForwardAdvisory(MessageDispatch messageDispatch, Throwable error) {
         if (configuration.isAdvisoryForFailedForward()) {
             AdvisoryBroker advisoryBroker = null;
@@ -892,7 +930,11 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
     }
 
     protected Service getControllingService() {
-        return duplexInitiatingConnection != null ? duplexInitiatingConnection : DemandForwardingBridgeSupport.this;
+        if (duplexInitiatingConnection != null) {
+            return duplexInitiatingConnection;
+        }
+        // a failed stripe takes the other stripes of its bridge down with it
+        return stripedBridge != null ? stripedBridge : DemandForwardingBridgeSupport.this;
     }
 
     protected void addSubscription(DemandSubscription sub) throws IOException {
@@ -924,6 +966,7 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
                 @Override
                 public void run() {
                     sub.waitForCompletion();
+                    flushForwardingWindow(sub);
                     try {
                         localBroker.oneway(sub.getLocalInfo().createRemoveCommand());
                     } catch (IOException e) {
@@ -998,6 +1041,8 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
                             // The message was not sent using async send, so we should only
                             // ack the local broker when we get confirmation that the remote
                             // broker has received the message.
+                            final ForwardingWindow window = sub.getForwardingWindow();
+                            final ForwardingWindow.Entry entry = window != null ? window.forwarded(md) : null;
                             remoteBroker.asyncRequest(message, new ResponseCallback() {
                                 @Override
                                 public void onCompletion(FutureResponse future) {
@@ -1006,6 +1051,12 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
                                         if (response.isException()) {
                                             ExceptionResponse er = (ExceptionResponse) response;
                                             serviceLocalException(md, er.getException());
+                                            if (window != null && isTemporaryDestinationError(er.getException())) {
+                                                // poison acked, the rest of the window can move on
+                                                ackForwarded(window.confirmed(entry, true));
+                                            }
+                                        } else if (window != null) {
+                                            ackForwarded(window.confirmed(entry, false));
                                         } else {
                                             localBroker.oneway(new MessageAck(md, MessageAck.INDIVIDUAL_ACK_TYPE, 1));
                                             dequeueCounter.incrementAndGet();
@@ -1108,6 +1159,10 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
     }
 
     protected boolean isPermissableDestination(ActiveMQDestination destination, boolean allowTemporary) {
+        if (!isStripeDestination(destination)) {
+            return false;
+        }
+
         // Are we not bridging temporary destinations?
         if (destination.isTemporary()) {
             if (allowTemporary) {
@@ -1151,6 +1206,34 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
         return true;
     }
 
+    /**
+     * @return true if demand for the destination is forwarded by this bridge
+     *         rather than by another stripe of the same striped bridge
+     */
+    protected boolean isStripeDestination(ActiveMQDestination destination) {
+        return stripeCount == 1 || StripedNetworkBridge.getStripe(destination, stripeCount) == stripe;
+    }
+
+    /**
+     * Makes this bridge one of the stripes of a {@link StripedNetworkBridge},
+     * it then only forwards demand for the destinations hashed onto it.
+     */
+    void setStripe(StripedNetworkBridge stripedBridge, int stripe, int stripeCount) {
+        this.stripedBridge = stripedBridge;
+        this.stripe = stripe;
+        this.stripeCount = stripeCount;
+    }
+
+    public int getStripe() {
+        return stripe;
+    }
+
+    private String getStripeSuffix() {
+        // stripes connect with the same connector name, their client ids
+        // still have to be unique on both brokers
+        return stripeCount > 1 ? "_stripe" + stripe : "";
+    }
+
     /**
      * Subscriptions for these destinations are always created
      */
@@ -1158,6 +1241,9 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
         ActiveMQDestination[] dests = staticallyIncludedDestinations;
         if (dests != null) {
             for (ActiveMQDestination dest : dests) {
+                if (!isStripeDestination(dest)) {
+                    continue;
+                }
                 DemandSubscription sub = createDemandSubscription(dest);
                 try {
                     addSubscription(sub);
@@ -1360,7 +1446,12 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
         } else {
             sub.getLocalInfo().setDispatchAsync(configuration.isDispatchAsync());
         }
-        sub.getLocalInfo().setPrefetchSize(configuration.getPrefetchSize());
+        if (configuration.getForwardingWindowSize() > 0) {
+            sub.getLocalInfo().setPrefetchSize(configuration.getForwardingWindowSize());
+            sub.setForwardingWindow(new ForwardingWindow(configuration.getForwardingWindowSize()));
+        } else {
+            sub.getLocalInfo().setPrefetchSize(configuration.getPrefetchSize());
+        }
         subscriptionMapByLocalId.put(sub.getLocalInfo().getConsumerId(), sub);
         subscriptionMapByRemoteId.put(sub.getRemoteInfo().getConsumerId(), sub);
 
@@ -40,6 +40,7 @@ public class DemandSubscription {
     private final AtomicBoolean activeWaiter = new AtomicBoolean();
 
     private NetworkBridgeFilter networkBridgeFilter;
+    private ForwardingWindow forwardingWindow;
 
     DemandSubscription(ConsumerInfo info) {
         remoteInfo = info;
@@ -137,4 +138,16 @@ public class DemandSubscription {
     public void setNetworkBridgeFilter(NetworkBridgeFilter networkBridgeFilter) {
         this.networkBridgeFilter = networkBridgeFilter;
     }
+
+    /**
+     * @return the messages forwarded and not yet acknowledged locally, or
+     *         null when every forwarded message is acknowledged on its own
+     */
+    ForwardingWindow getForwardingWindow() {
+        return forwardingWindow;
+    }
+
+    void setForwardingWindow(ForwardingWindow forwardingWindow) {
+        this.forwardingWindow = forwardingWindow;
+    }
 }
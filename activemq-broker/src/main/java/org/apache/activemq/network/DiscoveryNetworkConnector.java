@@ -19,7 +19,9 @@ package org.apache.activemq.network;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -54,6 +56,7 @@ public class DiscoveryNetworkConnector extends NetworkConnector implements Disco
     private DiscoveryAgent discoveryAgent;
     private Map<String, String> parameters;
     private final ConcurrentMap<URI, DiscoveryEvent> activeEvents = new ConcurrentHashMap<URI, DiscoveryEvent>();
+    private int bridgeStripes = 1;
     public DiscoveryNetworkConnector() {
     }
 
@@ -121,44 +124,52 @@ public class DiscoveryNetworkConnector extends NetworkConnector implements Disco
                 LOG.info("Establishing network connection from " + localURI + " to " + connectUri);
             }
 
-            Transport remoteTransport;
-            Transport localTransport;
+            int stripeCount = getBridgeStripeCount();
+            List<Transport> remoteTransports = new ArrayList<Transport>(stripeCount);
+            List<Transport> localTransports = new ArrayList<Transport>(stripeCount);
             try {
                 // Allows the transport to access the broker's ssl configuration.
                 SslContext.setCurrentSslContext(getBrokerService().getSslContext());
-                try {
-                    remoteTransport = TransportFactory.connect(connectUri);
-                } catch (Exception e) {
-                    LOG.warn("Could not connect to remote URI: " + connectUri + ": " + e.getMessage());
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Connection failure exception: " + e, e);
+                for (int i = 0; i < stripeCount; i++) {
+                    try {
+                        remoteTransports.add(TransportFactory.connect(connectUri));
+                    } catch (Exception e) {
+                        disposeAll(remoteTransports, localTransports);
+                        LOG.warn("Could not connect to remote URI: " + connectUri + ": " + e.getMessage());
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Connection failure exception: " + e, e);
+                        }
+                        activeEvents.remove(uri);
+                        return;
                     }
-                    activeEvents.remove(uri);
-                    return;
-                }
-                try {
-                    localTransport = createLocalTransport();
-                } catch (Exception e) {
-                    ServiceSupport.dispose(remoteTransport);
-                    LOG.warn("Could not connect to local URI: " + localURI + ": " + e.getMessage());
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Connection failure exception: " + e, e);
+                    try {
+                        localTransports.add(createLocalTransport());
+                    } catch (Exception e) {
+                        disposeAll(remoteTransports, localTransports);
+                        LOG.warn("Could not connect to local URI: " + localURI + ": " + e.getMessage());
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Connection failure exception: " + e, e);
+                        }
+                        activeEvents.remove(uri);
+                        return;
                     }
-                    activeEvents.remove(uri);
-                    return;
                 }
             } finally {
                 SslContext.setCurrentSslContext(null);
             }
-            NetworkBridge bridge = createBridge(localTransport, remoteTransport, event);
+            NetworkBridge bridge;
+            if (stripeCount == 1) {
+                bridge = createBridge(localTransports.get(0), remoteTransports.get(0), event);
+            } else {
+                bridge = createStripedBridge(localTransports, remoteTransports, event);
+            }
             try {
                 synchronized (bridges) {
                     bridges.put(uri, bridge);
                 }
                 bridge.start();
             } catch (Exception e) {
-                ServiceSupport.dispose(localTransport);
-                ServiceSupport.dispose(remoteTransport);
+                disposeAll(remoteTransports, localTransports);
                 LOG.warn("Could not start network bridge between: " + localURI + " and: " + uri + " due to: " + e);
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Start failure exception: " + e, e);
@@ -237,31 +248,81 @@ public class DiscoveryNetworkConnector extends NetworkConnector implements Disco
         super.handleStop(stopper);
     }
 
-    protected NetworkBridge createBridge(Transport localTransport, Transport remoteTransport, final DiscoveryEvent event) {
-        class DiscoverNetworkBridgeListener extends MBeanNetworkListener {
-
-            public DiscoverNetworkBridgeListener(BrokerService brokerService, ObjectName connectorName) {
-                super(brokerService, connectorName);
-            }
-
-            @Override
-            public void bridgeFailed() {
-                if (!serviceSupport.isStopped()) {
-                    try {
-                        discoveryAgent.serviceFailed(event);
-                    } catch (IOException e) {
-                    }
-                }
+    private void disposeAll(List<Transport> remoteTransports, List<Transport> localTransports) {
+        for (Transport transport : remoteTransports) {
+            ServiceSupport.dispose(transport);
+        }
+        for (Transport transport : localTransports) {
+            ServiceSupport.dispose(transport);
+        }
+    }
 
-            }
+    private int getBridgeStripeCount() {
+        if (bridgeStripes > 1 && isDuplex()) {
+            // the remote end of a duplex bridge forwards everything over the
+            // one connection it was created for
+            LOG.warn("bridgeStripes is not supported for duplex network connectors, using a single bridge");
+            return 1;
         }
-        NetworkBridgeListener listener = new DiscoverNetworkBridgeListener(getBrokerService(), getObjectName());
+        return Math.max(1, bridgeStripes);
+    }
+
+    protected NetworkBridge createBridge(Transport localTransport, Transport remoteTransport, final DiscoveryEvent event) {
+        NetworkBridgeListener listener = new DiscoverNetworkBridgeListener(getBrokerService(), getObjectName(), event);
 
         DemandForwardingBridge result = NetworkBridgeFactory.createBridge(this, localTransport, remoteTransport, listener);
         result.setBrokerService(getBrokerService());
         return configureBridge(result);
     }
 
+    protected NetworkBridge createStripedBridge(List<Transport> localTransports, List<Transport> remoteTransports, final DiscoveryEvent event) {
+        List<DemandForwardingBridge> stripes = new ArrayList<DemandForwardingBridge>(localTransports.size());
+        for (int i = 0; i < localTransports.size(); i++) {
+            DemandForwardingBridge stripe = NetworkBridgeFactory.createBridge(this, localTransports.get(i), remoteTransports.get(i));
+            stripe.setBrokerService(getBrokerService());
+            configureBridge(stripe);
+            stripes.add(stripe);
+        }
+        StripedNetworkBridge result = new StripedNetworkBridge(stripes);
+        result.setNetworkBridgeListener(new DiscoverNetworkBridgeListener(getBrokerService(), getObjectName(), event));
+        return result;
+    }
+
+    public int getBridgeStripes() {
+        return bridgeStripes;
+    }
+
+    /**
+     * Sets the number of parallel bridges opened to each remote broker. Every
+     * destination is forwarded by one of them, so per destination ordering is
+     * kept while different destinations no longer queue up behind each other
+     * on one connection. Defaults to 1, not supported for duplex connectors.
+     */
+    public void setBridgeStripes(int bridgeStripes) {
+        this.bridgeStripes = bridgeStripes;
+    }
+
+    private class DiscoverNetworkBridgeListener extends MBeanNetworkListener {
+
+        private final DiscoveryEvent event;
+
+        public DiscoverNetworkBridgeListener(BrokerService brokerService, ObjectName connectorName, DiscoveryEvent event) {
+            super(brokerService, connectorName);
+            this.event = event;
+        }
+
+        @Override
+        public void bridgeFailed() {
+            if (!serviceSupport.isStopped()) {
+                try {
+                    discoveryAgent.serviceFailed(event);
+                } catch (IOException e) {
+                }
+            }
+
+        }
+    }
+
     @Override
     public String toString() {
         return "DiscoveryNetworkConnector:" + getName() + ":" + getBrokerService();
@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.network;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageDispatch;
+
+/**
+ * The messages of a demand subscription that were forwarded to the remote
+ * broker and not yet acknowledged to the local broker, in dispatch order.
+ *
+ * The remote broker may confirm them in any order. Once the confirmed
+ * messages at the head of the window reach half its size, or every message in
+ * it is confirmed, they are acknowledged locally with one standard ack that
+ * covers the range. A message that has not been confirmed holds back the
+ * acknowledgement of everything forwarded after it, so a failed forward is
+ * redelivered by the local broker together with the messages behind it.
+ */
+class ForwardingWindow {
+
+    static final class Entry {
+        private final MessageDispatch messageDispatch;
+        private boolean confirmed;
+        private boolean acked;
+
+        private Entry(MessageDispatch messageDispatch) {
+            this.messageDispatch = messageDispatch;
+        }
+    }
+
+    private final LinkedList<Entry> inflight = new LinkedList<Entry>();
+    private final int ackThreshold;
+
+    ForwardingWindow(int size) {
+        this.ackThreshold = Math.max(1, size / 2);
+    }
+
+    /**
+     * Adds a message that is about to be forwarded to the end of the window.
+     */
+    synchronized Entry forwarded(MessageDispatch md) {
+        Entry entry = new Entry(md);
+        inflight.add(entry);
+        return entry;
+    }
+
+    /**
+     * Records the confirmation of a forwarded message.
+     *
+     * @param acked true when the message was already acknowledged on its own,
+     *        like a poison ack, so it must be left out of the range
+     * @return the ack to send to the local broker, or null when there is
+     *         nothing to acknowledge yet
+     */
+    synchronized MessageAck confirmed(Entry entry, boolean acked) {
+        entry.confirmed = true;
+        entry.acked = acked;
+        return takeAck(false);
+    }
+
+    /**
+     * @return the ack for whatever is confirmed at the head of the window, or
+     *         null when there is none
+     */
+    synchronized MessageAck flush() {
+        return takeAck(true);
+    }
+
+    synchronized int size() {
+        return inflight.size();
+    }
+
+    private MessageAck takeAck(boolean force) {
+        int confirmed = 0;
+        for (Entry entry : inflight) {
+            if (!entry.confirmed) {
+                break;
+            }
+            confirmed++;
+        }
+        if (confirmed == 0 || (!force && confirmed < ackThreshold && confirmed < inflight.size())) {
+            return null;
+        }
+
+        MessageDispatch first = null;
+        MessageDispatch last = null;
+        int count = 0;
+        Iterator<Entry> iter = inflight.iterator();
+        for (int i = 0; i < confirmed; i++) {
+            Entry entry = iter.next();
+            iter.remove();
+            if (!entry.acked) {
+                if (first == null) {
+                    first = entry.messageDispatch;
+                }
+                last = entry.messageDispatch;
+                count++;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        MessageAck ack = new MessageAck(last, MessageAck.STANDARD_ACK_TYPE, count);
+        ack.setFirstMessageId(first.getMessage().getMessageId());
+        return ack;
+    }
+}
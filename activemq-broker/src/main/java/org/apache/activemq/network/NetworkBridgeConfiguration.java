@@ -58,6 +58,7 @@ public class NetworkBridgeConfiguration {
     private boolean staticBridge = false;
     private boolean useCompression = false;
     private boolean advisoryForFailedForward = false;
+    private int forwardingWindowSize = 0;
 
     /**
      * @return the conduitSubscriptions
@@ -394,4 +395,20 @@ public class NetworkBridgeConfiguration {
     public void setAdvisoryForFailedForward(boolean advisoryForFailedForward) {
         this.advisoryForFailedForward = advisoryForFailedForward;
     }
+
+    public int getForwardingWindowSize() {
+        return forwardingWindowSize;
+    }
+
+    /**
+     * @param forwardingWindowSize when greater than 0, the number of messages
+     * each demand subscription may have forwarded to the remote broker without
+     * having acknowledged them locally. Sends are pipelined and the local broker
+     * is acked in ranges as the remote confirmations arrive, rather than once
+     * per message. The window replaces the prefetchSize of the demand
+     * subscriptions. The default of 0 acks every forwarded message on its own.
+     */
+    public void setForwardingWindowSize(int forwardingWindowSize) {
+        this.forwardingWindowSize = forwardingWindowSize;
+    }
 }
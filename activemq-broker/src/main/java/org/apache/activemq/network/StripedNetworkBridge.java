@@ -0,0 +1,236 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.network;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ConsumerId;
+import org.apache.activemq.util.ServiceStopper;
+
+/**
+ * A network bridge made of several {@link DemandForwardingBridgeSupport}
+ * stripes, each with its own local and remote transport to the same remote
+ * broker. Every destination is hashed onto one stripe, which forwards all of
+ * its demand, so messages for one destination keep their order while
+ * different destinations are forwarded in parallel.
+ *
+ * Queues are hashed by their full name. All topics and all wildcard
+ * destinations are forwarded by the first stripe, a wildcard can match
+ * destinations with any name, and only demand on one stripe is combined by
+ * the conduit subscriptions, so a topic message matched by a wildcard and a
+ * concrete subscription is still forwarded once. The messages of a queue that
+ * is also consumed through a wildcard are shared between the queue's stripe
+ * and the first stripe, like between any two consumers of the queue.
+ *
+ * The stripes fail and stop together, listeners and JMX see the striped
+ * bridge as one bridge.
+ */
+public class StripedNetworkBridge implements NetworkBridge {
+
+    private final List<DemandForwardingBridgeSupport> stripes;
+    private final AtomicInteger startedStripes = new AtomicInteger();
+    private final AtomicBoolean failed = new AtomicBoolean();
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    private volatile NetworkBridgeListener networkBridgeListener;
+    private ObjectName mbeanObjectName;
+
+    public StripedNetworkBridge(List<? extends DemandForwardingBridgeSupport> stripes) {
+        this.stripes = Collections.unmodifiableList(new ArrayList<DemandForwardingBridgeSupport>(stripes));
+        StripeListener listener = new StripeListener();
+        for (int i = 0; i < this.stripes.size(); i++) {
+            DemandForwardingBridgeSupport stripe = this.stripes.get(i);
+            stripe.setStripe(this, i, this.stripes.size());
+            stripe.setNetworkBridgeListener(listener);
+        }
+    }
+
+    /**
+     * @return the stripe, between 0 and stripeCount - 1, that forwards the
+     *         demand for the destination
+     */
+    public static int getStripe(ActiveMQDestination destination, int stripeCount) {
+        if (destination.isTopic() || destination.isPattern()) {
+            return 0;
+        }
+        return (destination.getPhysicalName().hashCode() & Integer.MAX_VALUE) % stripeCount;
+    }
+
+    public List<DemandForwardingBridgeSupport> getStripes() {
+        return stripes;
+    }
+
+    @Override
+    public void start() throws Exception {
+        try {
+            for (DemandForwardingBridgeSupport stripe : stripes) {
+                stripe.start();
+            }
+        } catch (Exception e) {
+            stop();
+            throw e;
+        }
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (stopped.compareAndSet(false, true)) {
+            ServiceStopper stopper = new ServiceStopper();
+            for (DemandForwardingBridgeSupport stripe : stripes) {
+                stopper.stop(stripe);
+            }
+            stopper.throwFirstException();
+        }
+    }
+
+    @Override
+    public void serviceRemoteException(Throwable error) {
+        // the first stripe disposes of all the others
+        stripes.get(0).serviceRemoteException(error);
+    }
+
+    @Override
+    public void serviceLocalException(Throwable error) {
+        stripes.get(0).serviceLocalException(error);
+    }
+
+    @Override
+    public void setNetworkBridgeListener(NetworkBridgeListener listener) {
+        this.networkBridgeListener = listener;
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return stripes.get(0).getRemoteAddress();
+    }
+
+    @Override
+    public String getRemoteBrokerName() {
+        return stripes.get(0).getRemoteBrokerName();
+    }
+
+    @Override
+    public String getLocalAddress() {
+        return stripes.get(0).getLocalAddress();
+    }
+
+    @Override
+    public String getLocalBrokerName() {
+        return stripes.get(0).getLocalBrokerName();
+    }
+
+    @Override
+    public long getEnqueueCounter() {
+        long result = 0;
+        for (DemandForwardingBridgeSupport stripe : stripes) {
+            result += stripe.getEnqueueCounter();
+        }
+        return result;
+    }
+
+    @Override
+    public long getDequeueCounter() {
+        long result = 0;
+        for (DemandForwardingBridgeSupport stripe : stripes) {
+            result += stripe.getDequeueCounter();
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of messages forwarded by each stripe
+     */
+    public long[] getStripeEnqueueCounters() {
+        long[] result = new long[stripes.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = stripes.get(i).getEnqueueCounter();
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of forwarded messages acknowledged on each stripe
+     */
+    public long[] getStripeDequeueCounters() {
+        long[] result = new long[stripes.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = stripes.get(i).getDequeueCounter();
+        }
+        return result;
+    }
+
+    @Override
+    public void setMbeanObjectName(ObjectName objectName) {
+        this.mbeanObjectName = objectName;
+    }
+
+    @Override
+    public ObjectName getMbeanObjectName() {
+        return mbeanObjectName;
+    }
+
+    boolean removeDemandSubscriptionByLocalId(ConsumerId consumerId) {
+        for (DemandForwardingBridgeSupport stripe : stripes) {
+            if (stripe.removeDemandSubscriptionByLocalId(consumerId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "StripedNetworkBridge" + stripes;
+    }
+
+    /**
+     * Reports the stripes to the listener of the striped bridge as one bridge.
+     */
+    private class StripeListener implements NetworkBridgeListener {
+
+        @Override
+        public void bridgeFailed() {
+            NetworkBridgeListener l = networkBridgeListener;
+            if (l != null && failed.compareAndSet(false, true)) {
+                l.bridgeFailed();
+            }
+        }
+
+        @Override
+        public void onStart(NetworkBridge bridge) {
+            NetworkBridgeListener l = networkBridgeListener;
+            if (l != null && startedStripes.incrementAndGet() == stripes.size()) {
+                l.onStart(StripedNetworkBridge.this);
+            }
+        }
+
+        @Override
+        public void onStop(NetworkBridge bridge) {
+            NetworkBridgeListener l = networkBridgeListener;
+            // only once, and only when onStart was reported
+            if (l != null && startedStripes.getAndSet(-stripes.size()) == stripes.size()) {
+                l.onStop(StripedNetworkBridge.this);
+            }
+        }
+    }
+}
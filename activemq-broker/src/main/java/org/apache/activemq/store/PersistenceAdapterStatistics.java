@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store;
+
+import org.apache.activemq.management.StatsImpl;
+import org.apache.activemq.management.TimeStatisticImpl;
+
+/**
+ * Statistics for the checkpoints taken by a persistence adapter.
+ */
+public class PersistenceAdapterStatistics extends StatsImpl {
+
+    protected TimeStatisticImpl checkpointTime;
+    protected TimeStatisticImpl checkpointBlockingTime;
+
+    public PersistenceAdapterStatistics() {
+        checkpointTime = new TimeStatisticImpl("checkpointTime", "ms", "The time taken to write a checkpoint to disk");
+        checkpointBlockingTime = new TimeStatisticImpl("checkpointBlockingTime", "ms", "The time store updates were blocked by a checkpoint");
+        addStatistic("checkpointTime", checkpointTime);
+        addStatistic("checkpointBlockingTime", checkpointBlockingTime);
+    }
+
+    public TimeStatisticImpl getCheckpointTime() {
+        return checkpointTime;
+    }
+
+    public TimeStatisticImpl getCheckpointBlockingTime() {
+        return checkpointBlockingTime;
+    }
+
+}
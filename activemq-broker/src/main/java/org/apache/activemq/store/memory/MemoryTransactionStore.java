@@ -145,14 +145,12 @@ public class MemoryTransactionStore implements TransactionStore {
 
             @Override
             public Future<Object> asyncAddQueueMessage(ConnectionContext context, Message message) throws IOException {
-                MemoryTransactionStore.this.addMessage(getDelegate(), message);
-                return AbstractMessageStore.FUTURE;
+                return MemoryTransactionStore.this.asyncAddQueueMessage(getDelegate(), message, false);
              }
 
             @Override
             public Future<Object> asyncAddQueueMessage(ConnectionContext context, Message message, boolean canoptimize) throws IOException {
-                MemoryTransactionStore.this.addMessage(getDelegate(), message);
-                return AbstractMessageStore.FUTURE;
+                return MemoryTransactionStore.this.asyncAddQueueMessage(getDelegate(), message, canoptimize);
              }
 
             @Override
@@ -328,6 +326,19 @@ public class MemoryTransactionStore implements TransactionStore {
         }
     }
 
+    /**
+     * Adds a message outside of a transaction through the store's own async
+     * add, so a store that batches its writes can complete the add after the
+     * caller has released its locks.
+     */
+    Future<Object> asyncAddQueueMessage(final MessageStore destination, final Message message, boolean canOptimize) throws IOException {
+        if (doingRecover || message.getTransactionId() != null) {
+            addMessage(destination, message);
+            return AbstractMessageStore.FUTURE;
+        }
+        return destination.asyncAddQueueMessage(null, message, canOptimize);
+    }
+
     /**
      * @param ack
      * @throws IOException
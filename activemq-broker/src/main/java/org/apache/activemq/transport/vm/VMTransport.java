@@ -20,9 +20,11 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.net.URI;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.activemq.command.ShutdownInfo;
@@ -50,11 +52,17 @@ public class VMTransport implements Transport, Task {
     protected boolean network;
     protected boolean async = true;
     protected int asyncQueueDepth = 2000;
+    protected boolean batchDispatch;
+    protected int dispatchBatchSize = 100;
     protected final URI location;
     protected final long id;
 
     // Implementation
     private LinkedBlockingQueue<Object> messageQueue;
+    // used instead of the messageQueue when batchDispatch is enabled, the
+    // size is only kept to know when the task runner needs a wakeup
+    private final ConcurrentLinkedQueue<Object> batchQueue = new ConcurrentLinkedQueue<Object>();
+    private final AtomicInteger batchQueueSize = new AtomicInteger();
     private TaskRunnerFactory taskRunnerFactory;
     private TaskRunner taskRunner;
 
@@ -89,6 +97,16 @@ public class VMTransport implements Transport, Task {
                 throw new TransportDisposedIOException("Peer (" + peer.toString() + ") disposed.");
             }
 
+            if (peer.batchDispatch) {
+                peer.batchQueue.offer(command);
+                // only the command that makes the queue non empty has to wake
+                // up the task runner, it dispatches until the queue is empty
+                if (peer.batchQueueSize.getAndIncrement() == 0) {
+                    peer.wakeup();
+                }
+                return;
+            }
+
             if (peer.async || !peer.started.get()) {
                 peer.getMessageQueue().put(command);
                 peer.wakeup();
@@ -149,7 +167,7 @@ public class VMTransport implements Transport, Task {
         // prevent any sync dispatches from occurring until we dispatch the pending messages
         // to maintain delivery order.  When async this happens automatically so just set
         // started and wakeup the task runner.
-        if (!async) {
+        if (!async && !batchDispatch) {
             synchronized (started) {
                 if (started.compareAndSet(false, true)) {
                     LinkedBlockingQueue<Object> mq = getMessageQueue();
@@ -181,6 +199,7 @@ public class VMTransport implements Transport, Task {
             if (mq != null) {
                 mq.clear();
             }
+            batchQueue.clear();
 
             // Allow pending deliveries to finish up, but don't wait
             // forever in case of an stalled onCommand.
@@ -209,7 +228,7 @@ public class VMTransport implements Transport, Task {
     }
 
     protected void wakeup() {
-        if (async && started.get()) {
+        if ((async || batchDispatch) && started.get()) {
             try {
                 getTaskRunner().wakeup();
             } catch (InterruptedException e) {
@@ -226,6 +245,10 @@ public class VMTransport implements Transport, Task {
 
         final TransportListener tl = transportListener;
 
+        if (batchDispatch) {
+            return dispatchBatch(tl);
+        }
+
         LinkedBlockingQueue<Object> mq;
         try {
             mq = getMessageQueue();
@@ -249,6 +272,27 @@ public class VMTransport implements Transport, Task {
         }
     }
 
+    /**
+     * Dispatches up to dispatchBatchSize commands from the batch queue.
+     *
+     * @return true when there are more commands to dispatch
+     */
+    private boolean dispatchBatch(TransportListener tl) {
+        int dispatched = 0;
+        Object command;
+        while (dispatched < dispatchBatchSize && !disposed.get() && (command = batchQueue.poll()) != null) {
+            dispatched++;
+            doDispatch(this, tl, command);
+        }
+        if (disposed.get()) {
+            batchQueue.clear();
+            return false;
+        }
+        // a sender may not have counted a command dispatched here yet, the
+        // size then drops below zero and that sender does not wake us up
+        return batchQueueSize.addAndGet(-dispatched) > 0;
+    }
+
     public void setTransportListener(TransportListener commandListener) {
         this.transportListener = commandListener;
     }
@@ -379,6 +423,40 @@ public class VMTransport implements Transport, Task {
         this.asyncQueueDepth = asyncQueueDepth;
     }
 
+    /**
+     * @return true if commands sent to this transport are dispatched in batches
+     */
+    public boolean isBatchDispatch() {
+        return batchDispatch;
+    }
+
+    /**
+     * When enabled, commands sent to this transport are put on a lock free
+     * queue, whatever the async setting, and its task runner dispatches them
+     * in batches of up to dispatchBatchSize commands. The queue is not bounded
+     * by the asyncQueueDepth, the senders are never blocked.
+     *
+     * @param batchDispatch the batchDispatch to set
+     */
+    public void setBatchDispatch(boolean batchDispatch) {
+        this.batchDispatch = batchDispatch;
+    }
+
+    /**
+     * @return the dispatchBatchSize
+     */
+    public int getDispatchBatchSize() {
+        return dispatchBatchSize;
+    }
+
+    /**
+     * @param dispatchBatchSize the number of commands dispatched before the
+     *                task runner is given back to other tasks
+     */
+    public void setDispatchBatchSize(int dispatchBatchSize) {
+        this.dispatchBatchSize = dispatchBatchSize;
+    }
+
     public boolean isFaultTolerant() {
         return false;
     }
@@ -202,10 +202,12 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
     private long consumerFailoverRedeliveryWaitPeriod;
     private Scheduler scheduler;
     private boolean messagePrioritySupported = true;
+    private boolean useRingBufferDispatchChannel = false;
     private boolean transactedIndividualAck = false;
     private boolean nonBlockingRedelivery = false;
 
     private int maxThreadPoolSize = DEFAULT_THREAD_POOL_SIZE;
+    private int sessionDispatchPoolSize;
     private RejectedExecutionHandler rejectedTaskHandler = null;
 
     /**
@@ -997,7 +999,14 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
     public TaskRunnerFactory getSessionTaskRunner() {
         synchronized (this) {
             if (sessionTaskRunner == null) {
-                sessionTaskRunner = new TaskRunnerFactory("ActiveMQ Session Task", ThreadPriorities.INBOUND_CLIENT_SESSION, false, 1000, isUseDedicatedTaskRunner(), maxThreadPoolSize);
+                if (sessionDispatchPoolSize > 0) {
+                    // a busy session gives up its thread after a few messages so
+                    // that the other sessions sharing the pool get their turn.
+                    sessionTaskRunner = new TaskRunnerFactory("ActiveMQ Session Task", ThreadPriorities.INBOUND_CLIENT_SESSION, false, 16, false, sessionDispatchPoolSize);
+                    sessionTaskRunner.setFixedThreadPool(true);
+                } else {
+                    sessionTaskRunner = new TaskRunnerFactory("ActiveMQ Session Task", ThreadPriorities.INBOUND_CLIENT_SESSION, false, 1000, isUseDedicatedTaskRunner(), maxThreadPoolSize);
+                }
                 sessionTaskRunner.setRejectedTaskHandler(rejectedTaskHandler);
             }
         }
@@ -1563,6 +1572,25 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
         this.messagePrioritySupported = messagePrioritySupported;
     }
 
+    /**
+     * @return true if consumers buffer their prefetched messages in a
+     *         {@link RingBufferMessageDispatchChannel}
+     */
+    public boolean isUseRingBufferDispatchChannel() {
+        return this.useRingBufferDispatchChannel;
+    }
+
+    /**
+     * Enables buffering the prefetched messages of consumers in ring buffers
+     * rather than linked lists, which avoids contention between the thread
+     * dispatching to a consumer and the thread receiving from it.
+     *
+     * @param useRingBufferDispatchChannel
+     */
+    public void setUseRingBufferDispatchChannel(boolean useRingBufferDispatchChannel) {
+        this.useRingBufferDispatchChannel = useRingBufferDispatchChannel;
+    }
+
     /**
      * Cleans up this connection so that it's state is as if the connection was
      * just created. This allows the Resource Adapter to clean up a connection
@@ -2396,7 +2424,9 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
      * Should a JMS message be copied to a new JMS Message object as part of the
      * send() method in JMS. This is enabled by default to be compliant with the
      * JMS specification. You can disable it if you do not mutate JMS messages
-     * after they are sent for a performance boost
+     * after they are sent for a performance boost. The message sent then
+     * shares the body and the marshalled properties of the message passed to
+     * send() instead of copying them, its headers are still its own.
      */
     public void setCopyMessageOnSend(boolean copyMessageOnSend) {
         this.copyMessageOnSend = copyMessageOnSend;
@@ -2622,6 +2652,24 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
         this.maxThreadPoolSize = maxThreadPoolSize;
     }
 
+    public int getSessionDispatchPoolSize() {
+        return sessionDispatchPoolSize;
+    }
+
+    /**
+     * When greater than zero the asynchronous dispatch of all sessions of this
+     * connection is multiplexed onto a pool of this many threads, instead of
+     * handing every session to a thread of its own. Each session is still
+     * dispatched by one thread at a time so its messages are delivered in
+     * order. Note that a listener that blocks holds up one of the shared
+     * threads.
+     *
+     * @param sessionDispatchPoolSize the number of dispatch threads, 0 to disable
+     */
+    public void setSessionDispatchPoolSize(int sessionDispatchPoolSize) {
+        this.sessionDispatchPoolSize = sessionDispatchPoolSize;
+    }
+
     /**
      * Enable enforcement of QueueConnection semantics.
      *
@@ -117,9 +117,11 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
     private boolean checkForDuplicates = true;
     private ClientInternalExceptionListener clientInternalExceptionListener;
     private boolean messagePrioritySupported = true;
+    private boolean useRingBufferDispatchChannel = false;
     private boolean transactedIndividualAck = false;
     private boolean nonBlockingRedelivery = false;
     private int maxThreadPoolSize = ActiveMQConnection.DEFAULT_THREAD_POOL_SIZE;
+    private int sessionDispatchPoolSize;
     private TaskRunnerFactory sessionTaskRunner;
     private RejectedExecutionHandler rejectedTaskHandler = null;
 
@@ -338,9 +340,11 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
         connection.setConsumerFailoverRedeliveryWaitPeriod(getConsumerFailoverRedeliveryWaitPeriod());
         connection.setCheckForDuplicates(isCheckForDuplicates());
         connection.setMessagePrioritySupported(isMessagePrioritySupported());
+        connection.setUseRingBufferDispatchChannel(isUseRingBufferDispatchChannel());
         connection.setTransactedIndividualAck(isTransactedIndividualAck());
         connection.setNonBlockingRedelivery(isNonBlockingRedelivery());
         connection.setMaxThreadPoolSize(getMaxThreadPoolSize());
+        connection.setSessionDispatchPoolSize(getSessionDispatchPoolSize());
         connection.setSessionTaskRunner(getSessionTaskRunner());
         connection.setRejectedTaskHandler(getRejectedTaskHandler());
         connection.setNestedMapAndListEnabled(isNestedMapAndListEnabled());
@@ -656,6 +660,25 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
         this.messagePrioritySupported = messagePrioritySupported;
     }
 
+    /**
+     * @return true if consumers buffer their prefetched messages in a
+     *         {@link RingBufferMessageDispatchChannel}
+     */
+    public boolean isUseRingBufferDispatchChannel() {
+        return this.useRingBufferDispatchChannel;
+    }
+
+    /**
+     * Enables buffering the prefetched messages of consumers in ring buffers
+     * rather than linked lists, which avoids contention between the thread
+     * dispatching to a consumer and the thread receiving from it.
+     *
+     * @param useRingBufferDispatchChannel
+     */
+    public void setUseRingBufferDispatchChannel(boolean useRingBufferDispatchChannel) {
+        this.useRingBufferDispatchChannel = useRingBufferDispatchChannel;
+    }
+
 
     /**
      * Sets the transformer used to transform messages before they are sent on
@@ -759,9 +782,11 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
         props.setProperty("auditMaximumProducerNumber", Integer.toString(getAuditMaximumProducerNumber()));
         props.setProperty("checkForDuplicates", Boolean.toString(isCheckForDuplicates()));
         props.setProperty("messagePrioritySupported", Boolean.toString(isMessagePrioritySupported()));
+        props.setProperty("useRingBufferDispatchChannel", Boolean.toString(isUseRingBufferDispatchChannel()));
         props.setProperty("transactedIndividualAck", Boolean.toString(isTransactedIndividualAck()));
         props.setProperty("nonBlockingRedelivery", Boolean.toString(isNonBlockingRedelivery()));
         props.setProperty("maxThreadPoolSize", Integer.toString(getMaxThreadPoolSize()));
+        props.setProperty("sessionDispatchPoolSize", Integer.toString(getSessionDispatchPoolSize()));
         props.setProperty("nestedMapAndListEnabled", Boolean.toString(isNestedMapAndListEnabled()));
         props.setProperty("consumerFailoverRedeliveryWaitPeriod", Long.toString(getConsumerFailoverRedeliveryWaitPeriod()));
     }
@@ -1112,6 +1137,24 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
         this.maxThreadPoolSize = maxThreadPoolSize;
     }
 
+    public int getSessionDispatchPoolSize() {
+        return sessionDispatchPoolSize;
+    }
+
+    /**
+     * When greater than zero the asynchronous dispatch of all sessions of a
+     * connection is multiplexed onto a pool of this many threads, instead of
+     * handing every session to a thread of its own. Each session is still
+     * dispatched by one thread at a time so its messages are delivered in
+     * order. Note that a listener that blocks holds up one of the shared
+     * threads.
+     *
+     * @param sessionDispatchPoolSize the number of dispatch threads, 0 to disable
+     */
+    public void setSessionDispatchPoolSize(int sessionDispatchPoolSize) {
+        this.sessionDispatchPoolSize = sessionDispatchPoolSize;
+    }
+
     public TaskRunnerFactory getSessionTaskRunner() {
         return sessionTaskRunner;
     }
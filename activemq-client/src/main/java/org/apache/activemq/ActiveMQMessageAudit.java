@@ -45,6 +45,18 @@ public class ActiveMQMessageAudit extends ActiveMQMessageAuditNoSync {
     public ActiveMQMessageAudit(int auditDepth, final int maximumNumberOfProducersToTrack) {
         super(auditDepth, maximumNumberOfProducersToTrack);
     }
+
+    /**
+     * Construct a MessageAudit
+     * 
+     * @param auditDepth range of ids to track
+     * @param maximumNumberOfProducersToTrack number of producers expected in
+     *                the system
+     * @param compact whether to use the compact audit
+     */
+    public ActiveMQMessageAudit(int auditDepth, final int maximumNumberOfProducersToTrack, boolean compact) {
+        super(auditDepth, maximumNumberOfProducersToTrack, compact);
+    }
     
     @Override
     public boolean isDuplicate(String id) {
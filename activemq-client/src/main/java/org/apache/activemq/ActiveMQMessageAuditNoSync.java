@@ -25,6 +25,7 @@ import org.apache.activemq.broker.region.MessageReference;
 import org.apache.activemq.command.MessageId;
 import org.apache.activemq.command.ProducerId;
 import org.apache.activemq.util.BitArrayBin;
+import org.apache.activemq.util.BitArrayBinTable;
 import org.apache.activemq.util.IdGenerator;
 import org.apache.activemq.util.LRUCache;
 
@@ -39,9 +40,12 @@ public class ActiveMQMessageAuditNoSync implements Serializable {
 
     public static final int DEFAULT_WINDOW_SIZE = 2048;
     public static final int MAXIMUM_PRODUCER_COUNT = 64;
+    private static final boolean USE_COMPACT_AUDIT = "true".equalsIgnoreCase(System.getProperty("org.apache.activemq.UseCompactMessageAudit"));
     private int auditDepth;
     private int maximumNumberOfProducersToTrack;
+    // one of map or table is used, the table when the audit is compact
     private final LRUCache<Object, BitArrayBin> map;
+    private BitArrayBinTable table;
     private transient boolean modified = true;
 
     /**
@@ -52,15 +56,45 @@ public class ActiveMQMessageAuditNoSync implements Serializable {
     }
 
     /**
-     * Construct a MessageAudit
+     * Construct a MessageAudit, which is compact when the
+     * org.apache.activemq.UseCompactMessageAudit system property is true
      *
      * @param auditDepth range of ids to track
      * @param maximumNumberOfProducersToTrack number of producers expected in the system
      */
     public ActiveMQMessageAuditNoSync(int auditDepth, final int maximumNumberOfProducersToTrack) {
+        this(auditDepth, maximumNumberOfProducersToTrack, USE_COMPACT_AUDIT);
+    }
+
+    /**
+     * Construct a MessageAudit
+     *
+     * A compact audit keeps the ids of each producer in a {@link BitArrayBinTable}
+     * keyed by a 64 bit hash of the producer id instead of the producer id itself,
+     * which needs far less memory per producer. Two producers tracked at the same
+     * time with the same hash would share their ids, the chance of that is
+     * negligible.
+     *
+     * @param auditDepth range of ids to track
+     * @param maximumNumberOfProducersToTrack number of producers expected in the system
+     * @param compact whether to use the compact audit
+     */
+    public ActiveMQMessageAuditNoSync(int auditDepth, final int maximumNumberOfProducersToTrack, boolean compact) {
         this.auditDepth = auditDepth;
         this.maximumNumberOfProducersToTrack=maximumNumberOfProducersToTrack;
-        this.map = new LRUCache<Object, BitArrayBin>(0, maximumNumberOfProducersToTrack, 0.75f, true);
+        if (compact) {
+            this.map = null;
+            this.table = new BitArrayBinTable(auditDepth, maximumNumberOfProducersToTrack);
+        } else {
+            this.map = new LRUCache<Object, BitArrayBin>(0, maximumNumberOfProducersToTrack, 0.75f, true);
+        }
+    }
+
+    /**
+     * @return true if the audit is compact
+     */
+    public boolean isCompact() {
+        return table != null;
     }
 
     /**
@@ -75,6 +109,9 @@ public class ActiveMQMessageAuditNoSync implements Serializable {
      */
     public void setAuditDepth(int auditDepth) {
         this.auditDepth = auditDepth;
+        if (table != null && table.getWindowSize() != auditDepth) {
+            table = table.resize(auditDepth);
+        }
         this.modified = true;
     }
 
@@ -90,7 +127,9 @@ public class ActiveMQMessageAuditNoSync implements Serializable {
      */
     public void setMaximumNumberOfProducersToTrack(int maximumNumberOfProducersToTrack) {
 
-        if (maximumNumberOfProducersToTrack < this.maximumNumberOfProducersToTrack){
+        if (table != null) {
+            table.setMaxSize(maximumNumberOfProducersToTrack);
+        } else if (maximumNumberOfProducersToTrack < this.maximumNumberOfProducersToTrack){
             LRUCache<Object, BitArrayBin> newMap = new LRUCache<Object, BitArrayBin>(0,maximumNumberOfProducersToTrack,0.75f,true);
             /**
              * As putAll will access the entries in the right order,
@@ -100,7 +139,9 @@ public class ActiveMQMessageAuditNoSync implements Serializable {
             this.map.clear();
             this.map.putAll(newMap);
         }
-        this.map.setMaxCacheSize(maximumNumberOfProducersToTrack);
+        if (map != null) {
+            this.map.setMaxCacheSize(maximumNumberOfProducersToTrack);
+        }
         this.maximumNumberOfProducersToTrack = maximumNumberOfProducersToTrack;
         this.modified = true;
     }
@@ -124,6 +165,14 @@ public class ActiveMQMessageAuditNoSync implements Serializable {
      * @return true if the message is a duplicate
      */
     public boolean isDuplicate(String id) {
+        if (table != null) {
+            int index = seedEnd(id);
+            if (index > 0) {
+                modified = true;
+                return table.setBit(BitArrayBinTable.hash(id, 0, index), sequence(id, index), true, true);
+            }
+            return false;
+        }
         boolean answer = false;
         String seed = IdGenerator.getSeedFromId(id);
         if (seed != null) {
@@ -165,6 +214,10 @@ public class ActiveMQMessageAuditNoSync implements Serializable {
         if (id != null) {
             ProducerId pid = id.getProducerId();
             if (pid != null) {
+                if (table != null) {
+                    modified = true;
+                    return table.setBit(key(pid), id.getProducerSequenceId(), true, true);
+                }
                 BitArrayBin bab = map.get(pid);
                 if (bab == null) {
                     bab = new BitArrayBin(auditDepth);
@@ -196,6 +249,14 @@ public class ActiveMQMessageAuditNoSync implements Serializable {
         if (id != null) {
             ProducerId pid = id.getProducerId();
             if (pid != null) {
+                if (table != null) {
+                    long key = key(pid);
+                    if (table.containsKey(key)) {
+                        table.setBit(key, id.getProducerSequenceId(), false, false);
+                        modified = true;
+                    }
+                    return;
+                }
                 BitArrayBin bab = map.get(pid);
                 if (bab != null) {
                     bab.setBit(id.getProducerSequenceId(), false);
@@ -206,6 +267,17 @@ public class ActiveMQMessageAuditNoSync implements Serializable {
     }
 
     public void rollback(final String id) {
+        if (table != null) {
+            int index = seedEnd(id);
+            if (index > 0) {
+                long key = BitArrayBinTable.hash(id, 0, index);
+                if (table.containsKey(key)) {
+                    table.setBit(key, sequence(id, index), false, false);
+                    modified = true;
+                }
+            }
+            return;
+        }
         String seed = IdGenerator.getSeedFromId(id);
         if (seed != null) {
             BitArrayBin bab = map.get(seed);
@@ -236,6 +308,17 @@ public class ActiveMQMessageAuditNoSync implements Serializable {
         boolean answer = true;
 
         if (id != null) {
+            if (table != null) {
+                int index = seedEnd(id);
+                if (index > 0) {
+                    long key = BitArrayBinTable.hash(id, 0, index);
+                    if (table.containsKey(key)) {
+                        answer = table.isInOrder(key, sequence(id, index), false);
+                        modified = true;
+                    }
+                }
+                return answer;
+            }
             String seed = IdGenerator.getSeedFromId(id);
             if (seed != null) {
                 BitArrayBin bab = map.get(seed);
@@ -269,6 +352,10 @@ public class ActiveMQMessageAuditNoSync implements Serializable {
         if (id != null) {
             ProducerId pid = id.getProducerId();
             if (pid != null) {
+                if (table != null) {
+                    modified = true;
+                    return table.isInOrder(key(pid), id.getProducerSequenceId(), true);
+                }
                 BitArrayBin bab = map.get(pid);
                 if (bab == null) {
                     bab = new BitArrayBin(auditDepth);
@@ -283,6 +370,9 @@ public class ActiveMQMessageAuditNoSync implements Serializable {
     }
 
     public long getLastSeqId(ProducerId id) {
+        if (table != null) {
+            return table.getLastSetIndex(key(id));
+        }
         long result = -1;
         BitArrayBin bab = map.get(id.toString());
         if (bab != null) {
@@ -292,7 +382,43 @@ public class ActiveMQMessageAuditNoSync implements Serializable {
     }
 
     public void clear() {
-        map.clear();
+        if (table != null) {
+            table.clear();
+        } else {
+            map.clear();
+        }
+    }
+
+    private static long key(ProducerId pid) {
+        // the same key as the seed of the message ids of the producer
+        return pid.getKeyHash();
+    }
+
+    /**
+     * @return the end of the seed in a message id, see IdGenerator.getSeedFromId,
+     *         or -1 when the id has no sequence
+     */
+    private static int seedEnd(String id) {
+        int index = id.lastIndexOf(':');
+        if (index > 0 && (index + 1) < id.length()) {
+            return index;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the sequence of a message id, see IdGenerator.getSequenceFromId
+     */
+    private static long sequence(String id, int seedEnd) {
+        long result = 0;
+        for (int i = seedEnd + 1; i < id.length(); i++) {
+            int digit = id.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.parseLong(id.substring(seedEnd + 1));
+            }
+            result = result * 10 + digit;
+        }
+        return result;
     }
 
     /**
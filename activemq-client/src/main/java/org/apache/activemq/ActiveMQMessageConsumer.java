@@ -202,7 +202,13 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
                 throw new JMSException("Cannot have a prefetch size less than zero");
             }
         }
-        if (session.connection.isMessagePrioritySupported()) {
+        if (session.connection.isUseRingBufferDispatchChannel()) {
+            if (session.connection.isMessagePrioritySupported()) {
+                this.unconsumedMessages = new RingBufferMessageDispatchChannel(true);
+            } else {
+                this.unconsumedMessages = new RingBufferMessageDispatchChannel(false, prefetch);
+            }
+        } else if (session.connection.isMessagePrioritySupported()) {
             this.unconsumedMessages = new SimplePriorityMessageDispatchChannel();
         }else {
             this.unconsumedMessages = new FifoMessageDispatchChannel();
@@ -725,7 +731,7 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
                     inProgressClearRequiredFlag.decrementAndGet();
 
                     // Wake up any blockers and allow them to recheck state.
-                    unconsumedMessages.getMutex().notifyAll();
+                    unconsumedMessages.wakeup();
                 }
             }
         }
@@ -17,6 +17,7 @@
 package org.apache.activemq;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.net.URL;
@@ -1771,6 +1772,15 @@ public class ActiveMQSession implements Session, QueueSession, TopicSession, Sta
             msg.setTransactionId(txid);
             if (connection.isCopyMessageOnSend()) {
                 msg = (ActiveMQMessage)msg.copy();
+            } else {
+                // the transport or an embedded broker may hold on to the
+                // message sent, so it is never the caller's message
+                msg.setConnection(connection);
+                try {
+                    msg = (ActiveMQMessage)msg.copyWithMarshalledProperties();
+                } catch (IOException e) {
+                    throw JMSExceptionSupport.create(e);
+                }
             }
             msg.setConnection(connection);
             msg.onSend();
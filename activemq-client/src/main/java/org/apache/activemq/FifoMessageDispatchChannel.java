@@ -171,6 +171,15 @@ public class FifoMessageDispatchChannel implements MessageDispatchChannel {
         return mutex;
     }
 
+    /* (non-Javadoc)
+     * @see org.apache.activemq.MessageDispatchChannelI#wakeup()
+     */
+    public void wakeup() {
+        synchronized (mutex) {
+            mutex.notifyAll();
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.apache.activemq.MessageDispatchChannelI#isRunning()
      */
@@ -60,6 +60,12 @@ public interface MessageDispatchChannel {
 
     public abstract Object getMutex();
 
+    /**
+     * Wakes up the threads blocked in {@link #dequeue(long)} so they recheck
+     * the state of the channel and of its consumer.
+     */
+    public abstract void wakeup();
+
     public abstract boolean isRunning();
 
     public abstract List<MessageDispatch> removeAll();
@@ -0,0 +1,370 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.activemq.command.MessageDispatch;
+
+/**
+ * A {@link MessageDispatchChannel} that keeps the messages in growable ring
+ * buffers instead of linked lists, so enqueueing does not allocate.
+ * <p/>
+ * Adding at the tail and taking from the head are guarded by two separate
+ * locks, which are never contended when one thread dispatches to the consumer
+ * and one thread receives from it, and neither is the mutex returned by
+ * {@link #getMutex()} that the consumer holds for much longer. Only the rare
+ * operations touching both ends, enqueueFirst, clear, removeAll and growing a
+ * buffer, take both locks. A receiver waiting for a message is parked rather
+ * than waiting on a monitor and is unparked by the next enqueue.
+ * <p/>
+ * With priority support there is one ring per JMS priority and messages are
+ * taken from the highest priority ring first, like
+ * {@link SimplePriorityMessageDispatchChannel}.
+ */
+public class RingBufferMessageDispatchChannel implements MessageDispatchChannel {
+
+    private static final int MAX_PRIORITY = 10;
+    private static final int DEFAULT_CAPACITY = 64;
+    // parking interval for receivers that could not register as the waiter
+    private static final long SECONDARY_WAITER_PARK = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Object mutex = new Object();
+    private final Object putLock = new Object();
+    private final Object takeLock = new Object();
+    private final AtomicReference<Thread> waiter = new AtomicReference<Thread>();
+    private final Ring[] rings;
+    private volatile boolean closed;
+    private volatile boolean running;
+
+    public RingBufferMessageDispatchChannel() {
+        this(false, DEFAULT_CAPACITY);
+    }
+
+    public RingBufferMessageDispatchChannel(boolean prioritySupported) {
+        this(prioritySupported, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param prioritySupported
+     *        true to deliver messages in JMS priority order.
+     * @param capacity
+     *        the initial capacity of the buffers, they grow when needed.
+     */
+    public RingBufferMessageDispatchChannel(boolean prioritySupported, int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.rings = new Ring[prioritySupported ? MAX_PRIORITY : 1];
+        for (int i = 0; i < rings.length; i++) {
+            rings[i] = new Ring(size);
+        }
+    }
+
+    public void enqueue(MessageDispatch message) {
+        Ring ring = getRing(message);
+        synchronized (putLock) {
+            if (ring.isFull()) {
+                synchronized (takeLock) {
+                    ring.grow();
+                }
+            }
+            ring.offerLast(message);
+        }
+        signal();
+    }
+
+    public void enqueueFirst(MessageDispatch message) {
+        Ring ring = getRing(message);
+        synchronized (putLock) {
+            synchronized (takeLock) {
+                if (ring.isFull()) {
+                    ring.grow();
+                }
+                ring.offerFirst(message);
+            }
+        }
+        signal();
+    }
+
+    public boolean isEmpty() {
+        for (Ring ring : rings) {
+            if (!ring.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public MessageDispatch dequeue(long timeout) throws InterruptedException {
+        MessageDispatch answer = dequeueNoWait();
+        if (answer != null || timeout == 0) {
+            return answer;
+        }
+
+        long deadline = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+        Thread current = Thread.currentThread();
+        boolean registered = waiter.compareAndSet(null, current);
+        try {
+            while (true) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (closed) {
+                    return null;
+                }
+                // re-check after registering so an enqueue that missed the
+                // waiter is not lost.
+                answer = dequeueNoWait();
+                if (answer != null) {
+                    return answer;
+                }
+                long park = registered ? 0 : SECONDARY_WAITER_PARK;
+                if (timeout > 0) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return null;
+                    }
+                    park = park == 0 ? remaining : Math.min(park, remaining);
+                }
+                if (park == 0) {
+                    LockSupport.park(this);
+                } else {
+                    LockSupport.parkNanos(this, park);
+                }
+            }
+        } finally {
+            if (registered) {
+                waiter.compareAndSet(current, null);
+            }
+        }
+    }
+
+    public MessageDispatch dequeueNoWait() {
+        if (closed || !running) {
+            return null;
+        }
+        synchronized (takeLock) {
+            for (int i = rings.length - 1; i >= 0; i--) {
+                Ring ring = rings[i];
+                if (!ring.isEmpty()) {
+                    return ring.pollFirst();
+                }
+            }
+        }
+        return null;
+    }
+
+    public MessageDispatch peek() {
+        if (closed || !running) {
+            return null;
+        }
+        synchronized (takeLock) {
+            for (int i = rings.length - 1; i >= 0; i--) {
+                Ring ring = rings[i];
+                if (!ring.isEmpty()) {
+                    return ring.peekFirst();
+                }
+            }
+        }
+        return null;
+    }
+
+    public void start() {
+        running = true;
+        signal();
+    }
+
+    public void stop() {
+        running = false;
+        signal();
+    }
+
+    public void close() {
+        if (!closed) {
+            running = false;
+            closed = true;
+        }
+        signal();
+    }
+
+    public void clear() {
+        synchronized (putLock) {
+            synchronized (takeLock) {
+                for (Ring ring : rings) {
+                    ring.clear();
+                }
+            }
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Ring ring : rings) {
+            size += ring.size();
+        }
+        return size;
+    }
+
+    public Object getMutex() {
+        return mutex;
+    }
+
+    public void wakeup() {
+        signal();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public List<MessageDispatch> removeAll() {
+        synchronized (putLock) {
+            synchronized (takeLock) {
+                ArrayList<MessageDispatch> result = new ArrayList<MessageDispatch>(size());
+                for (int i = rings.length - 1; i >= 0; i--) {
+                    Ring ring = rings[i];
+                    while (!ring.isEmpty()) {
+                        result.add(ring.pollFirst());
+                    }
+                }
+                return result;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (putLock) {
+            synchronized (takeLock) {
+                if (rings.length == 1) {
+                    return rings[0].toString();
+                }
+                StringBuilder result = new StringBuilder();
+                for (int i = rings.length - 1; i >= 0; i--) {
+                    result.append(i).append(":{").append(rings[i]).append("}");
+                }
+                return result.toString();
+            }
+        }
+    }
+
+    protected int getPriority(MessageDispatch message) {
+        int priority = javax.jms.Message.DEFAULT_PRIORITY;
+        if (message.getMessage() != null) {
+            priority = Math.max(message.getMessage().getPriority(), 0);
+            priority = Math.min(priority, 9);
+        }
+        return priority;
+    }
+
+    private Ring getRing(MessageDispatch message) {
+        return rings.length == 1 ? rings[0] : rings[getPriority(message)];
+    }
+
+    private void signal() {
+        Thread thread = waiter.get();
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * A growable circular buffer. The head is only moved while holding the
+     * take lock and the tail only while holding the put lock, growing and
+     * adding at the head need both.
+     */
+    private static final class Ring {
+
+        private MessageDispatch[] buffer;
+        private volatile long head;
+        private volatile long tail;
+
+        Ring(int capacity) {
+            buffer = new MessageDispatch[capacity];
+        }
+
+        boolean isEmpty() {
+            return head == tail;
+        }
+
+        boolean isFull() {
+            return tail - head == buffer.length;
+        }
+
+        int size() {
+            return (int) (tail - head);
+        }
+
+        void offerLast(MessageDispatch message) {
+            long t = tail;
+            buffer[(int) t & (buffer.length - 1)] = message;
+            tail = t + 1;
+        }
+
+        void offerFirst(MessageDispatch message) {
+            long h = head - 1;
+            buffer[(int) h & (buffer.length - 1)] = message;
+            head = h;
+        }
+
+        MessageDispatch pollFirst() {
+            long h = head;
+            int index = (int) h & (buffer.length - 1);
+            MessageDispatch message = buffer[index];
+            buffer[index] = null;
+            head = h + 1;
+            return message;
+        }
+
+        MessageDispatch peekFirst() {
+            return buffer[(int) head & (buffer.length - 1)];
+        }
+
+        void grow() {
+            MessageDispatch[] grown = new MessageDispatch[buffer.length << 1];
+            for (long i = head; i < tail; i++) {
+                grown[(int) i & (grown.length - 1)] = buffer[(int) i & (buffer.length - 1)];
+            }
+            buffer = grown;
+        }
+
+        void clear() {
+            while (!isEmpty()) {
+                pollFirst();
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder("[");
+            for (long i = head; i < tail; i++) {
+                if (i != head) {
+                    result.append(", ");
+                }
+                result.append(buffer[(int) i & (buffer.length - 1)]);
+            }
+            return result.append("]").toString();
+        }
+    }
+}
@@ -197,6 +197,16 @@ public class SimplePriorityMessageDispatchChannel implements MessageDispatchChan
         return mutex;
     }
 
+    /*
+     * (non-Javadoc)
+     * @see org.apache.activemq.MessageDispatchChannelI#wakeup()
+     */
+    public void wakeup() {
+        synchronized (mutex) {
+            mutex.notifyAll();
+        }
+    }
+
     /*
      * (non-Javadoc)
      * @see org.apache.activemq.MessageDispatchChannelI#isRunning()
@@ -35,6 +35,7 @@ import org.apache.activemq.util.ByteArrayInputStream;
 import org.apache.activemq.util.ByteArrayOutputStream;
 import org.apache.activemq.util.ByteSequence;
 import org.apache.activemq.util.MarshallingSupport;
+import org.apache.activemq.util.PrimitiveMapIndex;
 import org.apache.activemq.wireformat.WireFormat;
 import org.fusesource.hawtbuf.UTF8Buffer;
 
@@ -83,6 +84,9 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     protected int size;
     protected Map<String, Object> properties;
+    // reads single properties out of marshalledProperties while properties
+    // is null, see getProperty
+    private transient PrimitiveMapIndex propertyIndex;
     protected boolean readOnlyProperties;
     protected boolean readOnlyBody;
     protected transient boolean recievedByDFBridge;
@@ -108,6 +112,39 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     // useful to reduce the memory footprint of a persisted message
     public void clearMarshalledState() throws JMSException {
         properties = null;
+        propertyIndex = null;
+    }
+
+    /**
+     * Copies the message to send it without copying its property map. The
+     * copy shares the body as {@link #copy()} does and gets the properties
+     * marshalled, so changing this message afterwards does not change it.
+     */
+    public Message copyWithMarshalledProperties() throws IOException {
+        Map<String, Object> map = properties;
+        ByteSequence marshalled = marshalledProperties;
+        PrimitiveMapIndex index = propertyIndex;
+        if (map != null) {
+            if (map.containsKey(ORIGINAL_EXPIRATION)) {
+                // The new message hasn't expired, so remove this feild.
+                map = new HashMap<String, Object>(map);
+                map.remove(ORIGINAL_EXPIRATION);
+            }
+            marshalled = marshalProperties(map);
+            index = null;
+        }
+        Message copy;
+        // keep copy() from copying the property map
+        Map<String, Object> saved = properties;
+        properties = null;
+        try {
+            copy = copy();
+        } finally {
+            properties = saved;
+        }
+        copy.marshalledProperties = marshalled;
+        copy.propertyIndex = index;
+        return copy;
     }
 
     protected void copy(Message copy) {
@@ -142,6 +179,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
         copy.content = content;
         copy.marshalledProperties = marshalledProperties;
+        copy.propertyIndex = propertyIndex;
         copy.dataStructure = dataStructure;
         copy.readOnlyProperties = readOnlyProperties;
         copy.readOnlyBody = readOnlyBody;
@@ -161,14 +199,30 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
         // copy.referenceCount = referenceCount;
     }
 
+    /**
+     * Looks up a single property. While the properties have not been
+     * unmarshalled the value is read straight out of the marshalled
+     * properties, so evaluating a selector on the broker does not unmarshal
+     * all the properties of each message.
+     */
     public Object getProperty(String name) throws IOException {
+        Object result;
         if (properties == null) {
             if (marshalledProperties == null) {
                 return null;
             }
-            properties = unmarsallProperties(marshalledProperties);
+            PrimitiveMapIndex index = propertyIndex;
+            if (index == null) {
+                index = PrimitiveMapIndex.create(marshalledProperties);
+                if (index == null) {
+                    return null;
+                }
+                propertyIndex = index;
+            }
+            result = index.get(name);
+        } else {
+            result = properties.get(name);
         }
-        Object result = properties.get(name);
         if (result instanceof UTF8Buffer) {
             result = result.toString();
         }
@@ -183,12 +237,14 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
                 return Collections.EMPTY_MAP;
             }
             properties = unmarsallProperties(marshalledProperties);
+            propertyIndex = null;
         }
         return Collections.unmodifiableMap(properties);
     }
 
     public void clearProperties() {
         marshalledProperties = null;
+        propertyIndex = null;
         properties = null;
     }
 
@@ -209,6 +265,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
             } else {
                 properties = unmarsallProperties(marshalledProperties);
                 marshalledProperties = null;
+                propertyIndex = null;
             }
         }
     }
@@ -221,14 +278,18 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 	public void beforeMarshall(WireFormat wireFormat) throws IOException {
         // Need to marshal the properties.
         if (marshalledProperties == null && properties != null) {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            DataOutputStream os = new DataOutputStream(baos);
-            MarshallingSupport.marshalPrimitiveMap(properties, os);
-            os.close();
-            marshalledProperties = baos.toByteSequence();
+            marshalledProperties = marshalProperties(properties);
         }
     }
 
+    private static ByteSequence marshalProperties(Map<String, Object> properties) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream os = new DataOutputStream(baos);
+        MarshallingSupport.marshalPrimitiveMap(properties, os);
+        os.close();
+        return baos.toByteSequence();
+    }
+
     @Override
 	public void afterMarshall(WireFormat wireFormat) throws IOException {
     }
@@ -447,6 +508,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     public void setMarshalledProperties(ByteSequence marshalledProperties) {
         this.marshalledProperties = marshalledProperties;
+        this.propertyIndex = null;
     }
 
     /**
@@ -16,6 +16,8 @@
  */
 package org.apache.activemq.command;
 
+import org.apache.activemq.util.BitArrayBinTable;
+
 /**
  * @openwire:marshaller code="123"
  * 
@@ -30,6 +32,7 @@ public class ProducerId implements DataStructure {
 
     protected transient int hashCode;
     protected transient String key;
+    protected transient long keyHash;
     protected transient SessionId parentId;
 
     public ProducerId() {
@@ -103,6 +106,18 @@ public class ProducerId implements DataStructure {
         return key;
     }
 
+    /**
+     * @return a 64 bit hash of the string form of the id, used by the compact
+     *         message audit
+     */
+    public long getKeyHash() {
+        if (keyHash == 0) {
+            String key = toString();
+            keyHash = BitArrayBinTable.hash(key, 0, key.length());
+        }
+        return keyHash;
+    }
+
     public byte getDataStructureType() {
         return DATA_STRUCTURE_TYPE;
     }
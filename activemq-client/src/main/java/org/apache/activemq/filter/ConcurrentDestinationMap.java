@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.filter;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.activemq.command.ActiveMQDestination;
+
+/**
+ * A {@link DestinationMap} for lookups from many threads at once. Lookups
+ * share a read lock instead of the monitor of the map, and the results of
+ * wildcard and composite lookups are kept in a bounded cache, which is cleared
+ * whenever the map changes. A cached lookup takes no lock at all.
+ *
+ * The sets returned for wildcard and composite destinations may be shared
+ * between callers and cannot be modified.
+ */
+public class ConcurrentDestinationMap extends DestinationMap {
+
+    public static final int DEFAULT_MAX_CACHE_SIZE = 1000;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    @SuppressWarnings("rawtypes")
+    private final ConcurrentHashMap<ActiveMQDestination, Set> cache = new ConcurrentHashMap<ActiveMQDestination, Set>();
+    private final int maxCacheSize;
+
+    public ConcurrentDestinationMap() {
+        this(DEFAULT_MAX_CACHE_SIZE);
+    }
+
+    /**
+     * @param maxCacheSize the number of wildcard and composite lookups to keep
+     *                the results of, once the cache is full further results are
+     *                not cached until the map changes
+     */
+    public ConcurrentDestinationMap(int maxCacheSize) {
+        this.maxCacheSize = maxCacheSize;
+    }
+
+    @Override
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public Set get(ActiveMQDestination key) {
+        boolean cacheable = key.isComposite() || key.isPattern();
+        if (cacheable) {
+            Set answer = cache.get(key);
+            if (answer != null) {
+                return answer;
+            }
+        }
+        lock.readLock().lock();
+        try {
+            Set answer;
+            if (key.isComposite()) {
+                ActiveMQDestination[] destinations = key.getCompositeDestinations();
+                answer = new HashSet(destinations.length);
+                for (int i = 0; i < destinations.length; i++) {
+                    answer.addAll(get(destinations[i]));
+                }
+            } else {
+                answer = findWildcardMatches(key);
+            }
+            if (cacheable) {
+                answer = Collections.unmodifiableSet(answer);
+                // the write lock is needed to change the map, so the answer
+                // is still current while the read lock is held
+                if (cache.size() < maxCacheSize) {
+                    cache.put(key, answer);
+                }
+            }
+            return answer;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void put(ActiveMQDestination key, Object value) {
+        lock.writeLock().lock();
+        try {
+            cache.clear();
+            if (key.isComposite()) {
+                ActiveMQDestination[] destinations = key.getCompositeDestinations();
+                for (int i = 0; i < destinations.length; i++) {
+                    put(destinations[i], value);
+                }
+                return;
+            }
+            getRootNode(key).add(key.getDestinationPaths(), 0, value);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(ActiveMQDestination key, Object value) {
+        lock.writeLock().lock();
+        try {
+            cache.clear();
+            if (key.isComposite()) {
+                ActiveMQDestination[] destinations = key.getCompositeDestinations();
+                for (int i = 0; i < destinations.length; i++) {
+                    remove(destinations[i], value);
+                }
+                return;
+            }
+            getRootNode(key).remove(key.getDestinationPaths(), 0, value);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Set removeAll(ActiveMQDestination key) {
+        lock.writeLock().lock();
+        try {
+            cache.clear();
+            return super.removeAll(key);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void reset() {
+        lock.writeLock().lock();
+        try {
+            cache.clear();
+            super.reset();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of lookups with cached results
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,490 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.jms.InvalidSelectorException;
+import javax.jms.JMSException;
+
+import org.apache.activemq.selector.SelectorParser;
+import org.apache.activemq.util.LRUCache;
+
+/**
+ * Turns a parsed selector into a flattened evaluator that is cheaper to run
+ * against every message than the interpreted expression tree.
+ * <p/>
+ * Chains of AND and OR are flattened into a single node, every property the
+ * selector refers to is looked up at most once per evaluation no matter how
+ * often it is used, and the operands of AND and OR are reordered so the
+ * cheapest and most selective ones are evaluated first. Operands are only
+ * reordered where just the truth of the result matters, that is not below a
+ * NOT, so the compiled selector matches exactly the same messages as the
+ * interpreted one. Expressions the compiler has no specialised node for, such
+ * as arithmetic, IN or XPath, are evaluated by the original expression.
+ * <p/>
+ * Compilation is enabled for the selectors of broker side subscriptions by
+ * setting the {@value #COMPILE_SELECTORS_PROPERTY} system property to true.
+ */
+public final class SelectorCompiler {
+
+    public static final String COMPILE_SELECTORS_PROPERTY = "org.apache.activemq.selector.compile";
+
+    private static final Map<String, CompiledSelector> cache = Collections.synchronizedMap(new LRUCache<String, CompiledSelector>(100));
+
+    private static final Object NULL_VALUE = new Object();
+
+    private static final Comparator<Node> COST_ORDER = new Comparator<Node>() {
+        public int compare(Node n1, Node n2) {
+            return n1.cost < n2.cost ? -1 : (n1.cost == n2.cost ? 0 : 1);
+        }
+    };
+
+    private SelectorCompiler() {
+    }
+
+    /**
+     * @return true if broker side subscriptions should compile their selectors.
+     */
+    public static boolean isEnabled() {
+        return "true".equalsIgnoreCase(System.getProperty(COMPILE_SELECTORS_PROPERTY));
+    }
+
+    /**
+     * Parses and compiles the given selector, compiled selectors are cached
+     * by their selector string.
+     */
+    public static BooleanExpression compile(String selector) throws InvalidSelectorException {
+        CompiledSelector result = cache.get(selector);
+        if (result == null) {
+            result = doCompile(SelectorParser.parse(selector));
+            cache.put(selector, result);
+        }
+        return result;
+    }
+
+    /**
+     * Compiles an already parsed expression, the result is not cached.
+     */
+    public static BooleanExpression compile(BooleanExpression expression) {
+        if (expression instanceof CompiledSelector) {
+            return expression;
+        }
+        return doCompile(expression);
+    }
+
+    public static void clearCache() {
+        cache.clear();
+    }
+
+    private static CompiledSelector doCompile(BooleanExpression expression) {
+        Compiler compiler = new Compiler();
+        Node root = compiler.compile(expression, true);
+        return new CompiledSelector(expression, root, compiler.properties.size());
+    }
+
+    /**
+     * The result of compiling a selector. {@link #matches} runs the compiled
+     * form, {@link #evaluate} is left to the original expression since the
+     * compiled form only preserves whether the selector is true.
+     */
+    static final class CompiledSelector implements BooleanExpression {
+
+        private final BooleanExpression source;
+        private final Node root;
+        private final int slots;
+
+        CompiledSelector(BooleanExpression source, Node root, int slots) {
+            this.source = source;
+            this.root = root;
+            this.slots = slots;
+        }
+
+        public boolean matches(MessageEvaluationContext message) throws JMSException {
+            return root.matches(new Frame(message, slots));
+        }
+
+        public Object evaluate(MessageEvaluationContext message) throws JMSException {
+            return source.evaluate(message);
+        }
+
+        BooleanExpression getSource() {
+            return source;
+        }
+
+        public String toString() {
+            return source.toString();
+        }
+    }
+
+    /**
+     * The per evaluation state, the message and the property values loaded
+     * so far.
+     */
+    static final class Frame {
+        final MessageEvaluationContext context;
+        final Object[] values;
+
+        Frame(MessageEvaluationContext context, int slots) {
+            this.context = context;
+            this.values = slots == 0 ? null : new Object[slots];
+        }
+    }
+
+    private static final class Compiler {
+
+        final Map<String, Integer> properties = new HashMap<String, Integer>();
+
+        /**
+         * @param truth true if only the truth of the result matters, in which
+         *        case the operands of AND and OR may be reordered.
+         */
+        Node compile(Expression expression, boolean truth) {
+            if (expression instanceof CompiledSelector) {
+                return compile(((CompiledSelector) expression).getSource(), truth);
+            }
+            if (expression instanceof PropertyExpression) {
+                PropertyExpression property = (PropertyExpression) expression;
+                Integer slot = properties.get(property.getName());
+                if (slot == null) {
+                    slot = Integer.valueOf(properties.size());
+                    properties.put(property.getName(), slot);
+                }
+                return new LoadProperty(property, slot.intValue());
+            }
+            if (expression instanceof ConstantExpression) {
+                return new Constant(((ConstantExpression) expression).getValue());
+            }
+            if (expression instanceof LogicExpression) {
+                boolean and = "AND".equals(((LogicExpression) expression).getExpressionSymbol());
+                List<Node> operands = new ArrayList<Node>();
+                flatten((LogicExpression) expression, and, truth, operands);
+                if (truth) {
+                    Collections.sort(operands, COST_ORDER);
+                }
+                Node[] nodes = operands.toArray(new Node[operands.size()]);
+                return and ? new And(nodes) : new Or(nodes);
+            }
+            if (expression instanceof ComparisonExpression) {
+                ComparisonExpression comparison = (ComparisonExpression) expression;
+                Node left = compile(comparison.getLeft(), false);
+                Node right = compile(comparison.getRight(), false);
+                if ("=".equals(comparison.getExpressionSymbol())) {
+                    return new Equal(comparison, left, right);
+                }
+                return new Compare(comparison, left, right);
+            }
+            if (expression instanceof ComparisonExpression.LikeExpression) {
+                ComparisonExpression.LikeExpression like = (ComparisonExpression.LikeExpression) expression;
+                return new Like(like.likePattern, compile(like.getRight(), false));
+            }
+            if (expression instanceof UnaryExpression) {
+                UnaryExpression unary = (UnaryExpression) expression;
+                if ("NOT".equals(unary.getExpressionSymbol())) {
+                    return new Not(compile(unary.getRight(), false));
+                }
+                if ("".equals(unary.getExpressionSymbol()) && expression instanceof BooleanExpression) {
+                    return new BooleanCast(compile(unary.getRight(), false));
+                }
+            }
+            return new Opaque(expression);
+        }
+
+        private void flatten(LogicExpression expression, boolean and, boolean truth, List<Node> operands) {
+            Expression[] children = new Expression[] {expression.getLeft(), expression.getRight()};
+            for (Expression child : children) {
+                if (child instanceof LogicExpression && "AND".equals(((LogicExpression) child).getExpressionSymbol()) == and) {
+                    flatten((LogicExpression) child, and, truth, operands);
+                } else {
+                    operands.add(compile(child, truth));
+                }
+            }
+        }
+    }
+
+    /**
+     * A node of a compiled selector. The cost is a rough estimate of the work
+     * done to evaluate the node, cheap and selective nodes have a low cost.
+     */
+    abstract static class Node {
+        final int cost;
+
+        Node(int cost) {
+            this.cost = cost;
+        }
+
+        abstract Object evaluate(Frame frame) throws JMSException;
+
+        boolean matches(Frame frame) throws JMSException {
+            return evaluate(frame) == Boolean.TRUE;
+        }
+    }
+
+    static final class LoadProperty extends Node {
+        private final PropertyExpression property;
+        private final int slot;
+
+        LoadProperty(PropertyExpression property, int slot) {
+            super(1);
+            this.property = property;
+            this.slot = slot;
+        }
+
+        Object evaluate(Frame frame) throws JMSException {
+            Object value = frame.values[slot];
+            if (value == null) {
+                value = property.evaluate(frame.context);
+                frame.values[slot] = value == null ? NULL_VALUE : value;
+                return value;
+            }
+            return value == NULL_VALUE ? null : value;
+        }
+    }
+
+    static final class Constant extends Node {
+        private final Object value;
+
+        Constant(Object value) {
+            super(0);
+            this.value = value;
+        }
+
+        Object evaluate(Frame frame) {
+            return value;
+        }
+    }
+
+    static final class And extends Node {
+        private final Node[] operands;
+
+        And(Node[] operands) {
+            super(sum(operands));
+            this.operands = operands;
+        }
+
+        Object evaluate(Frame frame) throws JMSException {
+            for (Node operand : operands) {
+                Boolean value = (Boolean) operand.evaluate(frame);
+                if (value == null) {
+                    return null;
+                }
+                if (!value.booleanValue()) {
+                    return Boolean.FALSE;
+                }
+            }
+            return Boolean.TRUE;
+        }
+
+        boolean matches(Frame frame) throws JMSException {
+            for (Node operand : operands) {
+                if (!operand.matches(frame)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static final class Or extends Node {
+        private final Node[] operands;
+
+        Or(Node[] operands) {
+            super(sum(operands));
+            this.operands = operands;
+        }
+
+        Object evaluate(Frame frame) throws JMSException {
+            int last = operands.length - 1;
+            for (int i = 0; i < last; i++) {
+                Boolean value = (Boolean) operands[i].evaluate(frame);
+                if (value != null && value.booleanValue()) {
+                    return Boolean.TRUE;
+                }
+            }
+            return operands[last].evaluate(frame);
+        }
+
+        boolean matches(Frame frame) throws JMSException {
+            for (Node operand : operands) {
+                if (operand.matches(frame)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    static final class Not extends Node {
+        private final Node operand;
+
+        Not(Node operand) {
+            super(operand.cost + 1);
+            this.operand = operand;
+        }
+
+        Object evaluate(Frame frame) throws JMSException {
+            Boolean value = (Boolean) operand.evaluate(frame);
+            if (value == null) {
+                return null;
+            }
+            return value.booleanValue() ? Boolean.FALSE : Boolean.TRUE;
+        }
+    }
+
+    static final class BooleanCast extends Node {
+        private final Node operand;
+
+        BooleanCast(Node operand) {
+            super(operand.cost);
+            this.operand = operand;
+        }
+
+        Object evaluate(Frame frame) throws JMSException {
+            Object value = operand.evaluate(frame);
+            if (value == null) {
+                return null;
+            }
+            if (!value.getClass().equals(Boolean.class)) {
+                return Boolean.FALSE;
+            }
+            return ((Boolean) value).booleanValue() ? Boolean.TRUE : Boolean.FALSE;
+        }
+    }
+
+    /**
+     * =, evaluated like the interpreted equality but on the compiled operands.
+     */
+    static final class Equal extends Node {
+        private final ComparisonExpression comparison;
+        private final Node left;
+        private final Node right;
+
+        Equal(ComparisonExpression comparison, Node left, Node right) {
+            super(left.cost + right.cost + 1);
+            this.comparison = comparison;
+            this.left = left;
+            this.right = right;
+        }
+
+        @SuppressWarnings("rawtypes")
+        Object evaluate(Frame frame) throws JMSException {
+            Object lv = left.evaluate(frame);
+            Object rv = right.evaluate(frame);
+            if (lv == null ^ rv == null) {
+                return Boolean.FALSE;
+            }
+            if (lv == rv || lv.equals(rv)) {
+                return Boolean.TRUE;
+            }
+            if (lv instanceof Comparable && rv instanceof Comparable) {
+                return comparison.compare((Comparable) lv, (Comparable) rv);
+            }
+            return Boolean.FALSE;
+        }
+    }
+
+    /**
+     * &lt;, &gt;, &lt;= and &gt;=, ranges are less selective than equality so
+     * they cost a little more.
+     */
+    static final class Compare extends Node {
+        private final ComparisonExpression comparison;
+        private final Node left;
+        private final Node right;
+
+        Compare(ComparisonExpression comparison, Node left, Node right) {
+            super(left.cost + right.cost + 2);
+            this.comparison = comparison;
+            this.left = left;
+            this.right = right;
+        }
+
+        @SuppressWarnings("rawtypes")
+        Object evaluate(Frame frame) throws JMSException {
+            Comparable lv = (Comparable) left.evaluate(frame);
+            if (lv == null) {
+                return null;
+            }
+            Comparable rv = (Comparable) right.evaluate(frame);
+            if (rv == null) {
+                return null;
+            }
+            return comparison.compare(lv, rv);
+        }
+    }
+
+    static final class Like extends Node {
+        private final Pattern pattern;
+        private final Node operand;
+
+        Like(Pattern pattern, Node operand) {
+            super(operand.cost + 4);
+            this.pattern = pattern;
+            this.operand = operand;
+        }
+
+        Object evaluate(Frame frame) throws JMSException {
+            Object value = operand.evaluate(frame);
+            if (value == null) {
+                return null;
+            }
+            if (!(value instanceof String)) {
+                return Boolean.FALSE;
+            }
+            return pattern.matcher((String) value).matches() ? Boolean.TRUE : Boolean.FALSE;
+        }
+    }
+
+    /**
+     * Any other expression, evaluated by the expression itself. XPath and
+     * XQuery need to parse the message body so they are always evaluated last.
+     */
+    static final class Opaque extends Node {
+        private final Expression expression;
+
+        Opaque(Expression expression) {
+            super(expression instanceof NoLocalExpression ? 1 :
+                  expression instanceof XPathExpression || expression instanceof XQueryExpression ? 1000 : 10);
+            this.expression = expression;
+        }
+
+        Object evaluate(Frame frame) throws JMSException {
+            return expression.evaluate(frame.context);
+        }
+
+        boolean matches(Frame frame) throws JMSException {
+            if (expression instanceof BooleanExpression) {
+                return ((BooleanExpression) expression).matches(frame.context);
+            }
+            return super.matches(frame);
+        }
+    }
+
+    private static int sum(Node[] nodes) {
+        int cost = 0;
+        for (Node node : nodes) {
+            cost += node.cost;
+        }
+        return cost;
+    }
+}
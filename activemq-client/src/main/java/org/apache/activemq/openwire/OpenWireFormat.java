@@ -20,6 +20,7 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -30,6 +31,7 @@ import org.apache.activemq.util.ByteSequence;
 import org.apache.activemq.util.ByteSequenceData;
 import org.apache.activemq.util.DataByteArrayInputStream;
 import org.apache.activemq.util.DataByteArrayOutputStream;
+import org.apache.activemq.util.DataByteBufferInputStream;
 import org.apache.activemq.wireformat.WireFormat;
 
 /**
@@ -61,8 +63,6 @@ public final class OpenWireFormat implements WireFormat {
     private Map<DataStructure, Short> marshallCacheMap = new HashMap<DataStructure, Short>();
     private DataStructure marshallCache[] = null;
     private DataStructure unmarshallCache[] = null;
-    private DataByteArrayOutputStream bytesOut = new DataByteArrayOutputStream();
-    private DataByteArrayInputStream bytesIn = new DataByteArrayInputStream();
     private WireFormatInfo preferedWireFormatInfo;
     
     public OpenWireFormat() {
@@ -113,87 +113,89 @@ public final class OpenWireFormat implements WireFormat {
         return version;
     }
 
-    public synchronized ByteSequence marshal(Object command) throws IOException {
-
+    /**
+     * Marshals the command into a new byte sequence. Every call marshals into
+     * its own buffer so concurrent callers only have to be serialized when the
+     * marshall cache is enabled, cache indexes are handed out in the order the
+     * frames are marshalled and the peer fills its cache in the order they are
+     * read.
+     */
+    public ByteSequence marshal(Object command) throws IOException {
         if (cacheEnabled) {
-            runMarshallCacheEvictionSweep();
+            synchronized (this) {
+                runMarshallCacheEvictionSweep();
+                return doMarshal(command);
+            }
         }
+        return doMarshal(command);
+    }
 
-//        MarshallAware ma = null;
-//        // If not using value caching, then the marshaled form is always the
-//        // same
-//        if (!cacheEnabled && ((DataStructure)command).isMarshallAware()) {
-//            ma = (MarshallAware)command;
-//        }
-
-        ByteSequence sequence = null;
-        // if( ma!=null ) {
-        // sequence = ma.getCachedMarshalledForm(this);
-        // }
+    private ByteSequence doMarshal(Object command) throws IOException {
+        ByteSequence sequence;
+        DataByteArrayOutputStream bytesOut;
+        int size = 1;
+        if (command != null) {
 
-        if (sequence == null) {
+            DataStructure c = (DataStructure)command;
+            byte type = c.getDataStructureType();
+            DataStreamMarshaller dsm = (DataStreamMarshaller)dataMarshallers[type & 0xFF];
+            if (dsm == null) {
+                throw new IOException("Unknown data type: " + type);
+            }
+            if (tightEncodingEnabled) {
 
-            int size = 1;
-            if (command != null) {
+                BooleanStream bs = new BooleanStream();
+                size += dsm.tightMarshal1(this, c, bs);
+                size += bs.marshalledSize();
 
-                DataStructure c = (DataStructure)command;
-                byte type = c.getDataStructureType();
-                DataStreamMarshaller dsm = (DataStreamMarshaller)dataMarshallers[type & 0xFF];
-                if (dsm == null) {
-                    throw new IOException("Unknown data type: " + type);
-                }
-                if (tightEncodingEnabled) {
-
-                    BooleanStream bs = new BooleanStream();
-                    size += dsm.tightMarshal1(this, c, bs);
-                    size += bs.marshalledSize();
-
-                    bytesOut.restart(size);
-                    if (!sizePrefixDisabled) {
-                        bytesOut.writeInt(size);
-                    }
-                    bytesOut.writeByte(type);
-                    bs.marshal(bytesOut);
-                    dsm.tightMarshal2(this, c, bytesOut, bs);
-                    sequence = bytesOut.toByteSequence();
-
-                } else {
-                    bytesOut.restart();
-                    if (!sizePrefixDisabled) {
-                        bytesOut.writeInt(0); // we don't know the final size
-                                                // yet but write this here for
-                                                // now.
-                    }
-                    bytesOut.writeByte(type);
-                    dsm.looseMarshal(this, c, bytesOut);
-                    sequence = bytesOut.toByteSequence();
-
-                    if (!sizePrefixDisabled) {
-                        size = sequence.getLength() - 4;
-                        int pos = sequence.offset;
-                        ByteSequenceData.writeIntBig(sequence, size);
-                        sequence.offset = pos;
-                    }
+                bytesOut = new DataByteArrayOutputStream(sizePrefixDisabled ? size : size + 4);
+                if (!sizePrefixDisabled) {
+                    bytesOut.writeInt(size);
                 }
+                bytesOut.writeByte(type);
+                bs.marshal(bytesOut);
+                dsm.tightMarshal2(this, c, bytesOut, bs);
+                sequence = bytesOut.toByteSequence();
 
             } else {
-                bytesOut.restart(5);
-                bytesOut.writeInt(size);
-                bytesOut.writeByte(NULL_TYPE);
+                bytesOut = new DataByteArrayOutputStream();
+                if (!sizePrefixDisabled) {
+                    bytesOut.writeInt(0); // we don't know the final size
+                                            // yet but write this here for
+                                            // now.
+                }
+                bytesOut.writeByte(type);
+                dsm.looseMarshal(this, c, bytesOut);
                 sequence = bytesOut.toByteSequence();
+
+                if (!sizePrefixDisabled) {
+                    size = sequence.getLength() - 4;
+                    int pos = sequence.offset;
+                    ByteSequenceData.writeIntBig(sequence, size);
+                    sequence.offset = pos;
+                }
             }
 
-            // if( ma!=null ) {
-            // ma.setCachedMarshalledForm(this, sequence);
-            // }
+        } else {
+            bytesOut = new DataByteArrayOutputStream(5);
+            bytesOut.writeInt(size);
+            bytesOut.writeByte(NULL_TYPE);
+            sequence = bytesOut.toByteSequence();
         }
         return sequence;
     }
 
-    public synchronized Object unmarshal(ByteSequence sequence) throws IOException {
-        bytesIn.restart(sequence);
-        // DataInputStream dis = new DataInputStream(new
-        // ByteArrayInputStream(sequence));
+    public Object unmarshal(ByteSequence sequence) throws IOException {
+        if (cacheEnabled) {
+            synchronized (this) {
+                return doUnmarshal(sequence);
+            }
+        }
+        return doUnmarshal(sequence);
+    }
+
+    private Object doUnmarshal(ByteSequence sequence) throws IOException {
+        DataByteArrayInputStream bytesIn = new DataByteArrayInputStream(sequence);
 
         if (!sizePrefixDisabled) {
             int size = bytesIn.readInt();
@@ -207,19 +209,34 @@ public final class OpenWireFormat implements WireFormat {
             }
         }
 
-        Object command = doUnmarshal(bytesIn);
-        // if( !cacheEnabled && ((DataStructure)command).isMarshallAware() ) {
-        // ((MarshallAware) command).setCachedMarshalledForm(this, sequence);
-        // }
-        return command;
+        return doUnmarshal(bytesIn);
     }
 
-    public synchronized void marshal(Object o, DataOutput dataOut) throws IOException {
+    /**
+     * Unmarshals a command from the remaining bytes of the given buffer, reading
+     * directly from the buffer so NIO transports do not have to wrap it in streams
+     * or copy it into a byte array first.
+     */
+    public Object unmarshal(ByteBuffer buffer) throws IOException {
+        return unmarshal(new DataByteBufferInputStream(buffer));
+    }
 
+    /**
+     * Marshals the command to the given output, like {@link #marshal(Object)}
+     * this is only serialized when the marshall cache is enabled.
+     */
+    public void marshal(Object o, DataOutput dataOut) throws IOException {
         if (cacheEnabled) {
-            runMarshallCacheEvictionSweep();
+            synchronized (this) {
+                runMarshallCacheEvictionSweep();
+                doMarshal(o, dataOut);
+            }
+        } else {
+            doMarshal(o, dataOut);
         }
+    }
 
+    private void doMarshal(Object o, DataOutput dataOut) throws IOException {
         int size = 1;
         if (o != null) {
 
@@ -244,9 +261,10 @@ public final class OpenWireFormat implements WireFormat {
 
             } else {
                 DataOutput looseOut = dataOut;
+                DataByteArrayOutputStream bytesOut = null;
 
                 if (!sizePrefixDisabled) {
-                    bytesOut.restart();
+                    bytesOut = new DataByteArrayOutputStream();
                     looseOut = bytesOut;
                 }
 
@@ -18,6 +18,7 @@ package org.apache.activemq.thread;
 
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
@@ -52,6 +53,7 @@ public class TaskRunnerFactory implements Executor {
     private long shutdownAwaitTermination = 30000;
     private AtomicBoolean initDone = new AtomicBoolean(false);
     private int maxThreadPoolSize = Integer.MAX_VALUE;
+    private boolean fixedThreadPool;
     private RejectedExecutionHandler rejectedTaskHandler = null;
 
     public TaskRunnerFactory() {
@@ -164,7 +166,8 @@ public class TaskRunnerFactory implements Executor {
     }
 
     protected ExecutorService createDefaultExecutor() {
-        ThreadPoolExecutor rc = new ThreadPoolExecutor(0, getMaxThreadPoolSize(), 30, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+        ThreadPoolExecutor rc;
+        ThreadFactory threadFactory = new ThreadFactory() {
             public Thread newThread(Runnable runnable) {
                 String threadName = name + "-" + id.incrementAndGet();
                 Thread thread = new Thread(runnable, threadName);
@@ -174,7 +177,13 @@ public class TaskRunnerFactory implements Executor {
                 LOG.trace("Created thread[{}]: {}", threadName, thread);
                 return thread;
             }
-        });
+        };
+        if (fixedThreadPool) {
+            rc = new ThreadPoolExecutor(getMaxThreadPoolSize(), getMaxThreadPoolSize(), 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+            rc.allowCoreThreadTimeOut(true);
+        } else {
+            rc = new ThreadPoolExecutor(0, getMaxThreadPoolSize(), 30, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), threadFactory);
+        }
         if (rejectedTaskHandler != null) {
             rc.setRejectedExecutionHandler(rejectedTaskHandler);
         }
@@ -237,6 +246,21 @@ public class TaskRunnerFactory implements Executor {
         this.maxThreadPoolSize = maxThreadPoolSize;
     }
 
+    public boolean isFixedThreadPool() {
+        return fixedThreadPool;
+    }
+
+    /**
+     * When true the default executor runs exactly maxThreadPoolSize threads
+     * that take tasks from one shared queue, rather than starting a new
+     * thread whenever all threads are busy. Any number of task runners are
+     * then multiplexed onto those threads, each task runner still only runs
+     * on one thread at a time.
+     */
+    public void setFixedThreadPool(boolean fixedThreadPool) {
+        this.fixedThreadPool = fixedThreadPool;
+    }
+
     public RejectedExecutionHandler getRejectedTaskHandler() {
         return rejectedTaskHandler;
     }
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.nio;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of direct byte buffers shared by the NIO transports for reading frames
+ * that do not fit into their per connection input buffer.
+ *
+ * Buffers are handed out in power of two size classes starting at
+ * {@link #MIN_BUFFER_SIZE}, so a frame of any size up to the largest class reuses a
+ * buffer released by an earlier frame rather than allocating a new one.  Requests
+ * bigger than the largest class are served from the heap and never pooled, and once
+ * the pool holds {@link #getMaxPoolSize()} bytes released buffers are left for the
+ * garbage collector.
+ */
+public final class DirectBufferPool {
+
+    public static final int MIN_BUFFER_SIZE = 8 * 1024;
+
+    private static final DirectBufferPool INSTANCE = new DirectBufferPool(
+        Integer.getInteger("org.apache.activemq.transport.nio.DirectBufferPool.maxBufferSize", 1024 * 1024),
+        Long.getLong("org.apache.activemq.transport.nio.DirectBufferPool.maxPoolSize", 64 * 1024 * 1024));
+
+    private final int maxBufferSize;
+    private final long maxPoolSize;
+    private final ConcurrentLinkedQueue<ByteBuffer>[] sizeClasses;
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong allocatedBuffers = new AtomicLong();
+
+    public static DirectBufferPool getInstance() {
+        return INSTANCE;
+    }
+
+    @SuppressWarnings("unchecked")
+    public DirectBufferPool(int maxBufferSize, long maxPoolSize) {
+        int classes = sizeClassOf(Math.max(maxBufferSize, MIN_BUFFER_SIZE)) + 1;
+        this.maxBufferSize = MIN_BUFFER_SIZE << (classes - 1);
+        this.maxPoolSize = maxPoolSize;
+        this.sizeClasses = new ConcurrentLinkedQueue[classes];
+        for (int i = 0; i < classes; i++) {
+            sizeClasses[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+        }
+    }
+
+    /**
+     * Gets a buffer with at least the given capacity, its position is zero and its
+     * limit is set to the requested size.
+     */
+    public ByteBuffer acquire(int size) {
+        if (size > maxBufferSize) {
+            return ByteBuffer.allocate(size);
+        }
+
+        int sizeClass = sizeClassOf(size);
+        ByteBuffer buffer = sizeClasses[sizeClass].poll();
+        if (buffer != null) {
+            pooledBytes.addAndGet(-buffer.capacity());
+            buffer.clear();
+        } else {
+            allocatedBuffers.incrementAndGet();
+            buffer = ByteBuffer.allocateDirect(MIN_BUFFER_SIZE << sizeClass);
+        }
+        buffer.limit(size);
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer obtained from {@link #acquire(int)} back to the pool.  The
+     * buffer must not be used by the caller afterwards.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() > maxBufferSize) {
+            return;
+        }
+        int sizeClass = sizeClassOf(buffer.capacity());
+        if ((MIN_BUFFER_SIZE << sizeClass) != buffer.capacity()) {
+            return;
+        }
+        if (pooledBytes.addAndGet(buffer.capacity()) > maxPoolSize) {
+            pooledBytes.addAndGet(-buffer.capacity());
+            return;
+        }
+        sizeClasses[sizeClass].offer(buffer);
+    }
+
+    private static int sizeClassOf(int size) {
+        if (size <= MIN_BUFFER_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros((size - 1) / MIN_BUFFER_SIZE);
+    }
+
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    public long getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    /**
+     * @return the number of bytes held by buffers waiting in the pool.
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * @return the number of direct buffers the pool had to allocate so far.
+     */
+    public long getAllocatedBuffers() {
+        return allocatedBuffers.get();
+    }
+}
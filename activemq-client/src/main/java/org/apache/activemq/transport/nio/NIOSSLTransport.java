@@ -17,7 +17,6 @@
 
 package org.apache.activemq.transport.nio;
 
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
@@ -251,7 +250,7 @@ public class NIOSSLTransport extends NIOTransport {
 
             // now we got the data, lets reallocate and store the size for the marshaler.
             // if there's more data in plain, then the next call will start processing it.
-            currentBuffer = ByteBuffer.allocate(nextFrameSize + 4);
+            currentBuffer = allocateFrameBuffer(nextFrameSize + 4);
             currentBuffer.putInt(nextFrameSize);
 
         } else {
@@ -261,9 +260,10 @@ public class NIOSSLTransport extends NIOTransport {
             if (currentBuffer.remaining() >= plain.remaining()) {
                 currentBuffer.put(plain);
             } else {
-                byte[] fill = new byte[currentBuffer.remaining()];
-                plain.get(fill);
-                currentBuffer.put(fill);
+                int limit = plain.limit();
+                plain.limit(plain.position() + currentBuffer.remaining());
+                currentBuffer.put(plain);
+                plain.limit(limit);
             }
 
             // Either we have enough data for a new command or we have to wait for some more.
@@ -271,7 +271,12 @@ public class NIOSSLTransport extends NIOTransport {
                 return;
             } else {
                 currentBuffer.flip();
-                Object command = wireFormat.unmarshal(new DataInputStream(new NIOInputStream(currentBuffer)));
+                Object command;
+                try {
+                    command = unmarshal(currentBuffer);
+                } finally {
+                    releaseFrameBuffer(currentBuffer);
+                }
                 doConsume((Command) command);
                 nextFrameSize = -1;
                 currentBuffer = null;
@@ -403,6 +408,17 @@ public class NIOSSLTransport extends NIOTransport {
         return clientCertChain;
     }
 
+    /**
+     * Not supported, frames have to pass through the SSLEngine which is done on
+     * the blocking write path.
+     */
+    @Override
+    public void setNonBlockingWrites(boolean nonBlockingWrites) {
+        if (nonBlockingWrites) {
+            LOG.warn("nonBlockingWrites is not supported by the NIO+SSL transport, ignoring it");
+        }
+    }
+
     public boolean isNeedClientAuth() {
         return needClientAuth;
     }
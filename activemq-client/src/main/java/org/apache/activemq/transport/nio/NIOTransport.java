@@ -20,12 +20,17 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.Socket;
 import java.net.URI;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.SocketFactory;
 
@@ -33,6 +38,8 @@ import org.apache.activemq.command.Command;
 import org.apache.activemq.openwire.OpenWireFormat;
 import org.apache.activemq.transport.Transport;
 import org.apache.activemq.transport.tcp.TcpTransport;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.DataByteArrayOutputStream;
 import org.apache.activemq.util.IOExceptionSupport;
 import org.apache.activemq.util.ServiceStopper;
 import org.apache.activemq.wireformat.WireFormat;
@@ -50,6 +57,17 @@ public class NIOTransport extends TcpTransport {
     protected ByteBuffer inputBuffer;
     protected ByteBuffer currentBuffer;
     protected int nextFrameSize;
+    protected boolean useBufferPool;
+    protected boolean nonBlockingWrites;
+    protected int maxWriteGather = 64;
+    protected long maxWriteQueueBytes = 64 * 1024 * 1024;
+
+    private final ConcurrentLinkedQueue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicInteger writeQueueSize = new AtomicInteger();
+    private final AtomicLong writeQueueBytes = new AtomicLong();
+    private final AtomicBoolean writing = new AtomicBoolean();
+    private final AtomicInteger blockedWriters = new AtomicInteger();
+    private final Object writeQueueMutex = new Object();
 
     public NIOTransport(WireFormat wireFormat, SocketFactory socketFactory, URI remoteLocation, URI localLocation) throws UnknownHostException, IOException {
         super(wireFormat, socketFactory, remoteLocation, localLocation);
@@ -66,7 +84,9 @@ public class NIOTransport extends TcpTransport {
         // listen for events telling us when the socket is readable.
         selection = SelectorManager.getInstance().register(channel, new SelectorManager.Listener() {
             public void onSelect(SelectorSelection selection) {
-                serviceRead();
+                if (serviceWrite()) {
+                    serviceRead();
+                }
             }
 
             public void onError(SelectorSelection selection, Throwable error) {
@@ -125,7 +145,7 @@ public class NIOTransport extends TcpTransport {
                     }
 
                     if (nextFrameSize > inputBuffer.capacity()) {
-                        currentBuffer = ByteBuffer.allocate(nextFrameSize);
+                        currentBuffer = allocateFrameBuffer(nextFrameSize);
                         currentBuffer.putInt(nextFrameSize);
                     } else {
                         inputBuffer.limit(nextFrameSize);
@@ -134,7 +154,14 @@ public class NIOTransport extends TcpTransport {
                 } else {
                     currentBuffer.flip();
 
-                    Object command = wireFormat.unmarshal(new DataInputStream(new NIOInputStream(currentBuffer)));
+                    Object command;
+                    try {
+                        command = unmarshal(currentBuffer);
+                    } finally {
+                        if (currentBuffer != inputBuffer) {
+                            releaseFrameBuffer(currentBuffer);
+                        }
+                    }
                     doConsume((Command)command);
 
                     nextFrameSize = -1;
@@ -152,6 +179,234 @@ public class NIOTransport extends TcpTransport {
         }
     }
 
+    /**
+     * Unmarshals a complete frame, OpenWire frames are read straight from the
+     * buffer.
+     */
+    protected Object unmarshal(ByteBuffer frame) throws IOException {
+        if (wireFormat instanceof OpenWireFormat) {
+            return ((OpenWireFormat)wireFormat).unmarshal(frame);
+        }
+        return wireFormat.unmarshal(new DataInputStream(new NIOInputStream(frame)));
+    }
+
+    /**
+     * Gets a buffer for a frame that does not fit into the input buffer, from the
+     * shared {@link DirectBufferPool} when useBufferPool is enabled.
+     */
+    protected ByteBuffer allocateFrameBuffer(int size) {
+        if (useBufferPool) {
+            return DirectBufferPool.getInstance().acquire(size);
+        }
+        return ByteBuffer.allocate(size);
+    }
+
+    protected void releaseFrameBuffer(ByteBuffer buffer) {
+        if (useBufferPool) {
+            DirectBufferPool.getInstance().release(buffer);
+        }
+    }
+
+    @Override
+    public void oneway(Object command) throws IOException {
+        if (!nonBlockingWrites) {
+            super.oneway(command);
+            return;
+        }
+        checkStarted();
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream();
+        wireFormat.marshal(command, out);
+        ByteSequence frame = out.toByteSequence();
+        writeQueue.add(ByteBuffer.wrap(frame.getData(), frame.getOffset(), frame.getLength()));
+        writeQueueSize.incrementAndGet();
+        long queued = writeQueueBytes.addAndGet(frame.getLength());
+        flushWriteQueue();
+        if (maxWriteQueueBytes > 0 && queued > maxWriteQueueBytes) {
+            waitForWriteQueue();
+        }
+    }
+
+    /**
+     * Blocks the sender while more than maxWriteQueueBytes are queued, so a
+     * slow peer cannot make us buffer without bound. The sender keeps trying
+     * to write the queue itself rather than relying on the selector, which may
+     * be the thread that is blocked.
+     */
+    private void waitForWriteQueue() throws IOException {
+        blockedWriters.incrementAndGet();
+        try {
+            while (writeQueueBytes.get() > maxWriteQueueBytes) {
+                if (isStopping() || isStopped()) {
+                    throw new IOException("Transport stopped with " + writeQueueBytes.get() + " bytes waiting to be written");
+                }
+                flushWriteQueue();
+                synchronized (writeQueueMutex) {
+                    if (writeQueueBytes.get() > maxWriteQueueBytes) {
+                        writeQueueMutex.wait(10);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            blockedWriters.decrementAndGet();
+        }
+    }
+
+    /**
+     * Called when the channel was selected, writes out frames that were left
+     * queued by a non blocking write.
+     *
+     * @return false if the write failed and the transport has been failed.
+     */
+    protected boolean serviceWrite() {
+        if (nonBlockingWrites && writeQueueSize.get() > 0) {
+            try {
+                flushWriteQueue();
+            } catch (IOException e) {
+                onException(e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes out as much of the write queue as the socket accepts without
+     * blocking. Only one thread drains the queue at a time, a thread that finds
+     * the queue busy leaves its frame for the draining thread to pick up. When
+     * the socket buffer fills up we register for OP_WRITE and the remaining
+     * frames are written once the selector reports the channel writable.
+     */
+    protected void flushWriteQueue() throws IOException {
+        while (writing.compareAndSet(false, true)) {
+            try {
+                boolean blocked = writeQueuedFrames();
+                // the interest changes while still the writer, so another
+                // writer that blocks cannot have its OP_WRITE cleared by us.
+                SelectorSelection s = selection;
+                if (s != null) {
+                    if (blocked) {
+                        s.addInterestOps(SelectionKey.OP_WRITE);
+                    } else {
+                        s.removeInterestOps(SelectionKey.OP_WRITE);
+                    }
+                }
+                if (blocked) {
+                    return;
+                }
+            } finally {
+                writing.set(false);
+            }
+            // Frames queued while we were writing would otherwise be left behind.
+            if (writeQueue.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Coalesces the queued frames into gathering writes.
+     *
+     * @return true if the socket would block before the queue was drained.
+     */
+    private boolean writeQueuedFrames() throws IOException {
+        ByteBuffer[] gather = new ByteBuffer[maxWriteGather];
+        while (true) {
+            int count = 0;
+            long length = 0;
+            for (ByteBuffer frame : writeQueue) {
+                gather[count++] = frame;
+                length += frame.remaining();
+                if (count == gather.length) {
+                    break;
+                }
+            }
+            if (count == 0) {
+                return false;
+            }
+
+            long written = channel.write(gather, 0, count);
+            writeQueueBytes.addAndGet(-written);
+
+            for (int i = 0; i < count && !gather[i].hasRemaining(); i++) {
+                writeQueue.poll();
+                writeQueueSize.decrementAndGet();
+            }
+            if (written > 0 && blockedWriters.get() > 0) {
+                synchronized (writeQueueMutex) {
+                    writeQueueMutex.notifyAll();
+                }
+            }
+            if (written < length) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the number of frames waiting to be written to the socket.
+     */
+    public int getWriteQueueSize() {
+        return writeQueueSize.get();
+    }
+
+    /**
+     * @return the number of bytes waiting to be written to the socket.
+     */
+    public long getWriteQueueBytes() {
+        return writeQueueBytes.get();
+    }
+
+    public boolean isNonBlockingWrites() {
+        return nonBlockingWrites;
+    }
+
+    /**
+     * When enabled oneway() does not block on a slow peer, marshalled frames are
+     * queued and written out by the selector once the socket becomes writable,
+     * coalescing whatever has queued up into a single gathering write.
+     */
+    public void setNonBlockingWrites(boolean nonBlockingWrites) {
+        this.nonBlockingWrites = nonBlockingWrites;
+    }
+
+    public int getMaxWriteGather() {
+        return maxWriteGather;
+    }
+
+    /**
+     * Sets the maximum number of queued frames handed to a single gathering write.
+     */
+    public void setMaxWriteGather(int maxWriteGather) {
+        this.maxWriteGather = maxWriteGather;
+    }
+
+    public long getMaxWriteQueueBytes() {
+        return maxWriteQueueBytes;
+    }
+
+    /**
+     * Sets the number of bytes the write queue may hold before oneway() blocks
+     * until the peer has read enough of it, 0 for no limit.
+     */
+    public void setMaxWriteQueueBytes(long maxWriteQueueBytes) {
+        this.maxWriteQueueBytes = maxWriteQueueBytes;
+    }
+
+    public boolean isUseBufferPool() {
+        return useBufferPool;
+    }
+
+    /**
+     * When enabled frames are read into direct buffers taken from the shared
+     * {@link DirectBufferPool} instead of a newly allocated heap buffer per frame.
+     */
+    public void setUseBufferPool(boolean useBufferPool) {
+        this.useBufferPool = useBufferPool;
+    }
+
     protected void doStart() throws Exception {
         connect();
         selection.setInterestOps(SelectionKey.OP_READ);
@@ -159,6 +414,13 @@ public class NIOTransport extends TcpTransport {
     }
 
     protected void doStop(ServiceStopper stopper) throws Exception {
+        if (nonBlockingWrites && writeQueueSize.get() > 0 && channel != null && channel.isOpen()) {
+            // best effort to get out what is queued, e.g. the ShutdownInfo.
+            try {
+                flushWriteQueue();
+            } catch (IOException ignore) {
+            }
+        }
         if (selection != null) {
             selection.close();
             selection = null;
@@ -32,6 +32,7 @@ public final class SelectorSelection {
     private final SelectorWorker worker;
     private final Listener listener;
     private int interest;
+    private boolean selecting;
     private SelectionKey key;
     private AtomicBoolean closed = new AtomicBoolean();
 
@@ -49,19 +50,75 @@ public final class SelectorSelection {
         });
     }
 
-    public void setInterestOps(int ops) {
+    public synchronized void setInterestOps(int ops) {
         interest = ops;
     }
 
+    /**
+     * Adds to the interest set, the key is updated right away unless a select
+     * of this key is currently being serviced in which case the new interest is
+     * applied once it has been re-enabled.
+     */
+    public void addInterestOps(int ops) {
+        synchronized (this) {
+            if ((interest & ops) == ops) {
+                return;
+            }
+            interest |= ops;
+            if (selecting) {
+                return;
+            }
+        }
+        applyInterest();
+    }
+
+    /**
+     * Removes from the interest set, see {@link #addInterestOps(int)}.
+     */
+    public void removeInterestOps(int ops) {
+        synchronized (this) {
+            if ((interest & ops) == 0) {
+                return;
+            }
+            interest &= ~ops;
+            if (selecting) {
+                return;
+            }
+        }
+        applyInterest();
+    }
+
     public void enable() {
+        synchronized (this) {
+            selecting = false;
+        }
+        applyInterest();
+    }
+
+    private void applyInterest() {
         worker.addIoTask(new Runnable() {
             public void run() {
                 try {
-                    key.interestOps(interest);
+                    synchronized (SelectorSelection.this) {
+                        if (!selecting) {
+                            key.interestOps(interest);
+                        }
+                    }
                 } catch (CancelledKeyException e) {
                 }
             }
-        });        
+        });
+    }
+
+    /**
+     * Called by the worker when the key has been selected, the key stays
+     * disabled until {@link #enable()} is called once the select was serviced.
+     */
+    synchronized void selected() {
+        selecting = true;
+        if (key.isValid()) {
+            key.interestOps(0);
+        }
     }
 
     public void disable() {
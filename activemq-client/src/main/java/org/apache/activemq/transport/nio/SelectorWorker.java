@@ -106,9 +106,7 @@ public class SelectorWorker implements Runnable {
 
                     final SelectorSelection s = (SelectorSelection)key.attachment();
                     try {
-                        if( key.isValid() ) {
-                            key.interestOps(0);
-                        }
+                        s.selected();
 
                         // Kick off another thread to find newly selected keys
                         // while we process the
@@ -0,0 +1,373 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A table of {@link BitArrayBin} like windows, keyed by a long - used for the
+ * compact message audit.
+ *
+ * The entries are kept densely in arrays indexed by the entry number, the
+ * windows of all of them share one long array, so an entry costs a few longs
+ * plus its window and no objects. The keys are found through an open
+ * addressing table with linear probing which only holds the entry number of
+ * each key, so its empty slots cost an int rather than a window. The windows
+ * are rings of words that slide forward like a BitArrayBin. Once the table
+ * holds the maximum number of keys a new key evicts one that was not used
+ * since the clock hand last passed it, which approximates the least recently
+ * used order of an LRUCache.
+ *
+ * The keys are expected to be well spread hashes, see {@link #hash}.
+ */
+public class BitArrayBinTable implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int MIN_CAPACITY = 16;
+
+    private static final byte USED = 1;
+    private static final byte REFERENCED = 2;
+
+    private final int windowSize;
+    private final int words;
+    private int maxSize;
+    private int size;
+    private int hand;
+
+    // the entry number + 1 of the key hashed to each slot, 0 when empty
+    private int[] slots;
+
+    // indexed by entry number, allocated with the first key so an unused
+    // table costs nothing
+    private byte[] states;
+    private long[] keys;
+    private long[] firstIndexes;
+    private long[] lastInOrderIndexes;
+    private int[] firstWords;
+    private long[] bits;
+
+    /**
+     * @param windowSize the number of indexes to keep for each key
+     * @param maxSize the maximum number of keys
+     */
+    public BitArrayBinTable(int windowSize, int maxSize) {
+        this.windowSize = windowSize;
+        this.words = Math.max(((windowSize + 1) / BitArray.LONG_SIZE) + 1, 1);
+        this.maxSize = Math.max(maxSize, 1);
+    }
+
+    /**
+     * @return a 64 bit hash of the chars between start and end
+     */
+    public static long hash(CharSequence chars, int start, int end) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            hash ^= chars.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // spread the bits, the low bits pick the slot
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = Math.max(maxSize, 1);
+        while (size > this.maxSize) {
+            evict();
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Set a bit in the window of the key
+     *
+     * @param create whether to add the key when it is not in the table
+     * @return the old value of the bit, false when the index is before the
+     *         window or the key is not in the table
+     */
+    public boolean setBit(long key, long index, boolean value, boolean create) {
+        int entry = entryFor(key, create);
+        if (entry < 0) {
+            return false;
+        }
+        int word = wordOf(entry, index);
+        if (word < 0) {
+            return false;
+        }
+        long mask = 1L << (index & (BitArray.LONG_SIZE - 1));
+        boolean answer = (bits[word] & mask) != 0;
+        if (value) {
+            bits[word] |= mask;
+        } else {
+            bits[word] &= ~mask;
+        }
+        return answer;
+    }
+
+    /**
+     * Test if in order, see {@link BitArrayBin#isInOrder(long)}
+     *
+     * @param create whether to add the key when it is not in the table
+     * @return true if the index follows the last one tested for the key, or
+     *         the key is not in the table
+     */
+    public boolean isInOrder(long key, long index, boolean create) {
+        int entry = entryFor(key, create);
+        if (entry < 0) {
+            return true;
+        }
+        long last = lastInOrderIndexes[entry];
+        lastInOrderIndexes[entry] = index;
+        return last == -1 || last + 1 == index;
+    }
+
+    /**
+     * @return the highest index set in the window of the key or -1
+     */
+    public long getLastSetIndex(long key) {
+        int entry = indexOf(key);
+        if (entry >= 0) {
+            int base = entry * words;
+            for (int i = words - 1; i >= 0; i--) {
+                long word = bits[base + (firstWords[entry] + i) % words];
+                if (word != 0) {
+                    return firstIndexes[entry] + i * BitArray.LONG_SIZE + (BitArray.LONG_SIZE - 1 - Long.numberOfLeadingZeros(word));
+                }
+            }
+        }
+        return -1;
+    }
+
+    public void clear() {
+        slots = null;
+        states = null;
+        keys = null;
+        firstIndexes = null;
+        lastInOrderIndexes = null;
+        firstWords = null;
+        bits = null;
+        size = 0;
+        hand = 0;
+    }
+
+    /**
+     * @return a table with the same keys and windows of the given size, which
+     *         keep the highest indexes set
+     */
+    public BitArrayBinTable resize(int windowSize) {
+        BitArrayBinTable answer = new BitArrayBinTable(windowSize, maxSize);
+        for (int entry = 0; entry < size; entry++) {
+            int copy = answer.add(keys[entry]);
+            answer.lastInOrderIndexes[copy] = lastInOrderIndexes[entry];
+            for (int i = 0; i < words; i++) {
+                long word = bits[entry * words + (firstWords[entry] + i) % words];
+                long first = firstIndexes[entry] + i * BitArray.LONG_SIZE;
+                while (word != 0) {
+                    answer.setBit(keys[entry], first + Long.numberOfTrailingZeros(word), true, false);
+                    word &= word - 1;
+                }
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * @return the slot holding the key, or -1
+     */
+    private int slotOf(long key) {
+        if (slots == null) {
+            return -1;
+        }
+        int mask = slots.length - 1;
+        for (int i = (int) key & mask; slots[i] != 0; i = (i + 1) & mask) {
+            if (keys[slots[i] - 1] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the entry number of the key, or -1
+     */
+    private int indexOf(long key) {
+        int slot = slotOf(key);
+        return slot >= 0 ? slots[slot] - 1 : -1;
+    }
+
+    private int entryFor(long key, boolean create) {
+        int entry = indexOf(key);
+        if (entry >= 0) {
+            states[entry] = REFERENCED;
+        } else if (create) {
+            entry = add(key);
+        }
+        return entry;
+    }
+
+    private int add(long key) {
+        if (size >= maxSize) {
+            evict();
+        }
+        if (keys == null || size == keys.length) {
+            grow(keys == null ? Math.min(MIN_CAPACITY, maxSize) : Math.max(Math.min(keys.length * 2, maxSize), size + 1));
+        }
+        if (slots == null || (size + 1) * 2 > slots.length) {
+            rehash(slots == null ? MIN_CAPACITY : slots.length * 2);
+        }
+        int entry = size++;
+        states[entry] = REFERENCED;
+        keys[entry] = key;
+        firstIndexes[entry] = -1;
+        lastInOrderIndexes[entry] = -1;
+        firstWords[entry] = 0;
+        int mask = slots.length - 1;
+        int slot = (int) key & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = entry + 1;
+        return entry;
+    }
+
+    private void grow(int capacity) {
+        if (keys == null) {
+            states = new byte[capacity];
+            keys = new long[capacity];
+            firstIndexes = new long[capacity];
+            lastInOrderIndexes = new long[capacity];
+            firstWords = new int[capacity];
+            bits = new long[capacity * words];
+        } else {
+            states = Arrays.copyOf(states, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            firstIndexes = Arrays.copyOf(firstIndexes, capacity);
+            lastInOrderIndexes = Arrays.copyOf(lastInOrderIndexes, capacity);
+            firstWords = Arrays.copyOf(firstWords, capacity);
+            bits = Arrays.copyOf(bits, capacity * words);
+        }
+    }
+
+    private void rehash(int capacity) {
+        // only the entry numbers move, the windows stay where they are
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int entry = 0; entry < size; entry++) {
+            int slot = (int) keys[entry] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entry + 1;
+        }
+    }
+
+    private void evict() {
+        while (true) {
+            hand = hand + 1 < size ? hand + 1 : 0;
+            if (states[hand] == REFERENCED) {
+                states[hand] = USED;
+            } else {
+                remove(hand);
+                return;
+            }
+        }
+    }
+
+    private void remove(int entry) {
+        int mask = slots.length - 1;
+        int hole = slotOf(keys[entry]);
+        // move back the keys that probed past the removed one
+        for (int i = (hole + 1) & mask; slots[i] != 0; i = (i + 1) & mask) {
+            int home = (int) keys[slots[i] - 1] & mask;
+            boolean movable = i > hole ? (home <= hole || home > i) : (home <= hole && home > i);
+            if (movable) {
+                slots[hole] = slots[i];
+                hole = i;
+            }
+        }
+        slots[hole] = 0;
+
+        // keep the entries dense, the last one takes the place of the removed one
+        int last = --size;
+        if (entry != last) {
+            slots[slotOf(keys[last])] = entry + 1;
+            states[entry] = states[last];
+            keys[entry] = keys[last];
+            firstIndexes[entry] = firstIndexes[last];
+            lastInOrderIndexes[entry] = lastInOrderIndexes[last];
+            firstWords[entry] = firstWords[last];
+            System.arraycopy(bits, last * words, bits, entry * words, words);
+        }
+        Arrays.fill(bits, last * words, (last + 1) * words, 0L);
+    }
+
+    /**
+     * @return the position in the bits of the word holding the index, after
+     *         sliding the window forward if needed, or -1 when the index is
+     *         before the window
+     */
+    private int wordOf(int entry, long index) {
+        if (index < 0) {
+            return -1;
+        }
+        long first = firstIndexes[entry];
+        if (first < 0) {
+            first = index - (index % BitArray.LONG_SIZE);
+            firstIndexes[entry] = first;
+        }
+        if (index < first) {
+            return -1;
+        }
+        long bin = (index - first) / BitArray.LONG_SIZE;
+        if (bin >= words) {
+            long overShoot = bin - words + 1;
+            int base = entry * words;
+            if (overShoot >= words) {
+                Arrays.fill(bits, base, base + words, 0L);
+                firstWords[entry] = 0;
+            } else {
+                for (int i = 0; i < overShoot; i++) {
+                    bits[base + (firstWords[entry] + i) % words] = 0;
+                }
+                firstWords[entry] = (int) ((firstWords[entry] + overShoot) % words);
+            }
+            firstIndexes[entry] = first + overShoot * BitArray.LONG_SIZE;
+            bin = words - 1;
+        }
+        return entry * words + (int) ((firstWords[entry] + bin) % words);
+    }
+}
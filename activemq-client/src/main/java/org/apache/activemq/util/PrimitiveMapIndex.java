@@ -0,0 +1,233 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.util;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * An index of the entries of a map marshalled by
+ * {@link MarshallingSupport#marshalPrimitiveMap}, to read single values
+ * without unmarshalling the whole map.
+ *
+ * The index is built with one pass over the marshalled bytes that skips the
+ * values and keeps the hash of each name and the offset of its value. A value
+ * is only unmarshalled the first time it is looked up, and is the same object
+ * {@link MarshallingSupport#unmarshalPrimitiveMap(DataInputStream)} would put
+ * in the map. The marshalled bytes must not change once they are indexed.
+ *
+ * Lookups may run concurrently, a value looked up by two threads at once may
+ * just be unmarshalled twice.
+ */
+public final class PrimitiveMapIndex {
+
+    private static final Object NOT_LOADED = new Object();
+
+    private final ByteSequence map;
+    private final int[] hashes;
+    private final int[] nameOffsets;
+    private final int[] valueOffsets;
+    // names that are not plain ASCII, which cannot be compared byte by byte
+    private final String[] names;
+    private final Object[] values;
+
+    private PrimitiveMapIndex(ByteSequence map, int size) {
+        this.map = map;
+        this.hashes = new int[size];
+        this.nameOffsets = new int[size];
+        this.valueOffsets = new int[size];
+        this.names = new String[size];
+        this.values = new Object[size];
+    }
+
+    /**
+     * @return the index of the marshalled map, or null when a null map was
+     *         marshalled
+     */
+    public static PrimitiveMapIndex create(ByteSequence map) throws IOException {
+        byte[] data = map.getData();
+        int end = map.getOffset() + map.getLength();
+        int pos = map.getOffset();
+        int size = readInt(data, pos, end);
+        pos += 4;
+        if (size < 0) {
+            return null;
+        }
+        if (size > map.getLength()) {
+            throw new IOException("Primitive map is larger than its data: " + size);
+        }
+
+        PrimitiveMapIndex index = new PrimitiveMapIndex(map, size);
+        for (int i = 0; i < size; i++) {
+            int nameLength = readUnsignedShort(data, pos, end);
+            int nameOffset = pos + 2;
+            pos = nameOffset + nameLength;
+            check(pos, end);
+
+            int hash = 0;
+            boolean ascii = true;
+            for (int j = nameOffset; j < pos; j++) {
+                if (data[j] <= 0) {
+                    ascii = false;
+                    break;
+                }
+                hash = 31 * hash + data[j];
+            }
+            if (!ascii) {
+                String name = new DataInputStream(new ByteArrayInputStream(data, nameOffset - 2, nameLength + 2)).readUTF();
+                index.names[i] = name;
+                hash = name.hashCode();
+            }
+            index.hashes[i] = hash;
+            index.nameOffsets[i] = nameOffset;
+            index.valueOffsets[i] = pos;
+            index.values[i] = NOT_LOADED;
+            pos = skipPrimitive(data, pos, end);
+        }
+        return index;
+    }
+
+    /**
+     * @return the number of entries, names marshalled more than once are
+     *         counted each time
+     */
+    public int size() {
+        return hashes.length;
+    }
+
+    public boolean containsKey(String name) {
+        return indexOf(name) != -1;
+    }
+
+    /**
+     * @return the value of the name, strings are returned as UTF8Buffer like
+     *         in the unmarshalled map
+     */
+    public Object get(String name) throws IOException {
+        int i = indexOf(name);
+        if (i == -1) {
+            return null;
+        }
+        Object value = values[i];
+        if (value == NOT_LOADED) {
+            int end = map.getOffset() + map.getLength();
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(map.getData(), valueOffsets[i], end - valueOffsets[i]));
+            value = MarshallingSupport.unmarshalPrimitive(in);
+            values[i] = value;
+        }
+        return value;
+    }
+
+    private int indexOf(String name) {
+        int hash = name.hashCode();
+        // the last entry of a name wins, as in the unmarshalled map
+        for (int i = hashes.length - 1; i >= 0; i--) {
+            if (hashes[i] == hash && nameEquals(i, name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean nameEquals(int i, String name) {
+        if (names[i] != null) {
+            return names[i].equals(name);
+        }
+        byte[] data = map.getData();
+        int offset = nameOffsets[i];
+        int length = valueOffsets[i] - offset;
+        if (length != name.length()) {
+            return false;
+        }
+        for (int j = 0; j < length; j++) {
+            if (data[offset + j] != name.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipPrimitive(byte[] data, int pos, int end) throws IOException {
+        check(pos + 1, end);
+        byte type = data[pos++];
+        switch (type) {
+        case MarshallingSupport.NULL:
+            break;
+        case MarshallingSupport.BOOLEAN_TYPE:
+        case MarshallingSupport.BYTE_TYPE:
+            pos += 1;
+            break;
+        case MarshallingSupport.CHAR_TYPE:
+        case MarshallingSupport.SHORT_TYPE:
+            pos += 2;
+            break;
+        case MarshallingSupport.INTEGER_TYPE:
+        case MarshallingSupport.FLOAT_TYPE:
+            pos += 4;
+            break;
+        case MarshallingSupport.LONG_TYPE:
+        case MarshallingSupport.DOUBLE_TYPE:
+            pos += 8;
+            break;
+        case MarshallingSupport.STRING_TYPE:
+            pos += 2 + readUnsignedShort(data, pos, end);
+            break;
+        case MarshallingSupport.BYTE_ARRAY_TYPE:
+        case MarshallingSupport.BIG_STRING_TYPE:
+            pos += 4 + Math.max(readInt(data, pos, end), 0);
+            break;
+        case MarshallingSupport.MAP_TYPE: {
+            int size = readInt(data, pos, end);
+            pos += 4;
+            for (int i = 0; i < size; i++) {
+                pos += 2 + readUnsignedShort(data, pos, end);
+                pos = skipPrimitive(data, pos, end);
+            }
+            break;
+        }
+        case MarshallingSupport.LIST_TYPE: {
+            int size = readInt(data, pos, end);
+            pos += 4;
+            for (int i = 0; i < size; i++) {
+                pos = skipPrimitive(data, pos, end);
+            }
+            break;
+        }
+        default:
+            throw new IOException("Unknown primitive type: " + type);
+        }
+        check(pos, end);
+        return pos;
+    }
+
+    private static int readInt(byte[] data, int pos, int end) throws IOException {
+        check(pos + 4, end);
+        return ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16) | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+    }
+
+    private static int readUnsignedShort(byte[] data, int pos, int end) throws IOException {
+        check(pos + 2, end);
+        return ((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF);
+    }
+
+    private static void check(int pos, int end) throws EOFException {
+        if (pos > end || pos < 0) {
+            throw new EOFException();
+        }
+    }
+}
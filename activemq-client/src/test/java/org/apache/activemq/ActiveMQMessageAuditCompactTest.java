@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.ProducerId;
+import org.apache.activemq.util.IdGenerator;
+
+/**
+ * Checks the compact audit, backed by a BitArrayBinTable, against the default
+ * one.
+ */
+public class ActiveMQMessageAuditCompactTest extends TestCase {
+
+    public void testCompactAuditMatchesDefault() throws Exception {
+        ActiveMQMessageAudit audit = new ActiveMQMessageAudit(512, 16, false);
+        ActiveMQMessageAudit compact = new ActiveMQMessageAudit(512, 16, true);
+        assertFalse(audit.isCompact());
+        assertTrue(compact.isCompact());
+        Random random = new Random(42);
+        ProducerId[] pids = new ProducerId[8];
+        long[] sequences = new long[pids.length];
+        for (int i = 0; i < pids.length; i++) {
+            pids[i] = new ProducerId(new IdGenerator().generateId() + ":1:" + i);
+        }
+        for (int i = 0; i < 50000; i++) {
+            int producer = random.nextInt(pids.length);
+            MessageId id = new MessageId(pids[producer], sequences[producer]++);
+            if (random.nextInt(50) == 0) {
+                id.setProducerSequenceId(Math.max(0, id.getProducerSequenceId() - random.nextInt(1000)));
+            }
+            // the default audit keeps string ids apart from message ids
+            boolean strings = producer % 2 == 0;
+            if (random.nextInt(4) == 0) {
+                if (strings) {
+                    audit.rollback(id.toString());
+                    compact.rollback(id.toString());
+                } else {
+                    audit.rollback(id);
+                    compact.rollback(id);
+                }
+            } else if (strings) {
+                assertEquals(id.toString(), audit.isDuplicate(id.toString()), compact.isDuplicate(id.toString()));
+            } else {
+                assertEquals(id.toString(), audit.isDuplicate(id), compact.isDuplicate(id));
+            }
+        }
+
+        compact = (ActiveMQMessageAudit) recover(serialize(compact));
+        assertTrue(compact.isCompact());
+        MessageId id = new MessageId(pids[0], sequences[0] - 1);
+        compact.isDuplicate(id);
+        assertTrue(compact.isDuplicate(id.toString()));
+        assertEquals(sequences[0] - 1, compact.getLastSeqId(pids[0]));
+
+        compact.setMaximumNumberOfProducersToTrack(1);
+        compact.setAuditDepth(100);
+        id = new MessageId(pids[1], sequences[1]);
+        assertFalse(compact.isDuplicate(id));
+        assertTrue(compact.isDuplicate(id));
+        assertEquals(-1, compact.getLastSeqId(pids[0]));
+    }
+
+    protected byte[] serialize(ActiveMQMessageAuditNoSync audit) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oout = new ObjectOutputStream(baos);
+        oout.writeObject(audit);
+        oout.flush();
+        return baos.toByteArray();
+    }
+
+    protected ActiveMQMessageAuditNoSync recover(byte[] bytes) throws Exception {
+        ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        return (ActiveMQMessageAuditNoSync)objectIn.readObject();
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.util;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class BitArrayBinTableTest extends TestCase {
+
+    public void testMatchesBitArrayBin() throws Exception {
+        doTestMatchesBitArrayBin(50);
+        doTestMatchesBitArrayBin(500);
+        doTestMatchesBitArrayBin(2048);
+    }
+
+    private void doTestMatchesBitArrayBin(int window) throws Exception {
+        Random random = new Random(window);
+        BitArrayBinTable table = new BitArrayBinTable(window, 8);
+        BitArrayBin[] bins = new BitArrayBin[8];
+        long[] next = new long[8];
+        for (int i = 0; i < bins.length; i++) {
+            bins[i] = new BitArrayBin(window);
+        }
+        for (int i = 0; i < 100000; i++) {
+            int key = random.nextInt(bins.length);
+            // mostly in order, sometimes redelivered or skipping ahead
+            long index = next[key]++;
+            int choice = random.nextInt(20);
+            if (choice == 0) {
+                index = Math.max(0, index - random.nextInt(3 * window));
+            } else if (choice == 1) {
+                next[key] += random.nextInt(3 * window);
+            }
+            boolean value = random.nextInt(10) != 0;
+            assertEquals("key " + key + " index " + index, bins[key].setBit(index, value), table.setBit(key, index, value, true));
+        }
+        assertEquals(bins.length, table.size());
+    }
+
+    public void testSetAroundWindow() throws Exception {
+        BitArrayBinTable table = new BitArrayBinTable(500, 1);
+        for (int i = 0; i <= 2000; i++) {
+            assertFalse("not already set", table.setBit(1, i, true, true));
+            assertEquals("current is max", i, table.getLastSetIndex(1));
+        }
+        // the window ends with the word holding 2000, 1984 to 2047, and has eight words
+        for (int i = 2000; i >= 1984 - 7 * BitArray.LONG_SIZE; i--) {
+            assertTrue("was already set, id=" + i, table.setBit(1, i, true, true));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertFalse("before the window, id=" + i, table.setBit(1, i, true, true));
+        }
+        assertEquals(2000, table.getLastSetIndex(1));
+        assertFalse(table.setBit(1, 1000000, true, true));
+        assertEquals(1000000, table.getLastSetIndex(1));
+        assertFalse(table.setBit(1, 2000, true, true));
+    }
+
+    public void testMissingKeys() throws Exception {
+        BitArrayBinTable table = new BitArrayBinTable(100, 4);
+        assertFalse(table.containsKey(1));
+        assertFalse(table.setBit(1, 5, false, false));
+        assertTrue(table.isInOrder(1, 5, false));
+        assertEquals(-1, table.getLastSetIndex(1));
+        assertEquals(0, table.size());
+
+        assertTrue(table.isInOrder(1, 5, true));
+        assertTrue(table.isInOrder(1, 6, true));
+        assertFalse(table.isInOrder(1, 8, true));
+        assertEquals(-1, table.getLastSetIndex(1));
+        assertEquals(1, table.size());
+    }
+
+    public void testEvictsUnusedKeys() throws Exception {
+        BitArrayBinTable table = new BitArrayBinTable(100, 3);
+        for (long key = 0; key < 3; key++) {
+            table.setBit(key, 1, true, true);
+        }
+        // two passes of the clock, the third key is the one used since
+        table.setBit(3, 1, true, true);
+        table.setBit(2, 2, true, true);
+        table.setBit(4, 1, true, true);
+        assertEquals(3, table.size());
+        assertTrue(table.containsKey(2));
+        assertTrue(table.containsKey(4));
+        assertTrue(table.setBit(2, 1, true, true));
+
+        table.setMaxSize(1);
+        assertEquals(1, table.size());
+        table.clear();
+        assertEquals(0, table.size());
+        assertFalse(table.setBit(2, 1, true, true));
+    }
+
+    public void testRemoveKeepsCollidingKeys() throws Exception {
+        BitArrayBinTable table = new BitArrayBinTable(100, 64);
+        // all in the same slot, the table grows to 128 slots at most
+        for (long i = 0; i < 64; i++) {
+            table.setBit(i << 10, i, true, true);
+        }
+        for (long i = 64; i < 1000; i++) {
+            table.setBit(i << 10, i, true, true);
+            assertEquals(64, table.size());
+            int found = 0;
+            for (long j = 0; j <= i; j++) {
+                if (table.containsKey(j << 10)) {
+                    assertTrue("key " + j, table.setBit(j << 10, j, true, false));
+                    found++;
+                }
+            }
+            assertEquals(64, found);
+        }
+    }
+
+    public void testResize() throws Exception {
+        BitArrayBinTable table = new BitArrayBinTable(1000, 4);
+        for (int i = 0; i < 1000; i++) {
+            table.setBit(7, i, true, true);
+        }
+        table.isInOrder(7, 999, true);
+        table = table.resize(100);
+        assertEquals(100, table.getWindowSize());
+        assertEquals(999, table.getLastSetIndex(7));
+        assertTrue(table.setBit(7, 950, true, false));
+        assertFalse(table.setBit(7, 500, true, false));
+        assertTrue(table.isInOrder(7, 1000, false));
+    }
+
+    public void testHash() throws Exception {
+        String id = "ID:host-1234-1234567890-1:1:1:1";
+        assertEquals(BitArrayBinTable.hash(id, 0, id.length()), BitArrayBinTable.hash(id + ":5", 0, id.length()));
+        assertFalse(BitArrayBinTable.hash(id, 0, id.length()) == BitArrayBinTable.hash("ID:host-1234-1234567890-1:1:1:2", 0, id.length()));
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.filter.MessageEvaluationContext;
+import org.apache.activemq.filter.PropertyExpression;
+import org.fusesource.hawtbuf.UTF8Buffer;
+
+public class PrimitiveMapIndexTest extends TestCase {
+
+    public void testGetMatchesUnmarshalledMap() throws Exception {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("null", null);
+        map.put("boolean", Boolean.TRUE);
+        map.put("byte", Byte.valueOf((byte) 7));
+        map.put("char", Character.valueOf('c'));
+        map.put("short", Short.valueOf((short) 300));
+        map.put("int", Integer.valueOf(70000));
+        map.put("long", Long.valueOf(Long.MAX_VALUE));
+        map.put("float", Float.valueOf(1.5f));
+        map.put("double", Double.valueOf(2.5d));
+        map.put("bytes", new byte[] {1, 2, 3});
+        map.put("string", "value");
+        char[] big = new char[Short.MAX_VALUE];
+        Arrays.fill(big, 'x');
+        map.put("bigString", new String(big));
+        Map<String, Object> nested = new HashMap<String, Object>();
+        nested.put("a", "b");
+        nested.put("c", Integer.valueOf(1));
+        map.put("map", nested);
+        List<Object> list = new ArrayList<Object>();
+        list.add("a");
+        list.add(Long.valueOf(2));
+        map.put("list", list);
+        map.put("na\u00efve", "non ascii name");
+        map.put("after", "last");
+
+        ByteSequence marshalled = marshal(map);
+        PrimitiveMapIndex index = PrimitiveMapIndex.create(marshalled);
+        Map<String, Object> expected = MarshallingSupport.unmarshalPrimitiveMap(new DataInputStream(new ByteArrayInputStream(marshalled)));
+        assertEquals(map.size(), index.size());
+        for (String name : map.keySet()) {
+            Object value = index.get(name);
+            if (value instanceof byte[]) {
+                assertTrue(name, Arrays.equals((byte[]) expected.get(name), (byte[]) value));
+            } else if (value instanceof UTF8Buffer) {
+                assertEquals(name, expected.get(name).toString(), value.toString());
+            } else {
+                assertEquals(name, expected.get(name), value);
+            }
+            assertTrue(name, index.containsKey(name));
+            assertSame(name, value, index.get(name));
+        }
+        assertNull(index.get("missing"));
+        assertFalse(index.containsKey("missing"));
+        assertFalse(index.containsKey("naive"));
+    }
+
+    public void testEmptyAndNullMaps() throws Exception {
+        assertEquals(0, PrimitiveMapIndex.create(marshal(new HashMap<String, Object>())).size());
+        assertNull(PrimitiveMapIndex.create(marshal(null)));
+    }
+
+    public void testTruncatedMap() throws Exception {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("string", "value");
+        ByteSequence marshalled = marshal(map);
+        marshalled.setLength(marshalled.getLength() - 1);
+        try {
+            PrimitiveMapIndex.create(marshalled);
+            fail("Truncated map indexed");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testPropertyExpressionOnMarshalledProperties() throws Exception {
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        for (int i = 0; i < 40; i++) {
+            message.setStringProperty("header" + i, "value" + i);
+        }
+        message.setStringProperty("region", "EU");
+        message.setIntProperty("priority", 4);
+        message.beforeMarshall(null);
+
+        ActiveMQTextMessage received = new ActiveMQTextMessage();
+        received.setMarshalledProperties(message.getMarshalledProperties());
+        MessageEvaluationContext context = new MessageEvaluationContext();
+        context.setMessageReference(received);
+        assertEquals("EU", new PropertyExpression("region").evaluate(context));
+        assertEquals(Integer.valueOf(4), new PropertyExpression("priority").evaluate(context));
+        assertNull(new PropertyExpression("country").evaluate(context));
+        assertEquals("value7", received.getStringProperty("header7"));
+        assertEquals(42, received.getProperties().size());
+    }
+
+    private static ByteSequence marshal(Map<String, Object> map) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        // not at the start of the buffer, like properties marshalled in a message
+        baos.write(new byte[3]);
+        DataOutputStream out = new DataOutputStream(baos);
+        MarshallingSupport.marshalPrimitiveMap(map, out);
+        out.close();
+        ByteSequence sequence = baos.toByteSequence();
+        return new ByteSequence(sequence.getData(), 3, sequence.getLength() - 3);
+    }
+}
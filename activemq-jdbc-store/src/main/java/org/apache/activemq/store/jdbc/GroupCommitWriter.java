@@ -0,0 +1,332 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.jdbc;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.activemq.util.IOExceptionSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies the non transactional adds and acks of all connections through one
+ * writer thread. Whatever queued up while the previous batch was committing is
+ * applied as one JDBC batch in one database transaction, and the senders
+ * waiting on it are released together once it has been committed. Senders
+ * that must not wait while holding a lock, like the queue adding a message
+ * under its send lock, {@link #submit(Operation)} the operation and wait on
+ * the returned future once the lock has been released, so the adds of many
+ * producers to one queue can still share a commit.
+ *
+ * The size of a batch is bounded by maxBatchSize. With a lingerTime the
+ * writer waits that many milliseconds for more work before committing a batch
+ * that is not full, which trades latency for fewer commits when the load is
+ * light.
+ *
+ * When a batch fails it is rolled back and its operations are applied again
+ * one transaction each, so only the operation that caused the failure sees it.
+ */
+public class GroupCommitWriter implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GroupCommitWriter.class);
+
+    /**
+     * A unit of work applied within the transaction of a batch, and the
+     * future of its commit.
+     */
+    public abstract static class Operation implements Future<Object> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile IOException error;
+
+        protected abstract void execute(TransactionContext c) throws SQLException, IOException;
+
+        /**
+         * Called by the writer once the operation has been committed, or has
+         * failed, before anyone waiting on it is released.
+         */
+        protected void onComplete(IOException error) {
+        }
+
+        void complete(IOException error) {
+            this.error = error;
+            try {
+                onComplete(error);
+            } finally {
+                done.countDown();
+            }
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        public boolean isCancelled() {
+            return false;
+        }
+
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        public Object get() throws InterruptedException, ExecutionException {
+            done.await();
+            return result();
+        }
+
+        public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!done.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return result();
+        }
+
+        private Object result() throws ExecutionException {
+            if (error != null) {
+                throw new ExecutionException(error);
+            }
+            return null;
+        }
+    }
+
+    private final JDBCPersistenceAdapter persistenceAdapter;
+    private final Object enqueueMutex = new Object();
+    private final LinkedList<Operation> pending = new LinkedList<Operation>();
+    private final AtomicLong commitCount = new AtomicLong();
+    private final AtomicLong operationCount = new AtomicLong();
+    private volatile int maxBatchSize = 500;
+    private volatile long lingerTime;
+    private boolean running;
+    private Thread thread;
+
+    public GroupCommitWriter(JDBCPersistenceAdapter persistenceAdapter) {
+        this.persistenceAdapter = persistenceAdapter;
+    }
+
+    public void start() {
+        synchronized (enqueueMutex) {
+            if (running) {
+                return;
+            }
+            running = true;
+            thread = new Thread(this, "ActiveMQ JDBC Group Commit Writer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public void stop() throws InterruptedException {
+        Thread writer;
+        synchronized (enqueueMutex) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            enqueueMutex.notifyAll();
+            writer = thread;
+            thread = null;
+        }
+        writer.join();
+    }
+
+    /**
+     * Queues the operation for the next batch and waits until that batch has
+     * been committed.
+     *
+     * @throws IOException if the operation could not be applied or the
+     *         writer was stopped before it was
+     */
+    public void execute(Operation operation) throws IOException {
+        submit(operation);
+        try {
+            operation.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the group commit");
+        }
+        if (operation.error != null) {
+            throw operation.error;
+        }
+    }
+
+    /**
+     * Queues the operation for the next batch without waiting for it.
+     *
+     * @return the operation, done once its batch has been committed
+     * @throws IOException if the writer is not running
+     */
+    public Future<Object> submit(Operation operation) throws IOException {
+        synchronized (enqueueMutex) {
+            if (!running) {
+                throw new IOException("The JDBC group commit writer is not running");
+            }
+            pending.add(operation);
+            enqueueMutex.notifyAll();
+        }
+        return operation;
+    }
+
+    public void run() {
+        try {
+            List<Operation> batch;
+            while ((batch = takeBatch()) != null) {
+                write(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            failPending();
+        }
+    }
+
+    private List<Operation> takeBatch() throws InterruptedException {
+        synchronized (enqueueMutex) {
+            while (running && pending.isEmpty()) {
+                enqueueMutex.wait();
+            }
+            if (lingerTime > 0 && running && pending.size() < maxBatchSize) {
+                long end = System.currentTimeMillis() + lingerTime;
+                long remaining = lingerTime;
+                while (running && pending.size() < maxBatchSize && remaining > 0) {
+                    enqueueMutex.wait(remaining);
+                    remaining = end - System.currentTimeMillis();
+                }
+            }
+            if (pending.isEmpty()) {
+                // stopped, and everything queued before has been written
+                return null;
+            }
+            int size = Math.min(pending.size(), maxBatchSize);
+            List<Operation> batch = new ArrayList<Operation>(size);
+            for (int i = 0; i < size; i++) {
+                batch.add(pending.removeFirst());
+            }
+            return batch;
+        }
+    }
+
+    private void write(List<Operation> batch) {
+        if (batch.size() > 1) {
+            try {
+                writeInTransaction(batch);
+                for (Operation operation : batch) {
+                    operation.complete(null);
+                }
+                return;
+            } catch (IOException e) {
+                LOG.debug("Group commit of " + batch.size() + " operations failed, applying them one by one: " + e);
+            }
+        }
+        for (Operation operation : batch) {
+            try {
+                writeInTransaction(Collections.singletonList(operation));
+                operation.complete(null);
+            } catch (IOException e) {
+                operation.complete(e);
+            }
+        }
+    }
+
+    private void writeInTransaction(List<Operation> batch) throws IOException {
+        TransactionContext c = persistenceAdapter.getTransactionContext();
+        c.begin();
+        boolean applied = false;
+        try {
+            for (Operation operation : batch) {
+                operation.execute(c);
+            }
+            applied = true;
+        } catch (SQLException e) {
+            JDBCPersistenceAdapter.log("JDBC Failure: ", e);
+            throw IOExceptionSupport.create(e);
+        } catch (RuntimeException e) {
+            throw IOExceptionSupport.create(e);
+        } finally {
+            if (!applied) {
+                c.rollback();
+            }
+        }
+        c.commit();
+        commitCount.incrementAndGet();
+        operationCount.addAndGet(batch.size());
+    }
+
+    /**
+     * Only leaves work behind when the writer thread is interrupted.
+     */
+    private void failPending() {
+        List<Operation> failed;
+        synchronized (enqueueMutex) {
+            running = false;
+            failed = new ArrayList<Operation>(pending);
+            pending.clear();
+        }
+        for (Operation operation : failed) {
+            operation.complete(new IOException("The JDBC group commit writer was stopped"));
+        }
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of operations applied in one database
+     * transaction.
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    public long getLingerTime() {
+        return lingerTime;
+    }
+
+    /**
+     * Sets the number of milliseconds the writer waits for more operations
+     * before committing a batch that is not full, 0 commits whatever is
+     * pending straight away.
+     */
+    public void setLingerTime(long lingerTime) {
+        this.lingerTime = lingerTime;
+    }
+
+    /**
+     * @return the number of database transactions committed so far
+     */
+    public long getCommitCount() {
+        return commitCount.get();
+    }
+
+    /**
+     * @return the number of operations committed so far
+     */
+    public long getOperationCount() {
+        return operationCount.get();
+    }
+}
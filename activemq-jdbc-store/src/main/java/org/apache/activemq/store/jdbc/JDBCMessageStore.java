@@ -18,6 +18,8 @@ package org.apache.activemq.store.jdbc;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.activemq.ActiveMQMessageAudit;
@@ -67,6 +69,9 @@ public class JDBCMessageStore extends AbstractMessageStore {
     protected AtomicLong lastRecoveredPriority = new AtomicLong(Byte.MAX_VALUE -1);
 
     protected ActiveMQMessageAudit audit;
+    // the sequence ids of the adds queued on the group commit writer, an ack
+    // can arrive before their batch has been committed
+    private final ConcurrentHashMap<MessageId, Long> pendingAdds = new ConcurrentHashMap<MessageId, Long>();
     
     public JDBCMessageStore(JDBCPersistenceAdapter persistenceAdapter, JDBCAdapter adapter, WireFormat wireFormat, ActiveMQDestination destination, ActiveMQMessageAudit audit) throws IOException {
         super(destination);
@@ -95,8 +100,8 @@ public class JDBCMessageStore extends AbstractMessageStore {
         }
     }
 
-    public void addMessage(ConnectionContext context, Message message) throws IOException {
-        MessageId messageId = message.getMessageId();
+    public void addMessage(ConnectionContext context, final Message message) throws IOException {
+        final MessageId messageId = message.getMessageId();
         if (audit != null && audit.isDuplicate(message)) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug(destination.getPhysicalName()
@@ -106,10 +111,10 @@ public class JDBCMessageStore extends AbstractMessageStore {
             return;
         }
         
-        long sequenceId = persistenceAdapter.getNextSequenceId();
+        final long sequenceId = persistenceAdapter.getNextSequenceId();
         
         // Serialize the Message..
-        byte data[];
+        final byte data[];
         try {
             ByteSequence packet = wireFormat.marshal(message);
             data = ByteSequenceData.toByteArray(packet);
@@ -117,6 +122,16 @@ public class JDBCMessageStore extends AbstractMessageStore {
             throw IOExceptionSupport.create("Failed to broker message: " + messageId + " in container: " + e, e);
         }
 
+        GroupCommitWriter groupCommitWriter = persistenceAdapter.getGroupCommitWriter(context);
+        if (groupCommitWriter != null) {
+            try {
+                groupCommitWriter.execute(createAddOperation(message, sequenceId, data));
+            } catch (IOException e) {
+                throw IOExceptionSupport.create("Failed to broker message: " + messageId + " in container: " + e, e);
+            }
+            return;
+        }
+
         // Get a connection and insert the message into the DB.
         TransactionContext c = persistenceAdapter.getTransactionContext(context);
         try {      
@@ -135,6 +150,66 @@ public class JDBCMessageStore extends AbstractMessageStore {
         }
     }
 
+    /**
+     * With group commit the add is queued on the writer and the returned
+     * future is done once its batch has been committed, so the queue does not
+     * hold its send lock while the commit is pending.
+     */
+    @Override
+    public Future<Object> asyncAddQueueMessage(ConnectionContext context, Message message, boolean canOptimizeHint) throws IOException {
+        GroupCommitWriter groupCommitWriter = persistenceAdapter.getGroupCommitWriter(context);
+        if (groupCommitWriter == null) {
+            return super.asyncAddQueueMessage(context, message, canOptimizeHint);
+        }
+        MessageId messageId = message.getMessageId();
+        if (audit != null && audit.isDuplicate(message)) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(destination.getPhysicalName()
+                    + " ignoring duplicated (add) message, already stored: "
+                    + messageId);
+            }
+            return FUTURE;
+        }
+
+        long sequenceId = persistenceAdapter.getNextSequenceId();
+        byte data[];
+        try {
+            ByteSequence packet = wireFormat.marshal(message);
+            data = ByteSequenceData.toByteArray(packet);
+        } catch (IOException e) {
+            throw IOExceptionSupport.create("Failed to broker message: " + messageId + " in container: " + e, e);
+        }
+        pendingAdds.put(messageId, sequenceId);
+        try {
+            return groupCommitWriter.submit(createAddOperation(message, sequenceId, data));
+        } catch (IOException e) {
+            pendingAdds.remove(messageId);
+            throw IOExceptionSupport.create("Failed to broker message: " + messageId + " in container: " + e, e);
+        }
+    }
+
+    @Override
+    public Future<Object> asyncAddQueueMessage(ConnectionContext context, Message message) throws IOException {
+        return asyncAddQueueMessage(context, message, false);
+    }
+
+    private GroupCommitWriter.Operation createAddOperation(final Message message, final long sequenceId, final byte[] data) {
+        final MessageId messageId = message.getMessageId();
+        return new GroupCommitWriter.Operation() {
+            protected void execute(TransactionContext c) throws SQLException, IOException {
+                adapter.doAddMessage(c, sequenceId, messageId, destination, data, message.getExpiration(),
+                        isPrioritizedMessages() ? message.getPriority() : 0, null);
+            }
+
+            protected void onComplete(IOException error) {
+                pendingAdds.remove(messageId);
+                if (error == null) {
+                    onAdd(messageId, sequenceId, message.getPriority());
+                }
+            }
+        };
+    }
+
     protected void onAdd(MessageId messageId, long sequenceId, byte priority) {
     }
 
@@ -191,7 +266,24 @@ public class JDBCMessageStore extends AbstractMessageStore {
 
     public void removeMessage(ConnectionContext context, MessageAck ack) throws IOException {
 
-    	long seq = persistenceAdapter.getStoreSequenceIdForMessageId(ack.getLastMessageId(), destination)[0];
+        GroupCommitWriter groupCommitWriter = persistenceAdapter.getGroupCommitWriter(context);
+        // the writer applies the remove after a pending add of the message
+        Long pendingAdd = groupCommitWriter != null ? pendingAdds.get(ack.getLastMessageId()) : null;
+    	final long seq = pendingAdd != null ? pendingAdd.longValue()
+    	        : persistenceAdapter.getStoreSequenceIdForMessageId(ack.getLastMessageId(), destination)[0];
+
+        if (groupCommitWriter != null) {
+            try {
+                groupCommitWriter.execute(new GroupCommitWriter.Operation() {
+                    protected void execute(TransactionContext c) throws SQLException, IOException {
+                        adapter.doRemoveMessage(c, seq, null);
+                    }
+                });
+            } catch (IOException e) {
+                throw IOExceptionSupport.create("Failed to remove message: " + ack.getLastMessageId() + " from container: " + e, e);
+            }
+            return;
+        }
 
         // Get a connection and remove the message from the DB
         TransactionContext c = persistenceAdapter.getTransactionContext(context);
@@ -199,7 +291,7 @@ public class JDBCMessageStore extends AbstractMessageStore {
             adapter.doRemoveMessage(c, seq, context != null ? context.getXid() : null);
         } catch (SQLException e) {
             JDBCPersistenceAdapter.log("JDBC Failure: ", e);
-            throw IOExceptionSupport.create("Failed to broker message: " + ack.getLastMessageId() + " in container: " + e, e);
+            throw IOExceptionSupport.create("Failed to remove message: " + ack.getLastMessageId() + " from container: " + e, e);
         } finally {
             c.close();
         }
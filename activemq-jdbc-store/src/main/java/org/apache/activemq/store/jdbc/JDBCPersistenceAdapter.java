@@ -94,6 +94,10 @@ public class JDBCPersistenceAdapter extends DataSourceServiceSupport implements
     private int transactionIsolation;
     private File directory;
     private boolean changeAutoCommitAllowed = true;
+    private boolean groupCommit;
+    private int groupCommitMaxBatchSize = 500;
+    private long groupCommitLingerTime;
+    private GroupCommitWriter groupCommitWriter;
     
     protected int maxProducersToAudit=1024;
     protected int maxAuditDepth=1000;
@@ -313,6 +317,13 @@ public class JDBCPersistenceAdapter extends DataSourceServiceSupport implements
             }, 0, cleanupPeriod, TimeUnit.MILLISECONDS);
         }
         createMessageAudit();
+        if (groupCommit) {
+            GroupCommitWriter writer = new GroupCommitWriter(this);
+            writer.setMaxBatchSize(groupCommitMaxBatchSize);
+            writer.setLingerTime(groupCommitLingerTime);
+            writer.start();
+            groupCommitWriter = writer;
+        }
     }
 
     public synchronized void doStop(ServiceStopper stopper) throws Exception {
@@ -320,6 +331,11 @@ public class JDBCPersistenceAdapter extends DataSourceServiceSupport implements
             cleanupTicket.cancel(true);
             cleanupTicket = null;
         }
+        GroupCommitWriter writer = groupCommitWriter;
+        if (writer != null) {
+            groupCommitWriter = null;
+            writer.stop();
+        }
     }
 
     public void cleanup() {
@@ -528,6 +544,65 @@ public class JDBCPersistenceAdapter extends DataSourceServiceSupport implements
         this.changeAutoCommitAllowed = changeAutoCommitAllowed;
     }
 
+    public boolean isGroupCommit() {
+        return groupCommit;
+    }
+
+    /**
+     * Sets whether adds and acks that are not part of a transaction are
+     * collected from all connections and written by one writer as a JDBC
+     * batch in one database transaction, rather than committed one by one.
+     * Off by default.
+     */
+    public void setGroupCommit(boolean groupCommit) {
+        this.groupCommit = groupCommit;
+    }
+
+    public int getGroupCommitMaxBatchSize() {
+        return groupCommitMaxBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of adds and acks committed together when
+     * groupCommit is enabled.
+     */
+    public void setGroupCommitMaxBatchSize(int groupCommitMaxBatchSize) {
+        this.groupCommitMaxBatchSize = groupCommitMaxBatchSize;
+    }
+
+    public long getGroupCommitLingerTime() {
+        return groupCommitLingerTime;
+    }
+
+    /**
+     * Sets the number of milliseconds the group commit writer waits for more
+     * adds and acks before committing a batch that is not full. The default
+     * of 0 commits whatever queued up while the previous batch was written.
+     */
+    public void setGroupCommitLingerTime(long groupCommitLingerTime) {
+        this.groupCommitLingerTime = groupCommitLingerTime;
+    }
+
+    /**
+     * @return the group commit writer an operation on behalf of the context
+     *         can go through, or null when group commit is disabled or the
+     *         operation is part of a local or XA transaction
+     */
+    public GroupCommitWriter getGroupCommitWriter(ConnectionContext context) {
+        GroupCommitWriter writer = groupCommitWriter;
+        if (writer == null || context == null) {
+            return writer;
+        }
+        if (context.getXid() != null) {
+            return null;
+        }
+        TransactionContext transactionContext = (TransactionContext) context.getLongTermStoreContext();
+        if (transactionContext != null && transactionContext.isInTransaction()) {
+            return null;
+        }
+        return writer;
+    }
+
     public void deleteAllMessages() throws IOException {
         TransactionContext c = getTransactionContext();
         try {
@@ -35,6 +35,7 @@ import org.apache.activemq.command.Message;
 import org.apache.activemq.command.MessageAck;
 import org.apache.activemq.command.MessageId;
 import org.apache.activemq.command.SubscriptionInfo;
+import org.apache.activemq.command.XATransactionId;
 import org.apache.activemq.store.MessageRecoveryListener;
 import org.apache.activemq.store.TopicMessageStore;
 import org.apache.activemq.util.ByteSequence;
@@ -67,24 +68,29 @@ public class JDBCTopicMessageStore extends JDBCMessageStore implements TopicMess
         super(persistenceAdapter, adapter, wireFormat, topic, audit);
     }
 
-    public void acknowledge(ConnectionContext context, String clientId, String subscriptionName, MessageId messageId, MessageAck ack) throws IOException {
+    public void acknowledge(ConnectionContext context, final String clientId, final String subscriptionName, final MessageId messageId, MessageAck ack) throws IOException {
         if (ack != null && ack.isUnmatchedAck()) {
             if (LOG.isTraceEnabled()) {
                 LOG.trace("ignoring unmatched selector ack for: " + messageId + ", cleanup will get to this message after subsequent acks.");
             }
             return;
         }
+        GroupCommitWriter groupCommitWriter = persistenceAdapter.getGroupCommitWriter(context);
+        if (groupCommitWriter != null) {
+            try {
+                groupCommitWriter.execute(new GroupCommitWriter.Operation() {
+                    protected void execute(TransactionContext c) throws SQLException, IOException {
+                        setLastAck(c, null, clientId, subscriptionName, messageId);
+                    }
+                });
+            } catch (IOException e) {
+                throw IOExceptionSupport.create("Failed to store acknowledgment for: " + clientId + " on message " + messageId + " in container: " + e, e);
+            }
+            return;
+        }
         TransactionContext c = persistenceAdapter.getTransactionContext(context);
         try {
-            long[] res = getCachedStoreSequenceId(c, destination, messageId);
-            if (this.isPrioritizedMessages()) {
-                adapter.doSetLastAckWithPriority(c, destination, context != null ? context.getXid() : null, clientId, subscriptionName, res[0], res[1]);
-            } else {
-                adapter.doSetLastAck(c, destination, context != null ? context.getXid() : null, clientId, subscriptionName, res[0], res[1]);
-            }
-            if (LOG.isTraceEnabled()) {
-                LOG.trace(clientId + ":" + subscriptionName + " ack, seq: " + res[0] + ", priority: " + res[1] + " mid:" + messageId);
-            }
+            setLastAck(c, context != null ? context.getXid() : null, clientId, subscriptionName, messageId);
         } catch (SQLException e) {
             JDBCPersistenceAdapter.log("JDBC Failure: ", e);
             throw IOExceptionSupport.create("Failed to store acknowledgment for: " + clientId + " on message " + messageId + " in container: " + e, e);
@@ -93,6 +99,18 @@ public class JDBCTopicMessageStore extends JDBCMessageStore implements TopicMess
         }
     }
 
+    private void setLastAck(TransactionContext c, XATransactionId xid, String clientId, String subscriptionName, MessageId messageId) throws SQLException, IOException {
+        long[] res = getCachedStoreSequenceId(c, destination, messageId);
+        if (this.isPrioritizedMessages()) {
+            adapter.doSetLastAckWithPriority(c, destination, xid, clientId, subscriptionName, res[0], res[1]);
+        } else {
+            adapter.doSetLastAck(c, destination, xid, clientId, subscriptionName, res[0], res[1]);
+        }
+        if (LOG.isTraceEnabled()) {
+            LOG.trace(clientId + ":" + subscriptionName + " ack, seq: " + res[0] + ", priority: " + res[1] + " mid:" + messageId);
+        }
+    }
+
     public long[] getCachedStoreSequenceId(TransactionContext transactionContext, ActiveMQDestination destination, MessageId messageId) throws SQLException, IOException {
         long[] val = null;
         sequenceIdCacheSizeLock.readLock().lock();
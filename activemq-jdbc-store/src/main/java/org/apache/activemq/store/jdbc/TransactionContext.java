@@ -210,6 +210,10 @@ public class TransactionContext {
         }
     }
 
+    public boolean isInTransaction() {
+        return inTx;
+    }
+
     public PreparedStatement getAddMessageStatement() {
         return addMessageStatement;
     }
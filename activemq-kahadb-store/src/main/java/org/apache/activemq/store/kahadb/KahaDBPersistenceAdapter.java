@@ -233,6 +233,7 @@ public class KahaDBPersistenceAdapter extends LockableServiceSupport implements
                     return letter.getJournal().getFileMap().keySet().toString();
                 }
             });
+            view.setPersistenceAdapterStatistics(letter.getCheckpointStatistics());
             AnnotatedMBean.registerMBean(brokerService.getManagementContext(), view,
                     createPersistenceAdapterName(brokerService.getBrokerObjectName().toString(), toString()));
         }
@@ -612,6 +613,50 @@ public class KahaDBPersistenceAdapter extends LockableServiceSupport implements
         return letter.isEnableIndexPageCaching();
     }
 
+    /**
+     * When set the journal appends through a FileChannel gathering write into
+     * preallocated data files instead of copying each batch into a buffer first.
+     *
+     * @param useJournalFileChannelAppender
+     */
+    public void setUseJournalFileChannelAppender(boolean useJournalFileChannelAppender) {
+        letter.setUseJournalFileChannelAppender(useJournalFileChannelAppender);
+    }
+
+    public boolean isUseJournalFileChannelAppender() {
+        return letter.isUseJournalFileChannelAppender();
+    }
+
+    /**
+     * When set, non transactional message adds and acks for different
+     * destinations update the index in parallel, serializing only on a
+     * per destination lock stripe instead of the single index lock.
+     *
+     * @param concurrentIndexUpdates
+     */
+    public void setConcurrentIndexUpdates(boolean concurrentIndexUpdates) {
+        letter.setConcurrentIndexUpdates(concurrentIndexUpdates);
+    }
+
+    public boolean isConcurrentIndexUpdates() {
+        return letter.isConcurrentIndexUpdates();
+    }
+
+    /**
+     * When set, a checkpoint only holds the index locks while it takes a
+     * snapshot of the dirty index pages, the snapshot is then written and
+     * synced to disk without blocking store updates.
+     *
+     * @param asyncCheckpoint
+     */
+    public void setAsyncCheckpoint(boolean asyncCheckpoint) {
+        letter.setAsyncCheckpoint(asyncCheckpoint);
+    }
+
+    public boolean isAsyncCheckpoint() {
+        return letter.isAsyncCheckpoint();
+    }
+
     public KahaDBStore getStore() {
         return letter;
     }
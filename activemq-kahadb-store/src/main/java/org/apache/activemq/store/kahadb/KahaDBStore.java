@@ -988,7 +988,9 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
     public long getLastProducerSequenceId(ProducerId id) {
         indexLock.readLock().lock();
         try {
-            return metadata.producerSequenceIdTracker.getLastSeqId(id);
+            synchronized (metadata.producerSequenceIdTracker) {
+                return metadata.producerSequenceIdTracker.getLastSeqId(id);
+            }
         } finally {
             indexLock.readLock().unlock();
         }
@@ -47,6 +47,7 @@ import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.activemq.ActiveMQMessageAuditNoSync;
@@ -55,6 +56,7 @@ import org.apache.activemq.broker.BrokerServiceAware;
 import org.apache.activemq.command.MessageAck;
 import org.apache.activemq.command.TransactionId;
 import org.apache.activemq.protobuf.Buffer;
+import org.apache.activemq.store.PersistenceAdapterStatistics;
 import org.apache.activemq.store.kahadb.data.KahaAckMessageFileMapCommand;
 import org.apache.activemq.store.kahadb.data.KahaAddMessageCommand;
 import org.apache.activemq.store.kahadb.data.KahaCommitCommand;
@@ -99,6 +101,8 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
 
     public static final String PROPERTY_LOG_SLOW_ACCESS_TIME = "org.apache.activemq.store.kahadb.LOG_SLOW_ACCESS_TIME";
     public static final int LOG_SLOW_ACCESS_TIME = Integer.getInteger(PROPERTY_LOG_SLOW_ACCESS_TIME, 0);
+    public static final String PROPERTY_INDEX_LOCK_STRIPES = "org.apache.activemq.store.kahadb.INDEX_LOCK_STRIPES";
+    public static final int INDEX_LOCK_STRIPES = Integer.getInteger(PROPERTY_INDEX_LOCK_STRIPES, 64);
     public static final File DEFAULT_DIRECTORY = new File("KahaDB");
     protected static final Buffer UNMATCHED;
     static {
@@ -241,6 +245,12 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     private boolean enableIndexDiskSyncs = true;
     private boolean enableIndexRecoveryFile = true;
     private boolean enableIndexPageCaching = true;
+    private boolean useJournalFileChannelAppender = false;
+    private boolean concurrentIndexUpdates = false;
+    private boolean asyncCheckpoint = false;
+    // Journal files found by a cleanup that can go once the pending async checkpoint is on disk.
+    private Set<Integer> pendingGcCandidates;
+    private final PersistenceAdapterStatistics checkpointStatistics = new PersistenceAdapterStatistics();
     ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
 
     public MessageDatabase() {
@@ -1074,17 +1084,12 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
             List<Operation> inflightTx = getInflightTx(command.getTransactionInfo(), location);
             inflightTx.add(new AddOpperation(command, location));
         } else {
-            this.indexLock.writeLock().lock();
-            try {
-                pageFile.tx().execute(new Transaction.Closure<IOException>() {
-                    @Override
-                    public void execute(Transaction tx) throws IOException {
-                        upadateIndex(tx, command, location);
-                    }
-                });
-            } finally {
-                this.indexLock.writeLock().unlock();
-            }
+            updateDestinationIndex(command.getDestination(), new Transaction.Closure<IOException>() {
+                @Override
+                public void execute(Transaction tx) throws IOException {
+                    upadateIndex(tx, command, location);
+                }
+            });
         }
     }
 
@@ -1094,17 +1099,64 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
            List<Operation> inflightTx = getInflightTx(command.getTransactionInfo(), location);
            inflightTx.add(new RemoveOpperation(command, location));
         } else {
-            this.indexLock.writeLock().lock();
+            updateDestinationIndex(command.getDestination(), new Transaction.Closure<IOException>() {
+                @Override
+                public void execute(Transaction tx) throws IOException {
+                    updateIndex(tx, command, location);
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs an index update that only touches the given destination. When
+     * concurrentIndexUpdates is enabled and the destination is already loaded the
+     * update shares the index read lock and is only serialized against updates
+     * to destinations on the same lock stripe, otherwise it takes the index
+     * write lock.
+     */
+    private void updateDestinationIndex(KahaDestination destination, Transaction.Closure<IOException> closure) throws IOException {
+        if (concurrentIndexUpdates) {
+            String key = key(destination);
+            this.indexLock.readLock().lock();
             try {
-                pageFile.tx().execute(new Transaction.Closure<IOException>() {
-                    @Override
-                    public void execute(Transaction tx) throws IOException {
-                        updateIndex(tx, command, location);
+                if (storedDestinations.containsKey(key)) {
+                    ReentrantLock destinationLock = destinationIndexLocks[(key.hashCode() & 0x7fffffff) % destinationIndexLocks.length];
+                    destinationLock.lock();
+                    try {
+                        pageFile.tx().execute(closure);
+                    } finally {
+                        destinationLock.unlock();
                     }
-                });
+                    return;
+                }
             } finally {
-                this.indexLock.writeLock().unlock();
+                this.indexLock.readLock().unlock();
+            }
+        }
+
+        this.indexLock.writeLock().lock();
+        try {
+            pageFile.tx().execute(closure);
+        } finally {
+            this.indexLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Records the location of the last index update. Concurrent index updates
+     * can finish out of journal order so in that mode the location only ever
+     * moves forward.
+     */
+    private void updateLastUpdate(Location location) {
+        if (concurrentIndexUpdates) {
+            synchronized (destinationIndexLocks) {
+                if (metadata.lastUpdate == null || metadata.lastUpdate.compareTo(location) < 0) {
+                    metadata.lastUpdate = location;
+                }
             }
+        } else {
+            metadata.lastUpdate = location;
         }
     }
 
@@ -1231,6 +1283,15 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     // /////////////////////////////////////////////////////////////////
 
     protected final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+    private final ReentrantLock[] destinationIndexLocks = createDestinationIndexLocks();
+
+    private static ReentrantLock[] createDestinationIndexLocks() {
+        ReentrantLock[] locks = new ReentrantLock[Math.max(1, INDEX_LOCK_STRIPES)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
     private final HashSet<Integer> journalFilesBeingReplicated = new HashSet<Integer>();
 
     void upadateIndex(Transaction tx, KahaAddMessageCommand command, Location location) throws IOException {
@@ -1268,8 +1329,10 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
             sd.locationIndex.put(tx, location, previous);
         }
         // record this id in any event, initial send or recovery
-        metadata.producerSequenceIdTracker.isDuplicate(command.getMessageId());
-        metadata.lastUpdate = location;
+        synchronized (metadata.producerSequenceIdTracker) {
+            metadata.producerSequenceIdTracker.isDuplicate(command.getMessageId());
+        }
+        updateLastUpdate(location);
     }
 
     abstract void rollbackStatsOnDuplicate(KahaDestination commandDestination);
@@ -1316,19 +1379,21 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
             }
 
         }
-        metadata.lastUpdate = ackLocation;
+        updateLastUpdate(ackLocation);
     }
 
     private void recordAckMessageReferenceLocation(Location ackLocation, Location messageLocation) {
-        Set<Integer> referenceFileIds = metadata.ackMessageFileMap.get(Integer.valueOf(ackLocation.getDataFileId()));
-        if (referenceFileIds == null) {
-            referenceFileIds = new HashSet<Integer>();
-            referenceFileIds.add(messageLocation.getDataFileId());
-            metadata.ackMessageFileMap.put(ackLocation.getDataFileId(), referenceFileIds);
-        } else {
-            Integer id = Integer.valueOf(messageLocation.getDataFileId());
-            if (!referenceFileIds.contains(id)) {
-                referenceFileIds.add(id);
+        synchronized (metadata.ackMessageFileMap) {
+            Set<Integer> referenceFileIds = metadata.ackMessageFileMap.get(Integer.valueOf(ackLocation.getDataFileId()));
+            if (referenceFileIds == null) {
+                referenceFileIds = new HashSet<Integer>();
+                referenceFileIds.add(messageLocation.getDataFileId());
+                metadata.ackMessageFileMap.put(ackLocation.getDataFileId(), referenceFileIds);
+            } else {
+                Integer id = Integer.valueOf(messageLocation.getDataFileId());
+                if (!referenceFileIds.contains(id)) {
+                    referenceFileIds.add(id);
+                }
             }
         }
     }
@@ -1401,6 +1466,9 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     }
 
     private void checkpointUpdate(final boolean cleanup) throws IOException {
+        long start = System.currentTimeMillis();
+        PageFile.Flush flush = null;
+        Set<Integer> gcCandidates = null;
         checkpointLock.writeLock().lock();
         try {
             this.indexLock.writeLock().lock();
@@ -1411,13 +1479,32 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                         checkpointUpdate(tx, cleanup);
                     }
                 });
+                if (asyncCheckpoint) {
+                    // Snapshot the index, metadata page included, while nothing can
+                    // update it.  The snapshot is written once the locks are released.
+                    flush = pageFile.beginFlush();
+                    gcCandidates = pendingGcCandidates;
+                    pendingGcCandidates = null;
+                }
             } finally {
                 this.indexLock.writeLock().unlock();
             }
 
         } finally {
             checkpointLock.writeLock().unlock();
+            checkpointStatistics.getCheckpointBlockingTime().addTime(System.currentTimeMillis() - start);
+        }
+
+        if (flush != null) {
+            flush.complete();
+            if (gcCandidates != null) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Cleanup removing the data files: " + gcCandidates);
+                }
+                journal.removeDataFiles(gcCandidates);
+            }
         }
+        checkpointStatistics.getCheckpointTime().addTime(System.currentTimeMillis() - start);
     }
 
     /**
@@ -1436,7 +1523,9 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         Location[] inProgressTxRange = getInProgressTxLocationRange();
         metadata.firstInProgressTransactionLocation = inProgressTxRange[0];
         tx.store(metadata.page, metadataMarshaller, true);
-        pageFile.flush();
+        if (!asyncCheckpoint) {
+            pageFile.flush();
+        }
 
         if( cleanup ) {
 
@@ -1608,10 +1697,15 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
             }
 
             if (!gcCandidateSet.isEmpty()) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Cleanup removing the data files: " + gcCandidateSet);
+                if (asyncCheckpoint) {
+                    // Only safe to remove once the index that no longer refers to them is on disk.
+                    pendingGcCandidates = gcCandidateSet;
+                } else {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Cleanup removing the data files: " + gcCandidateSet);
+                    }
+                    journal.removeDataFiles(gcCandidateSet);
                 }
-                journal.removeDataFiles(gcCandidateSet);
             }
         }
 
@@ -2370,6 +2464,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         manager.setArchiveDataLogs(isArchiveDataLogs());
         manager.setSizeAccumulator(journalSize);
         manager.setEnableAsyncDiskSync(isEnableJournalDiskSyncs());
+        manager.setFileChannelAppender(isUseJournalFileChannelAppender());
         if (getDirectoryArchive() != null) {
             IOHelper.mkdirs(getDirectoryArchive());
             manager.setDirectoryArchive(getDirectoryArchive());
@@ -2608,6 +2703,44 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         return enableIndexPageCaching;
     }
 
+    public boolean isConcurrentIndexUpdates() {
+        return concurrentIndexUpdates;
+    }
+
+    /**
+     * Allows non transactional message adds and acks for different destinations
+     * to update the index in parallel rather than one at a time under the
+     * index write lock.
+     */
+    public void setConcurrentIndexUpdates(boolean concurrentIndexUpdates) {
+        this.concurrentIndexUpdates = concurrentIndexUpdates;
+    }
+
+    public boolean isUseJournalFileChannelAppender() {
+        return useJournalFileChannelAppender;
+    }
+
+    public void setUseJournalFileChannelAppender(boolean useJournalFileChannelAppender) {
+        this.useJournalFileChannelAppender = useJournalFileChannelAppender;
+    }
+
+    public boolean isAsyncCheckpoint() {
+        return asyncCheckpoint;
+    }
+
+    /**
+     * Snapshots the dirty index pages under the checkpoint and index locks and
+     * writes them out once the locks are released, so store updates are only
+     * held up for the snapshot rather than for the page file write and sync.
+     */
+    public void setAsyncCheckpoint(boolean asyncCheckpoint) {
+        this.asyncCheckpoint = asyncCheckpoint;
+    }
+
+    public PersistenceAdapterStatistics getCheckpointStatistics() {
+        return checkpointStatistics;
+    }
+
     // /////////////////////////////////////////////////////////////////
     // Internal conversion methods.
     // /////////////////////////////////////////////////////////////////
@@ -0,0 +1,291 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Adler32;
+import java.util.zip.Checksum;
+
+import org.apache.activemq.store.kahadb.disk.util.DataByteArrayOutputStream;
+import org.apache.activemq.util.ByteSequence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A batching writer that appends to the data files through a {@link FileChannel}.
+ * Rather than copying every record of a batch into one contiguous buffer, each
+ * record header and payload is handed to the channel as its own buffer and the
+ * whole batch goes out in a single gathering write. Syncs use
+ * {@link FileChannel#force(boolean)} without forcing the file metadata.
+ * <p/>
+ * So that appends do not have to allocate new blocks, the next data file is
+ * zero filled up to the preferred length by a background thread while the
+ * current one is written, and renamed into place when the journal rolls over.
+ * When it is not ready in time the new file is grown sparse, as by the
+ * {@link DataFileAppender}.
+ */
+class FileChannelDataFileAppender extends DataFileAppender {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileChannelDataFileAppender.class);
+
+    private static final int PREALLOCATE_CHUNK_SIZE = 1024 * 64;
+
+    private final ByteBuffer batchHeader = ByteBuffer.allocate(Journal.BATCH_CONTROL_RECORD_SIZE);
+    private final File preallocatedFile;
+    private Thread preallocator;
+
+    public FileChannelDataFileAppender(Journal dataManager) {
+        super(dataManager);
+        // does not parse as a data file number, so the journal never loads it
+        preallocatedFile = new File(dataManager.getDirectory(), dataManager.getFilePrefix() + "preallocated.tmp");
+    }
+
+    /**
+     * The async processing loop that writes to the data files and does the
+     * force calls. Since the file sync() call is the slowest of all the
+     * operations, this algorithm tries to 'batch' or group together several
+     * file sync() requests into a single file sync() call. The batching is
+     * accomplished attaching the same CountDownLatch instance to every force
+     * request in a group.
+     */
+    @Override
+    protected void processQueue() {
+        DataFile dataFile = null;
+        RandomAccessFile file = null;
+        FileChannel channel = null;
+        WriteBatch wb = null;
+        try {
+
+            while (true) {
+
+                // Block till we get a command.
+                synchronized (enqueueMutex) {
+                    while (true) {
+                        if (nextWriteBatch != null) {
+                            wb = nextWriteBatch;
+                            nextWriteBatch = null;
+                            break;
+                        }
+                        if (shutdown) {
+                            return;
+                        }
+                        enqueueMutex.wait();
+                    }
+                    enqueueMutex.notifyAll();
+                }
+
+                if (dataFile != wb.dataFile) {
+                    if (file != null) {
+                        file.setLength(dataFile.getLength());
+                        dataFile.closeRandomAccessFile(file);
+                    }
+                    dataFile = wb.dataFile;
+                    usePreallocated(dataFile.getFile());
+                    file = dataFile.openRandomAccessFile();
+                    channel = file.getChannel();
+                    if (file.length() < journal.preferedFileLength) {
+                        file.setLength(journal.preferedFileLength);
+                    }
+                    preallocateNext();
+                }
+
+                // One buffer for the batch control record plus a header and a
+                // payload buffer for each record, in the order they hit the disk.
+                ByteBuffer[] buffers = new ByteBuffer[1 + (wb.writes.size() * 2)];
+                Checksum checksum = journal.isChecksum() ? new Adler32() : null;
+                boolean forceToDisk = false;
+                int batchLength = 0;
+                int i = 1;
+                Journal.WriteCommand write = wb.writes.getHead();
+                while (write != null) {
+                    forceToDisk |= write.sync | (syncOnComplete && write.onComplete != null);
+
+                    ByteBuffer recordHeader = ByteBuffer.allocate(Journal.RECORD_HEAD_SPACE);
+                    recordHeader.putInt(write.location.getSize());
+                    recordHeader.put(write.location.getType());
+                    recordHeader.flip();
+
+                    ByteSequence data = write.data;
+                    if (checksum != null) {
+                        checksum.update(recordHeader.array(), 0, Journal.RECORD_HEAD_SPACE);
+                        checksum.update(data.getData(), data.getOffset(), data.getLength());
+                    }
+
+                    buffers[i++] = recordHeader;
+                    buffers[i++] = ByteBuffer.wrap(data.getData(), data.getOffset(), data.getLength());
+                    batchLength += Journal.RECORD_HEAD_SPACE + data.getLength();
+                    write = write.getNext();
+                }
+
+                batchHeader.clear();
+                batchHeader.put(Journal.BATCH_CONTROL_RECORD_HEADER);
+                batchHeader.putInt(batchLength);
+                batchHeader.putLong(checksum != null ? checksum.getValue() : 0);
+                batchHeader.flip();
+                buffers[0] = batchHeader;
+
+                if (maxStat > 0) {
+                    if (statIdx < maxStat) {
+                        stats[statIdx++] = Journal.BATCH_CONTROL_RECORD_SIZE + batchLength;
+                    } else {
+                        long all = 0;
+                        for (;statIdx > 0;) {
+                            all+= stats[--statIdx];
+                        }
+                        LOG.info("Ave writeSize: " + all/maxStat);
+                    }
+                }
+
+                // Now do the 1 big gathering write.
+                channel.position(wb.offset);
+                long remaining = Journal.BATCH_CONTROL_RECORD_SIZE + batchLength;
+                while (remaining > 0) {
+                    remaining -= channel.write(buffers);
+                }
+
+                ReplicationTarget replicationTarget = journal.getReplicationTarget();
+                if( replicationTarget!=null ) {
+                    replicationTarget.replicate(wb.writes.getHead().location, toByteSequence(wb, batchLength), forceToDisk);
+                }
+
+                if (forceToDisk) {
+                    channel.force(false);
+                }
+
+                Journal.WriteCommand lastWrite = wb.writes.getTail();
+                journal.setLastAppendLocation(lastWrite.location);
+
+                signalDone(wb);
+            }
+        } catch (IOException e) {
+            synchronized (enqueueMutex) {
+                firstAsyncException = e;
+                if (wb != null) {
+                    wb.exception.set(e);
+                    wb.latch.countDown();
+                }
+                if (nextWriteBatch != null) {
+                    nextWriteBatch.exception.set(e);
+                    nextWriteBatch.latch.countDown();
+                }
+            }
+        } catch (InterruptedException e) {
+        } finally {
+            try {
+                if (file != null) {
+                    dataFile.closeRandomAccessFile(file);
+                }
+            } catch (Throwable ignore) {
+            }
+            try {
+                if (preallocator != null) {
+                    preallocator.join();
+                }
+            } catch (InterruptedException ignore) {
+            }
+            preallocatedFile.delete();
+            shutdownDone.countDown();
+            running = false;
+        }
+    }
+
+    /**
+     * Moves the preallocated file into place as the given new data file, when
+     * it has been zero filled in time.
+     */
+    private void usePreallocated(File target) {
+        if (preallocator == null || preallocator.isAlive() || target.exists()) {
+            return;
+        }
+        preallocator = null;
+        if (preallocatedFile.length() == journal.preferedFileLength && !preallocatedFile.renameTo(target)) {
+            LOG.debug("Could not rename " + preallocatedFile + " to " + target);
+        }
+    }
+
+    /**
+     * Starts zero filling the file for the next data file, unless the last one
+     * is still being filled or has not been used yet.
+     */
+    private void preallocateNext() {
+        if (preallocator != null) {
+            return;
+        }
+        final int length = journal.preferedFileLength;
+        preallocator = new Thread("ActiveMQ Data File Preallocator") {
+            @Override
+            public void run() {
+                try {
+                    RandomAccessFile file = new RandomAccessFile(preallocatedFile, "rw");
+                    try {
+                        preallocate(file.getChannel(), length);
+                    } finally {
+                        file.close();
+                    }
+                } catch (IOException e) {
+                    LOG.debug("Could not preallocate " + preallocatedFile + ": " + e);
+                    preallocatedFile.delete();
+                }
+            }
+        };
+        preallocator.setDaemon(true);
+        preallocator.start();
+    }
+
+    /**
+     * Zero fills the file up to the given length so that the blocks backing the
+     * data file are allocated up front rather than on every append.
+     */
+    private static void preallocate(FileChannel channel, int length) throws IOException {
+        long position = channel.size();
+        if (position > length) {
+            channel.truncate(length);
+        }
+        if (position >= length) {
+            return;
+        }
+        ByteBuffer zeros = ByteBuffer.allocateDirect(PREALLOCATE_CHUNK_SIZE);
+        while (position < length) {
+            zeros.clear();
+            if (length - position < zeros.capacity()) {
+                zeros.limit((int) (length - position));
+            }
+            position += channel.write(zeros, position);
+        }
+    }
+
+    /**
+     * Rebuilds the batch as one contiguous sequence, only needed when the batch
+     * has to be handed on to a {@link ReplicationTarget}.
+     */
+    private ByteSequence toByteSequence(WriteBatch wb, int batchLength) throws IOException {
+        DataByteArrayOutputStream buff = new DataByteArrayOutputStream(Journal.BATCH_CONTROL_RECORD_SIZE + batchLength);
+        buff.write(batchHeader.array(), 0, Journal.BATCH_CONTROL_RECORD_SIZE);
+        Journal.WriteCommand write = wb.writes.getHead();
+        while (write != null) {
+            buff.writeInt(write.location.getSize());
+            buff.writeByte(write.location.getType());
+            buff.write(write.data.getData(), write.data.getOffset(), write.data.getLength());
+            write = write.getNext();
+        }
+        return buff.toByteSequence();
+    }
+}
@@ -119,6 +119,7 @@ public class Journal {
     protected boolean checksum;
     protected boolean checkForCorruptionOnStartup;
     protected boolean enableAsyncDiskSync = true;
+    protected boolean fileChannelAppender;
     private Timer timer;
 
     public synchronized void start() throws IOException {
@@ -131,7 +132,7 @@ public class Journal {
         started = true;
         preferedFileLength = Math.max(PREFERED_DIFF, getMaxFileLength() - PREFERED_DIFF);
 
-        appender = callerBufferAppender ? new CallerBufferingDataFileAppender(this) : new DataFileAppender(this);
+        appender = createAppender();
 
         File[] files = directory.listFiles(new FilenameFilter() {
             public boolean accept(File dir, String n) {
@@ -410,10 +411,17 @@ public class Journal {
 
         // reopen open file handles...
         accessorPool = new DataFileAccessorPool(this);
-        appender = new DataFileAppender(this);
+        appender = createAppender();
         return result;
     }
 
+    protected FileAppender createAppender() {
+        if (fileChannelAppender) {
+            return new FileChannelDataFileAppender(this);
+        }
+        return callerBufferAppender ? new CallerBufferingDataFileAppender(this) : new DataFileAppender(this);
+    }
+
     public synchronized void removeDataFiles(Set<Integer> files) throws IOException {
         for (Integer key : files) {
             // Can't remove the data file (or subsequent files) that is currently being written to.
@@ -760,6 +768,19 @@ public class Journal {
         return enableAsyncDiskSync;
     }
 
+    public boolean isFileChannelAppender() {
+        return fileChannelAppender;
+    }
+
+    /**
+     * Appends batches through a FileChannel gathering write into preallocated
+     * data files, syncing with force(false), rather than through a buffered
+     * RandomAccessFile write.
+     */
+    public void setFileChannelAppender(boolean fileChannelAppender) {
+        this.fileChannelAppender = fileChannelAppender;
+    }
+
     public static class WriteCommand extends LinkedNode<WriteCommand> {
         public final Location location;
         public final ByteSequence data;
@@ -129,10 +129,15 @@ public class PageFile {
 
     // Keeps track of writes that are being written to disk.
     private TreeMap<Long, PageWrite> writes = new TreeMap<Long, PageWrite>();
+    // Set while a write batch is between being taken from the write cache and
+    // landing on disk, guarded by the writes monitor.
+    private boolean writeBatchInProgress;
 
     // Keeps track of free pages.
     private final AtomicLong nextFreePageId = new AtomicLong();
     private SequenceSet freeList = new SequenceSet();
+    // Guards the free list against concurrent allocation by index updates that run in parallel.
+    private final Object freeListMutex = new Object();
 
     private AtomicLong nextTxid = new AtomicLong();
 
@@ -525,6 +530,71 @@ public class PageFile {
         }
     }
 
+    /**
+     * Takes a snapshot of all the buffered writes so that they can be written and
+     * synced to disk later by calling {@link Flush#complete()}, possibly from another
+     * thread.  Pages can be updated again as soon as this method returns, those updates
+     * are kept in the write cache and go out with a later batch.  The flush must be
+     * completed before any other write batch can go to disk.
+     *
+     * @return the snapshot of the buffered writes.
+     * @throws IOException If an disk error occurred.
+     */
+    public Flush beginFlush() throws IOException {
+
+        if (enabledWriteThread && stopWriter.get()) {
+            throw new IOException("Page file already stopped: checkpointing is not allowed");
+        }
+
+        synchronized (writes) {
+            awaitWriteBatch();
+            if (writes.isEmpty()) {
+                return new Flush(null, null);
+            }
+            ArrayList<PageWrite> batch = beginWriteBatch();
+            CountDownLatch checkpointLatch = this.checkpointLatch;
+            this.checkpointLatch = null;
+            return new Flush(batch, checkpointLatch);
+        }
+    }
+
+    /**
+     * A snapshot of buffered page writes started with {@link PageFile#beginFlush()}.
+     */
+    public class Flush {
+
+        private ArrayList<PageWrite> batch;
+        private final CountDownLatch checkpointLatch;
+
+        private Flush(ArrayList<PageWrite> batch, CountDownLatch checkpointLatch) {
+            this.batch = batch;
+            this.checkpointLatch = checkpointLatch;
+        }
+
+        /**
+         * Writes and syncs the snapshot to disk, only the first call does any work.
+         *
+         * @throws IOException If an disk error occurred.
+         */
+        public void complete() throws IOException {
+            ArrayList<PageWrite> batch;
+            synchronized (this) {
+                batch = this.batch;
+                this.batch = null;
+            }
+            if (batch != null) {
+                writeBatch(batch, checkpointLatch);
+            }
+        }
+
+        /**
+         * @return the number of pages in the snapshot which still have to be written.
+         */
+        public synchronized int size() {
+            return batch == null ? 0 : batch.size();
+        }
+    }
+
 
     public String toString() {
         return "Page File: " + getMainPageFile();
@@ -830,7 +900,10 @@ public class PageFile {
             throw new IllegalArgumentException("The allocation count must be larger than zero");
         }
 
-        Sequence seq = freeList.removeFirstSequence(count);
+        Sequence seq;
+        synchronized (freeListMutex) {
+            seq = freeList.removeFirstSequence(count);
+        }
 
         // We may need to create new free pages...
         if (seq == null) {
@@ -877,7 +950,9 @@ public class PageFile {
     }
 
     public void freePage(long pageId) {
-        freeList.add(pageId);
+        synchronized (freeListMutex) {
+            freeList.add(pageId);
+        }
         removeFromCache(pageId);
     }
 
@@ -1023,19 +1098,10 @@ public class PageFile {
         CountDownLatch checkpointLatch;
         ArrayList<PageWrite> batch;
         synchronized (writes) {
-            // If there is not enough to write, wait for a notification...
-
-            batch = new ArrayList<PageWrite>(writes.size());
-            // build a write batch from the current write cache.
-            for (PageWrite write : writes.values()) {
-                batch.add(write);
-                // Move the current write to the diskBound write, this lets folks update the
-                // page again without blocking for this write.
-                write.begin();
-                if (write.diskBound == null && write.diskBoundLocation == -1) {
-                    batch.remove(write);
-                }
-            }
+            // Only one batch can be on its way to disk at a time.
+            awaitWriteBatch();
+
+            batch = beginWriteBatch();
 
             // Grab on to the existing checkpoint latch cause once we do this write we can
             // release the folks that were waiting for those writes to hit disk.
@@ -1043,6 +1109,56 @@ public class PageFile {
             this.checkpointLatch = null;
         }
 
+        writeBatch(batch, checkpointLatch);
+    }
+
+    /**
+     * Waits for the write batch that is currently being written to land on disk.
+     * Must be called while holding the writes monitor.
+     */
+    private void awaitWriteBatch() throws InterruptedIOException {
+        while (writeBatchInProgress) {
+            try {
+                writes.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    /**
+     * Builds a write batch from the current write cache.  Must be called while holding
+     * the writes monitor.
+     */
+    private ArrayList<PageWrite> beginWriteBatch() {
+        ArrayList<PageWrite> batch = new ArrayList<PageWrite>(writes.size());
+        for (PageWrite write : writes.values()) {
+            batch.add(write);
+            // Move the current write to the diskBound write, this lets folks update the
+            // page again without blocking for this write.
+            write.begin();
+            if (write.diskBound == null && write.diskBoundLocation == -1) {
+                batch.remove(write);
+            }
+        }
+        writeBatchInProgress = true;
+        return batch;
+    }
+
+    private void writeBatch(ArrayList<PageWrite> batch, CountDownLatch checkpointLatch) throws IOException {
+        try {
+            doWriteBatch(batch, checkpointLatch);
+        } finally {
+            synchronized (writes) {
+                writeBatchInProgress = false;
+                writes.notifyAll();
+            }
+        }
+    }
+
+    private void doWriteBatch(ArrayList<PageWrite> batch, CountDownLatch checkpointLatch) throws IOException {
+
         Checksum checksum = new Adler32();
         if (enableRecoveryFile) {
             recoveryFile.seek(RECOVERY_FILE_HEADER_SIZE);
@@ -19,6 +19,8 @@ package org.apache.activemq.store.kahadb.disk.util;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -77,6 +79,9 @@ public class DiskBenchmark {
         
         public int syncWrites;
         public long syncWriteDuration;
+
+        public int channelSyncWrites;
+        public long channelSyncWriteDuration;
         
         public int reads;
         public long readDuration;
@@ -94,6 +99,11 @@ public class DiskBenchmark {
             "  "+getSyncWriteRate()+" writes/second.\n"+
             "  "+getSyncWriteSizeRate()+" megs/second.\n"+
             "\n"+
+            "Channel Sync Writes: \n" +
+            "  "+channelSyncWrites+" writes of size "+size+" written in "+(channelSyncWriteDuration/1000.0)+" seconds.\n"+
+            "  "+getChannelSyncWriteRate()+" writes/second.\n"+
+            "  "+getChannelSyncWriteSizeRate()+" megs/second.\n"+
+            "\n"+
             "Reads: \n" +
             "  "+reads+" reads of size "+size+" read in "+(readDuration/1000.0)+" seconds.\n"+
             "  "+getReadRate()+" writes/second.\n"+
@@ -129,6 +139,21 @@ public class DiskBenchmark {
             rc /= (syncWriteDuration/1000.0); // get rate. 
             return rc;
         }
+
+        private float getChannelSyncWriteSizeRate() {
+            float rc = channelSyncWrites;
+            rc *= size;
+            rc /= (1024*1024); // put it in megs
+            rc /= (channelSyncWriteDuration/1000.0); // get rate. 
+            return rc;
+        }
+
+        private float getChannelSyncWriteRate() {
+            float rc = channelSyncWrites;
+            rc /= (channelSyncWriteDuration/1000.0); // get rate. 
+            return rc;
+        }
+
         private float getReadSizeRate() {
             float rc = reads;
             rc *= size;
@@ -183,6 +208,22 @@ public class DiskBenchmark {
             this.syncWriteDuration = syncWriteDuration;
         }
 
+        public int getChannelSyncWrites() {
+            return channelSyncWrites;
+        }
+
+        public void setChannelSyncWrites(int channelSyncWrites) {
+            this.channelSyncWrites = channelSyncWrites;
+        }
+
+        public long getChannelSyncWriteDuration() {
+            return channelSyncWriteDuration;
+        }
+
+        public void setChannelSyncWriteDuration(long channelSyncWriteDuration) {
+            this.channelSyncWriteDuration = channelSyncWriteDuration;
+        }
+
         public int getReads() {
             return reads;
         }
@@ -267,6 +308,36 @@ public class DiskBenchmark {
         rc.syncWrites = ioCount;
         rc.syncWriteDuration = (now-start);
 
+        // Same sync writes again but through a FileChannel forcing only the data
+        // and not the file metadata, the way the FileChannel journal appender does.
+        raf = new RandomAccessFile(file, "rw");
+        FileChannel channel = raf.getChannel();
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        start = System.currentTimeMillis();
+        now = System.currentTimeMillis();
+        ioCount=0;
+        while( true ) {
+            if( (now-start)>sampleInterval ) {
+                break;
+            }
+            for( long i=0; i+data.length < size; i+=data.length) {
+                buffer.clear();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, i + buffer.position());
+                }
+                channel.force(false);
+                ioCount++;
+                now = System.currentTimeMillis();
+                if( (now-start)>sampleInterval ) {
+                    break;
+                }
+            }
+        }
+        raf.close();
+        now = System.currentTimeMillis();
+        rc.channelSyncWrites = ioCount;
+        rc.channelSyncWriteDuration = (now-start);
+
         raf = new RandomAccessFile(file, "rw");
         start = System.currentTimeMillis();
         now = System.currentTimeMillis();
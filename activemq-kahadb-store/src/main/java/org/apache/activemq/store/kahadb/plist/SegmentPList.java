@@ -0,0 +1,373 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.plist;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.activemq.store.PList;
+import org.apache.activemq.store.PListEntry;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.IOHelper;
+
+/**
+ * A list of the {@link SegmentPListStore}. The order of the list is held in
+ * memory as a linked list of entries that point at their payload in one of the
+ * segment files of the list, the entry itself is the locator handed out by the
+ * add methods. Payloads are appended to the current segment through a small
+ * write buffer and read back with positional reads.
+ */
+public class SegmentPList implements PList {
+
+    private final SegmentPListStore store;
+    private final String name;
+    private final long listId;
+    private final List<Segment> segments = new ArrayList<Segment>();
+    private long nextSegmentId;
+    private Segment writeSegment;
+    private byte[] writeBuffer;
+    private Entry head;
+    private Entry tail;
+    private long size;
+
+    SegmentPList(SegmentPListStore store, String name, long listId) {
+        this.store = store;
+        this.name = name;
+        this.listId = listId;
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public synchronized void destroy() throws IOException {
+        for (Entry entry = head; entry != null; entry = entry.next) {
+            entry.removed = true;
+        }
+        head = tail = null;
+        size = 0;
+        IOException failure = null;
+        for (Segment segment : segments) {
+            try {
+                segment.delete();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        segments.clear();
+        writeSegment = null;
+        writeBuffer = null;
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public synchronized Object addLast(String id, ByteSequence bs) throws IOException {
+        Entry entry = write(id, bs);
+        entry.prev = tail;
+        if (tail != null) {
+            tail.next = entry;
+        } else {
+            head = entry;
+        }
+        tail = entry;
+        size++;
+        return entry;
+    }
+
+    @Override
+    public synchronized Object addFirst(String id, ByteSequence bs) throws IOException {
+        Entry entry = write(id, bs);
+        entry.next = head;
+        if (head != null) {
+            head.prev = entry;
+        } else {
+            tail = entry;
+        }
+        head = entry;
+        size++;
+        return entry;
+    }
+
+    @Override
+    public synchronized boolean remove(Object position) throws IOException {
+        if (!(position instanceof Entry)) {
+            return false;
+        }
+        Entry entry = (Entry) position;
+        if (entry.list() != this || entry.removed) {
+            return false;
+        }
+        unlink(entry);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public synchronized long size() {
+        return size;
+    }
+
+    @Override
+    public PListIterator iterator() throws IOException {
+        return new SegmentPListIterator();
+    }
+
+    private Entry write(String id, ByteSequence bs) throws IOException {
+        if (writeSegment == null || writeSegment.length >= store.getMaxSegmentLength()) {
+            rollSegment();
+        }
+        long offset = writeSegment.append(bs);
+        writeSegment.live++;
+        return new Entry(id, writeSegment, offset, bs.getLength());
+    }
+
+    private void rollSegment() throws IOException {
+        if (writeSegment != null) {
+            writeSegment.flush();
+            if (writeSegment.live == 0) {
+                writeSegment.delete();
+                segments.remove(writeSegment);
+            }
+        }
+        if (writeBuffer == null) {
+            writeBuffer = new byte[store.getWriteBufferSize()];
+        }
+        writeSegment = new Segment(store.createSegmentFile(listId, nextSegmentId++));
+        segments.add(writeSegment);
+    }
+
+    private void unlink(Entry entry) throws IOException {
+        // the removed entry keeps its next pointer so that an iterator that
+        // returned it can still move on
+        entry.removed = true;
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            head = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        } else {
+            tail = entry.prev;
+        }
+        size--;
+
+        Segment segment = entry.segment;
+        if (--segment.live == 0) {
+            if (segment == writeSegment) {
+                segment.truncate();
+            } else {
+                segment.delete();
+                segments.remove(segment);
+            }
+        }
+    }
+
+    private ByteSequence read(Entry entry) throws IOException {
+        return entry.segment.read(entry.offset, entry.length);
+    }
+
+    final class Entry {
+        final String id;
+        final Segment segment;
+        final long offset;
+        final int length;
+        Entry prev;
+        Entry next;
+        boolean removed;
+
+        Entry(String id, Segment segment, long offset, int length) {
+            this.id = id;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        SegmentPList list() {
+            return SegmentPList.this;
+        }
+    }
+
+    /**
+     * A segment file, the bytes from <code>flushed</code> up to
+     * <code>length</code> are still in the write buffer of the list.
+     */
+    final class Segment {
+        final File file;
+        private RandomAccessFile randomAccessFile;
+        private FileChannel channel;
+        long length;
+        long flushed;
+        int live;
+
+        Segment(File file) {
+            this.file = file;
+        }
+
+        long append(ByteSequence bs) throws IOException {
+            long offset = length;
+            int buffered = (int) (length - flushed);
+            if (buffered + bs.getLength() > writeBuffer.length) {
+                flush();
+                buffered = 0;
+            }
+            if (bs.getLength() > writeBuffer.length) {
+                write(ByteBuffer.wrap(bs.getData(), bs.getOffset(), bs.getLength()), offset);
+                flushed += bs.getLength();
+            } else {
+                System.arraycopy(bs.getData(), bs.getOffset(), writeBuffer, buffered, bs.getLength());
+            }
+            length += bs.getLength();
+            return offset;
+        }
+
+        void flush() throws IOException {
+            int buffered = (int) (length - flushed);
+            if (buffered > 0) {
+                write(ByteBuffer.wrap(writeBuffer, 0, buffered), flushed);
+                flushed = length;
+            }
+        }
+
+        ByteSequence read(long offset, int count) throws IOException {
+            byte[] data = new byte[count];
+            if (offset >= flushed) {
+                System.arraycopy(writeBuffer, (int) (offset - flushed), data, 0, count);
+            } else {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset + buffer.position()) < 0) {
+                        throw new IOException("Unexpected end of " + file + " reading " + count + " bytes at " + offset);
+                    }
+                }
+            }
+            return new ByteSequence(data);
+        }
+
+        /**
+         * Starts the segment over once nothing in it is referenced any more,
+         * which keeps a list that is drained as fast as it is filled down to a
+         * single segment.
+         */
+        void truncate() throws IOException {
+            if (channel != null) {
+                channel.truncate(0);
+            }
+            store.incrementDiskSize(-flushed);
+            length = flushed = 0;
+        }
+
+        void delete() throws IOException {
+            store.incrementDiskSize(-flushed);
+            length = flushed = 0;
+            if (randomAccessFile != null) {
+                randomAccessFile.close();
+                randomAccessFile = null;
+                channel = null;
+            }
+            if (file.exists() && !IOHelper.deleteFile(file)) {
+                throw new IOException("Failed to delete " + file);
+            }
+        }
+
+        private void write(ByteBuffer buffer, long position) throws IOException {
+            if (channel == null) {
+                randomAccessFile = new RandomAccessFile(file, "rw");
+                channel = randomAccessFile.getChannel();
+            }
+            int count = buffer.remaining();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + count - buffer.remaining());
+            }
+            store.incrementDiskSize(count);
+        }
+    }
+
+    final class SegmentPListIterator implements PListIterator {
+        private Entry last;
+
+        private Entry advance() {
+            Entry candidate = last == null ? head : last.next;
+            while (candidate != null && candidate.removed) {
+                candidate = candidate.next;
+            }
+            return candidate;
+        }
+
+        @Override
+        public boolean hasNext() {
+            synchronized (SegmentPList.this) {
+                return advance() != null;
+            }
+        }
+
+        @Override
+        public PListEntry next() {
+            synchronized (SegmentPList.this) {
+                Entry entry = advance();
+                if (entry == null) {
+                    throw new NoSuchElementException();
+                }
+                last = entry;
+                try {
+                    return new PListEntry(entry.id, read(entry), entry);
+                } catch (IOException unexpected) {
+                    NoSuchElementException e = new NoSuchElementException(unexpected.getLocalizedMessage());
+                    e.initCause(unexpected);
+                    throw e;
+                }
+            }
+        }
+
+        @Override
+        public void remove() {
+            synchronized (SegmentPList.this) {
+                if (last == null || last.removed) {
+                    throw new IllegalStateException();
+                }
+                try {
+                    unlink(last);
+                } catch (IOException unexpected) {
+                    throw new IllegalStateException(unexpected);
+                }
+            }
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + "[segments=" + segments.size() + ", size=" + size() + "]";
+    }
+}
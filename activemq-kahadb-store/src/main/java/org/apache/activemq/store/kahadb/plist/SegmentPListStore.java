@@ -0,0 +1,180 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.plist;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.activemq.store.PList;
+import org.apache.activemq.store.PListStore;
+import org.apache.activemq.util.IOHelper;
+import org.apache.activemq.util.ServiceStopper;
+import org.apache.activemq.util.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link PListStore} that gives every list its own append-only segment
+ * files and keeps the list order in memory, so there is no shared index and no
+ * store wide lock. A list only synchronizes on itself, which lets cursors that
+ * spill at the same time write in parallel. Segments are deleted as soon as
+ * every entry written to them has been removed.
+ *
+ * The content does not survive a restart, which is all the broker needs from
+ * its temporary store. Use it with
+ * {@link org.apache.activemq.broker.BrokerService#setTempDataStore(PListStore)}.
+ *
+ * @org.apache.xbean.XBean
+ */
+public class SegmentPListStore extends ServiceSupport implements PListStore {
+    static final Logger LOG = LoggerFactory.getLogger(SegmentPListStore.class);
+
+    static final String SEGMENT_FILE_PREFIX = "plist-";
+    static final String SEGMENT_FILE_SUFFIX = ".seg";
+
+    public static final int DEFAULT_MAX_SEGMENT_LENGTH = 1024 * 1024 * 4;
+    public static final int DEFAULT_WRITE_BUFFER_SIZE = 1024 * 64;
+
+    private File directory;
+    private int maxSegmentLength = DEFAULT_MAX_SEGMENT_LENGTH;
+    private int writeBufferSize = DEFAULT_WRITE_BUFFER_SIZE;
+    private final ConcurrentMap<String, SegmentPList> lists = new ConcurrentHashMap<String, SegmentPList>();
+    private final AtomicLong listIdGenerator = new AtomicLong();
+    private final AtomicLong diskSize = new AtomicLong();
+
+    @Override
+    public File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public long size() {
+        return diskSize.get();
+    }
+
+    @Override
+    public PList getPList(String name) throws Exception {
+        if (!isStarted()) {
+            throw new IllegalStateException("Not started");
+        }
+        SegmentPList result = lists.get(name);
+        if (result == null) {
+            SegmentPList created = new SegmentPList(this, name, listIdGenerator.incrementAndGet());
+            result = lists.putIfAbsent(name, created);
+            if (result == null) {
+                result = created;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean removePList(String name) throws Exception {
+        SegmentPList pl = lists.remove(name);
+        if (pl != null) {
+            pl.destroy();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        if (this.directory == null) {
+            this.directory = new File(IOHelper.getDefaultDataDirectory(), "segmentPListDB");
+        }
+        IOHelper.mkdirs(this.directory);
+        // nothing is recovered, anything left behind is from an earlier run
+        for (File file : segmentFiles()) {
+            IOHelper.deleteFile(file);
+        }
+        LOG.info(this + " started");
+    }
+
+    @Override
+    protected void doStop(ServiceStopper stopper) throws Exception {
+        List<SegmentPList> toDestroy = new ArrayList<SegmentPList>(lists.values());
+        lists.clear();
+        for (SegmentPList pl : toDestroy) {
+            try {
+                pl.destroy();
+            } catch (Exception e) {
+                stopper.onException(pl, e);
+            }
+        }
+        LOG.info(this + " stopped");
+    }
+
+    private File[] segmentFiles() {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_FILE_PREFIX) && name.endsWith(SEGMENT_FILE_SUFFIX);
+            }
+        });
+        return files != null ? files : new File[0];
+    }
+
+    File createSegmentFile(long listId, long segmentId) {
+        return new File(directory, SEGMENT_FILE_PREFIX + listId + "-" + segmentId + SEGMENT_FILE_SUFFIX);
+    }
+
+    void incrementDiskSize(long delta) {
+        diskSize.addAndGet(delta);
+    }
+
+    public int getMaxSegmentLength() {
+        return maxSegmentLength;
+    }
+
+    /**
+     * @param maxSegmentLength the length after which a list rolls over to a
+     *        new segment file, a segment is only deleted once all of its
+     *        entries have been removed
+     */
+    public void setMaxSegmentLength(int maxSegmentLength) {
+        this.maxSegmentLength = maxSegmentLength;
+    }
+
+    public int getWriteBufferSize() {
+        return writeBufferSize;
+    }
+
+    /**
+     * @param writeBufferSize the number of bytes each list buffers before
+     *        writing them out to its current segment
+     */
+    public void setWriteBufferSize(int writeBufferSize) {
+        this.writeBufferSize = writeBufferSize;
+    }
+
+    @Override
+    public String toString() {
+        String path = getDirectory() != null ? getDirectory().getAbsolutePath() : "DIRECTORY_NOT_SET";
+        return "SegmentPListStore:[" + path + "]";
+    }
+}
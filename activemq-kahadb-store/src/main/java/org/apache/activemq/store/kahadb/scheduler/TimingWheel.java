@@ -0,0 +1,313 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel holding the jobs of a
+ * {@link TimingWheelJobScheduler}. Time is cut into ticks and every level has
+ * {@link #WHEEL_SIZE} slots, a job goes into the lowest level whose span still
+ * covers it and is cascaded down a level each time the level below wraps
+ * around. Adding and removing a job is constant time, the ones that are due
+ * are moved to a due list in the order they expire and are polled off it in
+ * batches. Not thread safe, the scheduler guards it.
+ */
+class TimingWheel {
+
+    static final int WHEEL_BITS = 9;
+    static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    static final int LEVELS = 4;
+    private static final long MASK = WHEEL_SIZE - 1;
+
+    private final long tickDuration;
+    private final Slot[][] wheels = new Slot[LEVELS][WHEEL_SIZE];
+    private final Slot overflow = new Slot();
+    private final Slot due = new Slot();
+    private long currentTick;
+    private int size;
+
+    TimingWheel(long tickDuration, long now) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be positive: " + tickDuration);
+        }
+        this.tickDuration = tickDuration;
+        this.currentTick = now / tickDuration;
+        for (int level = 0; level < LEVELS; level++) {
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                wheels[level][i] = new Slot();
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void add(WheelJob job, long now) {
+        if (size == due.size) {
+            // nothing is waiting, no need to walk the ticks we slept through
+            currentTick = Math.max(currentTick, now / tickDuration);
+        }
+        place(job);
+        size++;
+    }
+
+    boolean remove(WheelJob job) {
+        if (job.slot == null) {
+            return false;
+        }
+        job.slot.unlink(job);
+        size--;
+        return true;
+    }
+
+    void clear() {
+        for (int level = 0; level < LEVELS; level++) {
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                wheels[level][i].clear();
+            }
+        }
+        overflow.clear();
+        due.clear();
+        size = 0;
+    }
+
+    /**
+     * Moves the wheel on to the given time, every job whose time has come by
+     * then ends up on the due list. Stretches without anything to fire or
+     * cascade are skipped.
+     */
+    void advance(long now) {
+        long target = now / tickDuration;
+        while (currentTick < target) {
+            long next = nextOccupiedTick();
+            if (next > target) {
+                currentTick = target;
+                break;
+            }
+            currentTick = next;
+            if ((currentTick & MASK) == 0) {
+                cascade();
+            }
+            due.appendAll(wheels[0][(int) (currentTick & MASK)]);
+        }
+    }
+
+    /**
+     * Takes up to max jobs off the due list, they are no longer in the wheel
+     * afterwards.
+     */
+    int pollDue(List<WheelJob> result, int max) {
+        int count = 0;
+        while (count < max && due.head != null) {
+            WheelJob job = due.head;
+            due.unlink(job);
+            size--;
+            result.add(job);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the time at which the wheel should be advanced next, now when
+     *         there are due jobs and -1 when there is nothing to wait for
+     */
+    long nextWakeTime(long now) {
+        if (due.size > 0) {
+            return now;
+        }
+        if (size == 0) {
+            return -1;
+        }
+        return nextOccupiedTick() * tickDuration;
+    }
+
+    /**
+     * @return the next tick at which a level 0 slot fires or an occupied slot
+     *         of a higher level, or the overflow list, gets cascaded
+     */
+    private long nextOccupiedTick() {
+        long blockEnd = (currentTick | MASK) + 1;
+        for (long tick = currentTick + 1; tick < blockEnd; tick++) {
+            if (wheels[0][(int) (tick & MASK)].size > 0) {
+                return tick;
+            }
+        }
+        for (int level = 1; level < LEVELS; level++) {
+            int shift = WHEEL_BITS * level;
+            int start = (int) ((currentTick >>> shift) & MASK) + 1;
+            for (int i = start; i < WHEEL_SIZE; i++) {
+                if (wheels[level][i].size > 0) {
+                    return ((currentTick >>> (shift + WHEEL_BITS)) << (shift + WHEEL_BITS)) | ((long) i << shift);
+                }
+            }
+        }
+        if (overflow.size > 0) {
+            return ((currentTick >>> (WHEEL_BITS * LEVELS)) + 1) << (WHEEL_BITS * LEVELS);
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the jobs with the earliest next time, all of them share a slot
+     */
+    List<WheelJob> firstJobs() {
+        List<WheelJob> result = new ArrayList<WheelJob>();
+        Slot slot = firstSlot();
+        if (slot != null) {
+            long first = Long.MAX_VALUE;
+            for (WheelJob job = slot.head; job != null; job = job.next) {
+                first = Math.min(first, job.nextTime);
+            }
+            for (WheelJob job = slot.head; job != null; job = job.next) {
+                if (job.nextTime == first) {
+                    result.add(job);
+                }
+            }
+        }
+        return result;
+    }
+
+    private Slot firstSlot() {
+        if (due.size > 0) {
+            return due;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            // slots at or before the current position of a level are empty,
+            // anything due that soon sits in a lower level
+            int start = (int) ((currentTick >>> (WHEEL_BITS * level)) & MASK) + 1;
+            for (int i = start; i < WHEEL_SIZE; i++) {
+                if (wheels[level][i].size > 0) {
+                    return wheels[level][i];
+                }
+            }
+        }
+        return overflow.size > 0 ? overflow : null;
+    }
+
+    private void place(WheelJob job) {
+        // round up so that a job never fires before its time
+        long tick = (job.nextTime + tickDuration - 1) / tickDuration;
+        if (tick <= currentTick) {
+            due.append(job);
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = WHEEL_BITS * (level + 1);
+            if ((tick >>> shift) == (currentTick >>> shift)) {
+                wheels[level][(int) ((tick >>> (WHEEL_BITS * level)) & MASK)].append(job);
+                return;
+            }
+        }
+        overflow.append(job);
+    }
+
+    private void cascade() {
+        int level = 1;
+        while (level < LEVELS && (currentTick & ((1L << (WHEEL_BITS * level)) - 1)) == 0) {
+            level++;
+        }
+        if (level == LEVELS && (currentTick & ((1L << (WHEEL_BITS * LEVELS)) - 1)) == 0) {
+            redistribute(overflow);
+        }
+        for (int k = level - 1; k >= 1; k--) {
+            redistribute(wheels[k][(int) ((currentTick >>> (WHEEL_BITS * k)) & MASK)]);
+        }
+    }
+
+    private void redistribute(Slot slot) {
+        WheelJob job = slot.head;
+        slot.head = slot.tail = null;
+        slot.size = 0;
+        while (job != null) {
+            WheelJob next = job.next;
+            job.prev = job.next = null;
+            job.slot = null;
+            place(job);
+            job = next;
+        }
+    }
+
+    static final class Slot {
+        WheelJob head;
+        WheelJob tail;
+        int size;
+
+        void append(WheelJob job) {
+            job.slot = this;
+            job.prev = tail;
+            job.next = null;
+            if (tail != null) {
+                tail.next = job;
+            } else {
+                head = job;
+            }
+            tail = job;
+            size++;
+        }
+
+        void appendAll(Slot other) {
+            if (other.head == null) {
+                return;
+            }
+            for (WheelJob job = other.head; job != null; job = job.next) {
+                job.slot = this;
+            }
+            other.head.prev = tail;
+            if (tail != null) {
+                tail.next = other.head;
+            } else {
+                head = other.head;
+            }
+            tail = other.tail;
+            size += other.size;
+            other.head = other.tail = null;
+            other.size = 0;
+        }
+
+        void unlink(WheelJob job) {
+            if (job.prev != null) {
+                job.prev.next = job.next;
+            } else {
+                head = job.next;
+            }
+            if (job.next != null) {
+                job.next.prev = job.prev;
+            } else {
+                tail = job.prev;
+            }
+            job.prev = job.next = null;
+            job.slot = null;
+            size--;
+        }
+
+        void clear() {
+            WheelJob job = head;
+            while (job != null) {
+                WheelJob next = job.next;
+                job.prev = job.next = null;
+                job.slot = null;
+                job = next;
+            }
+            head = tail = null;
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,492 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.scheduler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.jms.MessageFormatException;
+
+import org.apache.activemq.broker.scheduler.CronParser;
+import org.apache.activemq.broker.scheduler.Job;
+import org.apache.activemq.broker.scheduler.JobListener;
+import org.apache.activemq.broker.scheduler.JobScheduler;
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.IdGenerator;
+import org.apache.activemq.util.ServiceStopper;
+import org.apache.activemq.util.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link JobScheduler} of the {@link TimingWheelJobSchedulerStore}. The
+ * monitor of the scheduler only guards the in memory wheel and job map, the
+ * journal writes and payload reads happen outside of it so that scheduling
+ * threads and the firing thread hold it for constant time only.
+ */
+class TimingWheelJobScheduler extends ServiceSupport implements Runnable, JobScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheelJobScheduler.class);
+    private static final IdGenerator ID_GENERATOR = new IdGenerator();
+    private static final Comparator<WheelJob> NEXT_TIME_ORDER = new Comparator<WheelJob>() {
+        @Override
+        public int compare(WheelJob job1, WheelJob job2) {
+            return job1.nextTime < job2.nextTime ? -1 : job1.nextTime == job2.nextTime ? 0 : 1;
+        }
+    };
+
+    private final TimingWheelJobSchedulerStore store;
+    private final String name;
+    private final TimingWheel wheel;
+    private final Map<String, WheelJob> jobs = new LinkedHashMap<String, WheelJob>();
+    private final List<JobListener> jobListeners = new CopyOnWriteArrayList<JobListener>();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private Thread thread;
+    // 0 while the firing thread is busy, -1 while it waits for a job to be scheduled
+    private long wakeTime;
+
+    TimingWheelJobScheduler(TimingWheelJobSchedulerStore store, String name) {
+        this.store = store;
+        this.name = name;
+        this.wheel = new TimingWheel(store.getTickDuration(), System.currentTimeMillis());
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public void addListener(JobListener l) {
+        this.jobListeners.add(l);
+    }
+
+    @Override
+    public void removeListener(JobListener l) {
+        this.jobListeners.remove(l);
+    }
+
+    @Override
+    public void schedule(String jobId, ByteSequence payload, long delay) throws IOException {
+        schedule(jobId, payload, "", 0, delay, 0);
+    }
+
+    @Override
+    public void schedule(String jobId, ByteSequence payload, String cronEntry) throws IOException {
+        schedule(jobId, payload, cronEntry, 0, 0, 0);
+    }
+
+    @Override
+    public void schedule(String jobId, ByteSequence payload, String cronEntry, long delay, long period, int repeat) throws IOException {
+        long startTime = System.currentTimeMillis();
+        // round startTime the same way the KahaDB scheduler does, so jobs
+        // scheduled within the same second share their time
+        startTime = (startTime / 1000) * 1000;
+        long time = 0;
+        if (cronEntry != null && cronEntry.length() > 0) {
+            try {
+                time = CronParser.getNextScheduledTime(cronEntry, startTime);
+            } catch (MessageFormatException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+        if (time == 0) {
+            time = startTime;
+        }
+        if (delay > 0) {
+            time += delay;
+        } else {
+            time += period;
+        }
+
+        WheelJob job = new WheelJob(jobId, startTime, delay, period, repeat, cronEntry, time);
+        job.setLocation(store.writeJob(name, job, payload, false));
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Scheduling " + job);
+        }
+        WheelJob previous;
+        synchronized (this) {
+            previous = jobs.put(jobId, job);
+            if (previous != null) {
+                wheel.remove(previous);
+            }
+            wheel.add(job, System.currentTimeMillis());
+            if (wakeTime < 0 || (wakeTime > 0 && time < wakeTime)) {
+                notifyAll();
+            }
+        }
+        if (previous != null) {
+            store.removeLiveBytes(previous);
+        }
+    }
+
+    @Override
+    public void remove(long time) throws IOException {
+        List<WheelJob> removed = new ArrayList<WheelJob>();
+        synchronized (this) {
+            for (Iterator<WheelJob> i = jobs.values().iterator(); i.hasNext();) {
+                WheelJob job = i.next();
+                if (job.nextTime == time) {
+                    i.remove();
+                    wheel.remove(job);
+                    removed.add(job);
+                }
+            }
+        }
+        removed(removed);
+    }
+
+    @Override
+    public void remove(String jobId) throws IOException {
+        List<WheelJob> removed = new ArrayList<WheelJob>(1);
+        synchronized (this) {
+            WheelJob job = jobs.remove(jobId);
+            if (job != null) {
+                wheel.remove(job);
+                removed.add(job);
+            }
+        }
+        removed(removed);
+    }
+
+    @Override
+    public void removeAllJobs() throws IOException {
+        List<WheelJob> removed;
+        synchronized (this) {
+            removed = new ArrayList<WheelJob>(jobs.values());
+            jobs.clear();
+            wheel.clear();
+        }
+        store.writeRemoveAll(name);
+        for (WheelJob job : removed) {
+            store.removeLiveBytes(job);
+        }
+    }
+
+    @Override
+    public void removeAllJobs(long start, long finish) throws IOException {
+        List<WheelJob> removed = new ArrayList<WheelJob>();
+        synchronized (this) {
+            for (Iterator<WheelJob> i = jobs.values().iterator(); i.hasNext();) {
+                WheelJob job = i.next();
+                if (job.nextTime >= start && job.nextTime <= finish) {
+                    i.remove();
+                    wheel.remove(job);
+                    removed.add(job);
+                }
+            }
+        }
+        removed(removed);
+    }
+
+    private void removed(List<WheelJob> removed) throws IOException {
+        if (!removed.isEmpty()) {
+            store.writeRemove(name, removed);
+            for (WheelJob job : removed) {
+                store.removeLiveBytes(job);
+            }
+        }
+    }
+
+    @Override
+    public synchronized long getNextScheduleTime() {
+        List<WheelJob> first = wheel.firstJobs();
+        return first.isEmpty() ? -1 : first.get(0).nextTime;
+    }
+
+    @Override
+    public List<Job> getNextScheduleJobs() throws IOException {
+        List<WheelJob> first;
+        synchronized (this) {
+            first = wheel.firstJobs();
+        }
+        return toJobs(first);
+    }
+
+    @Override
+    public List<Job> getAllJobs() throws IOException {
+        return getAllJobs(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    @Override
+    public List<Job> getAllJobs(long start, long finish) throws IOException {
+        List<WheelJob> selected = new ArrayList<WheelJob>();
+        synchronized (this) {
+            for (WheelJob job : jobs.values()) {
+                if (job.nextTime >= start && job.nextTime <= finish) {
+                    selected.add(job);
+                }
+            }
+        }
+        Collections.sort(selected, NEXT_TIME_ORDER);
+        return toJobs(selected);
+    }
+
+    private List<Job> toJobs(List<WheelJob> selected) throws IOException {
+        List<Job> result = new ArrayList<Job>(selected.size());
+        store.getFileLock().readLock().lock();
+        try {
+            for (WheelJob job : selected) {
+                JobLocation jobLocation;
+                synchronized (this) {
+                    jobLocation = job.toJobLocation();
+                }
+                result.add(new JobImpl(jobLocation, store.readPayload(jobLocation.getLocation())));
+            }
+        } finally {
+            store.getFileLock().readLock().unlock();
+        }
+        return result;
+    }
+
+    synchronized void recover(Collection<WheelJob> recovered) {
+        long now = System.currentTimeMillis();
+        for (WheelJob job : recovered) {
+            jobs.put(job.jobId, job);
+            wheel.add(job, now);
+        }
+    }
+
+    /**
+     * Writes the jobs that are still in the given journal file out again so
+     * that the file can be dropped, the caller holds the read lock of the
+     * store file lock.
+     */
+    synchronized void rewrite(int dataFileId) throws IOException {
+        List<WheelJob> toRewrite = new ArrayList<WheelJob>();
+        for (WheelJob job : jobs.values()) {
+            if (job.getDataFileId() == dataFileId) {
+                toRewrite.add(job);
+            }
+        }
+        for (int i = 0; i < toRewrite.size(); i++) {
+            WheelJob job = toRewrite.get(i);
+            ByteSequence payload = store.readPayload(job.getLocation());
+            // sync the last one, the old file is about to go
+            Location location = store.writeJob(name, job, payload, i == toRewrite.size() - 1);
+            store.removeLiveBytes(job);
+            job.setLocation(location);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            mainLoop();
+        } catch (Throwable e) {
+            if (this.running.get() && isStarted()) {
+                LOG.error(this + " Caught exception in mainloop", e);
+            }
+        } finally {
+            if (running.get()) {
+                try {
+                    stop();
+                } catch (Exception e) {
+                    LOG.error("Failed to stop " + this);
+                }
+            }
+        }
+    }
+
+    protected void mainLoop() {
+        List<WheelJob> due = new ArrayList<WheelJob>();
+        List<FiredJob> batch = new ArrayList<FiredJob>();
+        while (this.running.get()) {
+            due.clear();
+            batch.clear();
+            try {
+                long currentTime;
+                store.getFileLock().readLock().lock();
+                try {
+                    synchronized (this) {
+                        currentTime = System.currentTimeMillis();
+                        wheel.advance(currentTime);
+                        wheel.pollDue(due, store.getMaxFireBatchSize());
+                        for (WheelJob job : due) {
+                            batch.add(process(job, currentTime));
+                        }
+                    }
+                    for (FiredJob fired : batch) {
+                        if (fired.fire || fired.spawn) {
+                            fired.payload = store.readPayload(fired.location);
+                        }
+                    }
+                } finally {
+                    store.getFileLock().readLock().unlock();
+                }
+
+                if (batch.isEmpty()) {
+                    synchronized (this) {
+                        if (!this.running.get()) {
+                            break;
+                        }
+                        long now = System.currentTimeMillis();
+                        long next = wheel.nextWakeTime(now);
+                        if (next < 0) {
+                            wakeTime = -1;
+                            wait();
+                        } else if (next > now) {
+                            wakeTime = next;
+                            wait(next - now);
+                        }
+                        wakeTime = 0;
+                    }
+                    continue;
+                }
+
+                for (FiredJob fired : batch) {
+                    if (fired.fire) {
+                        fireJob(fired);
+                    }
+                }
+                store.writeUpdate(name, batch);
+                for (FiredJob fired : batch) {
+                    if (fired.nextTime < 0) {
+                        store.removeLiveBytes(fired.job);
+                    }
+                    if (fired.spawn) {
+                        // the cron entry starts a separate schedule rather than firing itself
+                        WheelJob job = fired.job;
+                        schedule(ID_GENERATOR.generateId(), fired.payload, "", job.delay, job.period, fired.repeat);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // woken up to stop
+            } catch (Exception ioe) {
+                LOG.error(this.name + " Failed to schedule job", ioe);
+                try {
+                    this.store.stop();
+                } catch (Exception e) {
+                    LOG.error(this.name + " Failed to shutdown JobSchedulerStore", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Works out what to do with a job that is due, which is the same as what
+     * the KahaDB scheduler does. Repeating and cron jobs go back into the
+     * wheel straight away, the others are dropped from the job map.
+     */
+    private FiredJob process(WheelJob job, long currentTime) {
+        FiredJob result = new FiredJob(job, job.getLocation());
+        int repeat = job.repeat;
+        long nextExecutionTime;
+        try {
+            nextExecutionTime = calculateNextExecutionTime(job, currentTime, repeat);
+        } catch (MessageFormatException e) {
+            LOG.error(this.name + " Failed to reschedule " + job, e);
+            nextExecutionTime = currentTime;
+        }
+        boolean reschedule;
+        if (!job.isCron()) {
+            result.fire = true;
+            reschedule = repeat != 0;
+            if (reschedule) {
+                repeat--;
+            }
+        } else {
+            // a cron job with a repeat only kicks off a separate schedule
+            result.fire = repeat == 0;
+            reschedule = nextExecutionTime > currentTime;
+            result.spawn = reschedule && repeat != 0;
+        }
+        if (reschedule) {
+            job.repeat = repeat;
+            job.nextTime = nextExecutionTime;
+            wheel.add(job, currentTime);
+            result.nextTime = nextExecutionTime;
+        } else {
+            jobs.remove(job.jobId);
+            result.nextTime = -1;
+        }
+        result.repeat = repeat;
+        return result;
+    }
+
+    long calculateNextExecutionTime(final WheelJob job, long currentTime, int repeat) throws MessageFormatException {
+        long result = currentTime;
+        if (job.isCron()) {
+            result = CronParser.getNextScheduledTime(job.cronEntry, result);
+        } else if (repeat != 0) {
+            result += job.period;
+        }
+        return result;
+    }
+
+    private void fireJob(FiredJob fired) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Firing " + fired.job);
+        }
+        for (JobListener l : jobListeners) {
+            l.scheduledJob(fired.job.jobId, fired.payload);
+        }
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        this.running.set(true);
+        this.thread = new Thread(this, "JobScheduler:" + this.name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @Override
+    protected void doStop(ServiceStopper stopper) throws Exception {
+        this.running.set(false);
+        synchronized (this) {
+            notifyAll();
+        }
+        Thread t = this.thread;
+        if (t != null) {
+            t.join(1000);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "JobScheduler:" + this.name;
+    }
+
+    /**
+     * A due job and what became of it, taken under the scheduler monitor and
+     * acted on outside of it.
+     */
+    static final class FiredJob {
+        final WheelJob job;
+        final Location location;
+        boolean fire;
+        boolean spawn;
+        long nextTime;
+        int repeat;
+        ByteSequence payload;
+
+        FiredJob(WheelJob job, Location location) {
+            this.job = job;
+            this.location = location;
+        }
+    }
+}
@@ -0,0 +1,499 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.scheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.BrokerServiceAware;
+import org.apache.activemq.broker.scheduler.JobScheduler;
+import org.apache.activemq.broker.scheduler.JobSchedulerStore;
+import org.apache.activemq.store.kahadb.disk.journal.DataFile;
+import org.apache.activemq.store.kahadb.disk.journal.Journal;
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+import org.apache.activemq.store.kahadb.disk.util.DataByteArrayInputStream;
+import org.apache.activemq.store.kahadb.disk.util.DataByteArrayOutputStream;
+import org.apache.activemq.thread.Scheduler;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.IOHelper;
+import org.apache.activemq.util.LockFile;
+import org.apache.activemq.util.ServiceStopper;
+import org.apache.activemq.util.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link JobSchedulerStore} that keeps the jobs of every scheduler in a
+ * hierarchical {@link TimingWheel} and only appends to a journal, there is no
+ * index on disk. Scheduling or removing a job is a single journal append plus
+ * a constant time wheel update, and due jobs are fired in batches that are
+ * recorded with one journal record per batch. The jobs are rebuilt by
+ * replaying the journal on start.
+ *
+ * Journal files are dropped from the front once none of their jobs are live
+ * any more, when the oldest file is mostly garbage its remaining jobs are
+ * written out again so that it does not pin the files behind it.
+ *
+ * Scheduling a job id that is already scheduled replaces the earlier job.
+ *
+ * @org.apache.xbean.XBean
+ */
+public class TimingWheelJobSchedulerStore extends ServiceSupport implements JobSchedulerStore, BrokerServiceAware, Runnable {
+    static final Logger LOG = LoggerFactory.getLogger(TimingWheelJobSchedulerStore.class);
+    private static final int DATABASE_LOCKED_WAIT_DELAY = 10 * 1000;
+
+    static final byte ADD_JOB = 1;
+    static final byte UPDATE_JOBS = 2;
+    static final byte REMOVE_JOBS = 3;
+    static final byte REMOVE_ALL_JOBS = 4;
+
+    private File directory;
+    private Journal journal;
+    private final AtomicLong journalSize = new AtomicLong(0);
+    private LockFile lockFile;
+    private boolean failIfDatabaseIsLocked;
+    private int journalMaxFileLength = Journal.DEFAULT_MAX_FILE_LENGTH;
+    private int journalMaxWriteBatchSize = Journal.DEFAULT_MAX_WRITE_BATCH_SIZE;
+    private long tickDuration = 10;
+    private int maxFireBatchSize = 1000;
+    private long cleanupInterval = 30000;
+    private Scheduler scheduler;
+    private final Map<String, TimingWheelJobScheduler> schedulers = new ConcurrentHashMap<String, TimingWheelJobScheduler>();
+    // bytes of live job records per journal file
+    private final Map<Integer, Long> liveBytes = new HashMap<Integer, Long>();
+    // readers of job payloads hold the read lock, removing journal files takes the write lock
+    private final ReadWriteLock fileLock = new ReentrantReadWriteLock();
+
+    @Override
+    public void setBrokerService(BrokerService brokerService) {
+        this.scheduler = brokerService.getScheduler();
+    }
+
+    @Override
+    public File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public long size() {
+        if (!isStarted()) {
+            return 0;
+        }
+        return journalSize.get();
+    }
+
+    @Override
+    public synchronized JobScheduler getJobScheduler(String name) throws Exception {
+        TimingWheelJobScheduler result = this.schedulers.get(name);
+        if (result == null) {
+            result = new TimingWheelJobScheduler(this, name);
+            this.schedulers.put(name, result);
+            if (isStarted()) {
+                result.start();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized boolean removeJobScheduler(String name) throws Exception {
+        TimingWheelJobScheduler js = this.schedulers.remove(name);
+        if (js != null) {
+            js.stop();
+            js.removeAllJobs();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected synchronized void doStart() throws Exception {
+        if (this.directory == null) {
+            this.directory = new File(IOHelper.getDefaultDataDirectory() + File.pathSeparator + "delayedDB");
+        }
+        IOHelper.mkdirs(this.directory);
+        lock();
+        this.journal = new Journal();
+        this.journal.setDirectory(directory);
+        this.journal.setMaxFileLength(getJournalMaxFileLength());
+        this.journal.setWriteBatchSize(getJournalMaxWriteBatchSize());
+        this.journal.setSizeAccumulator(this.journalSize);
+        this.journal.start();
+
+        recover();
+        for (TimingWheelJobScheduler js : schedulers.values()) {
+            try {
+                js.start();
+            } catch (Exception e) {
+                LOG.error("Failed to load " + js.getName(), e);
+            }
+        }
+
+        if (cleanupInterval > 0) {
+            if (scheduler == null) {
+                scheduler = new Scheduler(TimingWheelJobSchedulerStore.class.getSimpleName());
+                scheduler.start();
+            }
+            scheduler.executePeriodically(this, cleanupInterval);
+        }
+        LOG.info(this + " started");
+    }
+
+    @Override
+    protected synchronized void doStop(ServiceStopper stopper) throws Exception {
+        if (scheduler != null) {
+            scheduler.cancel(this);
+            if (TimingWheelJobSchedulerStore.class.getSimpleName().equals(scheduler.getName())) {
+                scheduler.stop();
+                scheduler = null;
+            }
+        }
+        for (TimingWheelJobScheduler js : this.schedulers.values()) {
+            js.stop();
+        }
+        // the schedulers are rebuilt from the journal on the next start
+        this.schedulers.clear();
+        synchronized (liveBytes) {
+            liveBytes.clear();
+        }
+        if (this.journal != null) {
+            journal.close();
+        }
+        if (this.lockFile != null) {
+            this.lockFile.unlock();
+        }
+        this.lockFile = null;
+        LOG.info(this + " stopped");
+    }
+
+    private void recover() throws IOException {
+        Map<String, LinkedHashMap<String, WheelJob>> recovered = new HashMap<String, LinkedHashMap<String, WheelJob>>();
+        Location location = journal.getNextLocation(null);
+        while (location != null) {
+            DataByteArrayInputStream in = new DataByteArrayInputStream(journal.read(location));
+            byte type = in.readByte();
+            String name = in.readUTF();
+            LinkedHashMap<String, WheelJob> jobs = recovered.get(name);
+            if (jobs == null) {
+                jobs = new LinkedHashMap<String, WheelJob>();
+                recovered.put(name, jobs);
+            }
+            switch (type) {
+            case ADD_JOB:
+                WheelJob job = readJob(in);
+                job.setLocation(location);
+                jobs.remove(job.jobId);
+                jobs.put(job.jobId, job);
+                break;
+            case UPDATE_JOBS:
+                for (int i = in.readInt(); i > 0; i--) {
+                    String jobId = in.readUTF();
+                    long nextTime = in.readLong();
+                    int repeat = in.readInt();
+                    WheelJob updated = jobs.get(jobId);
+                    if (updated != null) {
+                        if (nextTime < 0) {
+                            jobs.remove(jobId);
+                        } else {
+                            updated.nextTime = nextTime;
+                            updated.repeat = repeat;
+                        }
+                    }
+                }
+                break;
+            case REMOVE_JOBS:
+                for (int i = in.readInt(); i > 0; i--) {
+                    jobs.remove(in.readUTF());
+                }
+                break;
+            case REMOVE_ALL_JOBS:
+                jobs.clear();
+                break;
+            default:
+                throw new IOException("Unknown job record type " + type + " at " + location);
+            }
+            location = journal.getNextLocation(location);
+        }
+
+        for (Map.Entry<String, LinkedHashMap<String, WheelJob>> entry : recovered.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                TimingWheelJobScheduler js = new TimingWheelJobScheduler(this, entry.getKey());
+                for (WheelJob job : entry.getValue().values()) {
+                    addLiveBytes(job.getDataFileId(), job.getSize());
+                }
+                js.recover(entry.getValue().values());
+                schedulers.put(entry.getKey(), js);
+            }
+        }
+    }
+
+    /**
+     * Drops the journal files at the front that no live job refers to, and
+     * rewrites the jobs of the oldest file still in use once at least half
+     * of it is garbage.
+     */
+    @Override
+    public void run() {
+        try {
+            if (!isStarted() || isStopping()) {
+                return;
+            }
+            int currentDataFileId = journal.getLastAppendLocation().getDataFileId();
+            Map<Integer, DataFile> files = journal.getFileMap();
+            Set<Integer> unused = new HashSet<Integer>();
+            Integer oldestInUse = null;
+            long oldestLiveBytes = 0;
+            synchronized (liveBytes) {
+                for (Integer dataFileId : files.keySet()) {
+                    if (dataFileId >= currentDataFileId) {
+                        break;
+                    }
+                    Long live = liveBytes.get(dataFileId);
+                    if (live != null) {
+                        oldestInUse = dataFileId;
+                        oldestLiveBytes = live;
+                        break;
+                    }
+                    unused.add(dataFileId);
+                }
+            }
+            if (!unused.isEmpty()) {
+                LOG.trace("Removing unused journal files: " + unused);
+                fileLock.writeLock().lock();
+                try {
+                    journal.removeDataFiles(unused);
+                } finally {
+                    fileLock.writeLock().unlock();
+                }
+            }
+            if (oldestInUse != null && oldestLiveBytes * 2 < files.get(oldestInUse).getLength()) {
+                LOG.trace("Rewriting the jobs of journal file " + oldestInUse + ", live bytes: " + oldestLiveBytes);
+                List<TimingWheelJobScheduler> toRewrite = new ArrayList<TimingWheelJobScheduler>(schedulers.values());
+                fileLock.readLock().lock();
+                try {
+                    for (TimingWheelJobScheduler js : toRewrite) {
+                        js.rewrite(oldestInUse);
+                    }
+                } finally {
+                    fileLock.readLock().unlock();
+                }
+            }
+        } catch (IOException e) {
+            LOG.error("Exception on periodic cleanup: " + e, e);
+        }
+    }
+
+    Location writeJob(String schedulerName, WheelJob job, ByteSequence payload, boolean sync) throws IOException {
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream(64 + payload.getLength());
+        out.writeByte(ADD_JOB);
+        out.writeUTF(schedulerName);
+        out.writeUTF(job.jobId);
+        out.writeLong(job.startTime);
+        out.writeLong(job.delay);
+        out.writeLong(job.period);
+        out.writeInt(job.repeat);
+        out.writeUTF(job.cronEntry);
+        out.writeLong(job.nextTime);
+        out.writeInt(payload.getLength());
+        out.write(payload.getData(), payload.getOffset(), payload.getLength());
+        Location location = journal.write(out.toByteSequence(), sync);
+        addLiveBytes(location.getDataFileId(), location.getSize());
+        return location;
+    }
+
+    /**
+     * Records the outcome of a batch of fired jobs, finished jobs have a next
+     * time of -1.
+     */
+    void writeUpdate(String schedulerName, List<TimingWheelJobScheduler.FiredJob> batch) throws IOException {
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream();
+        out.writeByte(UPDATE_JOBS);
+        out.writeUTF(schedulerName);
+        out.writeInt(batch.size());
+        for (TimingWheelJobScheduler.FiredJob fired : batch) {
+            out.writeUTF(fired.job.jobId);
+            out.writeLong(fired.nextTime);
+            out.writeInt(fired.repeat);
+        }
+        journal.write(out.toByteSequence(), false);
+    }
+
+    void writeRemove(String schedulerName, List<WheelJob> removed) throws IOException {
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream();
+        out.writeByte(REMOVE_JOBS);
+        out.writeUTF(schedulerName);
+        out.writeInt(removed.size());
+        for (WheelJob job : removed) {
+            out.writeUTF(job.jobId);
+        }
+        journal.write(out.toByteSequence(), false);
+    }
+
+    void writeRemoveAll(String schedulerName) throws IOException {
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream();
+        out.writeByte(REMOVE_ALL_JOBS);
+        out.writeUTF(schedulerName);
+        journal.write(out.toByteSequence(), false);
+    }
+
+    /**
+     * Reads the payload of the job record at the given location, the caller
+     * has to hold the read lock of {@link #getFileLock()}.
+     */
+    ByteSequence readPayload(Location location) throws IOException {
+        ByteSequence record = journal.read(location);
+        DataByteArrayInputStream in = new DataByteArrayInputStream(record);
+        in.readByte();
+        in.readUTF();
+        readJob(in);
+        int length = in.readInt();
+        return new ByteSequence(in.getRawData(), in.getPos(), length);
+    }
+
+    private WheelJob readJob(DataByteArrayInputStream in) throws IOException {
+        String jobId = in.readUTF();
+        long startTime = in.readLong();
+        long delay = in.readLong();
+        long period = in.readLong();
+        int repeat = in.readInt();
+        String cronEntry = in.readUTF();
+        long nextTime = in.readLong();
+        return new WheelJob(jobId, startTime, delay, period, repeat, cronEntry, nextTime);
+    }
+
+    void removeLiveBytes(WheelJob job) {
+        addLiveBytes(job.getDataFileId(), -job.getSize());
+    }
+
+    private void addLiveBytes(int dataFileId, long delta) {
+        synchronized (liveBytes) {
+            Long live = liveBytes.get(dataFileId);
+            long value = (live != null ? live.longValue() : 0) + delta;
+            if (value > 0) {
+                liveBytes.put(dataFileId, value);
+            } else {
+                liveBytes.remove(dataFileId);
+            }
+        }
+    }
+
+    ReadWriteLock getFileLock() {
+        return fileLock;
+    }
+
+    private void lock() throws IOException {
+        if (lockFile == null) {
+            File lockFileName = new File(directory, "lock");
+            lockFile = new LockFile(lockFileName, true);
+            if (failIfDatabaseIsLocked) {
+                lockFile.lock();
+            } else {
+                while (true) {
+                    try {
+                        lockFile.lock();
+                        break;
+                    } catch (IOException e) {
+                        LOG.info("Database " + lockFileName + " is locked... waiting " + (DATABASE_LOCKED_WAIT_DELAY / 1000)
+                            + " seconds for the database to be unlocked. Reason: " + e);
+                        try {
+                            Thread.sleep(DATABASE_LOCKED_WAIT_DELAY);
+                        } catch (InterruptedException e1) {
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public boolean isFailIfDatabaseIsLocked() {
+        return failIfDatabaseIsLocked;
+    }
+
+    public void setFailIfDatabaseIsLocked(boolean failIfDatabaseIsLocked) {
+        this.failIfDatabaseIsLocked = failIfDatabaseIsLocked;
+    }
+
+    public int getJournalMaxFileLength() {
+        return journalMaxFileLength;
+    }
+
+    public void setJournalMaxFileLength(int journalMaxFileLength) {
+        this.journalMaxFileLength = journalMaxFileLength;
+    }
+
+    public int getJournalMaxWriteBatchSize() {
+        return journalMaxWriteBatchSize;
+    }
+
+    public void setJournalMaxWriteBatchSize(int journalMaxWriteBatchSize) {
+        this.journalMaxWriteBatchSize = journalMaxWriteBatchSize;
+    }
+
+    public long getTickDuration() {
+        return tickDuration;
+    }
+
+    /**
+     * @param tickDuration the resolution of the timing wheel in milliseconds,
+     *        a job fires at most this much after its time
+     */
+    public void setTickDuration(long tickDuration) {
+        this.tickDuration = tickDuration;
+    }
+
+    public int getMaxFireBatchSize() {
+        return maxFireBatchSize;
+    }
+
+    /**
+     * @param maxFireBatchSize the most due jobs that are fired and recorded
+     *        in one go
+     */
+    public void setMaxFireBatchSize(int maxFireBatchSize) {
+        this.maxFireBatchSize = maxFireBatchSize;
+    }
+
+    public long getCleanupInterval() {
+        return cleanupInterval;
+    }
+
+    public void setCleanupInterval(long cleanupInterval) {
+        this.cleanupInterval = cleanupInterval;
+    }
+
+    @Override
+    public String toString() {
+        return "TimingWheelJobSchedulerStore:" + this.directory;
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.scheduler;
+
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+
+/**
+ * A job held in a {@link TimingWheel}. Only the journal position of the job
+ * record is kept in memory, the payload is read back when the job fires.
+ */
+final class WheelJob {
+
+    final String jobId;
+    final long startTime;
+    final long delay;
+    final long period;
+    final String cronEntry;
+    int repeat;
+    long nextTime;
+
+    private int dataFileId;
+    private int offset;
+    private int size;
+
+    TimingWheel.Slot slot;
+    WheelJob prev;
+    WheelJob next;
+
+    WheelJob(String jobId, long startTime, long delay, long period, int repeat, String cronEntry, long nextTime) {
+        this.jobId = jobId;
+        this.startTime = startTime;
+        this.delay = delay;
+        this.period = period;
+        this.repeat = repeat;
+        this.cronEntry = cronEntry != null ? cronEntry : "";
+        this.nextTime = nextTime;
+    }
+
+    boolean isCron() {
+        return cronEntry.length() > 0;
+    }
+
+    Location getLocation() {
+        Location location = new Location(dataFileId, offset);
+        location.setSize(size);
+        location.setType(Location.USER_TYPE);
+        return location;
+    }
+
+    void setLocation(Location location) {
+        this.dataFileId = location.getDataFileId();
+        this.offset = location.getOffset();
+        this.size = location.getSize();
+    }
+
+    int getDataFileId() {
+        return dataFileId;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    JobLocation toJobLocation() {
+        JobLocation result = new JobLocation(getLocation());
+        result.setJobId(jobId);
+        result.setStartTime(startTime);
+        result.setDelay(delay);
+        result.setPeriod(period);
+        result.setRepeat(repeat);
+        result.setCronEntry(cronEntry);
+        result.setNextTime(nextTime);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Job [id=" + jobId + ", delay=" + delay + ", period=" + period + ", repeat=" + repeat
+            + ", cron=" + cronEntry + ", nextTime=" + nextTime + "]";
+    }
+}
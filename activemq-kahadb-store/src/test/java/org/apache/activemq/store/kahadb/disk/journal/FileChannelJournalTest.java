@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.journal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.activemq.util.ByteSequence;
+
+/**
+ * Runs the journal tests against the FileChannel based appender.
+ */
+public class FileChannelJournalTest extends JournalTest {
+
+    @Override
+    protected void configure(Journal dataManager) {
+        dataManager.setFileChannelAppender(true);
+        dataManager.setChecksum(true);
+        dataManager.setCheckForCorruptionOnStartup(true);
+    }
+
+    public void testWrittenRecordsRecoverAfterRestart() throws Exception {
+        final int iterations = 100;
+        List<Location> locations = new ArrayList<Location>();
+        for (int i = 0; i < iterations; i++) {
+            locations.add(dataManager.write(new ByteSequence(("DATA-" + i).getBytes()), i % 10 == 0));
+        }
+        dataManager.write(new ByteSequence("LAST".getBytes()), true);
+        dataManager.close();
+
+        dataManager = new Journal();
+        dataManager.setDirectory(dir);
+        configure(dataManager);
+        dataManager.start();
+
+        for (int i = 0; i < iterations; i++) {
+            ByteSequence data = dataManager.read(locations.get(i));
+            assertEquals("DATA-" + i, new String(data.getData(), data.getOffset(), data.getLength()));
+        }
+
+        int count = 0;
+        Location location = dataManager.getNextLocation(null);
+        while (location != null) {
+            count++;
+            location = dataManager.getNextLocation(location);
+        }
+        assertEquals("all records recovered", iterations + 1, count);
+        for (DataFile dataFile : dataManager.getFileMap().values()) {
+            assertTrue("no corrupted blocks in " + dataFile, dataFile.getCorruptedBlocks().isEmpty());
+        }
+    }
+
+    public void testRolledOverFileIsPreallocated() throws Exception {
+        dataManager.close();
+        dataManager = new Journal();
+        dataManager.setDirectory(dir);
+        dataManager.setMaxFileLength(1024 * 1024);
+        configure(dataManager);
+        dataManager.start();
+
+        byte[] record = new byte[64 * 1024];
+        List<Location> locations = new ArrayList<Location>();
+        locations.add(dataManager.write(new ByteSequence(record), true));
+
+        File preallocated = new File(dir, dataManager.getFilePrefix() + "preallocated.tmp");
+        long deadline = System.currentTimeMillis() + 10000;
+        while (preallocated.length() < dataManager.preferedFileLength && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("next file preallocated", dataManager.preferedFileLength, preallocated.length());
+
+        while (dataManager.getFileMap().size() < 2) {
+            locations.add(dataManager.write(new ByteSequence(record), true));
+        }
+        DataFile next = dataManager.getFileMap().get(2);
+        assertEquals("preallocated file used", dataManager.preferedFileLength, next.getFile().length());
+
+        dataManager.close();
+        assertFalse("preallocated file removed", preallocated.exists());
+
+        dataManager = new Journal();
+        dataManager.setDirectory(dir);
+        configure(dataManager);
+        dataManager.start();
+        for (Location location : locations) {
+            assertEquals(record.length, dataManager.read(location).getLength());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.journal;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.IOHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the write throughput of the default journal appender against the
+ * FileChannel based appender. Several producers write concurrently so that
+ * both appenders get to batch, and every n'th write is a sync write.
+ */
+public class JournalAppenderBenchmark extends TestCase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JournalAppenderBenchmark.class);
+
+    // How long to write for against each appender.
+    private static final long SAMPLE_DURATION = Integer.parseInt(System.getProperty("SAMPLE_DURATION", "" + 1000 * 10));
+    // How many threads write concurrently.
+    private static final int WRITER_COUNT = Integer.parseInt(System.getProperty("WRITER_COUNT", "" + 10));
+    // Size of the records written.
+    private static final int RECORD_SIZE = Integer.parseInt(System.getProperty("RECORD_SIZE", "" + 1024));
+    // Every n'th write is a sync write, 0 disables sync writes.
+    private static final int SYNC_EVERY = Integer.parseInt(System.getProperty("SYNC_EVERY", "" + 1));
+
+    protected File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = new File(IOHelper.getDefaultDataDirectory(), "JournalAppenderBenchmark");
+        IOHelper.deleteChildren(dir);
+        dir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        IOHelper.delete(dir);
+    }
+
+    public void testAppenderThroughput() throws Exception {
+        long defaultRate = benchmark(false);
+        long fileChannelRate = benchmark(true);
+        LOG.info("DataFileAppender: " + defaultRate + " writes/sec, FileChannelDataFileAppender: " + fileChannelRate + " writes/sec");
+    }
+
+    protected long benchmark(boolean fileChannelAppender) throws Exception {
+        IOHelper.deleteChildren(dir);
+        final Journal journal = new Journal();
+        journal.setDirectory(dir);
+        journal.setFileChannelAppender(fileChannelAppender);
+        journal.start();
+
+        final ByteSequence data = new ByteSequence(new byte[RECORD_SIZE]);
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicLong writes = new AtomicLong();
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        final CountDownLatch finished = new CountDownLatch(WRITER_COUNT);
+        for (int i = 0; i < WRITER_COUNT; i++) {
+            new Thread("Journal writer " + i) {
+                @Override
+                public void run() {
+                    try {
+                        long count = 0;
+                        while (!done.get()) {
+                            journal.write(data, SYNC_EVERY > 0 && (++count % SYNC_EVERY) == 0);
+                            writes.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        long start = System.currentTimeMillis();
+        Thread.sleep(SAMPLE_DURATION);
+        done.set(true);
+        finished.await();
+        long duration = System.currentTimeMillis() - start;
+        journal.close();
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return (writes.get() * 1000) / duration;
+    }
+}
@@ -199,4 +199,59 @@ public class PageFileTest extends TestCase {
         }
         assertEquals(expected, actual);
     }
+
+    public void testBeginFlush() throws IOException {
+
+        PageFile pf = new PageFile(new File("target/test-data"), getName());
+        pf.delete();
+        pf.load();
+
+        // Insert some data into the page file.
+        Transaction tx = pf.tx();
+        for (int i = 0; i < 10; i++) {
+            Page<String> page = tx.allocate();
+            page.set("page:" + i);
+            tx.store(page, StringMarshaller.INSTANCE, false);
+            tx.commit();
+        }
+
+        PageFile.Flush flush = pf.beginFlush();
+        assertEquals(10, flush.size());
+
+        // Update the pages while the snapshot is still pending.
+        HashSet<String> expected = new HashSet<String>();
+        for (Page<String> page : tx) {
+            tx.load(page, StringMarshaller.INSTANCE);
+            page.set(page.get() + ":updated");
+            expected.add(page.get());
+            tx.store(page, StringMarshaller.INSTANCE, false);
+        }
+        tx.commit();
+
+        flush.complete();
+        assertEquals(0, flush.size());
+
+        // The updates made after the snapshot must still be in the write cache.
+        HashSet<String> actual = new HashSet<String>();
+        for (Page<String> page : tx) {
+            tx.load(page, StringMarshaller.INSTANCE);
+            actual.add(page.get());
+        }
+        assertEquals(expected, actual);
+
+        // Reload it...
+        pf.unload();
+        pf.load();
+        tx = pf.tx();
+
+        // Iterate it to make sure the updated records made it to disk..
+        actual.clear();
+        for (Page<String> page : tx) {
+            tx.load(page, StringMarshaller.INSTANCE);
+            actual.add(page.get());
+        }
+        assertEquals(expected, actual);
+
+        pf.unload();
+    }
 }
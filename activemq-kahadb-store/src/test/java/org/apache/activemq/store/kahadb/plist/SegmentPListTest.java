@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.plist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.store.PList;
+import org.apache.activemq.store.PListEntry;
+import org.apache.activemq.store.PListStore;
+import org.apache.activemq.store.PListTestSupport;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.IOHelper;
+import org.junit.Test;
+
+public class SegmentPListTest extends PListTestSupport {
+
+    @Override
+    protected SegmentPListStore createPListStore() {
+        return new SegmentPListStore();
+    }
+
+    @Override
+    protected PListStore createConcurrentAddIteratePListStore() {
+        SegmentPListStore store = createPListStore();
+        store.setMaxSegmentLength(1024 * 1024);
+        return store;
+    }
+
+    @Override
+    protected PListStore createConcurrentAddRemovePListStore() {
+        SegmentPListStore store = createPListStore();
+        store.setMaxSegmentLength(1024 * 5);
+        return store;
+    }
+
+    @Override
+    protected PListStore createConcurrentAddRemoveWithPreloadPListStore() {
+        SegmentPListStore store = createPListStore();
+        store.setMaxSegmentLength(1024 * 5);
+        store.setWriteBufferSize(1024);
+        return store;
+    }
+
+    @Override
+    protected PListStore createConcurrentAddIterateRemovePListStore(boolean enablePageCache) {
+        SegmentPListStore store = createPListStore();
+        store.setWriteBufferSize(enablePageCache ? SegmentPListStore.DEFAULT_WRITE_BUFFER_SIZE : 0);
+        return store;
+    }
+
+    @Test
+    public void testSegmentsAreDeletedOnceConsumed() throws Exception {
+        File directory = new File("target/test/SegmentPListDB");
+        IOHelper.mkdirs(directory);
+        IOHelper.deleteChildren(directory);
+        SegmentPListStore store = createPListStore();
+        store.setDirectory(directory);
+        store.setMaxSegmentLength(1024);
+        store.setWriteBufferSize(256);
+        store.start();
+        try {
+            PList list = store.getPList("spill");
+            ByteSequence payload = new ByteSequence(new byte[100]);
+            for (int i = 0; i < 100; i++) {
+                payload.getData()[0] = (byte) i;
+                list.addLast("id" + i, payload);
+            }
+            assertTrue("spilled to several segments", directory.list().length > 5);
+            assertTrue(store.size() > 0);
+
+            PList.PListIterator iterator = list.iterator();
+            int count = 0;
+            while (iterator.hasNext()) {
+                PListEntry entry = iterator.next();
+                assertEquals("id" + count, entry.getId());
+                assertEquals((byte) count, entry.getByteSequence().getData()[0]);
+                assertEquals(100, entry.getByteSequence().getLength());
+                iterator.remove();
+                count++;
+            }
+            iterator.release();
+            assertEquals(100, count);
+            assertTrue(list.isEmpty());
+            assertEquals(0, store.size());
+            assertTrue("only the current segment is left", directory.list().length <= 1);
+
+            assertTrue(store.removePList("spill"));
+            assertFalse(store.removePList("spill"));
+            assertEquals(0, directory.list().length);
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testBrokerSetsTmpDataDirectory() throws Exception {
+        File tmpDataDirectory = new File("target/test/SegmentPListBrokerTmp");
+        BrokerService broker = new BrokerService();
+        broker.setUseJmx(false);
+        broker.setTmpDataDirectory(tmpDataDirectory);
+
+        SegmentPListStore store = createPListStore();
+        broker.setTempDataStore(store);
+        try {
+            assertEquals(tmpDataDirectory, store.getDirectory());
+        } finally {
+            store.stop();
+        }
+
+        // a directory set on the store is kept
+        File directory = new File("target/test/SegmentPListOwnDir");
+        store = createPListStore();
+        store.setDirectory(directory);
+        broker.setTempDataStore(store);
+        try {
+            assertEquals(directory, store.getDirectory());
+        } finally {
+            store.stop();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TimingWheelTest extends TestCase {
+
+    private static final long TICK = 10;
+
+    public void testJobsFireInOrderAcrossLevels() throws Exception {
+        long now = 1000000;
+        TimingWheel wheel = new TimingWheel(TICK, now);
+        Random random = new Random(42);
+        List<WheelJob> added = new ArrayList<WheelJob>();
+        // spans all levels and the overflow list
+        long[] ranges = {100, 10000, 1000000, 100000000L, 1L << 40};
+        for (int i = 0; i < 5000; i++) {
+            long time = now + 1 + (long) (random.nextDouble() * ranges[i % ranges.length]);
+            WheelJob job = new WheelJob("id" + i, now, 0, 0, 0, "", time);
+            wheel.add(job, now);
+            added.add(job);
+        }
+        assertEquals(added.size(), wheel.size());
+
+        List<WheelJob> fired = new ArrayList<WheelJob>();
+        long lastTime = now;
+        while (wheel.size() > 0) {
+            long next = wheel.nextWakeTime(now);
+            assertTrue(next >= now);
+            now = next;
+            wheel.advance(now);
+            List<WheelJob> due = new ArrayList<WheelJob>();
+            wheel.pollDue(due, Integer.MAX_VALUE);
+            for (WheelJob job : due) {
+                assertTrue("fired " + job + " early at " + now, job.nextTime <= now);
+                assertTrue("fired " + job + " late at " + now, job.nextTime > now - TICK);
+                assertTrue(job.nextTime > lastTime - TICK);
+                lastTime = job.nextTime;
+            }
+            fired.addAll(due);
+        }
+        assertEquals(added.size(), fired.size());
+    }
+
+    public void testRemoveAndFirstJobs() throws Exception {
+        long now = 5000;
+        TimingWheel wheel = new TimingWheel(TICK, now);
+        WheelJob soon = new WheelJob("soon", now, 0, 0, 0, "", now + 100);
+        WheelJob sameTime = new WheelJob("sameTime", now, 0, 0, 0, "", now + 100);
+        WheelJob later = new WheelJob("later", now, 0, 0, 0, "", now + 100000);
+        wheel.add(later, now);
+        wheel.add(soon, now);
+        wheel.add(sameTime, now);
+
+        List<WheelJob> first = wheel.firstJobs();
+        assertEquals(2, first.size());
+        assertSame(soon, first.get(0));
+        assertSame(sameTime, first.get(1));
+
+        assertTrue(wheel.remove(soon));
+        assertFalse(wheel.remove(soon));
+        assertTrue(wheel.remove(sameTime));
+        first = wheel.firstJobs();
+        assertEquals(1, first.size());
+        assertSame(later, first.get(0));
+
+        wheel.advance(now + 200);
+        List<WheelJob> due = new ArrayList<WheelJob>();
+        assertEquals(0, wheel.pollDue(due, 10));
+        wheel.advance(now + 100000);
+        assertEquals(1, wheel.pollDue(due, 10));
+        assertSame(later, due.get(0));
+        assertEquals(0, wheel.size());
+        assertEquals(-1, wheel.nextWakeTime(now));
+    }
+}
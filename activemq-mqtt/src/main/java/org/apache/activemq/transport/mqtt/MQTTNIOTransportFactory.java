@@ -43,6 +43,7 @@ import org.apache.activemq.wireformat.WireFormat;
 public class MQTTNIOTransportFactory extends NIOTransportFactory implements BrokerServiceAware {
 
     private BrokerContext brokerContext = null;
+    private MQTTRetainedMessageStore retainedMessageStore = null;
 
     protected String getDefaultWireFormatType() {
         return "mqtt";
@@ -75,13 +76,16 @@ public class MQTTNIOTransportFactory extends NIOTransportFactory implements Brok
 
     @SuppressWarnings("rawtypes")
     public Transport compositeConfigure(Transport transport, WireFormat format, Map options) {
-        transport = new MQTTTransportFilter(transport, format, brokerContext);
+        MQTTTransportFilter filter = new MQTTTransportFilter(transport, format, brokerContext);
+        filter.setRetainedMessageStore(retainedMessageStore);
+        transport = filter;
         IntrospectionSupport.setProperties(transport, options);
         return super.compositeConfigure(transport, format, options);
     }
 
     public void setBrokerService(BrokerService brokerService) {
         this.brokerContext = brokerService.getBrokerContext();
+        this.retainedMessageStore = MQTTRetainedMessageStore.lookup(brokerService);
     }
 
     protected Transport createInactivityMonitor(Transport transport, WireFormat format) {
@@ -17,6 +17,7 @@
 package org.apache.activemq.transport.mqtt;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -51,6 +52,7 @@ import org.apache.activemq.command.Response;
 import org.apache.activemq.command.SessionId;
 import org.apache.activemq.command.SessionInfo;
 import org.apache.activemq.command.ShutdownInfo;
+import org.apache.activemq.transport.mqtt.MQTTRetainedMessageStore.RetainedMessage;
 import org.apache.activemq.util.ByteArrayOutputStream;
 import org.apache.activemq.util.ByteSequence;
 import org.apache.activemq.util.IOExceptionSupport;
@@ -93,6 +95,7 @@ class MQTTProtocolConverter {
     private final ProducerId producerId = new ProducerId(sessionId, 1);
     private final LongSequenceGenerator messageIdGenerator = new LongSequenceGenerator();
     private final LongSequenceGenerator consumerIdGenerator = new LongSequenceGenerator();
+    private final LongSequenceGenerator publishIdGenerator = new LongSequenceGenerator();
 
     private final ConcurrentHashMap<Integer, ResponseHandler> resposeHandlers = new ConcurrentHashMap<Integer, ResponseHandler>();
     private final ConcurrentHashMap<ConsumerId, MQTTSubscription> subscriptionsByConsumerId = new ConcurrentHashMap<ConsumerId, MQTTSubscription>();
@@ -111,6 +114,7 @@ class MQTTProtocolConverter {
     private String clientId;
     private long defaultKeepAlive;
     private int activeMQSubscriptionPrefetch=1;
+    private MQTTRetainedMessageStore retainedMessageStore;
     private final String QOS_PROPERTY_NAME = "QoSPropertyName";
 
     public MQTTProtocolConverter(MQTTTransport mqttTransport, BrokerContext brokerContext) {
@@ -299,12 +303,18 @@ class MQTTProtocolConverter {
             } catch (IOException e) {
                 LOG.warn("Couldn't send SUBACK for " + command, e);
             }
+            for (int i = 0; i < topics.length; i++) {
+                sendRetainedMessages(topics[i].name(), QoS.values()[qos[i]]);
+            }
         } else {
             LOG.warn("No topics defined for Subscription " + command);
         }
     }
 
     QoS onSubscribe(SUBSCRIBE command, Topic topic) throws MQTTProtocolException {
+        // a subscription to the same filter replaces the existing one
+        onUnSubscribe(topic.name());
+
         ActiveMQDestination destination = new ActiveMQTopic(convertMQTTToActiveMQ(topic.name().toString()));
 
         ConsumerId id = new ConsumerId(sessionId, consumerIdGenerator.getNextSequenceId());
@@ -375,9 +385,7 @@ class MQTTProtocolConverter {
                 MessageAck ack = sub.createMessageAck(md);
                 PUBLISH publish = sub.createPublish((ActiveMQMessage) md.getMessage());
                 if (ack != null && sub.expectAck(publish)) {
-                    synchronized (consumerAcks) {
-                        consumerAcks.put(publish.messageId(), ack);
-                    }
+                    publish.messageId(registerPublish(ack));
                 }
                 getMQTTTransport().sendToMQTT(publish.encode());
                 if (ack != null && !sub.expectAck(publish)) {
@@ -395,8 +403,25 @@ class MQTTProtocolConverter {
         }
     }
 
+    /**
+     * Allocates the message id of a PUBLISH sent to the client, which is not
+     * 0 nor the id of a message the client has yet to acknowledge, and keeps
+     * the ack to send to the broker when it does.
+     */
+    private short registerPublish(MessageAck ack) {
+        synchronized (consumerAcks) {
+            short id;
+            do {
+                id = (short) publishIdGenerator.getNextSequenceId();
+            } while (id == 0 || consumerAcks.containsKey(id));
+            consumerAcks.put(id, ack);
+            return id;
+        }
+    }
+
     void onMQTTPublish(PUBLISH command) throws IOException, JMSException {
         checkConnected();
+        retain(command);
         ActiveMQMessage message = convertMessage(command);
         message.setProducerId(producerId);
         message.onSend();
@@ -547,6 +572,8 @@ class MQTTProtocolConverter {
                     publish.topicName(connect.willTopic());
                     publish.qos(connect.willQos());
                     publish.payload(connect.willMessage());
+                    publish.retain(connect.willRetain());
+                    retain(publish);
                     ActiveMQMessage message = convertMessage(publish);
                     message.setProducerId(producerId);
                     message.onSend();
@@ -558,6 +585,47 @@ class MQTTProtocolConverter {
         }
     }
 
+    /**
+     * Keeps the message of a PUBLISH with the retain flag set, or removes the
+     * retained message of its topic when the payload is empty.
+     */
+    void retain(PUBLISH command) throws IOException {
+        MQTTRetainedMessageStore store = retainedMessageStore;
+        if (store != null && command.retain()) {
+            Buffer payload = command.payload();
+            store.retain(command.topicName().toString(), command.qos().ordinal(), payload != null ? payload.toByteArray() : null);
+        }
+    }
+
+    /**
+     * Sends the retained messages matching a new subscription, at the lower
+     * of the QoS they were published with and the QoS of the subscription.
+     */
+    void sendRetainedMessages(UTF8Buffer topicFilter, QoS qos) {
+        MQTTRetainedMessageStore store = retainedMessageStore;
+        if (store == null) {
+            return;
+        }
+        try {
+            List<RetainedMessage> retained = store.match(topicFilter.toString());
+            for (RetainedMessage message : retained) {
+                PUBLISH publish = new PUBLISH();
+                publish.topicName(new UTF8Buffer(message.getTopic()));
+                publish.qos(QoS.values()[Math.min(message.getQos(), qos.ordinal())]);
+                if (publish.qos() != QoS.AT_MOST_ONCE) {
+                    // nothing to acknowledge to the broker, the id is only
+                    // kept from being reused until the client acknowledges
+                    publish.messageId(registerPublish(null));
+                }
+                publish.retain(true);
+                publish.payload(new Buffer(message.getPayload()));
+                getMQTTTransport().sendToMQTT(publish.encode());
+            }
+        } catch (IOException e) {
+            LOG.warn("Couldn't send retained messages for " + topicFilter, e);
+        }
+    }
+
     void configureInactivityMonitor(short keepAliveSeconds) {
         MQTTInactivityMonitor monitor = getMQTTTransport().getInactivityMonitor();
 
@@ -698,6 +766,18 @@ class MQTTProtocolConverter {
         this.defaultKeepAlive = keepAlive;
     }
 
+    public MQTTRetainedMessageStore getRetainedMessageStore() {
+        return retainedMessageStore;
+    }
+
+    /**
+     * Sets the store of the messages published with the retain flag, without
+     * one the flag is ignored
+     */
+    public void setRetainedMessageStore(MQTTRetainedMessageStore retainedMessageStore) {
+        this.retainedMessageStore = retainedMessageStore;
+    }
+
     public int getActiveMQSubscriptionPrefetch() {
         return activeMQSubscriptionPrefetch;
     }
@@ -0,0 +1,430 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.mqtt;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.activemq.Service;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ConnectionId;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.ProducerId;
+import org.apache.activemq.command.SessionId;
+import org.apache.activemq.store.MessageRecoveryListener;
+import org.apache.activemq.store.MessageStore;
+import org.apache.activemq.store.PersistenceAdapter;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.DataByteArrayInputStream;
+import org.apache.activemq.util.DataByteArrayOutputStream;
+import org.apache.activemq.util.IOExceptionSupport;
+import org.apache.activemq.util.IdGenerator;
+import org.apache.activemq.util.LongSequenceGenerator;
+import org.apache.activemq.util.ServiceStopper;
+import org.apache.activemq.util.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the last retained message published to each MQTT topic, for all the
+ * MQTT connections of a broker.
+ *
+ * The messages are held in a {@link MQTTTopicTrie} so that a new subscription
+ * finds the retained messages matching its filter without a scan of every
+ * retained topic. When the broker is persistent they are also added to a
+ * message store of a {@link PersistenceAdapter}, by default a KahaDB store in
+ * the mqtt-retained directory under the broker data directory, and recovered
+ * from it on start.
+ *
+ * The store is written outside the lock of the trie. The adapter batches the
+ * writes of concurrent publishers, and a retained message replaced before it
+ * was written is not written at all. Only a message published at least once
+ * is acknowledged to the client after it has been written.
+ *
+ * The MQTT transports share the store found in the services of the broker,
+ * or add one there. It can be configured like any other broker service.
+ */
+public class MQTTRetainedMessageStore extends ServiceSupport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MQTTRetainedMessageStore.class);
+    private static final ActiveMQQueue RETAINED_QUEUE = new ActiveMQQueue("ActiveMQ.MQTT.Retained");
+    private static final IdGenerator ID_GENERATOR = new IdGenerator();
+
+    /**
+     * The last message retained on a topic.
+     */
+    public static final class RetainedMessage {
+        private final String topic;
+        private final int qos;
+        private final byte[] payload;
+        private MessageId messageId;
+
+        public RetainedMessage(String topic, int qos, byte[] payload) {
+            this.topic = topic;
+            this.qos = qos;
+            this.payload = payload;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public int getQos() {
+            return qos;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final MQTTTopicTrie<RetainedMessage> messages = new MQTTTopicTrie<RetainedMessage>();
+    private final ConnectionContext context = new ConnectionContext();
+    private final LongSequenceGenerator messageIdGenerator = new LongSequenceGenerator();
+    private ProducerId producerId;
+    private BrokerService brokerService;
+    private File directory;
+    private boolean persistent = true;
+    private PersistenceAdapter persistenceAdapter;
+    private MessageStore messageStore;
+    private boolean loaded;
+
+    /**
+     * @return the store of the broker, which is added to its services when
+     *         there is none yet
+     */
+    public static MQTTRetainedMessageStore lookup(BrokerService brokerService) {
+        synchronized (brokerService) {
+            for (Service service : brokerService.getServices()) {
+                if (service instanceof MQTTRetainedMessageStore) {
+                    return (MQTTRetainedMessageStore) service;
+                }
+            }
+            MQTTRetainedMessageStore store = new MQTTRetainedMessageStore();
+            store.setBrokerService(brokerService);
+            brokerService.addService(store);
+            return store;
+        }
+    }
+
+    /**
+     * Replaces the message retained on the topic, an empty payload removes
+     * it.
+     */
+    public void retain(String topic, int qos, byte[] payload) throws IOException {
+        final RetainedMessage message = payload != null && payload.length > 0 ? new RetainedMessage(topic, qos, payload) : null;
+        RetainedMessage replaced;
+        MessageStore store;
+        Future<Object> added = null;
+        lock.writeLock().lock();
+        try {
+            if (!load()) {
+                return;
+            }
+            replaced = message != null ? messages.put(topic, message) : messages.remove(topic);
+            if (message == null && replaced == null) {
+                return;
+            }
+            store = messageStore;
+            if (store != null && message != null) {
+                // queued under the lock so the writes keep the order of the
+                // trie, written by the store once the lock is released
+                message.messageId = new MessageId(producerId, messageIdGenerator.getNextSequenceId());
+                added = store.asyncAddQueueMessage(context, toMessage(message));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (store == null) {
+            return;
+        }
+        if (replaced != null) {
+            store.removeAsyncMessage(context, createAck(replaced, qos > 0));
+        }
+        if (added != null && qos > 0) {
+            try {
+                added.get();
+            } catch (CancellationException e) {
+                // replaced by a later message before it was written
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted storing the retained message of " + topic);
+            } catch (ExecutionException e) {
+                throw IOExceptionSupport.create("Failed to store the retained message of " + topic, e.getCause());
+            }
+        }
+    }
+
+    /**
+     * @return the retained messages of the topics matched by the filter
+     */
+    public List<RetainedMessage> match(String filter) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (loaded) {
+                return messages.match(filter);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            load();
+            return messages.match(filter);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of topics with a retained message
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return messages.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        lock.writeLock().lock();
+        try {
+            load();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void doStop(ServiceStopper stopper) throws Exception {
+        lock.writeLock().lock();
+        try {
+            if (messageStore != null) {
+                stopper.stop(messageStore);
+                messageStore = null;
+                stopper.stop(persistenceAdapter);
+            }
+            messages.clear();
+            loaded = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Opens the message store the first time the store is used, the
+     * transports can be bound after the broker has started its services.
+     *
+     * @return false once the store has been stopped
+     */
+    private boolean load() throws IOException {
+        if (isStopping() || isStopped()) {
+            return false;
+        }
+        if (loaded) {
+            return true;
+        }
+        if (isPersistent()) {
+            try {
+                PersistenceAdapter adapter = getPersistenceAdapter();
+                adapter.start();
+                messageStore = adapter.createQueueMessageStore(RETAINED_QUEUE);
+                messageStore.start();
+                recover();
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw IOExceptionSupport.create("Failed to load the retained MQTT messages", e);
+            }
+            producerId = new ProducerId(new SessionId(new ConnectionId(ID_GENERATOR.generateId()), 1), 1);
+            LOG.info("Loaded " + messages.size() + " retained MQTT messages from " + persistenceAdapter);
+        }
+        loaded = true;
+        return true;
+    }
+
+    private void recover() throws Exception {
+        final List<RetainedMessage> replaced = new ArrayList<RetainedMessage>();
+        messageStore.recover(new MessageRecoveryListener() {
+            @Override
+            public boolean recoverMessage(Message message) throws Exception {
+                // a later message of a topic replaces the earlier one, which
+                // is left behind when the broker stops before removing it
+                RetainedMessage retained = toRetainedMessage(message);
+                RetainedMessage previous = messages.put(retained.getTopic(), retained);
+                if (previous != null) {
+                    replaced.add(previous);
+                }
+                return true;
+            }
+
+            @Override
+            public boolean recoverMessageReference(MessageId ref) throws Exception {
+                Message message = messageStore.getMessage(ref);
+                return message == null || recoverMessage(message);
+            }
+
+            @Override
+            public boolean hasSpace() {
+                return true;
+            }
+
+            @Override
+            public boolean isDuplicate(MessageId ref) {
+                return false;
+            }
+        });
+        for (RetainedMessage message : replaced) {
+            messageStore.removeMessage(context, createAck(message, false));
+        }
+    }
+
+    private static Message toMessage(RetainedMessage retained) throws IOException {
+        DataByteArrayOutputStream out = new DataByteArrayOutputStream(retained.getPayload().length + 64);
+        out.writeUTF(retained.getTopic());
+        out.writeByte(retained.getQos());
+        out.writeInt(retained.getPayload().length);
+        out.write(retained.getPayload());
+
+        ActiveMQMessage message = new ActiveMQMessage();
+        message.setMessageId(retained.messageId);
+        message.setDestination(RETAINED_QUEUE);
+        message.setPersistent(true);
+        message.setTimestamp(System.currentTimeMillis());
+        // the store only syncs the write of a message that needs a response
+        message.setResponseRequired(retained.getQos() > 0);
+        message.setContent(out.toByteSequence());
+        return message;
+    }
+
+    private static RetainedMessage toRetainedMessage(Message message) throws IOException {
+        ByteSequence content = message.getContent();
+        DataByteArrayInputStream in = new DataByteArrayInputStream(content);
+        String topic = in.readUTF();
+        int qos = in.readByte();
+        byte[] payload = new byte[in.readInt()];
+        in.readFully(payload);
+        RetainedMessage retained = new RetainedMessage(topic, qos, payload);
+        retained.messageId = message.getMessageId();
+        return retained;
+    }
+
+    private static MessageAck createAck(RetainedMessage retained, boolean sync) {
+        MessageAck ack = new MessageAck();
+        ack.setAckType(MessageAck.STANDARD_ACK_TYPE);
+        ack.setDestination(RETAINED_QUEUE);
+        ack.setLastMessageId(retained.messageId);
+        ack.setMessageCount(1);
+        ack.setResponseRequired(sync);
+        return ack;
+    }
+
+    /**
+     * Creates the KahaDB store used when none was set, loaded by name like
+     * the broker does so that activemq-mqtt does not depend on it.
+     */
+    protected PersistenceAdapter createPersistenceAdapter() throws IOException {
+        try {
+            String clazz = "org.apache.activemq.store.kahadb.KahaDBPersistenceAdapter";
+            PersistenceAdapter adapter = (PersistenceAdapter) getClass().getClassLoader().loadClass(clazz).newInstance();
+            adapter.setDirectory(getDirectory());
+            if (brokerService != null) {
+                adapter.setBrokerName(brokerService.getBrokerName());
+            }
+            return adapter;
+        } catch (Throwable e) {
+            throw IOExceptionSupport.create(e);
+        }
+    }
+
+    public BrokerService getBrokerService() {
+        return brokerService;
+    }
+
+    public void setBrokerService(BrokerService brokerService) {
+        this.brokerService = brokerService;
+    }
+
+    public File getDirectory() {
+        if (directory == null && brokerService != null) {
+            directory = new File(brokerService.getBrokerDataDirectory(), "mqtt-retained");
+        }
+        return directory;
+    }
+
+    /**
+     * Sets the directory of the default retained message store, by default
+     * mqtt-retained in the data directory of the broker.
+     */
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    public PersistenceAdapter getPersistenceAdapter() throws IOException {
+        if (persistenceAdapter == null) {
+            persistenceAdapter = createPersistenceAdapter();
+        }
+        return persistenceAdapter;
+    }
+
+    /**
+     * Sets the persistence adapter the retained messages are stored with, by
+     * default a KahaDB store in the directory. It must not be the one of the
+     * broker, which would recover them as a queue.
+     */
+    public void setPersistenceAdapter(PersistenceAdapter persistenceAdapter) {
+        this.persistenceAdapter = persistenceAdapter;
+    }
+
+    /**
+     * @return true when the retained messages are written to disk, which is
+     *         only done for a persistent broker
+     */
+    public boolean isPersistent() {
+        return persistent && (brokerService == null || brokerService.isPersistent()) && (persistenceAdapter != null || getDirectory() != null);
+    }
+
+    /**
+     * Sets whether the retained messages survive a restart of a persistent
+     * broker, the default is true.
+     */
+    public void setPersistent(boolean persistent) {
+        this.persistent = persistent;
+    }
+
+    @Override
+    public String toString() {
+        return "MQTTRetainedMessageStore:" + (persistenceAdapter != null ? persistenceAdapter : getDirectory());
+    }
+}
@@ -34,6 +34,7 @@ import org.apache.activemq.wireformat.WireFormat;
 public class MQTTSslTransportFactory extends SslTransportFactory implements BrokerServiceAware {
 
     private BrokerContext brokerContext = null;
+    private MQTTRetainedMessageStore retainedMessageStore = null;
 
     protected String getDefaultWireFormatType() {
         return "mqtt";
@@ -42,7 +43,9 @@ public class MQTTSslTransportFactory extends SslTransportFactory implements Brok
     @SuppressWarnings("rawtypes")
 
     public Transport compositeConfigure(Transport transport, WireFormat format, Map options) {
-        transport = new MQTTTransportFilter(transport, format, brokerContext);
+        MQTTTransportFilter filter = new MQTTTransportFilter(transport, format, brokerContext);
+        filter.setRetainedMessageStore(retainedMessageStore);
+        transport = filter;
         IntrospectionSupport.setProperties(transport, options);
         return super.compositeConfigure(transport, format, options);
     }
@@ -62,6 +65,7 @@ public class MQTTSslTransportFactory extends SslTransportFactory implements Brok
 
     public void setBrokerService(BrokerService brokerService) {
         this.brokerContext = brokerService.getBrokerContext();
+        this.retainedMessageStore = MQTTRetainedMessageStore.lookup(brokerService);
     }
 
     protected Transport createInactivityMonitor(Transport transport, WireFormat format) {
@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.mqtt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps MQTT topic names, or topic filters, to values with one trie node per
+ * topic level, so that wildcard matching only visits the levels that can
+ * match instead of every key.
+ *
+ * {@link #match(String)} treats the keys as topic names and returns the
+ * values of all those matched by a filter, like the retained messages for a
+ * new subscription. In a filter + matches exactly one level and a trailing #
+ * matches the parent level and any number of levels below it. Wildcards at
+ * the first level do not match topic names starting with $.
+ *
+ * This class is not thread safe.
+ */
+class MQTTTopicTrie<T> {
+
+    static final String SEPARATOR = "/";
+    static final String SINGLE_LEVEL_WILDCARD = "+";
+    static final String MULTI_LEVEL_WILDCARD = "#";
+
+    private static final class Node<T> {
+        private Map<String, Node<T>> children;
+        private T value;
+
+        Node<T> child(String level) {
+            return children != null ? children.get(level) : null;
+        }
+
+        boolean isEmpty() {
+            return value == null && (children == null || children.isEmpty());
+        }
+    }
+
+    private final Node<T> root = new Node<T>();
+    private int size;
+
+    /**
+     * @return the value previously mapped to the key, or null
+     */
+    public T put(String key, T value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value cannot be null");
+        }
+        Node<T> node = root;
+        for (String level : split(key)) {
+            Node<T> child = node.child(level);
+            if (child == null) {
+                if (node.children == null) {
+                    node.children = new HashMap<String, Node<T>>(4);
+                }
+                child = new Node<T>();
+                node.children.put(level, child);
+            }
+            node = child;
+        }
+        T previous = node.value;
+        node.value = value;
+        if (previous == null) {
+            size++;
+        }
+        return previous;
+    }
+
+    public T get(String key) {
+        Node<T> node = root;
+        for (String level : split(key)) {
+            node = node.child(level);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node.value;
+    }
+
+    /**
+     * @return the value that was mapped to the key, or null
+     */
+    public T remove(String key) {
+        String[] levels = split(key);
+        List<Node<T>> path = new ArrayList<Node<T>>(levels.length + 1);
+        Node<T> node = root;
+        path.add(node);
+        for (String level : levels) {
+            node = node.child(level);
+            if (node == null) {
+                return null;
+            }
+            path.add(node);
+        }
+        T previous = node.value;
+        if (previous != null) {
+            node.value = null;
+            size--;
+            // prune the nodes left without values or children
+            for (int i = levels.length; i > 0 && path.get(i).isEmpty(); i--) {
+                path.get(i - 1).children.remove(levels[i - 1]);
+            }
+        }
+        return previous;
+    }
+
+    public void clear() {
+        root.children = null;
+        root.value = null;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the values of the topic names matched by the filter
+     */
+    public List<T> match(String filter) {
+        List<T> result = new ArrayList<T>();
+        match(root, split(filter), 0, result);
+        return result;
+    }
+
+    private void match(Node<T> node, String[] filter, int index, List<T> result) {
+        if (index == filter.length) {
+            if (node.value != null) {
+                result.add(node.value);
+            }
+            return;
+        }
+        String level = filter[index];
+        if (MULTI_LEVEL_WILDCARD.equals(level)) {
+            // matches the parent level as well
+            if (node.value != null && node != root) {
+                result.add(node.value);
+            }
+            collect(node, index == 0, result);
+        } else if (SINGLE_LEVEL_WILDCARD.equals(level)) {
+            if (node.children != null) {
+                for (Map.Entry<String, Node<T>> entry : node.children.entrySet()) {
+                    if (index > 0 || !entry.getKey().startsWith("$")) {
+                        match(entry.getValue(), filter, index + 1, result);
+                    }
+                }
+            }
+        } else {
+            Node<T> child = node.child(level);
+            if (child != null) {
+                match(child, filter, index + 1, result);
+            }
+        }
+    }
+
+    private void collect(Node<T> node, boolean firstLevel, List<T> result) {
+        if (node.children != null) {
+            for (Map.Entry<String, Node<T>> entry : node.children.entrySet()) {
+                if (firstLevel && entry.getKey().startsWith("$")) {
+                    continue;
+                }
+                Node<T> child = entry.getValue();
+                if (child.value != null) {
+                    result.add(child.value);
+                }
+                collect(child, false, result);
+            }
+        }
+    }
+
+    private static String[] split(String key) {
+        // keeps the empty levels, a/b and a/b/ are different topics
+        return key.split(SEPARATOR, -1);
+    }
+}
@@ -159,6 +159,14 @@ public class MQTTTransportFilter extends TransportFilter implements MQTTTranspor
         protocolConverter.setDefaultKeepAlive(defaultHeartBeat);
     }
 
+    public MQTTRetainedMessageStore getRetainedMessageStore() {
+        return protocolConverter.getRetainedMessageStore();
+    }
+
+    public void setRetainedMessageStore(MQTTRetainedMessageStore retainedMessageStore) {
+        protocolConverter.setRetainedMessageStore(retainedMessageStore);
+    }
+
     public int getActiveMQSubscriptionPrefetch() {
         return protocolConverter.getActiveMQSubscriptionPrefetch();
     }
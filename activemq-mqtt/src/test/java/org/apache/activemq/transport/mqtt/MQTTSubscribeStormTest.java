@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.mqtt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TransportConnector;
+import org.fusesource.mqtt.client.BlockingConnection;
+import org.fusesource.mqtt.client.MQTT;
+import org.fusesource.mqtt.client.Message;
+import org.fusesource.mqtt.client.QoS;
+import org.fusesource.mqtt.client.Topic;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connects many MQTT clients at once, each subscribing to wildcard filters
+ * that match a share of a large set of retained topics, and reports how long
+ * the storm takes to settle.
+ */
+public class MQTTSubscribeStormTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MQTTSubscribeStormTest.class);
+
+    private static final int CLIENTS = 200;
+    private static final int THREADS = 20;
+    private static final int GROUPS = 50;
+    private static final int TOPICS_PER_GROUP = 20;
+
+    private BrokerService brokerService;
+    private TransportConnector mqttConnector;
+
+    @Before
+    public void startBroker() throws Exception {
+        brokerService = new BrokerService();
+        brokerService.setPersistent(false);
+        brokerService.setAdvisorySupport(false);
+        brokerService.setUseJmx(false);
+        mqttConnector = brokerService.addConnector("mqtt://localhost:0");
+        brokerService.start();
+    }
+
+    @After
+    public void stopBroker() throws Exception {
+        if (brokerService != null) {
+            brokerService.stop();
+        }
+    }
+
+    @Test(timeout=300000)
+    public void testConnectSubscribeStorm() throws Exception {
+        BlockingConnection publisher = createMQTT("publisher").blockingConnection();
+        publisher.connect();
+        long start = System.currentTimeMillis();
+        for (int group = 0; group < GROUPS; group++) {
+            for (int i = 0; i < TOPICS_PER_GROUP; i++) {
+                publisher.publish("storm/" + group + "/sensor/" + i, ("value " + i).getBytes(), QoS.AT_LEAST_ONCE, true);
+            }
+        }
+        LOG.info("Retained " + GROUPS * TOPICS_PER_GROUP + " messages in " + (System.currentTimeMillis() - start) + " ms");
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        start = System.currentTimeMillis();
+        for (int c = 0; c < CLIENTS; c++) {
+            final int client = c;
+            results.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    BlockingConnection connection = createMQTT("storm-" + client).blockingConnection();
+                    connection.connect();
+                    int group = client % GROUPS;
+                    connection.subscribe(new Topic[] {new Topic("storm/" + group + "/sensor/+", QoS.AT_MOST_ONCE),
+                        new Topic("storm/" + group + "/#", QoS.AT_MOST_ONCE), new Topic("control/" + client, QoS.AT_MOST_ONCE)});
+                    // both filters match every topic of the group, each
+                    // retained message is sent once per subscription
+                    int received = 0;
+                    Message message;
+                    while (received < 2 * TOPICS_PER_GROUP && (message = connection.receive(10, TimeUnit.SECONDS)) != null) {
+                        message.ack();
+                        received++;
+                    }
+                    connection.disconnect();
+                    return received;
+                }
+            }));
+        }
+
+        for (Future<Integer> result : results) {
+            assertEquals(2 * TOPICS_PER_GROUP, result.get().intValue());
+        }
+        long duration = System.currentTimeMillis() - start;
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        LOG.info(CLIENTS + " clients connected and subscribed to " + 3 * CLIENTS + " filters in " + duration + " ms");
+
+        publisher.disconnect();
+    }
+
+    private MQTT createMQTT(String clientId) throws Exception {
+        MQTT mqtt = new MQTT();
+        mqtt.setHost("localhost", mqttConnector.getConnectUri().getPort());
+        mqtt.setClientId(clientId);
+        mqtt.setConnectAttemptsMax(0);
+        mqtt.setReconnectAttemptsMax(0);
+        return mqtt;
+    }
+}
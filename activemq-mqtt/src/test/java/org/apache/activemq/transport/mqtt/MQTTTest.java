@@ -16,11 +16,20 @@
  */
 package org.apache.activemq.transport.mqtt;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.broker.BrokerService;
 import org.apache.activemq.util.Wait;
 import org.fusesource.mqtt.client.BlockingConnection;
 import org.fusesource.mqtt.client.MQTT;
+import org.fusesource.mqtt.client.Message;
+import org.fusesource.mqtt.client.QoS;
+import org.fusesource.mqtt.client.Topic;
 import org.junit.Test;
 
 public class MQTTTest extends AbstractMQTTTest {
@@ -106,6 +115,97 @@ public class MQTTTest extends AbstractMQTTTest {
         }
     }
 
+    @Test(timeout=60000)
+    public void testRetainedMessageSentToNewSubscription() throws Exception {
+        addMQTTConnector();
+        brokerService.start();
+
+        BlockingConnection publisher = createMQTTConnection().blockingConnection();
+        publisher.connect();
+        publisher.publish("foo/retained", "first".getBytes(), QoS.AT_LEAST_ONCE, true);
+        publisher.publish("foo/retained", "last".getBytes(), QoS.AT_LEAST_ONCE, true);
+        publisher.publish("foo/other", "not retained".getBytes(), QoS.AT_LEAST_ONCE, false);
+
+        BlockingConnection subscriber = createMQTTConnection().blockingConnection();
+        subscriber.connect();
+        subscriber.subscribe(new Topic[] {new Topic("foo/+", QoS.AT_LEAST_ONCE)});
+        Message message = subscriber.receive(5, TimeUnit.SECONDS);
+        assertNotNull("retained message", message);
+        assertEquals("foo/retained", message.getTopic());
+        assertEquals("last", new String(message.getPayload()));
+        message.ack();
+
+        // an empty retained message clears the topic
+        publisher.publish("foo/retained", new byte[0], QoS.AT_LEAST_ONCE, true);
+        message = subscriber.receive(5, TimeUnit.SECONDS);
+        assertNotNull(message);
+        message.ack();
+        BlockingConnection late = createMQTTConnection().blockingConnection();
+        late.connect();
+        late.subscribe(new Topic[] {new Topic("foo/#", QoS.AT_LEAST_ONCE)});
+        assertNull(late.receive(500, TimeUnit.MILLISECONDS));
+
+        late.disconnect();
+        subscriber.disconnect();
+        publisher.disconnect();
+    }
+
+    @Test(timeout=60000)
+    public void testRetainedMessageSurvivesRestart() throws Exception {
+        brokerService.setPersistent(true);
+        brokerService.setDeleteAllMessagesOnStartup(true);
+        addMQTTConnector();
+        brokerService.start();
+
+        BlockingConnection publisher = createMQTTConnection().blockingConnection();
+        publisher.connect();
+        publisher.publish("foo/retained", "replaced".getBytes(), QoS.AT_LEAST_ONCE, true);
+        publisher.publish("foo/retained", "kept".getBytes(), QoS.AT_LEAST_ONCE, true);
+        publisher.disconnect();
+
+        brokerService.stop();
+        brokerService.waitUntilStopped();
+        brokerService = new BrokerService();
+        brokerService.setAdvisorySupport(false);
+        brokerService.setUseJmx(false);
+        addMQTTConnector();
+        brokerService.start();
+
+        BlockingConnection subscriber = createMQTTConnection().blockingConnection();
+        subscriber.connect();
+        subscriber.subscribe(new Topic[] {new Topic("foo/retained", QoS.AT_MOST_ONCE)});
+        Message message = subscriber.receive(5, TimeUnit.SECONDS);
+        assertNotNull("retained message", message);
+        assertEquals("kept", new String(message.getPayload()));
+        subscriber.disconnect();
+    }
+
+    @Test(timeout=60000)
+    public void testOverlappingSubscriptionsReceiveEachMatch() throws Exception {
+        addMQTTConnector();
+        brokerService.start();
+
+        BlockingConnection subscriber = createMQTTConnection().blockingConnection();
+        subscriber.connect();
+        subscriber.subscribe(new Topic[] {new Topic("foo/#", QoS.AT_LEAST_ONCE), new Topic("foo/+", QoS.AT_LEAST_ONCE),
+            new Topic("foo/bar", QoS.AT_LEAST_ONCE)});
+
+        BlockingConnection publisher = createMQTTConnection().blockingConnection();
+        publisher.connect();
+        publisher.publish("foo/bar", "each".getBytes(), QoS.AT_LEAST_ONCE, false);
+
+        // the message is published to the client once for every matching filter
+        for (int i = 0; i < 3; i++) {
+            Message message = subscriber.receive(5, TimeUnit.SECONDS);
+            assertNotNull("message for filter " + i, message);
+            assertEquals("each", new String(message.getPayload()));
+            message.ack();
+        }
+
+        subscriber.disconnect();
+        publisher.disconnect();
+    }
+
     @Override
     protected String getProtocolScheme() {
         return "mqtt";
@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.mqtt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class MQTTTopicTrieTest {
+
+    @Test
+    public void testPutGetRemove() {
+        MQTTTopicTrie<String> trie = new MQTTTopicTrie<String>();
+        assertNull(trie.put("a/b", "1"));
+        assertEquals("1", trie.put("a/b", "2"));
+        trie.put("a/b/c", "3");
+        assertEquals(2, trie.size());
+        assertEquals("2", trie.get("a/b"));
+        assertNull(trie.get("a"));
+
+        assertEquals("2", trie.remove("a/b"));
+        assertNull(trie.remove("a/b"));
+        assertEquals("3", trie.get("a/b/c"));
+        assertEquals("3", trie.remove("a/b/c"));
+        assertTrue(trie.isEmpty());
+    }
+
+    @Test
+    public void testMatchTopicsWithFilter() {
+        MQTTTopicTrie<String> trie = new MQTTTopicTrie<String>();
+        for (String topic : new String[] {"sport", "sport/tennis", "sport/tennis/player1", "sport/tennis/player2",
+            "sport/golf", "/finance", "$SYS/broker"}) {
+            trie.put(topic, topic);
+        }
+
+        assertMatches(trie.match("sport/tennis/player1"), "sport/tennis/player1");
+        assertMatches(trie.match("sport/tennis/+"), "sport/tennis/player1", "sport/tennis/player2");
+        assertMatches(trie.match("sport/+"), "sport/tennis", "sport/golf");
+        assertMatches(trie.match("sport/#"), "sport", "sport/tennis", "sport/tennis/player1", "sport/tennis/player2", "sport/golf");
+        assertMatches(trie.match("+/+"), "sport/tennis", "sport/golf", "/finance");
+        assertMatches(trie.match("#"), "sport", "sport/tennis", "sport/tennis/player1", "sport/tennis/player2", "sport/golf", "/finance");
+        assertMatches(trie.match("$SYS/#"), "$SYS/broker");
+        assertMatches(trie.match("tennis/#"));
+    }
+
+    private static void assertMatches(List<String> actual, String... expected) {
+        Set<String> result = new HashSet<String>(actual);
+        assertEquals("duplicate matches: " + actual, actual.size(), result.size());
+        assertEquals(new HashSet<String>(Arrays.asList(expected)), result);
+    }
+}
@@ -46,20 +46,11 @@ public class LegacyFrameTranslator implements FrameTranslator {
             String intendedType = (String)headers.get(Stomp.Headers.AMQ_MESSAGE_TYPE);
             if(intendedType.equalsIgnoreCase("text")){
                 ActiveMQTextMessage text = new ActiveMQTextMessage();
-                try {
-                    ByteArrayOutputStream bytes = new ByteArrayOutputStream(command.getContent().length + 4);
-                    DataOutputStream data = new DataOutputStream(bytes);
-                    data.writeInt(command.getContent().length);
-                    data.write(command.getContent());
-                    text.setContent(bytes.toByteSequence());
-                    data.close();
-                } catch (Throwable e) {
-                    throw new ProtocolException("Text could not bet set: " + e, false, e);
-                }
+                text.setContent(createTextContent(command));
                 msg = text;
             } else if(intendedType.equalsIgnoreCase("bytes")) {
                 ActiveMQBytesMessage byteMessage = new ActiveMQBytesMessage();
-                byteMessage.writeBytes(command.getContent());
+                byteMessage.setContent(command.getContentSequence());
                 msg = byteMessage;
             } else {
                 throw new ProtocolException("Unsupported message type '"+intendedType+"'",false);
@@ -67,26 +58,46 @@ public class LegacyFrameTranslator implements FrameTranslator {
         }else if (headers.containsKey(Stomp.Headers.CONTENT_LENGTH)) {
             headers.remove(Stomp.Headers.CONTENT_LENGTH);
             ActiveMQBytesMessage bm = new ActiveMQBytesMessage();
-            bm.writeBytes(command.getContent());
+            bm.setContent(command.getContentSequence());
             msg = bm;
         } else {
             ActiveMQTextMessage text = new ActiveMQTextMessage();
-            try {
-                ByteArrayOutputStream bytes = new ByteArrayOutputStream(command.getContent().length + 4);
-                DataOutputStream data = new DataOutputStream(bytes);
-                data.writeInt(command.getContent().length);
-                data.write(command.getContent());
-                text.setContent(bytes.toByteSequence());
-                data.close();
-            } catch (Throwable e) {
-                throw new ProtocolException("Text could not bet set: " + e, false, e);
-            }
+            text.setContent(createTextContent(command));
             msg = text;
         }
         FrameTranslator.Helper.copyStandardHeadersFromFrameToMessage(converter, command, msg, this);
         return msg;
     }
 
+    /**
+     * @return the frame content as the body of a text message, which is the
+     *         length of the UTF-8 text followed by the text. The length is
+     *         written in front of the content when the frame has room for it
+     *         there, so the content is not copied.
+     */
+    protected ByteSequence createTextContent(StompFrame command) throws ProtocolException {
+        ByteSequence content = command.getContentSequence();
+        if (content.offset >= 4) {
+            ByteSequence body = new ByteSequence(content.data, content.offset - 4, content.length + 4);
+            int length = content.length;
+            body.data[body.offset] = (byte) (length >>> 24);
+            body.data[body.offset + 1] = (byte) (length >>> 16);
+            body.data[body.offset + 2] = (byte) (length >>> 8);
+            body.data[body.offset + 3] = (byte) length;
+            return body;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length + 4);
+            DataOutputStream data = new DataOutputStream(bytes);
+            data.writeInt(content.length);
+            data.write(content.data, content.offset, content.length);
+            data.close();
+            return bytes.toByteSequence();
+        } catch (Throwable e) {
+            throw new ProtocolException("Text could not bet set: " + e, false, e);
+        }
+    }
+
     public StompFrame convertMessage(ProtocolConverter converter, ActiveMQMessage message) throws IOException, JMSException {
         StompFrame command = new StompFrame();
         command.setAction(Stomp.Responses.MESSAGE);
@@ -101,7 +112,7 @@ public class LegacyFrameTranslator implements FrameTranslator {
                 ByteSequence msgContent = message.getContent();
                 if (msgContent.getLength() > 4) {
                     byte[] content = new byte[msgContent.getLength() - 4];
-                    System.arraycopy(msgContent.data, 4, content, 0, content.length);
+                    System.arraycopy(msgContent.data, msgContent.offset + 4, content, 0, content.length);
                     command.setContent(content);
                 }
             } else {
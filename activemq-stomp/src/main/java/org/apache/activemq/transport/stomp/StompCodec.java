@@ -16,29 +16,35 @@
  */
 package org.apache.activemq.transport.stomp;
 
-import java.io.ByteArrayInputStream;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 
 import org.apache.activemq.transport.tcp.TcpTransport;
 import org.apache.activemq.util.ByteArrayOutputStream;
-import org.apache.activemq.util.DataByteArrayInputStream;
+import org.apache.activemq.util.ByteSequence;
 
+/**
+ * Cuts the bytes read by a NIO STOMP transport into frames.
+ *
+ * The command and headers are parsed straight out of the read buffer when
+ * they arrive in one read, and only collected across reads otherwise. The
+ * content is copied once, into a buffer with room in front of it for the
+ * translation to a message body, so the translator can take it over as is.
+ */
 public class StompCodec {
 
-    final static byte[] crlfcrlf = new byte[]{'\r','\n','\r','\n'};
+    private static final byte[] NO_HEADROOM = new byte[StompFrame.CONTENT_HEADROOM];
+
     TcpTransport transport;
 
     ByteArrayOutputStream currentCommand = new ByteArrayOutputStream();
-    boolean processedHeaders = false;
-    String action;
-    HashMap<String, String> headers;
+    StompFrame frame;
     int contentLength = -1;
+    byte[] content;
     int readLength = 0;
-    int previousByte = -1;
+    int lastBytes = 0;
     boolean awaitingCommandStart = true;
     String version = Stomp.DEFAULT_VERSION;
 
@@ -46,75 +52,117 @@ public class StompCodec {
         this.transport = transport;
     }
 
-    public void parse(ByteArrayInputStream input, int readSize) throws Exception {
-       int i = 0;
-       int b;
-       while(i++ < readSize) {
-           b = input.read();
-           // skip repeating nulls
-           if (!processedHeaders && previousByte == 0 && b == 0) {
-               continue;
-           }
-
-           if (!processedHeaders) {
-
-               // skip heart beat commands.
-               if (awaitingCommandStart && b == '\n') {
-                   continue;
-               } else {
-                   awaitingCommandStart = false;   // non-newline indicates next frame.
-               }
-
-               currentCommand.write(b);
-               // end of headers section, parse action and header
-               if (b == '\n' && (previousByte == '\n' || currentCommand.endsWith(crlfcrlf))) {
-                   StompWireFormat wf = (StompWireFormat) transport.getWireFormat();
-                   DataByteArrayInputStream data = new DataByteArrayInputStream(currentCommand.toByteArray());
-                   action = wf.parseAction(data);
-                   headers = wf.parseHeaders(data);
-                   try {
-                       String contentLengthHeader = headers.get(Stomp.Headers.CONTENT_LENGTH);
-                       if ((action.equals(Stomp.Commands.SEND) || action.equals(Stomp.Responses.MESSAGE)) && contentLengthHeader != null) {
-                           contentLength = wf.parseContentLength(contentLengthHeader);
-                       } else {
-                           contentLength = -1;
-                       }
-                   } catch (ProtocolException ignore) {}
-                   processedHeaders = true;
-                   currentCommand.reset();
-               }
-
-           } else {
-
-               if (contentLength == -1) {
-                   // end of command reached, unmarshal
-                   if (b == 0) {
-                       processCommand();
-                   } else {
-                       currentCommand.write(b);
-                   }
-               } else {
-                   // read desired content length
-                   if (readLength++ == contentLength) {
-                       processCommand();
-                       readLength = 0;
-                   } else {
-                       currentCommand.write(b);
-                   }
-               }
-           }
-
-           previousByte = b;
-       }
+    public void parse(byte[] data, int offset, int length) throws Exception {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            if (frame == null) {
+                i = parseHeaders(data, i, end);
+            } else if (contentLength != -1) {
+                i = readContent(data, i, end);
+            } else {
+                i = readUntilNull(data, i, end);
+            }
+        }
     }
 
-    protected void processCommand() throws Exception {
-        StompFrame frame = new StompFrame(action, headers, currentCommand.toByteArray());
-        transport.doConsume(frame);
-        processedHeaders = false;
-        awaitingCommandStart = true;
-        currentCommand.reset();
+    private int parseHeaders(byte[] data, int i, int end) throws Exception {
+        if (awaitingCommandStart) {
+            // skip heart beats and repeating nulls
+            while (i < end && (data[i] == '\n' || data[i] == 0)) {
+                i++;
+            }
+            if (i == end) {
+                return end;
+            }
+            awaitingCommandStart = false;
+        }
+
+        int start = i;
+        for (; i < end; i++) {
+            lastBytes = (lastBytes << 8) | (data[i] & 0xFF);
+            // end of headers section, parse action and header
+            if ((lastBytes & 0xFFFF) == 0x0A0A || lastBytes == 0x0D0A0D0A) {
+                StompWireFormat wf = (StompWireFormat) transport.getWireFormat();
+                if (currentCommand.size() == 0) {
+                    frame = wf.parseHeaders(data, start, i + 1);
+                } else {
+                    currentCommand.write(data, start, i + 1 - start);
+                    ByteSequence headers = currentCommand.toByteSequence();
+                    frame = wf.parseHeaders(headers.data, headers.offset, headers.offset + headers.length);
+                    currentCommand.reset();
+                }
+                try {
+                    contentLength = wf.getContentLength(frame);
+                } catch (ProtocolException ignore) {
+                    contentLength = -1;
+                }
+                if (contentLength != -1) {
+                    content = new byte[StompFrame.CONTENT_HEADROOM + contentLength];
+                    readLength = 0;
+                }
+                return i + 1;
+            }
+        }
+        currentCommand.write(data, start, end - start);
+        return end;
+    }
+
+    private int readContent(byte[] data, int i, int end) throws Exception {
+        // read desired content length
+        int count = Math.min(contentLength - readLength, end - i);
+        System.arraycopy(data, i, content, StompFrame.CONTENT_HEADROOM + readLength, count);
+        readLength += count;
+        i += count;
+        if (readLength == contentLength && i < end) {
+            // skip the null byte ending the frame
+            processCommand(new ByteSequence(content, StompFrame.CONTENT_HEADROOM, contentLength));
+            i++;
+        }
+        return i;
+    }
+
+    private int readUntilNull(byte[] data, int i, int end) throws Exception {
+        int nul = i;
+        while (nul < end && data[nul] != 0) {
+            nul++;
+        }
+        if (nul == end) {
+            if (currentCommand.size() == 0) {
+                currentCommand.write(NO_HEADROOM);
+            }
+            currentCommand.write(data, i, end - i);
+            return end;
+        }
+
+        // end of command reached, unmarshal
+        ByteSequence body;
+        if (currentCommand.size() == 0) {
+            body = new ByteSequence(new byte[StompFrame.CONTENT_HEADROOM + nul - i], StompFrame.CONTENT_HEADROOM, nul - i);
+            System.arraycopy(data, i, body.data, body.offset, body.length);
+        } else {
+            currentCommand.write(data, i, nul - i);
+            body = currentCommand.toByteSequence();
+            body.offset = StompFrame.CONTENT_HEADROOM;
+            body.length -= StompFrame.CONTENT_HEADROOM;
+            // the frame takes over the buffer
+            currentCommand = new ByteArrayOutputStream();
+        }
+        processCommand(body);
+        return nul + 1;
+    }
+
+    protected void processCommand(ByteSequence body) throws Exception {
+        StompFrame command = frame;
+        if (body.length > 0) {
+            command.setContent(body);
+        }
+        frame = null;
+        content = null;
         contentLength = -1;
+        lastBytes = 0;
+        awaitingCommandStart = true;
+        transport.doConsume(command);
     }
 
     public static String detectVersion(Map<String, String> headers) throws ProtocolException {
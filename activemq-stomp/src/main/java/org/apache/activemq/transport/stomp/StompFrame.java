@@ -26,6 +26,7 @@ import org.apache.activemq.command.Command;
 import org.apache.activemq.command.Endpoint;
 import org.apache.activemq.command.Response;
 import org.apache.activemq.state.CommandVisitor;
+import org.apache.activemq.util.ByteSequence;
 import org.apache.activemq.util.MarshallingSupport;
 
 /**
@@ -37,9 +38,16 @@ public class StompFrame implements Command {
 
     public static final byte[] NO_DATA = new byte[] {};
 
+    /**
+     * The number of free bytes the parser leaves in front of the content it
+     * reads, enough for the length prefix of a text message body.
+     */
+    public static final int CONTENT_HEADROOM = 4;
+
     private String action;
     private Map<String, String> headers = new HashMap<String, String>();
     private byte[] content = NO_DATA;
+    private ByteSequence contentView;
 
     private transient Object transportContext = null;
 
@@ -71,19 +79,50 @@ public class StompFrame implements Command {
     }
 
     public byte[] getContent() {
+        if (contentView != null) {
+            if (contentView.offset == 0 && contentView.length == contentView.data.length) {
+                content = contentView.data;
+            } else {
+                content = Arrays.copyOfRange(contentView.data, contentView.offset, contentView.offset + contentView.length);
+            }
+            contentView = null;
+        }
         return content;
     }
 
+    /**
+     * Gives access to the content without copying it out of the buffer it was
+     * parsed into. The bytes of the buffer in front of the offset belong to the
+     * frame as well, so the caller may use them to prefix the content in place.
+     */
+    public ByteSequence getContentSequence() {
+        if (contentView != null) {
+            return contentView;
+        }
+        return new ByteSequence(content, 0, content.length);
+    }
+
     public String getBody() {
+        ByteSequence body = getContentSequence();
         try {
-            return new String(content, "UTF-8");
+            return new String(body.data, body.offset, body.length, "UTF-8");
         } catch (UnsupportedEncodingException e) {
-            return new String(content);
+            return new String(body.data, body.offset, body.length);
         }
     }
 
     public void setContent(byte[] data) {
         this.content = data;
+        this.contentView = null;
+    }
+
+    /**
+     * Sets the content to a view of a buffer owned by the frame from now on,
+     * including any bytes in front of the view.
+     */
+    public void setContent(ByteSequence data) {
+        this.content = NO_DATA;
+        this.contentView = data;
     }
 
     public Map<String, String> getHeaders() {
@@ -16,7 +16,6 @@
  */
 package org.apache.activemq.transport.stomp;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.Socket;
 import java.net.URI;
@@ -54,10 +53,8 @@ public class StompNIOSSLTransport extends NIOSSLTransport {
 
     @Override
     protected void processCommand(ByteBuffer plain) throws Exception {
-        byte[] fill = new byte[plain.remaining()];
-        plain.get(fill);
-        ByteArrayInputStream input = new ByteArrayInputStream(fill);
-        codec.parse(input, fill.length);
+        codec.parse(plain.array(), plain.arrayOffset() + plain.position(), plain.remaining());
+        plain.position(plain.limit());
     }
 
     @Override
@@ -16,7 +16,6 @@
  */
 package org.apache.activemq.transport.stomp;
 
-import java.io.ByteArrayInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
@@ -107,8 +106,7 @@ public class StompNIOTransport extends TcpTransport {
 
                inputBuffer.flip();
 
-               ByteArrayInputStream input = new ByteArrayInputStream(inputBuffer.array());
-               codec.parse(input, readSize);
+               codec.parse(inputBuffer.array(), inputBuffer.arrayOffset() + inputBuffer.position(), inputBuffer.remaining());
 
                // clear the buffer
                inputBuffer.clear();
@@ -17,13 +17,18 @@
 package org.apache.activemq.transport.stomp;
 
 import java.io.DataInput;
-import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PushbackInputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.activemq.util.ByteArrayInputStream;
@@ -37,7 +42,7 @@ import org.apache.activemq.wireformat.WireFormat;
  */
 public class StompWireFormat implements WireFormat {
 
-    private static final byte[] NO_DATA = new byte[] {};
+    private static final byte[] NO_HEADROOM = new byte[StompFrame.CONTENT_HEADROOM];
     private static final byte[] END_OF_FRAME = new byte[] {0, '\n'};
 
     private static final int MAX_COMMAND_LENGTH = 1024;
@@ -45,6 +50,10 @@ public class StompWireFormat implements WireFormat {
     private static final int MAX_HEADERS = 1000;
     private static final int MAX_DATA_LENGTH = 1024 * 1024 * 100;
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final NameTable COMMAND_NAMES = new NameTable(Stomp.Commands.class, Stomp.Responses.class);
+    private static final NameTable HEADER_NAMES = new NameTable(Stomp.Headers.class);
+
     private int version = 1;
     private String stompVersion = Stomp.DEFAULT_VERSION;
 
@@ -56,10 +65,52 @@ public class StompWireFormat implements WireFormat {
         return baos.toByteSequence();
     }
 
+    /**
+     * Parses a frame straight out of the packet, the content of the frame is
+     * a view of the packet so the caller hands the packet over to the frame.
+     */
     public Object unmarshal(ByteSequence packet) throws IOException {
-        ByteArrayInputStream stream = new ByteArrayInputStream(packet);
-        DataInputStream dis = new DataInputStream(stream);
-        return unmarshal(dis);
+        byte[] data = packet.getData();
+        int end = packet.getOffset() + packet.getLength();
+        try {
+            // skip white space to the command line
+            int start = packet.getOffset();
+            while (start < end && (data[start] == '\n' || data[start] == '\r')) {
+                start++;
+            }
+            int headersEnd = findEndOfHeaders(data, start, end);
+            if (headersEnd == -1) {
+                throw new EOFException("The frame ended before its headers");
+            }
+            StompFrame frame = parseHeaders(data, start, headersEnd);
+
+            int contentEnd;
+            int contentLength = getContentLength(frame);
+            if (contentLength != -1) {
+                contentEnd = headersEnd + contentLength;
+                if (contentEnd >= end) {
+                    throw new EOFException("The frame ended before its content");
+                }
+                if (data[contentEnd] != 0) {
+                    throw new ProtocolException(Stomp.Headers.CONTENT_LENGTH + " bytes were read and " + "there was no trailing null byte", true);
+                }
+            } else {
+                contentEnd = indexOf(data, (byte) 0, headersEnd, end);
+                if (contentEnd == -1) {
+                    throw new EOFException("The frame ended before its trailing null byte");
+                }
+                if (contentEnd - headersEnd > MAX_DATA_LENGTH) {
+                    throw new ProtocolException("The maximum data length was exceeded", true);
+                }
+            }
+            if (contentEnd > headersEnd) {
+                frame.setContent(new ByteSequence(data, headersEnd, contentEnd - headersEnd));
+            }
+            return frame;
+
+        } catch (ProtocolException e) {
+            return new StompFrameError(e);
+        }
     }
 
     public void marshal(Object command, DataOutput os) throws IOException {
@@ -100,16 +151,17 @@ public class StompWireFormat implements WireFormat {
             // Parse the headers
             HashMap<String, String> headers = parseHeaders(in);
 
-            // Read in the data part.
-            byte[] data = NO_DATA;
+            // Read in the data part, leaving room in front of it for the
+            // translation to a message body.
+            ByteSequence data = null;
             String contentLength = headers.get(Stomp.Headers.CONTENT_LENGTH);
             if ((action.equals(Stomp.Commands.SEND) || action.equals(Stomp.Responses.MESSAGE)) && contentLength != null) {
 
                 // Bless the client, he's telling us how much data to read in.
                 int length = parseContentLength(contentLength);
 
-                data = new byte[length];
-                in.readFully(data);
+                data = new ByteSequence(new byte[StompFrame.CONTENT_HEADROOM + length], StompFrame.CONTENT_HEADROOM, length);
+                in.readFully(data.data, data.offset, data.length);
 
                 if (in.readByte() != 0) {
                     throw new ProtocolException(Stomp.Headers.CONTENT_LENGTH + " bytes were read and " + "there was no trailing null byte", true);
@@ -124,6 +176,7 @@ public class StompWireFormat implements WireFormat {
 
                     if (baos == null) {
                         baos = new ByteArrayOutputStream();
+                        baos.write(NO_HEADROOM);
                     } else if (baos.size() > MAX_DATA_LENGTH) {
                         throw new ProtocolException("The maximum data length was exceeded", true);
                     }
@@ -133,11 +186,17 @@ public class StompWireFormat implements WireFormat {
 
                 if (baos != null) {
                     baos.close();
-                    data = baos.toByteArray();
+                    data = baos.toByteSequence();
+                    data.offset = StompFrame.CONTENT_HEADROOM;
+                    data.length -= StompFrame.CONTENT_HEADROOM;
                 }
             }
 
-            return new StompFrame(action, headers, data);
+            StompFrame frame = new StompFrame(action, headers);
+            if (data != null) {
+                frame.setContent(data);
+            }
+            return frame;
 
         } catch (ProtocolException e) {
             return new StompFrameError(e);
@@ -146,7 +205,7 @@ public class StompWireFormat implements WireFormat {
 
     private String readLine(DataInput in, int maxLength, String errorMessage) throws IOException {
         ByteSequence sequence = readHeaderLine(in, maxLength, errorMessage);
-        return new String(sequence.getData(), sequence.getOffset(), sequence.getLength(), "UTF-8").trim();
+        return COMMAND_NAMES.get(sequence.getData(), sequence.getOffset(), sequence.getLength()).trim();
     }
 
     private ByteSequence readHeaderLine(DataInput in, int maxLength, String errorMessage) throws IOException {
@@ -219,7 +278,7 @@ public class StompWireFormat implements WireFormat {
 
                     ByteSequence nameSeq = stream.toByteSequence();
 
-                    String name = new String(nameSeq.getData(), nameSeq.getOffset(), nameSeq.getLength(), "UTF-8");
+                    String name = HEADER_NAMES.get(nameSeq.getData(), nameSeq.getOffset(), nameSeq.getLength());
                     String value = decodeHeader(headerLine);
                     if (stompVersion.equals(Stomp.V1_0)) {
                         value = value.trim();
@@ -241,6 +300,125 @@ public class StompWireFormat implements WireFormat {
         return headers;
     }
 
+    /**
+     * @return the index following the blank line that ends the command and
+     *         header lines starting at offset, or -1 when it is not in the
+     *         buffer
+     */
+    static int findEndOfHeaders(byte[] data, int offset, int end) {
+        for (int i = offset; i < end; i++) {
+            if (data[i] == '\n' && i > offset) {
+                if (data[i - 1] == '\n') {
+                    return i + 1;
+                }
+                if (i - 3 >= offset && data[i - 1] == '\r' && data[i - 2] == '\n' && data[i - 3] == '\r') {
+                    return i + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses the command and header lines of a frame directly out of the
+     * buffer they were read into, up to the blank line that ends them.
+     *
+     * @return a frame without content
+     */
+    protected StompFrame parseHeaders(byte[] data, int offset, int end) throws ProtocolException {
+        // the command line, skipping blank lines ahead of it
+        String action = null;
+        int lineStart = offset;
+        while (action == null) {
+            int lineEnd = indexOf(data, (byte) '\n', lineStart, end);
+            if (lineEnd == -1) {
+                throw new ProtocolException("The frame has no command", true);
+            }
+            if (lineEnd - lineStart > MAX_COMMAND_LENGTH) {
+                throw new ProtocolException("The maximum command length was exceeded", true);
+            }
+            int start = lineStart;
+            int stop = lineEnd;
+            while (start < stop && data[start] <= ' ') {
+                start++;
+            }
+            while (stop > start && data[stop - 1] <= ' ') {
+                stop--;
+            }
+            if (stop > start) {
+                action = COMMAND_NAMES.get(data, start, stop - start);
+            }
+            lineStart = lineEnd + 1;
+        }
+
+        HashMap<String, String> headers = new HashMap<String, String>(25);
+        boolean stripReturn = stompVersion.equals(Stomp.V1_0) || stompVersion.equals(Stomp.V1_2);
+        while (lineStart < end) {
+            int lineEnd = indexOf(data, (byte) '\n', lineStart, end);
+            if (lineEnd == -1) {
+                lineEnd = end;
+            }
+            if (lineEnd - lineStart > MAX_HEADER_LENGTH) {
+                throw new ProtocolException("The maximum header length was exceeded", true);
+            }
+            int stop = lineEnd;
+            if (stripReturn && stop > lineStart && data[stop - 1] == '\r') {
+                stop--;
+            }
+            if (stop - lineStart <= 1) {
+                break;
+            }
+            if (headers.size() > MAX_HEADERS) {
+                throw new ProtocolException("The maximum number of headers was exceeded", true);
+            }
+
+            int colon = indexOf(data, Stomp.COLON, lineStart, stop);
+            String name;
+            String value;
+            try {
+                if (colon == -1) {
+                    name = HEADER_NAMES.get(data, lineStart, stop - lineStart);
+                    value = Stomp.EMPTY;
+                } else {
+                    name = HEADER_NAMES.get(data, lineStart, colon - lineStart);
+                    value = decodeHeader(data, colon + 1, stop);
+                }
+            } catch (Exception e) {
+                throw new ProtocolException("Unable to parser header line [" + new ByteSequence(data, lineStart, stop - lineStart) + "]", true);
+            }
+            if (stompVersion.equals(Stomp.V1_0)) {
+                value = value.trim();
+            }
+            if (!headers.containsKey(name)) {
+                headers.put(name, value);
+            }
+            lineStart = lineEnd + 1;
+        }
+        return new StompFrame(action, headers);
+    }
+
+    /**
+     * @return the length of content the headers announce, or -1 when the
+     *         content ends at the first null byte
+     */
+    protected int getContentLength(StompFrame frame) throws ProtocolException {
+        String action = frame.getAction();
+        String contentLength = frame.getHeaders().get(Stomp.Headers.CONTENT_LENGTH);
+        if ((action.equals(Stomp.Commands.SEND) || action.equals(Stomp.Responses.MESSAGE)) && contentLength != null) {
+            return parseContentLength(contentLength);
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] data, byte value, int offset, int end) {
+        for (int i = offset; i < end; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     protected int parseContentLength(String contentLength) throws ProtocolException {
         int length;
         try {
@@ -282,6 +460,13 @@ public class StompWireFormat implements WireFormat {
         return result;
     }
 
+    private String decodeHeader(byte[] data, int offset, int end) throws IOException {
+        if (indexOf(data, Stomp.ESCAPE, offset, end) == -1) {
+            return new String(data, offset, end - offset, "UTF-8");
+        }
+        return decodeHeader(new ByteArrayInputStream(new ByteSequence(data, offset, end - offset)));
+    }
+
     private String decodeHeader(InputStream header) throws IOException {
         ByteArrayOutputStream decoded = new ByteArrayOutputStream();
         PushbackInputStream stream = new PushbackInputStream(header);
@@ -333,4 +518,87 @@ public class StompWireFormat implements WireFormat {
     public void setStompVersion(String stompVersion) {
         this.stompVersion = stompVersion;
     }
+
+    /**
+     * Looks up the constant strings of well known names by their bytes, so
+     * parsing the commands and header names of a frame does not create new
+     * strings for them.
+     */
+    static final class NameTable {
+        private final String[][] namesByLength;
+
+        NameTable(Class<?>... holders) {
+            List<String> names = new ArrayList<String>();
+            for (Class<?> holder : holders) {
+                collect(holder, names);
+            }
+            int maxLength = 0;
+            for (String name : names) {
+                maxLength = Math.max(maxLength, name.length());
+            }
+            List<List<String>> byLength = new ArrayList<List<String>>();
+            for (int i = 0; i <= maxLength; i++) {
+                byLength.add(new ArrayList<String>());
+            }
+            for (String name : names) {
+                List<String> bucket = byLength.get(name.length());
+                if (!bucket.contains(name)) {
+                    bucket.add(name);
+                }
+            }
+            namesByLength = new String[maxLength + 1][];
+            for (int i = 0; i <= maxLength; i++) {
+                namesByLength[i] = byLength.get(i).toArray(new String[0]);
+            }
+        }
+
+        private static void collect(Class<?> holder, List<String> names) {
+            for (Field field : holder.getDeclaredFields()) {
+                if (field.getType() == String.class && Modifier.isStatic(field.getModifiers())) {
+                    try {
+                        String name = (String) field.get(null);
+                        if (isAscii(name)) {
+                            names.add(name);
+                        }
+                    } catch (IllegalAccessException ignore) {
+                    }
+                }
+            }
+            for (Class<?> nested : holder.getDeclaredClasses()) {
+                collect(nested, names);
+            }
+        }
+
+        private static boolean isAscii(String name) {
+            for (int i = 0; i < name.length(); i++) {
+                if (name.charAt(i) > 127) {
+                    return false;
+                }
+            }
+            return name.length() > 0;
+        }
+
+        /**
+         * @return the well known name with these UTF-8 bytes, or a new string
+         */
+        String get(byte[] data, int offset, int length) {
+            if (length < namesByLength.length) {
+                for (String name : namesByLength[length]) {
+                    if (matches(name, data, offset)) {
+                        return name;
+                    }
+                }
+            }
+            return new String(data, offset, length, UTF8);
+        }
+
+        private static boolean matches(String name, byte[] data, int offset) {
+            for (int i = 0; i < name.length(); i++) {
+                if (name.charAt(i) != data[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
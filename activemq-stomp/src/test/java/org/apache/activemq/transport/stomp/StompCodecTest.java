@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.stomp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.transport.tcp.TcpTransport;
+import org.apache.activemq.util.ByteSequence;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StompCodecTest {
+
+    private static final String FRAMES =
+        "CONNECT\naccept-version:1.1\nhost:localhost\n\n\u0000\n\n" +
+        "SEND\ndestination:/queue/test\ncontent-length:5\n\nhel\u0000o\u0000\n" +
+        "SEND\r\ndestination:/queue/test\r\ncustom:a\\cb\r\n\r\ntext body\u0000\u0000\u0000" +
+        "DISCONNECT\n\n\u0000";
+
+    private final List<StompFrame> frames = new ArrayList<StompFrame>();
+    private StompCodec codec;
+
+    @Before
+    public void setUp() throws Exception {
+        TcpTransport transport = new TcpTransport(new StompWireFormat(), new Socket()) {
+            @Override
+            public void doConsume(Object command) {
+                frames.add((StompFrame) command);
+            }
+        };
+        codec = new StompCodec(transport);
+    }
+
+    @Test
+    public void testFramesInOneRead() throws Exception {
+        byte[] data = FRAMES.getBytes("UTF-8");
+        codec.parse(data, 0, data.length);
+        assertFrames();
+    }
+
+    @Test
+    public void testFramesSplitAcrossReads() throws Exception {
+        byte[] data = FRAMES.getBytes("UTF-8");
+        for (int chunk = 1; chunk < data.length; chunk++) {
+            frames.clear();
+            for (int offset = 0; offset < data.length; offset += chunk) {
+                codec.parse(data, offset, Math.min(chunk, data.length - offset));
+            }
+            assertFrames();
+        }
+    }
+
+    @Test
+    public void testUnmarshalPacket() throws Exception {
+        StompWireFormat wireFormat = new StompWireFormat();
+        byte[] data = ("\nSEND\ndestination:/queue/test\ncontent-length:5\n\nhel\u0000o\u0000").getBytes("UTF-8");
+        StompFrame frame = (StompFrame) wireFormat.unmarshal(new ByteSequence(data));
+        assertEquals(Stomp.Commands.SEND, frame.getAction());
+        assertEquals("/queue/test", frame.getHeaders().get(Stomp.Headers.Send.DESTINATION));
+        ByteSequence content = frame.getContentSequence();
+        assertSame(data, content.data);
+        assertEquals("hel\u0000o", frame.getBody());
+
+        data = ("SEND\ndestination:/queue/test\ncontent-length:5\n\nhello").getBytes("UTF-8");
+        try {
+            wireFormat.unmarshal(new ByteSequence(data));
+        } catch (IOException expected) {
+            // no null byte ending the frame
+            return;
+        }
+        throw new AssertionError("frame without trailing null byte accepted");
+    }
+
+    @Test
+    public void testTranslatorAdoptsContent() throws Exception {
+        byte[] data = FRAMES.getBytes("UTF-8");
+        codec.parse(data, 0, data.length);
+        LegacyFrameTranslator translator = new LegacyFrameTranslator();
+
+        StompFrame bytesFrame = frames.get(1);
+        ByteSequence content = bytesFrame.getContentSequence();
+        ActiveMQMessage message = translator.convertFrame(null, bytesFrame);
+        assertTrue(message instanceof ActiveMQBytesMessage);
+        assertSame(content.data, message.getContent().data);
+        ActiveMQBytesMessage bytesMessage = (ActiveMQBytesMessage) message;
+        bytesMessage.setReadOnlyBody(true);
+        byte[] body = new byte[(int) bytesMessage.getBodyLength()];
+        bytesMessage.readBytes(body);
+        assertEquals("hel\u0000o", new String(body, "UTF-8"));
+
+        StompFrame textFrame = frames.get(2);
+        content = textFrame.getContentSequence();
+        message = translator.convertFrame(null, textFrame);
+        assertTrue(message instanceof ActiveMQTextMessage);
+        assertSame(content.data, message.getContent().data);
+        assertEquals("text body", ((ActiveMQTextMessage) message).getText());
+        assertEquals("a:b", message.getProperty("custom"));
+    }
+
+    private void assertFrames() throws Exception {
+        assertEquals(4, frames.size());
+
+        StompFrame connect = frames.get(0);
+        assertSame(Stomp.Commands.CONNECT, connect.getAction());
+        assertEquals("1.1", connect.getHeaders().get(Stomp.Headers.Connect.ACCEPT_VERSION));
+        assertEquals(0, connect.getContent().length);
+
+        StompFrame bytes = frames.get(1);
+        assertSame(Stomp.Commands.SEND, bytes.getAction());
+        for (String name : bytes.getHeaders().keySet()) {
+            assertTrue("interned " + name, name == Stomp.Headers.Send.DESTINATION || name == Stomp.Headers.CONTENT_LENGTH);
+        }
+        assertEquals("hel\u0000o", bytes.getBody());
+        assertTrue(bytes.getContentSequence().offset >= StompFrame.CONTENT_HEADROOM);
+
+        StompFrame text = frames.get(2);
+        assertEquals("/queue/test", text.getHeaders().get(Stomp.Headers.Send.DESTINATION));
+        assertEquals("a:b", text.getHeaders().get("custom"));
+        assertEquals("text body", text.getBody());
+        assertTrue(text.getContentSequence().offset >= StompFrame.CONTENT_HEADROOM);
+
+        assertSame(Stomp.Commands.DISCONNECT, frames.get(3).getAction());
+    }
+}
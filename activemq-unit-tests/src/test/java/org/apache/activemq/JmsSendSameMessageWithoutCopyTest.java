@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.DeliveryMode;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+/**
+ * Sends the same message over the vm transport without copying it, each send
+ * must set the headers on the message and dispatch a message of its own.
+ */
+public class JmsSendSameMessageWithoutCopyTest extends EmbeddedBrokerTestSupport {
+
+    protected ConnectionFactory createConnectionFactory() throws Exception {
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(bindAddress + "?batchDispatch=true");
+        factory.setCopyMessageOnSend(false);
+        return factory;
+    }
+
+    public void testSendSameMessage() throws Exception {
+        Connection connection = connectionFactory.createConnection();
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(destination);
+            MessageConsumer consumer = session.createConsumer(destination);
+            connection.start();
+            TextMessage message = session.createTextMessage("same");
+            int count = 10;
+            Set<String> receivedIds = new HashSet<String>();
+            for (int i = 0; i < count; i++) {
+                producer.send(message, DeliveryMode.NON_PERSISTENT, i % 10, 0);
+                // the headers are set on the message sent, JMS 1.1 section 3.4.11
+                assertEquals(destination, message.getJMSDestination());
+                assertEquals(DeliveryMode.NON_PERSISTENT, message.getJMSDeliveryMode());
+                assertEquals(i % 10, message.getJMSPriority());
+                assertTrue(message.getJMSTimestamp() > 0);
+
+                TextMessage received = (TextMessage) consumer.receive(5000);
+                assertNotNull("message " + i, received);
+                assertEquals("same", received.getText());
+                assertEquals(message.getJMSMessageID(), received.getJMSMessageID());
+                assertEquals(i % 10, received.getJMSPriority());
+                receivedIds.add(received.getJMSMessageID());
+            }
+            assertEquals(count, receivedIds.size());
+        } finally {
+            connection.close();
+        }
+    }
+
+    public void testSendAgainBeforeConsumed() throws Exception {
+        Connection connection = connectionFactory.createConnection();
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(destination);
+            TextMessage message = session.createTextMessage("same");
+            message.setStringProperty("send", "first");
+            producer.send(message, DeliveryMode.NON_PERSISTENT, 4, 0);
+            String firstId = message.getJMSMessageID();
+
+            // the broker still holds the first message when it is sent again
+            message.setStringProperty("send", "second");
+            producer.send(message, DeliveryMode.NON_PERSISTENT, 4, 1000000);
+            String secondId = message.getJMSMessageID();
+            assertFalse(firstId.equals(secondId));
+
+            MessageConsumer consumer = session.createConsumer(destination);
+            connection.start();
+            TextMessage first = (TextMessage) consumer.receive(5000);
+            assertNotNull(first);
+            assertEquals(firstId, first.getJMSMessageID());
+            assertEquals(0, first.getJMSExpiration());
+            assertEquals("first", first.getStringProperty("send"));
+            assertEquals("same", first.getText());
+
+            TextMessage second = (TextMessage) consumer.receive(5000);
+            assertNotNull(second);
+            assertEquals(secondId, second.getJMSMessageID());
+            assertTrue(second.getJMSExpiration() > 0);
+            assertEquals("second", second.getStringProperty("send"));
+            assertEquals("same", second.getText());
+        } finally {
+            connection.close();
+        }
+    }
+}
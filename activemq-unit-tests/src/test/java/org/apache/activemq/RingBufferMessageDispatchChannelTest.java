@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.MessageDispatch;
+
+public class RingBufferMessageDispatchChannelTest extends TestCase {
+
+    public void testFifoOrderAcrossGrowth() throws Exception {
+        RingBufferMessageDispatchChannel channel = new RingBufferMessageDispatchChannel(false, 4);
+        channel.start();
+        for (int i = 0; i < 100; i++) {
+            channel.enqueue(createDispatch(i, 4));
+            if (i % 3 == 0) {
+                assertEquals(i / 3, channel.dequeueNoWait().getRedeliveryCounter());
+            }
+        }
+        assertEquals(66, channel.size());
+        for (int i = 34; i < 100; i++) {
+            assertEquals(i, channel.dequeue(0).getRedeliveryCounter());
+        }
+        assertTrue(channel.isEmpty());
+        assertNull(channel.dequeueNoWait());
+    }
+
+    public void testEnqueueFirst() throws Exception {
+        RingBufferMessageDispatchChannel channel = new RingBufferMessageDispatchChannel(false, 2);
+        channel.start();
+        channel.enqueue(createDispatch(2, 4));
+        channel.enqueue(createDispatch(3, 4));
+        channel.enqueueFirst(createDispatch(1, 4));
+        channel.enqueueFirst(createDispatch(0, 4));
+        assertEquals(0, channel.peek().getRedeliveryCounter());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, channel.dequeueNoWait().getRedeliveryCounter());
+        }
+    }
+
+    public void testPriorityOrder() throws Exception {
+        RingBufferMessageDispatchChannel channel = new RingBufferMessageDispatchChannel(true);
+        channel.start();
+        channel.enqueue(createDispatch(0, 1));
+        channel.enqueue(createDispatch(1, 9));
+        channel.enqueue(createDispatch(2, 4));
+        channel.enqueue(createDispatch(3, 9));
+        channel.enqueueFirst(createDispatch(4, 4));
+
+        int[] expected = new int[] {1, 3, 4, 2, 0};
+        List<MessageDispatch> all = channel.removeAll();
+        assertEquals(expected.length, all.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], all.get(i).getRedeliveryCounter());
+        }
+        assertTrue(channel.isEmpty());
+        assertEquals(0, channel.size());
+    }
+
+    public void testStoppedAndClosed() throws Exception {
+        RingBufferMessageDispatchChannel channel = new RingBufferMessageDispatchChannel();
+        channel.enqueue(createDispatch(0, 4));
+        assertNull(channel.dequeueNoWait());
+        assertNull(channel.dequeue(10));
+        channel.start();
+        assertNotNull(channel.peek());
+        channel.clear();
+        assertTrue(channel.isEmpty());
+        channel.close();
+        assertTrue(channel.isClosed());
+        assertFalse(channel.isRunning());
+        channel.enqueue(createDispatch(1, 4));
+        assertNull(channel.dequeue(0));
+    }
+
+    public void testDequeueWaitsForEnqueue() throws Exception {
+        final RingBufferMessageDispatchChannel channel = new RingBufferMessageDispatchChannel();
+        channel.start();
+        final AtomicReference<MessageDispatch> received = new AtomicReference<MessageDispatch>();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread receiver = new Thread() {
+            public void run() {
+                try {
+                    received.set(channel.dequeue(-1));
+                } catch (InterruptedException e) {
+                }
+                done.countDown();
+            }
+        };
+        receiver.start();
+        Thread.sleep(100);
+        channel.enqueue(createDispatch(7, 4));
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(7, received.get().getRedeliveryCounter());
+
+        long start = System.currentTimeMillis();
+        assertNull(channel.dequeue(100));
+        assertTrue(System.currentTimeMillis() - start >= 90);
+    }
+
+    public void testCloseWakesWaitingReceiver() throws Exception {
+        final RingBufferMessageDispatchChannel channel = new RingBufferMessageDispatchChannel();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread receiver = new Thread() {
+            public void run() {
+                try {
+                    channel.dequeue(-1);
+                } catch (InterruptedException e) {
+                }
+                done.countDown();
+            }
+        };
+        receiver.start();
+        Thread.sleep(100);
+        channel.close();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    public void testConcurrentProducerAndConsumer() throws Exception {
+        final int count = 200000;
+        final RingBufferMessageDispatchChannel channel = new RingBufferMessageDispatchChannel(false, 16);
+        channel.start();
+        Thread producer = new Thread() {
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    channel.enqueue(createDispatch(i, 4));
+                }
+            }
+        };
+        producer.start();
+        for (int i = 0; i < count; i++) {
+            MessageDispatch md = channel.dequeue(10000);
+            assertNotNull("message " + i, md);
+            assertEquals(i, md.getRedeliveryCounter());
+        }
+        producer.join();
+        assertTrue(channel.isEmpty());
+    }
+
+    private static MessageDispatch createDispatch(int id, int priority) {
+        ActiveMQMessage message = new ActiveMQMessage();
+        message.setPriority((byte) priority);
+        MessageDispatch md = new MessageDispatch();
+        md.setMessage(message);
+        md.setRedeliveryCounter(id);
+        return md;
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Delivers to many sessions of one connection multiplexed onto a small shared
+ * dispatch pool and checks that every session still sees its messages in order.
+ */
+public class SessionDispatchPoolTest {
+
+    private static final int SESSIONS = 200;
+    private static final int MESSAGES = 50;
+    private static final int POOL_SIZE = 4;
+
+    private BrokerService broker;
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.setAdvisorySupport(false);
+        broker.start();
+        broker.waitUntilStarted();
+
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory("vm://localhost?create=false");
+        factory.setAlwaysSessionAsync(true);
+        factory.setSessionDispatchPoolSize(POOL_SIZE);
+        connection = factory.createConnection();
+        connection.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connection.close();
+        broker.stop();
+        broker.waitUntilStopped();
+    }
+
+    @Test(timeout = 60000)
+    public void testSessionsShareDispatchThreads() throws Exception {
+        final CountDownLatch done = new CountDownLatch(SESSIONS * MESSAGES);
+        final Set<String> dispatchThreads = Collections.synchronizedSet(new HashSet<String>());
+        final List<List<Integer>> received = new ArrayList<List<Integer>>();
+
+        for (int i = 0; i < SESSIONS; i++) {
+            final List<Integer> list = Collections.synchronizedList(new ArrayList<Integer>());
+            received.add(list);
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            session.createConsumer(new ActiveMQQueue("POOL." + i)).setMessageListener(new MessageListener() {
+                public void onMessage(Message message) {
+                    dispatchThreads.add(Thread.currentThread().getName());
+                    try {
+                        list.add(message.getIntProperty("sequence"));
+                    } catch (JMSException e) {
+                    }
+                    done.countDown();
+                }
+            });
+        }
+
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(null);
+        producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        for (int m = 0; m < MESSAGES; m++) {
+            for (int i = 0; i < SESSIONS; i++) {
+                Message message = session.createMessage();
+                message.setIntProperty("sequence", m);
+                producer.send(new ActiveMQQueue("POOL." + i), message);
+            }
+        }
+
+        assertTrue("all messages delivered", done.await(30, TimeUnit.SECONDS));
+        assertTrue("dispatched by " + dispatchThreads, dispatchThreads.size() <= POOL_SIZE);
+        for (List<Integer> list : received) {
+            assertEquals(MESSAGES, list.size());
+            for (int m = 0; m < MESSAGES; m++) {
+                assertEquals(Integer.valueOf(m), list.get(m));
+            }
+        }
+    }
+}
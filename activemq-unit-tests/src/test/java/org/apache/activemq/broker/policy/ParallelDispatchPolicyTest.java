@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.policy;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TopicSubscriptionTest;
+import org.apache.activemq.broker.region.policy.FixedCountSubscriptionRecoveryPolicy;
+import org.apache.activemq.broker.region.policy.ParallelDispatchPolicy;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.util.Wait;
+
+/**
+ * Runs the topic subscription tests with a shard size small enough that every
+ * fan out with more than one consumer is split across the dispatch threads.
+ */
+public class ParallelDispatchPolicyTest extends TopicSubscriptionTest {
+
+    private static final String THREAD_NAME = "ActiveMQ Topic Dispatch";
+
+    @Override
+    protected BrokerService createBroker() throws Exception {
+        BrokerService broker = super.createBroker();
+
+        ParallelDispatchPolicy dispatchPolicy = new ParallelDispatchPolicy();
+        dispatchPolicy.setShardSize(1);
+        dispatchPolicy.setMaxThreads(4);
+
+        PolicyEntry policy = new PolicyEntry();
+        policy.setDispatchPolicy(dispatchPolicy);
+        policy.setSubscriptionRecoveryPolicy(new FixedCountSubscriptionRecoveryPolicy());
+        PolicyMap pMap = new PolicyMap();
+        pMap.setDefaultEntry(policy);
+
+        broker.setDestinationPolicy(pMap);
+
+        return broker;
+    }
+
+    public void testDispatchThreadsStopWithBroker() throws Exception {
+        consumerCount = 10;
+        producerCount = 1;
+        messageCount  = 10;
+        messageSize   = 1;
+        prefetchCount = 10;
+
+        doMultipleClientsTest();
+
+        assertTotalMessagesReceived(messageCount * consumerCount * producerCount);
+        assertTrue("dispatch threads started", countDispatchThreads() > 0);
+
+        // well before idle threads would time out
+        broker.stop();
+        assertTrue("dispatch threads stopped", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return countDispatchThreads() == 0;
+            }
+        }, 5000));
+    }
+
+    private int countDispatchThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith(THREAD_NAME)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.MessageId;
+
+public class PagedInMessagesTest extends TestCase {
+
+    private final PagedInMessages pagedInMessages = new PagedInMessages();
+
+    public void testKeepsPageInOrder() throws Exception {
+        List<QueueMessageReference> refs = createReferences(0, 100);
+        for (QueueMessageReference ref : refs) {
+            assertTrue(pagedInMessages.addIfAbsent(ref));
+        }
+        assertEquals(100, pagedInMessages.size());
+        assertEquals(refs, new ArrayList<QueueMessageReference>(pagedInMessages.values()));
+
+        pagedInMessages.remove(refs.get(50).getMessageId());
+        refs.remove(50);
+        assertEquals(refs, new ArrayList<QueueMessageReference>(pagedInMessages.values()));
+    }
+
+    public void testDuplicateIsNotAdded() throws Exception {
+        QueueMessageReference ref = createReferences(0, 1).get(0);
+        assertTrue(pagedInMessages.addIfAbsent(ref));
+        assertFalse(pagedInMessages.addIfAbsent(new IndirectMessageReference(ref.getMessage())));
+        assertSame(ref, pagedInMessages.get(ref.getMessageId()));
+        assertEquals(1, pagedInMessages.values().size());
+
+        assertSame(ref, pagedInMessages.remove(ref.getMessageId()));
+        assertNull(pagedInMessages.remove(ref.getMessageId()));
+        assertTrue(pagedInMessages.isEmpty());
+        assertTrue(pagedInMessages.values().isEmpty());
+    }
+
+    public void testIterationWhileRemoving() throws Exception {
+        for (QueueMessageReference ref : createReferences(0, 10)) {
+            pagedInMessages.addIfAbsent(ref);
+        }
+        int count = 0;
+        for (Iterator<QueueMessageReference> i = pagedInMessages.values().iterator(); i.hasNext();) {
+            QueueMessageReference ref = i.next();
+            pagedInMessages.remove(ref.getMessageId());
+            count++;
+        }
+        assertEquals(10, count);
+        assertTrue(pagedInMessages.isEmpty());
+    }
+
+    public void testConcurrentAddAndRemove() throws Exception {
+        final int threads = 8;
+        final int perThread = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        for (int t = 0; t < threads; t++) {
+            final List<QueueMessageReference> refs = createReferences(t * perThread, perThread);
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        for (QueueMessageReference ref : refs) {
+                            pagedInMessages.addIfAbsent(ref);
+                        }
+                        // ack every other message
+                        for (int i = 0; i < refs.size(); i += 2) {
+                            pagedInMessages.remove(refs.get(i).getMessageId());
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertNull("no failure: " + failure.get(), failure.get());
+
+        assertEquals(threads * perThread / 2, pagedInMessages.size());
+        assertEquals(threads * perThread / 2, pagedInMessages.values().size());
+    }
+
+    private List<QueueMessageReference> createReferences(int start, int count) throws Exception {
+        List<QueueMessageReference> refs = new ArrayList<QueueMessageReference>(count);
+        for (int i = start; i < start + count; i++) {
+            ActiveMQTextMessage message = new ActiveMQTextMessage();
+            message.setMessageId(new MessageId("ID:test-1:1:1:1", i));
+            refs.add(new IndirectMessageReference(message));
+        }
+        return refs;
+    }
+}
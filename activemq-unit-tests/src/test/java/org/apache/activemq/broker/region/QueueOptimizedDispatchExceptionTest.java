@@ -179,6 +179,11 @@ public class QueueOptimizedDispatchExceptionTest {
                 return 0;
             }
 
+            @Override
+            public int getOutboundQueueSize() {
+                return 0;
+            }
+
             @Override
             public Connector getConnector() {
                 // TODO Auto-generated method stub
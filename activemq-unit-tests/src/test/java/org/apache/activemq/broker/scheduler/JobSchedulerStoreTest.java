@@ -28,7 +28,7 @@ import java.util.List;
 public class JobSchedulerStoreTest extends TestCase {
 
 	public void testRestart() throws Exception {
-		JobSchedulerStore store = new JobSchedulerStoreImpl();
+		JobSchedulerStore store = createJobSchedulerStore();
 		File directory = new File("target/test/ScheduledDB");
 		  IOHelper.mkdirs(directory);
 	      IOHelper.deleteChildren(directory);
@@ -60,4 +60,8 @@ public class JobSchedulerStoreTest extends TestCase {
 		    assertEquals(orig,payload);
 		}
 	}
+
+	protected JobSchedulerStore createJobSchedulerStore() throws Exception {
+		return new JobSchedulerStoreImpl();
+	}
 }
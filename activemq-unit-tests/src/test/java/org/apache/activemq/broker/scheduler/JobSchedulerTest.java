@@ -243,12 +243,16 @@ public class JobSchedulerTest {
     }
 
     protected void startStore(File directory) throws Exception {
-        store = new JobSchedulerStoreImpl();
+        store = createJobSchedulerStore();
         store.setDirectory(directory);
         store.start();
         scheduler = store.getJobScheduler("test");
     }
 
+    protected JobSchedulerStore createJobSchedulerStore() throws Exception {
+        return new JobSchedulerStoreImpl();
+    }
+
     @After
     public void tearDown() throws Exception {
         store.stop();
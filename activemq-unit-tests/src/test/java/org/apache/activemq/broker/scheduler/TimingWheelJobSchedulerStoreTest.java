@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.scheduler;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.store.kahadb.scheduler.TimingWheelJobSchedulerStore;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.IOHelper;
+import org.apache.activemq.util.Wait;
+
+public class TimingWheelJobSchedulerStoreTest extends JobSchedulerStoreTest {
+
+    @Override
+    protected JobSchedulerStore createJobSchedulerStore() throws Exception {
+        return new TimingWheelJobSchedulerStore();
+    }
+
+    public void testRemovedAndFiredJobsStayGoneAfterRestart() throws Exception {
+        File directory = new File("target/test/TimingWheelScheduledDB");
+        IOHelper.mkdirs(directory);
+        IOHelper.deleteChildren(directory);
+        TimingWheelJobSchedulerStore store = new TimingWheelJobSchedulerStore();
+        store.setDirectory(directory);
+        store.start();
+
+        final int count = 100;
+        final CountDownLatch fired = new CountDownLatch(count / 2);
+        JobScheduler js = store.getJobScheduler("test");
+        js.addListener(new JobListener() {
+            @Override
+            public void scheduledJob(String id, ByteSequence job) {
+                fired.countDown();
+            }
+        });
+        for (int i = 0; i < count; i++) {
+            ByteSequence payload = new ByteSequence(("job" + i).getBytes());
+            if (i % 2 == 0) {
+                js.schedule("fire:" + i, payload, 10);
+            } else {
+                js.schedule("keep:" + i, payload, "", 60 * 60 * 1000, 1000, 5);
+            }
+        }
+        js.remove("keep:1");
+        assertTrue(fired.await(10, TimeUnit.SECONDS));
+        store.stop();
+
+        store.start();
+        js = store.getJobScheduler("test");
+        List<Job> jobs = js.getAllJobs();
+        assertEquals(count / 2 - 1, jobs.size());
+        for (Job job : jobs) {
+            assertTrue(job.getJobId().startsWith("keep:"));
+            assertEquals("job" + job.getJobId().substring(5), new String(job.getPayload()));
+            assertEquals(5, job.getRepeat());
+        }
+
+        js.removeAllJobs();
+        store.stop();
+        store.start();
+        js = store.getJobScheduler("test");
+        assertTrue(js.getAllJobs().isEmpty());
+        store.stop();
+    }
+
+    public void testRepeatedJobFiresEveryPeriod() throws Exception {
+        File directory = new File("target/test/TimingWheelScheduledDB");
+        IOHelper.mkdirs(directory);
+        IOHelper.deleteChildren(directory);
+        TimingWheelJobSchedulerStore store = new TimingWheelJobSchedulerStore();
+        store.setDirectory(directory);
+        store.start();
+        try {
+            final CountDownLatch fired = new CountDownLatch(4);
+            JobScheduler js = store.getJobScheduler("test");
+            js.addListener(new JobListener() {
+                @Override
+                public void scheduledJob(String id, ByteSequence job) {
+                    fired.countDown();
+                }
+            });
+            js.schedule("repeat", new ByteSequence("payload".getBytes()), "", 0, 50, 3);
+            assertTrue(fired.await(10, TimeUnit.SECONDS));
+            assertTrue(js.getAllJobs().isEmpty());
+        } finally {
+            store.stop();
+        }
+    }
+
+    public void testJournalFilesAreReclaimed() throws Exception {
+        File directory = new File("target/test/TimingWheelScheduledDB");
+        IOHelper.mkdirs(directory);
+        IOHelper.deleteChildren(directory);
+        TimingWheelJobSchedulerStore store = new TimingWheelJobSchedulerStore();
+        store.setDirectory(directory);
+        store.setJournalMaxFileLength(64 * 1024);
+        store.setCleanupInterval(100);
+        store.start();
+
+        final int count = 2000;
+        final CountDownLatch fired = new CountDownLatch(count);
+        JobScheduler js = store.getJobScheduler("test");
+        js.addListener(new JobListener() {
+            @Override
+            public void scheduledJob(String id, ByteSequence job) {
+                fired.countDown();
+            }
+        });
+        // pins the first journal file until it gets rewritten
+        js.schedule("long-lived", new ByteSequence("long-lived".getBytes()), 60 * 60 * 1000);
+        ByteSequence payload = new ByteSequence(new byte[1024]);
+        for (int i = 0; i < count; i++) {
+            js.schedule("id:" + i, payload, 1);
+        }
+        assertTrue(fired.await(30, TimeUnit.SECONDS));
+
+        final TimingWheelJobSchedulerStore theStore = store;
+        assertTrue("journal files reclaimed", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return theStore.size() < 4 * 64 * 1024;
+            }
+        }));
+        store.stop();
+
+        store.start();
+        js = store.getJobScheduler("test");
+        List<Job> jobs = js.getAllJobs();
+        assertEquals(1, jobs.size());
+        assertEquals("long-lived", new String(jobs.get(0).getPayload()));
+        store.stop();
+    }
+}
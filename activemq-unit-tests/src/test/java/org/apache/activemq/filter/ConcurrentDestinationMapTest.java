@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.activemq.command.ActiveMQDestination;
+
+public class ConcurrentDestinationMapTest extends DestinationMapTest {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        map = new ConcurrentDestinationMap(2);
+    }
+
+    public void testCachedWildcardLookupSeesChanges() throws Exception {
+        ConcurrentDestinationMap map = (ConcurrentDestinationMap) this.map;
+        ActiveMQDestination wildcard = createDestination("TEST.*.D2");
+        put("TEST.BAR.D2", v1);
+
+        Set<?> first = map.get(wildcard);
+        assertSame(first, map.get(wildcard));
+        assertEquals(1, map.getCacheSize());
+        try {
+            first.clear();
+            fail("Cached lookup modified");
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        put("TEST.FOO.D2", v2);
+        assertEquals(0, map.getCacheSize());
+        assertMapValue("TEST.*.D2", v1, v2);
+        assertMapValue(compositeDestination1, v1);
+
+        remove("TEST.BAR.D2", v1);
+        assertMapValue("TEST.*.D2", v2);
+        map.removeAll(createDestination("TEST.FOO.D2"));
+        assertMapValue("TEST.*.D2", null);
+
+        put("TEST.FOO.D2", v2);
+        map.get(wildcard);
+        map.get(createDestination("TEST.>"));
+        map.get(createDestination("TEST.FOO.*"));
+        assertEquals(2, map.getCacheSize());
+        map.reset();
+        assertMapValue("TEST.*.D2", null);
+    }
+
+    public void testConcurrentLookupsAndChanges() throws Exception {
+        final ActiveMQDestination wildcard = createDestination("TEST.>");
+        final int count = 1000;
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> readers = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            Thread reader = new Thread() {
+                public void run() {
+                    try {
+                        while (done.getCount() > 0) {
+                            for (Object value : map.get(wildcard)) {
+                                assertNotNull(value);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            };
+            reader.start();
+            readers.add(reader);
+        }
+        for (int i = 0; i < count; i++) {
+            put("TEST.D" + i, "value" + i);
+        }
+        assertEquals(count, map.get(wildcard).size());
+        for (int i = 0; i < count; i++) {
+            remove("TEST.D" + i, "value" + i);
+        }
+        done.countDown();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get());
+        assertMapValue("TEST.>", null);
+    }
+}
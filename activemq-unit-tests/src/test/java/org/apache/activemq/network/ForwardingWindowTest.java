@@ -0,0 +1,208 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.network;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.DeliveryMode;
+
+import org.apache.activemq.broker.StubConnection;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ConnectionInfo;
+import org.apache.activemq.command.ConsumerInfo;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.ProducerInfo;
+import org.apache.activemq.command.SessionInfo;
+import org.apache.activemq.transport.FutureResponse;
+import org.apache.activemq.transport.ResponseCallback;
+import org.apache.activemq.transport.Transport;
+import org.apache.activemq.transport.TransportFilter;
+import org.apache.activemq.util.Wait;
+
+/**
+ * Forwards persistent messages over a bridge with a forwarding window while
+ * the responses of the remote broker are delayed.
+ */
+public class ForwardingWindowTest extends NetworkTestSupport {
+
+    private static final int WINDOW = 100;
+
+    private final ActiveMQDestination destination = new ActiveMQQueue("FORWARDING.WINDOW");
+    private final AtomicInteger localAcks = new AtomicInteger();
+    private DemandForwardingBridge bridge;
+    private StubConnection producerConnection;
+    private ProducerInfo producerInfo;
+    private StubConnection consumerConnection;
+
+    public void testConfirmedMessagesAreAckedInRanges() throws Exception {
+        final int count = 500;
+        startBridge(20);
+        startClients();
+
+        for (int i = 0; i < count; i++) {
+            producerConnection.send(createMessage(producerInfo, destination, DeliveryMode.PERSISTENT));
+        }
+        assertEquals(count, receiveMessageIds(count).size());
+
+        final Destination localQueue = broker.getDestination(destination);
+        assertTrue("all forwarded messages acked", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return localQueue.getDestinationStatistics().getMessages().getCount() == 0;
+            }
+        }));
+        assertEquals(count, bridge.getDequeueCounter());
+        assertTrue("acks were batched: " + localAcks.get(), localAcks.get() <= count / 5);
+    }
+
+    public void testUnconfirmedMessagesAreForwardedAgain() throws Exception {
+        final int count = 20;
+        // the remote broker never confirms anything in time
+        startBridge(60000);
+        startClients();
+
+        for (int i = 0; i < count; i++) {
+            producerConnection.send(createMessage(producerInfo, destination, DeliveryMode.PERSISTENT));
+        }
+        Set<MessageId> received = receiveMessageIds(count);
+        assertEquals(count, received.size());
+        assertEquals(0, localAcks.get());
+
+        bridge.stop();
+        final Destination localQueue = broker.getDestination(destination);
+        assertEquals(count, localQueue.getDestinationStatistics().getMessages().getCount());
+
+        startBridge(0);
+        assertTrue("replayed messages acked", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return localQueue.getDestinationStatistics().getMessages().getCount() == 0;
+            }
+        }));
+    }
+
+    private void startBridge(long responseLatency) throws Exception {
+        NetworkBridgeConfiguration config = new NetworkBridgeConfiguration();
+        config.setBrokerName("local");
+        config.setDispatchAsync(false);
+        config.setForwardingWindowSize(WINDOW);
+        Transport localTransport = new TransportFilter(createTransport()) {
+            @Override
+            public void oneway(Object command) throws IOException {
+                if (command instanceof MessageAck && destination.equals(((MessageAck) command).getDestination())) {
+                    localAcks.incrementAndGet();
+                }
+                super.oneway(command);
+            }
+        };
+        bridge = new DemandForwardingBridge(config, localTransport, new LatencyTransport(createRemoteTransport(), responseLatency));
+        bridge.setBrokerService(broker);
+        bridge.start();
+    }
+
+    private void startClients() throws Exception {
+        producerConnection = createConnection();
+        ConnectionInfo connectionInfo1 = createConnectionInfo();
+        SessionInfo sessionInfo1 = createSessionInfo(connectionInfo1);
+        producerInfo = createProducerInfo(sessionInfo1);
+        producerConnection.send(connectionInfo1);
+        producerConnection.send(sessionInfo1);
+        producerConnection.send(producerInfo);
+
+        consumerConnection = createRemoteConnection();
+        ConnectionInfo connectionInfo2 = createConnectionInfo();
+        SessionInfo sessionInfo2 = createSessionInfo(connectionInfo2);
+        ConsumerInfo consumerInfo = createConsumerInfo(sessionInfo2, destination);
+        consumerConnection.send(connectionInfo2);
+        consumerConnection.send(sessionInfo2);
+        consumerConnection.send(consumerInfo);
+
+        assertTrue("demand reached the local broker", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return broker.getDestination(destination).getConsumers().size() == 1;
+            }
+        }));
+    }
+
+    private Set<MessageId> receiveMessageIds(int count) throws Exception {
+        Set<MessageId> result = new HashSet<MessageId>();
+        for (int i = 0; i < count; i++) {
+            Message message = receiveMessage(consumerConnection);
+            assertNotNull("message " + i, message);
+            result.add(message.getMessageId());
+        }
+        return result;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (bridge != null) {
+            bridge.stop();
+        }
+        super.tearDown();
+    }
+
+    /**
+     * Delays the completion of every request by a fixed time, as the round
+     * trip to a distant broker would.
+     */
+    static class LatencyTransport extends TransportFilter {
+
+        private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        private final long latency;
+
+        LatencyTransport(Transport next, long latency) {
+            super(next);
+            this.latency = latency;
+        }
+
+        @Override
+        public FutureResponse asyncRequest(Object command, final ResponseCallback callback) throws IOException {
+            if (callback == null || latency <= 0) {
+                return next.asyncRequest(command, callback);
+            }
+            return next.asyncRequest(command, new ResponseCallback() {
+                @Override
+                public void onCompletion(final FutureResponse future) {
+                    scheduler.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onCompletion(future);
+                        }
+                    }, latency, TimeUnit.MILLISECONDS);
+                }
+            });
+        }
+
+        @Override
+        public void stop() throws Exception {
+            scheduler.shutdownNow();
+            super.stop();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.jmx.NetworkBridgeView;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.util.Wait;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Forwards messages for several queues over a network connector that opens
+ * three bridge stripes to the remote broker.
+ */
+public class StripedNetworkBridgeTest {
+
+    private static final int STRIPES = 3;
+    private static final int QUEUES = 8;
+    private static final int MESSAGES_PER_QUEUE = 100;
+
+    private BrokerService localBroker;
+    private BrokerService remoteBroker;
+    private DiscoveryNetworkConnector networkConnector;
+
+    @Before
+    public void setUp() throws Exception {
+        remoteBroker = createBroker("remote");
+        remoteBroker.start();
+        remoteBroker.waitUntilStarted();
+
+        localBroker = createBroker("local");
+        String remoteUri = remoteBroker.getTransportConnectors().get(0).getPublishableConnectString();
+        networkConnector = new DiscoveryNetworkConnector(new URI("static:(" + remoteUri + ")"));
+        networkConnector.setName("striped");
+        networkConnector.setBridgeStripes(STRIPES);
+        localBroker.addNetworkConnector(networkConnector);
+        localBroker.start();
+        localBroker.waitUntilStarted();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        localBroker.stop();
+        remoteBroker.stop();
+    }
+
+    private BrokerService createBroker(String name) throws Exception {
+        BrokerService broker = new BrokerService();
+        broker.setBrokerName(name);
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.addConnector("tcp://localhost:0");
+        return broker;
+    }
+
+    @Test(timeout = 60000)
+    public void testDestinationsAreForwardedInOrderOverTheirStripe() throws Exception {
+        Connection remoteConnection = new ActiveMQConnectionFactory(remoteBroker.getVmConnectorURI()).createConnection();
+        Connection localConnection = new ActiveMQConnectionFactory(localBroker.getVmConnectorURI()).createConnection();
+        try {
+            remoteConnection.start();
+            Session remoteSession = remoteConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer[] consumers = new MessageConsumer[QUEUES];
+            for (int q = 0; q < QUEUES; q++) {
+                consumers[q] = remoteSession.createConsumer(new ActiveMQQueue("STRIPED." + q));
+            }
+
+            // demand for every queue has reached the local broker
+            for (int q = 0; q < QUEUES; q++) {
+                final ActiveMQQueue queue = new ActiveMQQueue("STRIPED." + q);
+                assertTrue("demand for " + queue, Wait.waitFor(new Wait.Condition() {
+                    public boolean isSatisified() throws Exception {
+                        return localBroker.getDestination(queue).getConsumers().size() == 1;
+                    }
+                }));
+            }
+
+            Session localSession = localConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = localSession.createProducer(null);
+            producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+            for (int i = 0; i < MESSAGES_PER_QUEUE; i++) {
+                for (int q = 0; q < QUEUES; q++) {
+                    Message message = localSession.createMessage();
+                    message.setIntProperty("seq", i);
+                    producer.send(new ActiveMQQueue("STRIPED." + q), message);
+                }
+            }
+
+            for (int q = 0; q < QUEUES; q++) {
+                for (int i = 0; i < MESSAGES_PER_QUEUE; i++) {
+                    Message message = consumers[q].receive(10000);
+                    assertNotNull("message " + i + " on queue " + q, message);
+                    assertEquals("order on queue " + q, i, message.getIntProperty("seq"));
+                }
+            }
+        } finally {
+            localConnection.close();
+            remoteConnection.close();
+        }
+
+        assertEquals(1, networkConnector.activeBridges().size());
+        StripedNetworkBridge bridge = (StripedNetworkBridge) networkConnector.activeBridges().iterator().next();
+        assertEquals(STRIPES, bridge.getStripes().size());
+
+        long[] expected = new long[STRIPES];
+        for (int q = 0; q < QUEUES; q++) {
+            expected[StripedNetworkBridge.getStripe(new ActiveMQQueue("STRIPED." + q), STRIPES)] += MESSAGES_PER_QUEUE;
+        }
+        long[] forwarded = new NetworkBridgeView(bridge).getStripeEnqueueCounters();
+        for (int i = 0; i < STRIPES; i++) {
+            assertEquals("forwarded on stripe " + i, expected[i], forwarded[i]);
+        }
+        assertEquals(QUEUES * MESSAGES_PER_QUEUE, bridge.getEnqueueCounter());
+    }
+
+    @Test(timeout = 60000)
+    public void testTopicMatchedByWildcardAndConcreteConsumerIsForwardedOnce() throws Exception {
+        final ActiveMQTopic topic = new ActiveMQTopic("STRIPED.PRICES");
+        Connection remoteConnection = new ActiveMQConnectionFactory(remoteBroker.getVmConnectorURI()).createConnection();
+        Connection localConnection = new ActiveMQConnectionFactory(localBroker.getVmConnectorURI()).createConnection();
+        try {
+            remoteConnection.start();
+            Session remoteSession = remoteConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer wildcardConsumer = remoteSession.createConsumer(new ActiveMQTopic("*.PRICES"));
+            MessageConsumer concreteConsumer = remoteSession.createConsumer(topic);
+
+            assertEquals(1, networkConnector.activeBridges().size());
+            final StripedNetworkBridge bridge = (StripedNetworkBridge) networkConnector.activeBridges().iterator().next();
+            assertTrue("demand of both consumers", Wait.waitFor(new Wait.Condition() {
+                public boolean isSatisified() throws Exception {
+                    int demand = 0;
+                    for (DemandForwardingBridgeSupport stripe : bridge.getStripes()) {
+                        for (DemandSubscription sub : stripe.subscriptionMapByLocalId.values()) {
+                            demand += sub.size();
+                        }
+                    }
+                    return demand == 2;
+                }
+            }));
+
+            Session localSession = localConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = localSession.createProducer(topic);
+            producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+            for (int i = 0; i < MESSAGES_PER_QUEUE; i++) {
+                Message message = localSession.createMessage();
+                message.setIntProperty("seq", i);
+                producer.send(message);
+            }
+
+            for (int i = 0; i < MESSAGES_PER_QUEUE; i++) {
+                Message message = wildcardConsumer.receive(10000);
+                assertNotNull("message " + i + " on wildcard consumer", message);
+                assertEquals(i, message.getIntProperty("seq"));
+                message = concreteConsumer.receive(10000);
+                assertNotNull("message " + i + " on concrete consumer", message);
+                assertEquals(i, message.getIntProperty("seq"));
+            }
+            assertNull("no duplicate on wildcard consumer", wildcardConsumer.receive(500));
+            assertNull("no duplicate on concrete consumer", concreteConsumer.receive(500));
+            assertEquals(MESSAGES_PER_QUEUE, bridge.getEnqueueCounter());
+        } finally {
+            localConnection.close();
+            remoteConnection.close();
+        }
+    }
+
+    @Test
+    public void testTopicsAndWildcardsShareTheFirstStripe() throws Exception {
+        assertEquals(0, StripedNetworkBridge.getStripe(new ActiveMQTopic("PRICES.EUR.USD"), STRIPES));
+        assertEquals(0, StripedNetworkBridge.getStripe(new ActiveMQTopic("*.EUR.USD"), STRIPES));
+        assertEquals(0, StripedNetworkBridge.getStripe(new ActiveMQTopic(">"), STRIPES));
+        assertEquals(0, StripedNetworkBridge.getStripe(new ActiveMQQueue("STRIPED.>"), STRIPES));
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.openwire;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.util.ByteSequence;
+
+/**
+ * Marshals and unmarshals messages from many threads through one
+ * {@link OpenWireFormat} that has the marshall cache disabled, which is
+ * when marshalling is no longer serialized.
+ */
+public class ConcurrentMarshallingTest extends TestCase {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 2000;
+
+    public void testConcurrentTightMarshalling() throws Exception {
+        OpenWireFormat wireFormat = new OpenWireFormat(OpenWireFormat.DEFAULT_WIRE_VERSION);
+        wireFormat.setTightEncodingEnabled(true);
+        doTestConcurrentMarshalling(wireFormat);
+    }
+
+    public void testConcurrentLooseMarshalling() throws Exception {
+        OpenWireFormat wireFormat = new OpenWireFormat(OpenWireFormat.DEFAULT_WIRE_VERSION);
+        wireFormat.setTightEncodingEnabled(false);
+        doTestConcurrentMarshalling(wireFormat);
+    }
+
+    protected void doTestConcurrentMarshalling(final OpenWireFormat wireFormat) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for (int t = 0; t < THREADS; t++) {
+                final String text = createText(t);
+                results.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        for (int i = 0; i < ITERATIONS; i++) {
+                            ActiveMQTextMessage message = new ActiveMQTextMessage();
+                            message.setMessageId(new MessageId("ID:test-1:1:1:1", i));
+                            message.setDestination(new ActiveMQQueue("TEST"));
+                            message.setText(text);
+
+                            ByteSequence sequence = wireFormat.marshal(message);
+                            ActiveMQTextMessage copy = (ActiveMQTextMessage) wireFormat.unmarshal(sequence);
+                            assertEquals(text, copy.getText());
+                            assertEquals(message.getMessageId(), copy.getMessageId());
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Object> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private String createText(int seed) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 100 * (seed + 1); i++) {
+            builder.append((char) ('a' + ((i + seed) % 26)));
+        }
+        return builder.toString();
+    }
+}
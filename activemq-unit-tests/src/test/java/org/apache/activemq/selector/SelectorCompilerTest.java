@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.selector;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.apache.activemq.filter.BooleanExpression;
+import org.apache.activemq.filter.MessageEvaluationContext;
+import org.apache.activemq.filter.SelectorCompiler;
+
+/**
+ * Runs the selector tests against compiled selectors and checks that they
+ * always agree with the interpreted ones.
+ */
+public class SelectorCompilerTest extends SelectorTest {
+
+    public void testCompiledSelectorsAreCached() throws Exception {
+        BooleanExpression compiled = SelectorCompiler.compile("name = 'James' AND rank > 100");
+        assertSame(compiled, SelectorCompiler.compile("name = 'James' AND rank > 100"));
+        SelectorCompiler.clearCache();
+        assertTrue(compiled != SelectorCompiler.compile("name = 'James' AND rank > 100"));
+    }
+
+    public void testReorderingKeepsNullSemantics() throws Exception {
+        Message message = createMessage();
+
+        // The interpreted AND yields null rather than false when the first
+        // operand is null, which NOT turns into no match.
+        assertSelector(message, "NOT (missing = 1 AND name = 'Joe')", false);
+        assertSelector(message, "NOT (name = 'Joe' AND missing = 1)", true);
+        assertSelector(message, "NOT (missing = 1 OR name = 'James')", false);
+        assertSelector(message, "NOT (name = 'Joe' OR missing = 1)", false);
+        assertSelector(message, "missing = 1 OR name = 'James' AND rank > 100", true);
+        assertSelector(message, "name LIKE 'J%' AND rank > 100 AND version = 2 AND trueProp", true);
+        assertSelector(message, "name LIKE 'J%' AND rank > 100 AND version = 3", false);
+    }
+
+    public void testRepeatedProperties() throws Exception {
+        Message message = createMessage();
+
+        assertSelector(message, "rank = 1 OR rank = 2 OR rank = 123", true);
+        assertSelector(message, "rank >= 100 AND rank <= 200 AND rank <> 124", true);
+        assertSelector(message, "rank BETWEEN 1 AND 100 OR rank BETWEEN 200 AND 300", false);
+        assertSelector(message, "(rank + 1) = 124 AND rank = 123", true);
+    }
+
+    protected void assertSelector(Message message, String text, boolean expected) throws JMSException {
+        BooleanExpression selector = SelectorCompiler.compile(text);
+        assertTrue("Created a valid selector", selector != null);
+        MessageEvaluationContext context = new MessageEvaluationContext();
+        context.setMessageReference((org.apache.activemq.command.Message)message);
+        assertEquals("Interpreted selector for: " + text, expected, SelectorParser.parse(text).matches(context));
+        assertEquals("Compiled selector for: " + text, expected, selector.matches(context));
+    }
+}
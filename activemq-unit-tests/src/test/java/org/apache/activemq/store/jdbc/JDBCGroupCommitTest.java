@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.jdbc;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.util.Wait;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+
+/**
+ * Sends persistent messages from many connections at once to a broker that
+ * has JDBC group commit enabled.
+ */
+public class JDBCGroupCommitTest extends TestCase {
+
+    private static final int PRODUCERS = 10;
+    private static final int MESSAGES_PER_PRODUCER = 100;
+
+    private BrokerService broker;
+    private JDBCPersistenceAdapter jdbc;
+    private ActiveMQConnectionFactory factory;
+
+    @Override
+    protected void setUp() throws Exception {
+        broker = new BrokerService();
+        broker.setUseJmx(false);
+        jdbc = new JDBCPersistenceAdapter();
+        EmbeddedDataSource dataSource = new EmbeddedDataSource();
+        dataSource.setDatabaseName("target/derbyDb");
+        dataSource.setCreateDatabase("create");
+        jdbc.setDataSource(dataSource);
+        jdbc.setUseLock(false);
+        jdbc.setGroupCommit(true);
+        jdbc.setGroupCommitLingerTime(10);
+        jdbc.deleteAllMessages();
+        broker.setPersistenceAdapter(jdbc);
+        broker.start();
+        broker.waitUntilStarted();
+        factory = new ActiveMQConnectionFactory("vm://localhost?create=false");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        broker.stop();
+        broker.waitUntilStopped();
+    }
+
+    public void testConcurrentSendsShareCommits() throws Exception {
+        final int total = PRODUCERS * MESSAGES_PER_PRODUCER;
+        ExecutorService executor = Executors.newFixedThreadPool(PRODUCERS);
+        try {
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for (int p = 0; p < PRODUCERS; p++) {
+                results.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        Connection connection = factory.createConnection();
+                        try {
+                            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                            MessageProducer producer = session.createProducer(session.createQueue("TEST"));
+                            producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+                            for (int i = 0; i < MESSAGES_PER_PRODUCER; i++) {
+                                producer.send(session.createTextMessage("message " + i));
+                            }
+                        } finally {
+                            connection.close();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Object> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final GroupCommitWriter writer = jdbc.getGroupCommitWriter(null);
+        assertEquals(total, writer.getOperationCount());
+        assertTrue("sends were committed together: " + writer.getCommitCount(), writer.getCommitCount() < total);
+
+        Connection connection = factory.createConnection();
+        try {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue queue = session.createQueue("TEST");
+            MessageConsumer consumer = session.createConsumer(queue);
+            for (int i = 0; i < total; i++) {
+                assertNotNull("message " + i + " received", consumer.receive(5000));
+            }
+        } finally {
+            connection.close();
+        }
+
+        assertTrue("acks were written", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return writer.getOperationCount() == 2 * total;
+            }
+        }));
+        TransactionContext c = jdbc.getTransactionContext();
+        try {
+            assertEquals(0, jdbc.getAdapter().doGetMessageCount(c, new ActiveMQQueue("TEST")));
+        } finally {
+            c.close();
+        }
+    }
+
+    public void testFailedOperationDoesNotFailItsBatch() throws Exception {
+        final GroupCommitWriter writer = jdbc.getGroupCommitWriter(null);
+        writer.setLingerTime(500);
+        final AtomicInteger applied = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> failing = executor.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    writer.execute(new GroupCommitWriter.Operation() {
+                        protected void execute(TransactionContext c) throws SQLException, IOException {
+                            throw new SQLException("broken");
+                        }
+                    });
+                    return null;
+                }
+            });
+            Future<Object> working = executor.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    writer.execute(new GroupCommitWriter.Operation() {
+                        protected void execute(TransactionContext c) throws SQLException, IOException {
+                            applied.incrementAndGet();
+                        }
+                    });
+                    return null;
+                }
+            });
+
+            working.get();
+            assertTrue(applied.get() > 0);
+            try {
+                failing.get();
+                fail("the failing operation should see its exception");
+            } catch (ExecutionException expected) {
+                assertTrue(expected.getCause() instanceof IOException);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
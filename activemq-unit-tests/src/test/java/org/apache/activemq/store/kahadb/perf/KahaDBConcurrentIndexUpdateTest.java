@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.perf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.ProducerId;
+import org.apache.activemq.store.MessageStore;
+import org.apache.activemq.store.kahadb.KahaDBPersistenceAdapter;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Enqueues and acks messages across many queues from an increasing number of
+ * threads, with and without concurrent index updates, to show how index update
+ * throughput scales with the number of cores.
+ */
+public class KahaDBConcurrentIndexUpdateTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KahaDBConcurrentIndexUpdateTest.class);
+
+    private static final int DESTINATION_COUNT = Integer.getInteger("DESTINATION_COUNT", 64);
+    private static final int MESSAGES_PER_THREAD = Integer.getInteger("MESSAGES_PER_THREAD", 5000);
+    private static final int MAX_THREADS = Integer.getInteger("MAX_THREADS", Runtime.getRuntime().availableProcessors());
+
+    private final Vector<Throwable> exceptions = new Vector<Throwable>();
+
+    @Test
+    public void testEnqueueAckScaling() throws Exception {
+        StringBuilder report = new StringBuilder("\nthreads  global-lock(ops/s)  concurrent(ops/s)\n");
+        for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+            long globalRate = run(false, threads);
+            long concurrentRate = run(true, threads);
+            report.append(String.format("%7d  %18d  %17d%n", threads, globalRate, concurrentRate));
+        }
+        LOG.info(report.toString());
+        assertTrue("No exceptions: " + exceptions, exceptions.isEmpty());
+    }
+
+    protected long run(boolean concurrentIndexUpdates, final int threads) throws Exception {
+        KahaDBPersistenceAdapter adapter = new KahaDBPersistenceAdapter();
+        adapter.setDirectory(new File("target/activemq-data/kahadb-concurrent-index"));
+        adapter.setDeleteAllMessages(true);
+        adapter.setEnableJournalDiskSyncs(false);
+        adapter.setConcurrentIndexUpdates(concurrentIndexUpdates);
+        adapter.start();
+        try {
+            final List<MessageStore> stores = new ArrayList<MessageStore>();
+            for (int i = 0; i < DESTINATION_COUNT; i++) {
+                MessageStore store = adapter.createQueueMessageStore(new ActiveMQQueue("Queue." + i));
+                store.start();
+                stores.add(store);
+            }
+
+            final CountDownLatch done = new CountDownLatch(threads);
+            long start = System.currentTimeMillis();
+            for (int t = 0; t < threads; t++) {
+                final int threadId = t;
+                new Thread("IndexUpdater-" + t) {
+                    @Override
+                    public void run() {
+                        try {
+                            ProducerId producerId = new ProducerId("producer:" + threadId + ":1");
+                            for (int i = 0; i < MESSAGES_PER_THREAD; i++) {
+                                // each thread works a disjoint set of destinations
+                                MessageStore store = stores.get((threadId + i * threads) % DESTINATION_COUNT);
+                                ActiveMQTextMessage message = new ActiveMQTextMessage();
+                                message.setDestination(store.getDestination());
+                                message.setMessageId(new MessageId(producerId, i + 1));
+                                message.setText("message " + i);
+                                store.addMessage(null, message);
+
+                                MessageAck ack = new MessageAck();
+                                ack.setDestination(store.getDestination());
+                                ack.setLastMessageId(message.getMessageId());
+                                store.removeMessage(null, ack);
+                            }
+                        } catch (Throwable e) {
+                            exceptions.add(e);
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }.start();
+            }
+            done.await();
+            long duration = Math.max(1, System.currentTimeMillis() - start);
+
+            for (MessageStore store : stores) {
+                assertEquals("all messages acked on " + store.getDestination(), 0, store.getMessageCount());
+            }
+            return (threads * MESSAGES_PER_THREAD * 2 * 1000L) / duration;
+        } finally {
+            adapter.stop();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.openwire.OpenWireFormat;
+import org.apache.activemq.transport.TransportListener;
+import org.apache.activemq.util.ByteSequence;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pushes large OpenWire frames through an {@link NIOTransport} with and without
+ * the shared {@link DirectBufferPool} and reports the bytes allocated on the
+ * reading side for every message received.
+ */
+public class NIOTransportAllocationTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NIOTransportAllocationTest.class);
+
+    private static final int MESSAGE_COUNT = Integer.getInteger("MESSAGE_COUNT", 2000);
+    private static final int MESSAGE_SIZE = Integer.getInteger("MESSAGE_SIZE", 100 * 1024);
+
+    @Test
+    public void testAllocationPerMessage() throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported());
+
+        // warm up both paths before measuring
+        run(false, MESSAGE_COUNT / 10);
+        run(true, MESSAGE_COUNT / 10);
+
+        long heap = run(false, MESSAGE_COUNT);
+        long pooled = run(true, MESSAGE_COUNT);
+        LOG.info(String.format("%nBytes allocated per %d byte message: heap buffers %d, pooled direct buffers %d",
+            MESSAGE_SIZE, heap, pooled));
+        assertTrue("buffers were pooled", DirectBufferPool.getInstance().getPooledBytes() > 0);
+    }
+
+    protected long run(boolean useBufferPool, int messageCount) throws Exception {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.socket().bind(new InetSocketAddress("localhost", 0));
+        Socket client = new Socket("localhost", server.socket().getLocalPort());
+        SocketChannel accepted = server.accept();
+
+        final CountDownLatch received = new CountDownLatch(messageCount);
+        final AtomicInteger errors = new AtomicInteger();
+        NIOTransport transport = new NIOTransport(new OpenWireFormat(OpenWireFormat.DEFAULT_WIRE_VERSION), accepted.socket());
+        transport.setUseBufferPool(useBufferPool);
+        transport.setTransportListener(new TransportListener() {
+            public void onCommand(Object command) {
+                received.countDown();
+            }
+
+            public void onException(IOException error) {
+                errors.incrementAndGet();
+            }
+
+            public void transportInterupted() {
+            }
+
+            public void transportResumed() {
+            }
+        });
+        transport.start();
+
+        try {
+            OpenWireFormat wireFormat = new OpenWireFormat(OpenWireFormat.DEFAULT_WIRE_VERSION);
+            ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+            message.setContent(new ByteSequence(new byte[MESSAGE_SIZE]));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(client.getOutputStream(), 64 * 1024));
+
+            Map<Long, Long> before = allocatedBytes();
+            for (int i = 0; i < messageCount; i++) {
+                wireFormat.marshal(message, out);
+            }
+            out.flush();
+            assertTrue("all messages received", received.await(60, TimeUnit.SECONDS));
+            long allocated = allocatedSince(before);
+
+            assertEquals("no transport errors", 0, errors.get());
+            return allocated / messageCount;
+        } finally {
+            transport.stop();
+            client.close();
+            server.close();
+        }
+    }
+
+    /**
+     * Bytes allocated by every thread other than the sending one.
+     */
+    private Map<Long, Long> allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Map<Long, Long> result = new HashMap<Long, Long>();
+        long current = Thread.currentThread().getId();
+        for (long id : threads.getAllThreadIds()) {
+            if (id != current) {
+                result.put(id, threads.getThreadAllocatedBytes(id));
+            }
+        }
+        return result;
+    }
+
+    private long allocatedSince(Map<Long, Long> before) {
+        long total = 0;
+        for (Map.Entry<Long, Long> entry : allocatedBytes().entrySet()) {
+            Long start = before.get(entry.getKey());
+            if (entry.getValue() > 0) {
+                total += entry.getValue() - (start != null ? start : 0);
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.openwire.OpenWireFormat;
+import org.apache.activemq.transport.TransportListener;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.Wait;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Writes to a peer that is not reading through an {@link NIOTransport} doing
+ * non blocking writes, the writer must not block and the frames have to arrive
+ * complete and in order once the peer starts reading.
+ */
+public class NIOTransportNonBlockingWriteTest {
+
+    private static final int MESSAGE_COUNT = 200;
+    private static final int MESSAGE_SIZE = 64 * 1024;
+
+    private ServerSocketChannel server;
+    private Socket client;
+    private NIOTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        server = ServerSocketChannel.open();
+        server.socket().bind(new InetSocketAddress("localhost", 0));
+        client = new Socket("localhost", server.socket().getLocalPort());
+        SocketChannel accepted = server.accept();
+
+        transport = new NIOTransport(new OpenWireFormat(OpenWireFormat.DEFAULT_WIRE_VERSION), accepted.socket());
+        transport.setNonBlockingWrites(true);
+        transport.setTransportListener(new TransportListener() {
+            public void onCommand(Object command) {
+            }
+
+            public void onException(IOException error) {
+            }
+
+            public void transportInterupted() {
+            }
+
+            public void transportResumed() {
+            }
+        });
+        transport.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        transport.stop();
+        client.close();
+        server.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testWritesQueueWhilePeerIsNotReading() throws Exception {
+        ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+        message.setDestination(new ActiveMQQueue("TEST"));
+        message.setContent(new ByteSequence(new byte[MESSAGE_SIZE]));
+
+        // Far more than the socket buffers hold, with blocking writes this
+        // would hang until the peer reads.
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            message.setCorrelationId("" + i);
+            transport.oneway(message);
+        }
+        assertTrue("frames were queued", transport.getWriteQueueSize() > 0);
+        assertTrue("bytes were queued", transport.getWriteQueueBytes() > 0);
+
+        OpenWireFormat wireFormat = new OpenWireFormat(OpenWireFormat.DEFAULT_WIRE_VERSION);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            ActiveMQBytesMessage received = (ActiveMQBytesMessage) wireFormat.unmarshal(in);
+            assertEquals("" + i, received.getCorrelationId());
+            assertEquals(MESSAGE_SIZE, received.getContent().getLength());
+        }
+
+        assertTrue("write queue drained", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return transport.getWriteQueueSize() == 0;
+            }
+        }));
+        assertEquals(0, transport.getWriteQueueBytes());
+    }
+
+    @Test(timeout = 60000)
+    public void testWriterBlocksAtMaxWriteQueueBytes() throws Exception {
+        final long max = 1024 * 1024;
+        transport.setMaxWriteQueueBytes(max);
+        final ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+        message.setDestination(new ActiveMQQueue("TEST"));
+        message.setContent(new ByteSequence(new byte[MESSAGE_SIZE]));
+
+        final AtomicInteger sent = new AtomicInteger();
+        Thread writer = new Thread() {
+            public void run() {
+                try {
+                    for (int i = 0; i < MESSAGE_COUNT; i++) {
+                        message.setCorrelationId("" + i);
+                        transport.oneway(message);
+                        sent.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                }
+            }
+        };
+        writer.start();
+
+        // the writer stops once the queue passes the limit
+        assertTrue("writer blocked", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return transport.getWriteQueueBytes() > max;
+            }
+        }));
+        Thread.sleep(500);
+        assertTrue("writer blocked", sent.get() < MESSAGE_COUNT);
+        assertTrue("queue bounded", transport.getWriteQueueBytes() <= max + 2 * MESSAGE_SIZE);
+
+        OpenWireFormat wireFormat = new OpenWireFormat(OpenWireFormat.DEFAULT_WIRE_VERSION);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            ActiveMQBytesMessage received = (ActiveMQBytesMessage) wireFormat.unmarshal(in);
+            assertEquals("" + i, received.getCorrelationId());
+        }
+        writer.join(10000);
+        assertEquals(MESSAGE_COUNT, sent.get());
+    }
+}
@@ -371,6 +371,75 @@ public class VMTransportThreadSafeTest {
         remote.stop();
     }
 
+    @Test(timeout=60000)
+    public void testBatchDispatchFromManySenders() throws Exception {
+
+        final VMTransport local = new VMTransport(new URI(location1));
+        final VMTransport remote = new VMTransport(new URI(location2));
+
+        remote.setBatchDispatch(true);
+        remote.setDispatchBatchSize(7);
+
+        local.setPeer(remote);
+        remote.setPeer(local);
+
+        local.setTransportListener(new VMTestTransportListener(localReceived));
+        remote.setTransportListener(new VMTestTransportListener(remoteReceived));
+
+        local.start();
+
+        // queued until the remote is started
+        for(int i = 0; i < 10; ++i) {
+            local.oneway(new DummyCommand(i));
+        }
+        remote.start();
+
+        final int senders = 4;
+        final int count = 5000;
+        Thread[] threads = new Thread[senders];
+        for (int t = 0; t < senders; ++t) {
+            final int sender = t + 1;
+            threads[t] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for(int i = 0; i < count; ++i) {
+                        try {
+                            local.oneway(new DummyCommand(sender * count + i));
+                        } catch (Exception e) {
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return remoteReceived.size() == senders * count + 10;
+            }
+        }));
+
+        // the commands of each sender arrive in the order they were sent
+        int[] last = new int[senders + 1];
+        for (int i = 0; i <= senders; ++i) {
+            last[i] = -1;
+        }
+        for (DummyCommand command : remoteReceived) {
+            int sender = command.sequenceId / count;
+            assertTrue(command.sequenceId > last[sender]);
+            last[sender] = command.sequenceId;
+        }
+        assertEquals(senders * count + 10, remote.getReceiveCounter());
+
+        local.stop();
+        remote.stop();
+    }
+
     @Test(timeout=60000)
     public void testBlockedOnewayEnqeueAandStopTransportAsync() throws Exception {
         doTestBlockedOnewayEnqeueAandStopTransport(true);
@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.web;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jms.MessageProducer;
+
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.util.Wait;
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.jetty.client.ContentExchange;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.io.Buffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class StreamTest extends JettyTestSupport {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamTest.class);
+
+    private class StreamContentExchange extends ContentExchange {
+        private final StringBuffer responseContent = new StringBuffer();
+
+        StreamContentExchange(String url) {
+            super(true);
+            setURL(url);
+        }
+        protected void onResponseContent(Buffer content) {
+            responseContent.append(content.toString());
+        }
+        public String getResponseContent() {
+            return responseContent.toString();
+        }
+        public int getEventCount() {
+            // a stream starts with a comment, so each event follows a new line
+            return StringUtils.countMatches(getResponseContent(), "\nid: ");
+        }
+    }
+
+    private HttpClient httpClient;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        httpClient = new HttpClient();
+        httpClient.setConnectorType(HttpClient.CONNECTOR_SELECT_CHANNEL);
+        httpClient.setMaxConnectionsPerAddress(1000);
+        httpClient.start();
+    }
+
+    protected void tearDown() throws Exception {
+        httpClient.stop();
+        super.tearDown();
+    }
+
+    public void testStream() throws Exception {
+        final StreamContentExchange stream = new StreamContentExchange("http://localhost:8080/stream/test?type=queue");
+        httpClient.send(stream);
+
+        producer.send(session.createTextMessage("first"));
+        producer.send(session.createTextMessage("line1\nline2"));
+        for (int i = 0; i < 500; i++) {
+            producer.send(session.createTextMessage("message " + i));
+        }
+
+        assertTrue("all messages streamed", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return stream.getEventCount() == 502;
+            }
+        }));
+        String content = stream.getResponseContent();
+        assertTrue(content, content.startsWith(":\n\nid: "));
+        assertTrue(content, content.contains("\ndata: first\n\n"));
+        assertTrue(content, content.contains("\ndata: line1\ndata: line2\n\n"));
+        assertTrue(content, content.endsWith("\ndata: message 499\n\n"));
+        assertFalse("stream is open", stream.isDone());
+        assertEquals("text/event-stream;charset=UTF-8", stream.getResponseFields().getStringField("Content-Type").replace(" ", ""));
+    }
+
+    public void testStreamsAndThroughput() throws Exception {
+        final int streamCount = 200;
+        final int messageCount = 200;
+        final ActiveMQTopic topic = new ActiveMQTopic("stream.test");
+        final List<StreamContentExchange> streams = new ArrayList<StreamContentExchange>();
+        for (int i = 0; i < streamCount; i++) {
+            StreamContentExchange stream = new StreamContentExchange("http://localhost:8080/stream/stream/test?type=topic");
+            httpClient.send(stream);
+            streams.add(stream);
+        }
+        assertTrue("all streams subscribed", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return broker.getDestination(topic).getConsumers().size() == streamCount;
+            }
+        }));
+
+        long start = System.currentTimeMillis();
+        final MessageProducer topicProducer = session.createProducer(topic);
+        for (int i = 0; i < messageCount; i++) {
+            topicProducer.send(session.createTextMessage("message " + i));
+        }
+        assertTrue("all messages streamed", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                for (StreamContentExchange stream : streams) {
+                    if (stream.getEventCount() < messageCount) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }));
+        long duration = Math.max(System.currentTimeMillis() - start, 1);
+        LOG.info("Streamed " + messageCount + " messages to " + streamCount + " streams in " + duration + " ms, "
+                 + (streamCount * messageCount * 1000L / duration) + " messages/s");
+
+        for (StreamContentExchange stream : streams) {
+            assertEquals(messageCount, stream.getEventCount());
+            assertFalse("stream is open", stream.isDone());
+        }
+
+        // the consumers are closed once writing to the closed connections
+        // fails, at the latest with the keep alive
+        httpClient.stop();
+        assertTrue("consumers closed", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                topicProducer.send(session.createTextMessage("after close"));
+                return broker.getDestination(topic).getConsumers().size() == 0;
+            }
+        }, 60 * 1000));
+    }
+}
@@ -0,0 +1,324 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.ObjectMessage;
+import javax.jms.TextMessage;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.activemq.MessageAvailableConsumer;
+import org.apache.activemq.MessageAvailableListener;
+import org.eclipse.jetty.continuation.Continuation;
+import org.eclipse.jetty.continuation.ContinuationSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A servlet which streams the messages of a destination to the client as
+ * Server-Sent Events, so a client keeps one HTTP GET open instead of polling
+ * for each batch of messages. <p/> The destination is given as for the
+ * {@link MessageServlet} and each stream has its own consumer on the
+ * {@link AjaxWebClient} of the session and clientId, POSTs are handled as by the
+ * {@link MessageListenerServlet}. <p/> Messages are written in batches as they
+ * arrive. The next batch is only read from the consumer once the last one has
+ * been written to the client, so the messages for a slow client wait in the
+ * prefetch of its consumer and the broker stops dispatching to it. The servlet
+ * can be configured with the following init parameters:
+ * <dl>
+ * <dt>keepAliveTimeout</dt>
+ * <dd>The time in ms after which an idle stream is sent a comment, which finds
+ * streams whose client has gone away</dd>
+ * <dt>batchSize</dt>
+ * <dd>maximum messages to write to a stream at a time</dd>
+ * <dt>maximumStreams</dt>
+ * <dd>maximum number of streams open at once, further streams are refused</dd>
+ * </dl>
+ */
+@SuppressWarnings("serial")
+public class MessageStreamServlet extends MessageListenerServlet {
+    private static final Logger LOG = LoggerFactory.getLogger(MessageStreamServlet.class);
+
+    private static final String STREAM_ATTRIBUTE = "org.apache.activemq.web.stream";
+    private static final String KEEP_ALIVE = ":\n\n";
+
+    private long keepAliveTimeout = 25000;
+    private int batchSize = 100;
+    private int maximumStreams = 10000;
+    private final AtomicInteger streamCount = new AtomicInteger();
+    private final Set<MessageStream> streams = Collections.newSetFromMap(new ConcurrentHashMap<MessageStream, Boolean>());
+
+    public void init() throws ServletException {
+        super.init();
+        ServletConfig servletConfig = getServletConfig();
+        String name = servletConfig.getInitParameter("keepAliveTimeout");
+        if (name != null) {
+            keepAliveTimeout = asLong(name);
+        }
+        name = servletConfig.getInitParameter("batchSize");
+        if (name != null) {
+            batchSize = asInt(name);
+        }
+        name = servletConfig.getInitParameter("maximumStreams");
+        if (name != null) {
+            maximumStreams = asInt(name);
+        }
+    }
+
+    /**
+     * Opens a stream, or writes the messages which arrived since the stream
+     * was last suspended
+     */
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        MessageStream stream = (MessageStream)request.getAttribute(STREAM_ATTRIBUTE);
+        if (stream == null) {
+            stream = openStream(request, response);
+            if (stream == null) {
+                return;
+            }
+        } else if (!streams.contains(stream)) {
+            // closed while suspended
+            return;
+        }
+
+        Continuation continuation = ContinuationSupport.getContinuation(request);
+        int messages;
+        try {
+            stream.getClient().updateLastAccessed();
+            messages = stream.write(response.getOutputStream(), continuation.isExpired() || continuation.isInitial());
+        } catch (IOException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Closing stream " + stream + " after write failure: " + e);
+            }
+            closeStream(stream);
+            return;
+        } catch (JMSException e) {
+            LOG.warn("Closing stream " + stream + " after JMS failure: " + e, e);
+            closeStream(stream);
+            return;
+        }
+
+        synchronized (stream) {
+            continuation.setTimeout(keepAliveTimeout);
+            continuation.suspend();
+            if (messages == batchSize || stream.isAvailable()) {
+                // there is more to write, let the other streams have the
+                // thread in between
+                continuation.resume();
+            } else {
+                stream.setContinuation(continuation);
+            }
+        }
+    }
+
+    protected MessageStream openStream(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (streamCount.incrementAndGet() > maximumStreams) {
+            streamCount.decrementAndGet();
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many streams");
+            return null;
+        }
+
+        boolean opened = false;
+        try {
+            AjaxWebClient client = getAjaxWebClient(request);
+            MessageStream stream;
+            synchronized (client) {
+                Destination destination = getDestination(client, request);
+                if (destination == null) {
+                    throw new NoDestinationSuppliedException();
+                }
+                MessageAvailableConsumer consumer = (MessageAvailableConsumer)client.getSession().createConsumer(destination, request.getHeader(WebClient.selectorName));
+                stream = new MessageStream(client, consumer);
+                streams.add(stream);
+                consumer.setAvailableListener(stream);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Opened stream " + stream + " to " + destination);
+                }
+            }
+            opened = true;
+
+            request.setAttribute(STREAM_ATTRIBUTE, stream);
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType("text/event-stream");
+            response.setCharacterEncoding("UTF-8");
+            response.setHeader("Cache-Control", "no-cache");
+            return stream;
+        } catch (JMSException e) {
+            throw new ServletException("Could not open stream: " + e, e);
+        } finally {
+            if (!opened) {
+                streamCount.decrementAndGet();
+            }
+        }
+    }
+
+    protected void closeStream(MessageStream stream) {
+        if (streams.remove(stream)) {
+            streamCount.decrementAndGet();
+            stream.close();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Closed stream " + stream);
+            }
+        }
+    }
+
+    /**
+     * @return the number of open streams
+     */
+    public int getStreamCount() {
+        return streamCount.get();
+    }
+
+    public void destroy() {
+        for (MessageStream stream : streams) {
+            closeStream(stream);
+        }
+        super.destroy();
+    }
+
+    /**
+     * Appends a message as an event, each line of the text is a data line
+     */
+    protected void writeEvent(StringBuilder buffer, Message message) throws JMSException {
+        String text = null;
+        if (message instanceof TextMessage) {
+            text = ((TextMessage)message).getText();
+        } else if (message instanceof ObjectMessage) {
+            Object object = ((ObjectMessage)message).getObject();
+            if (object != null) {
+                text = object.toString();
+            }
+        }
+        buffer.append("id: ").append(message.getJMSMessageID()).append('\n');
+        if (text == null) {
+            buffer.append("data:\n");
+        } else {
+            int start = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '\r' || c == '\n') {
+                    buffer.append("data: ").append(text, start, i).append('\n');
+                    if (c == '\r' && i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+                        i++;
+                    }
+                    start = i + 1;
+                }
+            }
+            buffer.append("data: ").append(text, start, text.length()).append('\n');
+        }
+        buffer.append('\n');
+    }
+
+    /*
+     * The consumer of one stream, which wakes up the stream when messages are
+     * available.
+     */
+    protected class MessageStream implements MessageAvailableListener {
+        private final AjaxWebClient client;
+        private final MessageAvailableConsumer consumer;
+        private Continuation continuation;
+        private boolean available;
+
+        MessageStream(AjaxWebClient client, MessageAvailableConsumer consumer) {
+            this.client = client;
+            this.consumer = consumer;
+        }
+
+        public AjaxWebClient getClient() {
+            return client;
+        }
+
+        synchronized boolean isAvailable() {
+            return available;
+        }
+
+        synchronized void setContinuation(Continuation continuation) {
+            this.continuation = continuation;
+        }
+
+        public synchronized void onMessageAvailable(MessageConsumer consumer) {
+            available = true;
+            if (continuation != null) {
+                if (continuation.isSuspended()) {
+                    continuation.resume();
+                }
+                continuation = null;
+            }
+        }
+
+        /**
+         * Writes the next batch of messages and flushes it to the client
+         *
+         * @param keepAlive whether to write a comment when there are no
+         *                messages, which also sends the headers of a new stream
+         * @return the number of messages written
+         */
+        int write(OutputStream out, boolean keepAlive) throws IOException, JMSException {
+            synchronized (this) {
+                available = false;
+                continuation = null;
+            }
+            StringBuilder buffer = new StringBuilder();
+            int messages = 0;
+            while (messages < batchSize) {
+                Message message = consumer.receiveNoWait();
+                if (message == null) {
+                    break;
+                }
+                writeEvent(buffer, message);
+                messages++;
+            }
+            if (messages == 0) {
+                if (!keepAlive) {
+                    return 0;
+                }
+                buffer.append(KEEP_ALIVE);
+            }
+            out.write(buffer.toString().getBytes("UTF-8"));
+            out.flush();
+            return messages;
+        }
+
+        void close() {
+            try {
+                consumer.setAvailableListener(null);
+                consumer.close();
+            } catch (JMSException e) {
+                LOG.debug("caught exception closing consumer", e);
+            }
+            synchronized (this) {
+                if (continuation != null && continuation.isSuspended()) {
+                    continuation.resume();
+                }
+                continuation = null;
+            }
+        }
+    }
+}